@@ -0,0 +1,81 @@
+package pkg;
+
+import org.jsoup.Jsoup;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class measures adding every link of a fixture page to linksQueue, which resolves, deduplicates and queues each
+ * link.  With newLinks set linksQueue is emptied before each call so every link is queued; otherwise every link is
+ * already queued, which is the common case late in a crawl.  Divide the score by the number of links of the fixture
+ * for the cost per link.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AddPageLinksBenchmark {
+
+   @Param({"news-article.html", "link-directory.html"})
+   public String fixture;
+
+   @Param({"true", "false"})
+   public boolean newLinks;
+
+   private Crawler crawler;
+
+   private String html;
+
+   private Elements linkElements;
+
+   @Setup
+   public void loadFixture() throws IOException {
+      crawler = BenchmarkFixtures.createCrawler();
+      html = BenchmarkFixtures.loadHtml(fixture);
+      linkElements = Jsoup.parse(html, BenchmarkFixtures.PAGE_URL).select("a[href]");
+      crawler.addPageLinksToQueue(linkElements, BenchmarkFixtures.PAGE_URL);
+   }
+
+   @Setup(Level.Invocation)
+   public void clearQueue() {
+      if (newLinks) {
+         crawler.linksQueue.clear();
+      }
+   }
+
+   @TearDown
+   public void closeCrawler() {
+      crawler.close();
+   }
+
+   /**
+    * Adds the links of the page already parsed by Jsoup, as {@link LinkExtractionMode#JSOUP} does.
+    */
+   @Benchmark
+   public int addPageLinksToQueue() {
+      crawler.addPageLinksToQueue(linkElements, BenchmarkFixtures.PAGE_URL);
+      return crawler.linksQueue.size();
+   }
+
+   /**
+    * Extracts and adds the links of the page, as {@link LinkExtractionMode#STREAMING} does.
+    */
+   @Benchmark
+   public int addHtmlPageLinksToQueue() {
+      crawler.addHtmlPageLinksToQueue(html, BenchmarkFixtures.PAGE_URL);
+      return crawler.linksQueue.size();
+   }
+}
@@ -0,0 +1,59 @@
+package pkg;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class loads the HTML fixtures used by the benchmarks and creates crawlers which never touch the network.
+ * A fixture is either the name of a page stored under src/jmh/resources/fixtures or the path of any saved HTML file,
+ * so real pages can be measured with {@code ./gradlew jmh -Pbenchmarks=LinkExtraction -Pfixtures=page.html}.
+ */
+final class BenchmarkFixtures {
+
+   static final String PAGE_URL = "https://news.example.com/world/2018/crawler-benchmark.html";
+
+   private BenchmarkFixtures() {
+   }
+
+   /**
+    * @param fixture name of a stored fixture or path of an HTML file.
+    * @return the page as a String.
+    * @throws IOException if the fixture does not exist.
+    */
+   static String loadHtml(final String fixture) throws IOException {
+      final Path path = Paths.get(fixture);
+      if (Files.isRegularFile(path)) {
+         return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+      }
+      try (final InputStream in = BenchmarkFixtures.class.getResourceAsStream("/fixtures/" + fixture)) {
+         if (in == null) {
+            throw new IOException("No such fixture: " + fixture);
+         }
+         final ByteArrayOutputStream out = new ByteArrayOutputStream();
+         final byte[] buffer = new byte[8192];
+         int read;
+         while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+         }
+         return new String(out.toByteArray(), StandardCharsets.UTF_8);
+      }
+   }
+
+   /**
+    * @return a crawler with an empty linksQueue whose starting point returns no links.
+    */
+   static Crawler createCrawler() {
+      final byte[] emptyStartingPoint = "{\"links\":[]}".getBytes(StandardCharsets.UTF_8);
+      return new Crawler("https://www.example.com/seed.json", url -> CompletableFuture.completedFuture(
+          new FetchResult(url, 200, Collections.singletonMap("Content-Type", "application/json"), emptyStartingPoint)));
+   }
+}
@@ -0,0 +1,143 @@
+package pkg;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class crawls a {@link SyntheticSite} with {@link Crawler} and reports the pages crawled per second, so changes
+ * to concurrency and fetching can be compared offline and repeatably.
+ * Settings are passed as name=value arguments, e.g.
+ * {@code ./gradlew crawlLoadTest --args="pages=20000 workers=32 latency=50"}.  See {@link #USAGE} for the names and
+ * defaults.
+ * A crawl can be recorded with record=directory and crawled again with replay=directory, which serves the recorded
+ * responses through a {@link WarcReplayFetcher} instead of the site, so parsing and frontier changes are measured
+ * without any network or server time.
+ */
+public class CrawlLoadTest {
+
+   private static final String USAGE = "Usage: CrawlLoadTest [name=value]...\n"
+       + "  pages=10000        number of pages of the site\n"
+       + "  seeds=10           number of pages listed in the seed document\n"
+       + "  outDegree=20       links per page\n"
+       + "  absolute=0.3       share of links which are absolute\n"
+       + "  notFound=0.02      share of pages answering 404\n"
+       + "  serverError=0.01   share of pages answering 500\n"
+       + "  pageSize=16384     median page size in bytes\n"
+       + "  pageSizeSpread=0.5 standard deviation of the log of the page size\n"
+       + "  latency=20         delay of every response in milliseconds\n"
+       + "  jitter=10          maximum random delay added to latency\n"
+       + "  capacity=0         requests in flight the site handles without slowing down, 0 for no limit\n"
+       + "  randomSeed=42      seed of the generated site\n"
+       + "  workers=16         crawler worker threads\n"
+       + "  inFlight=0         maximum requests in flight, 0 for the number of workers\n"
+       + "  hostLimit=0        maximum requests in flight to the site, 0 for no HostScheduler\n"
+       + "  adaptive=false     adapt the requests in flight to the latency with a ConcurrencyLimiter\n"
+       + "  mode=JSOUP         link extraction mode, JSOUP or STREAMING\n"
+       + "  output=            file to write page records to, gzip compressed if it ends with .gz, none if empty\n"
+       + "  record=            directory to record the responses in as WARC files, none if empty\n"
+       + "  replay=            directory of a recording to crawl instead of the site, none if empty";
+
+   public static void main(final String[] args) throws IOException {
+      final Map<String, String> settings = new HashMap<>();
+      for (final String arg : args) {
+         final int equals = arg.indexOf('=');
+         if (equals < 0) {
+            System.err.println(USAGE);
+            return;
+         }
+         settings.put(arg.substring(0, equals), arg.substring(equals + 1));
+      }
+
+      try (final SyntheticSite site = new SyntheticSite()) {
+         site.setPageCount(getInt(settings, "pages", 10000));
+         site.setSeedCount(getInt(settings, "seeds", 10));
+         site.setOutDegree(getInt(settings, "outDegree", 20));
+         site.setAbsoluteLinkShare(getDouble(settings, "absolute", 0.3));
+         site.setNotFoundShare(getDouble(settings, "notFound", 0.02));
+         site.setServerErrorShare(getDouble(settings, "serverError", 0.01));
+         site.setPageSize(getInt(settings, "pageSize", 16 * 1024), getDouble(settings, "pageSizeSpread", 0.5));
+         site.setLatency(getInt(settings, "latency", 20), getInt(settings, "jitter", 10));
+         site.setCapacity(getInt(settings, "capacity", 0));
+         site.setRandomSeed(getInt(settings, "randomSeed", 42));
+         final String replay = settings.getOrDefault("replay", "");
+         final WarcReplayFetcher replayFetcher = replay.isEmpty() ? null : new WarcReplayFetcher(Paths.get(replay));
+         if (replayFetcher == null) {
+            site.start();
+         }
+
+         final int workerCount = getInt(settings, "workers", 16);
+         final int maxInFlight = getInt(settings, "inFlight", 0);
+         final int inFlightLimit = maxInFlight > 0 ? maxInFlight : workerCount;
+         final int hostLimit = getInt(settings, "hostLimit", 0);
+         final LinkExtractionMode mode = LinkExtractionMode.valueOf(settings.getOrDefault("mode", "JSOUP"));
+         final boolean adaptive = Boolean.parseBoolean(settings.getOrDefault("adaptive", "false"));
+         System.out.println("Site:    " + (replayFetcher == null ? site : replayFetcher));
+         System.out.println("Crawler: " + workerCount + " workers, " + inFlightLimit + " requests in flight, " + mode
+             + " link extraction, "
+             + (hostLimit > 0 ? hostLimit + " requests in flight per host" : "no host limit")
+             + (adaptive ? ", adaptive concurrency" : ""));
+
+         PageFetcher pageFetcher = replayFetcher != null ? replayFetcher : new HttpPageFetcher(
+             HttpPageFetcher.DEFAULT_CONNECT_TIMEOUT_MILLIS, HttpPageFetcher.DEFAULT_READ_TIMEOUT_MILLIS,
+             Math.max(inFlightLimit, HttpPageFetcher.DEFAULT_MAX_CONCURRENT_REQUESTS));
+         final String record = settings.getOrDefault("record", "");
+         if (!record.isEmpty()) {
+            pageFetcher = new WarcRecordingFetcher(pageFetcher,
+                new WarcWriter(Paths.get(record), WarcWriter.DEFAULT_MAX_FILE_BYTES));
+         }
+
+         try (final Crawler crawler = new Crawler(replayFetcher != null ? replayFetcher.getFirstUrl()
+             : site.getSeedUrl(), pageFetcher)) {
+            crawler.setWorkerCount(workerCount);
+            crawler.setMaxInFlight(maxInFlight);
+            crawler.setLinkExtractionMode(mode);
+            crawler.setStatsReportIntervalMillis(5000);
+            if (hostLimit > 0) {
+               crawler.setHostScheduler(new HostScheduler(hostLimit, 0));
+            }
+            final ConcurrencyLimiter concurrencyLimiter = adaptive ? new ConcurrencyLimiter(1, inFlightLimit, 1,
+                hostLimit > 0 ? hostLimit : inFlightLimit) : null;
+            crawler.setConcurrencyLimiter(concurrencyLimiter);
+            final String output = settings.getOrDefault("output", "");
+            if (!output.isEmpty()) {
+               crawler.setPageRecordWriter(new PageRecordWriter(Paths.get(output), 4096, 256));
+            }
+            crawler.crawl();
+
+            final CrawlerStats stats = crawler.getCrawlerStats();
+            final double seconds = Math.max(1, stats.getCrawlTimeMillis()) / 1000.0;
+            System.out.println(stats);
+            System.out.printf("  Pages per second:                    %.1f%n", stats.getTotalRequestCount() / seconds);
+            if (replayFetcher != null) {
+               System.out.printf("  Responses replayed:                  %d (%d not recorded)%n",
+                   replayFetcher.getReplayedCount(), replayFetcher.getMissCount());
+            }
+            else {
+               System.out.printf("  Pages answering 200 on the site:     %d%n", site.getSuccessfulPageCount());
+               System.out.printf("  Megabytes served:                    %.1f%n", site.getBytesServed() / 1048576.0);
+               System.out.printf("  Megabytes per second:                %.2f%n",
+                   site.getBytesServed() / 1048576.0 / seconds);
+            }
+            if (concurrencyLimiter != null) {
+               System.out.printf("  Final concurrency limit:             %d (%d decreases)%n",
+                   concurrencyLimiter.getLimit(), concurrencyLimiter.getDecreaseCount());
+            }
+         }
+      }
+   }
+
+   private static int getInt(final Map<String, String> settings, final String name, final int defaultValue) {
+      final String value = settings.get(name);
+      return value == null ? defaultValue : Integer.parseInt(value);
+   }
+
+   private static double getDouble(final Map<String, String> settings, final String name,
+       final double defaultValue) {
+      final String value = settings.get(name);
+      return value == null ? defaultValue : Double.parseDouble(value);
+   }
+}
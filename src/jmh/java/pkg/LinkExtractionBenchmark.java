@@ -0,0 +1,54 @@
+package pkg;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class compares the time and memory allocated per page of {@link LinkExtractionMode#JSOUP} and
+ * {@link LinkExtractionMode#STREAMING} on stored HTML fixtures.  Real pages can be measured by saving them and
+ * passing their paths with {@code -Pfixtures=<html file>,<html file>}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LinkExtractionBenchmark {
+
+   @Param({"news-article.html", "link-directory.html"})
+   public String fixture;
+
+   private String html;
+
+   @Setup
+   public void loadFixture() throws IOException {
+      html = BenchmarkFixtures.loadHtml(fixture);
+   }
+
+   @Benchmark
+   public int jsoup(final Blackhole blackhole) {
+      int linkCount = 0;
+      for (final Element element : Jsoup.parse(html, BenchmarkFixtures.PAGE_URL).select("a[href]")) {
+         blackhole.consume(element.attr("href"));
+         linkCount++;
+      }
+      return linkCount;
+   }
+
+   @Benchmark
+   public int streaming(final Blackhole blackhole) {
+      return StreamingLinkExtractor.extractLinks(html, (href, baseHref) -> blackhole.consume(href));
+   }
+}
@@ -0,0 +1,349 @@
+package pkg;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class serves a generated web site from an in-process {@link HttpServer} on the loopback interface so crawls
+ * can be measured without the internet.  The site has pageCount pages at /pages/N.html and a seed document at
+ * /seed.json in the {"links": [...]} form read by {@link Crawler}.
+ * Nothing is stored per page: the links, status and size of a page are derived from the random seed and the page
+ * number, so the same settings always produce the same site and a large site costs no memory.  Each page links to
+ * outDegree random pages, a share of them absolute and the rest in one of several relative forms; a share of pages
+ * answer 404 or 500; body sizes follow a log-normal distribution around pageSizeBytes; and every response is delayed
+ * by latencyMillis plus up to latencyJitterMillis.  With a capacity the site behaves like an overloaded server: while
+ * more requests than the capacity are handled, the delay grows in proportion to the number of requests.
+ * Settings must be made before {@link #start()}.
+ */
+public class SyntheticSite implements Closeable {
+
+   private static final byte[] FILLER = createFiller(4096);
+
+   private int pageCount = 10000;
+
+   private int seedCount = 10;
+
+   private int outDegree = 20;
+
+   private double absoluteLinkShare = 0.3;
+
+   private double notFoundShare = 0.02;
+
+   private double serverErrorShare = 0.01;
+
+   private int pageSizeBytes = 16 * 1024;
+
+   private double pageSizeSpread = 0.5;
+
+   private int latencyMillis = 20;
+
+   private int latencyJitterMillis = 10;
+
+   private long randomSeed = 42;
+
+   private int capacity;
+
+   private final AtomicInteger inFlightCount = new AtomicInteger();
+
+   private final AtomicInteger requestCount = new AtomicInteger();
+
+   private final AtomicLong bytesServed = new AtomicLong();
+
+   private HttpServer server;
+
+   private ExecutorService executor;
+
+   private String siteUrl;
+
+   public void setPageCount(final int pageCount) {
+      this.pageCount = pageCount;
+   }
+
+   public int getPageCount() {
+      return pageCount;
+   }
+
+   /**
+    * @param seedCount number of pages listed in the seed document, starting with page 0.
+    */
+   public void setSeedCount(final int seedCount) {
+      this.seedCount = seedCount;
+   }
+
+   public void setOutDegree(final int outDegree) {
+      this.outDegree = outDegree;
+   }
+
+   /**
+    * @param absoluteLinkShare share of links, from 0 to 1, written as absolute URLs instead of relative ones.
+    */
+   public void setAbsoluteLinkShare(final double absoluteLinkShare) {
+      this.absoluteLinkShare = absoluteLinkShare;
+   }
+
+   /**
+    * @param notFoundShare share of pages, from 0 to 1, which answer 404.
+    */
+   public void setNotFoundShare(final double notFoundShare) {
+      this.notFoundShare = notFoundShare;
+   }
+
+   /**
+    * @param serverErrorShare share of pages, from 0 to 1, which answer 500.
+    */
+   public void setServerErrorShare(final double serverErrorShare) {
+      this.serverErrorShare = serverErrorShare;
+   }
+
+   /**
+    * @param pageSizeBytes median size of a page body.
+    * @param pageSizeSpread standard deviation of the logarithm of the page size; 0 makes every page the same size.
+    */
+   public void setPageSize(final int pageSizeBytes, final double pageSizeSpread) {
+      this.pageSizeBytes = pageSizeBytes;
+      this.pageSizeSpread = pageSizeSpread;
+   }
+
+   /**
+    * @param latencyMillis delay before every response is sent.
+    * @param latencyJitterMillis maximum random delay added to latencyMillis.
+    */
+   public void setLatency(final int latencyMillis, final int latencyJitterMillis) {
+      this.latencyMillis = latencyMillis;
+      this.latencyJitterMillis = latencyJitterMillis;
+   }
+
+   /**
+    * @param capacity number of requests handled without extra delay, or 0 (the default) for no limit.
+    */
+   public void setCapacity(final int capacity) {
+      this.capacity = capacity;
+   }
+
+   public void setRandomSeed(final long randomSeed) {
+      this.randomSeed = randomSeed;
+   }
+
+   /**
+    * This method starts the server on a free port of the loopback interface.  Requests are handled on a pool of
+    * daemon threads which grows as needed, so injected latency never limits how many requests are served at once.
+    *
+    * @throws IOException if the server cannot be started.
+    */
+   public void start() throws IOException {
+      final InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+      server = HttpServer.create(address, 1024);
+      final AtomicInteger threadNumber = new AtomicInteger(1);
+      executor = Executors.newCachedThreadPool(runnable -> {
+         final Thread thread = new Thread(runnable, "synthetic-site-" + threadNumber.getAndIncrement());
+         thread.setDaemon(true);
+         return thread;
+      });
+      server.setExecutor(executor);
+      server.createContext("/", this::handle);
+      server.start();
+      siteUrl = "http://" + address.getHostString() + ":" + server.getAddress().getPort();
+   }
+
+   /**
+    * @return URL of the seed document.
+    */
+   public String getSeedUrl() {
+      return siteUrl + "/seed.json";
+   }
+
+   public int getRequestCount() {
+      return requestCount.get();
+   }
+
+   public long getBytesServed() {
+      return bytesServed.get();
+   }
+
+   /**
+    * @return the number of pages answering 200, which is the most a crawl can request successfully.
+    */
+   public int getSuccessfulPageCount() {
+      int count = 0;
+      for (int page = 0; page < pageCount; page++) {
+         if (getStatusCode(page) == 200) {
+            count++;
+         }
+      }
+      return count;
+   }
+
+   @Override
+   public void close() {
+      if (server != null) {
+         server.stop(0);
+         executor.shutdownNow();
+         server = null;
+      }
+   }
+
+   private void handle(final HttpExchange exchange) throws IOException {
+      requestCount.incrementAndGet();
+      final int inFlight = inFlightCount.incrementAndGet();
+      try {
+         final String path = exchange.getRequestURI().getPath();
+         final int page = parsePageNumber(path);
+         final Random random = createRandom(page);
+         delay(random, inFlight);
+         if (path.equals("/seed.json")) {
+            send(exchange, 200, "application/json", createSeedDocument(), 0);
+         }
+         else if (page < 0) {
+            send(exchange, 404, "text/html; charset=utf-8", "<html><body>Not found</body></html>", 0);
+         }
+         else {
+            final int statusCode = getStatusCode(page);
+            if (statusCode == 200) {
+               final String html = createPage(page, random);
+               send(exchange, 200, "text/html; charset=utf-8", html, pickPageSize(random) - html.length());
+            }
+            else {
+               send(exchange, statusCode, "text/html; charset=utf-8", "<html><body>Error " + statusCode
+                   + "</body></html>", 0);
+            }
+         }
+      }
+      finally {
+         inFlightCount.decrementAndGet();
+         exchange.close();
+      }
+   }
+
+   /**
+    * @return the page number of a /pages/N.html path, or -1 if the path is not a page of the site.
+    */
+   private int parsePageNumber(final String path) {
+      if (!path.startsWith("/pages/") || !path.endsWith(".html")) {
+         return -1;
+      }
+      try {
+         final int page = Integer.parseInt(path.substring(7, path.length() - 5));
+         return page >= 0 && page < pageCount ? page : -1;
+      }
+      catch (final NumberFormatException e) {
+         return -1;
+      }
+   }
+
+   private int getStatusCode(final int page) {
+      final double roll = createRandom(-1 - page).nextDouble();
+      if (roll < notFoundShare) {
+         return 404;
+      }
+      return roll < notFoundShare + serverErrorShare ? 500 : 200;
+   }
+
+   private Random createRandom(final int page) {
+      return new Random(UrlFingerprint.mix(randomSeed * 1000003 + page));
+   }
+
+   private void delay(final Random random, final int inFlight) {
+      int delayMillis = latencyMillis + (latencyJitterMillis > 0 ? random.nextInt(latencyJitterMillis + 1) : 0);
+      if (capacity > 0 && inFlight > capacity) {
+         delayMillis = (int) ((long) delayMillis * inFlight / capacity);
+      }
+      if (delayMillis > 0) {
+         try {
+            TimeUnit.MILLISECONDS.sleep(delayMillis);
+         }
+         catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   private int pickPageSize(final Random random) {
+      return (int) Math.min(Integer.MAX_VALUE / 2, pageSizeBytes * Math.exp(random.nextGaussian() * pageSizeSpread));
+   }
+
+   private String createSeedDocument() {
+      final StringBuilder json = new StringBuilder("{\"links\": [");
+      for (int page = 0; page < Math.min(seedCount, pageCount); page++) {
+         json.append(page == 0 ? "" : ", ").append('"').append(siteUrl).append("/pages/").append(page)
+             .append(".html\"");
+      }
+      return json.append("]}").toString();
+   }
+
+   private String createPage(final int page, final Random random) {
+      final StringBuilder html = new StringBuilder(256 + outDegree * 64);
+      html.append("<!DOCTYPE html>\n<html><head><title>Page ").append(page).append("</title></head>\n<body>\n<ul>\n");
+      for (int i = 0; i < outDegree; i++) {
+         final int target = random.nextInt(pageCount);
+         html.append("<li><a href=\"");
+         if (random.nextDouble() < absoluteLinkShare) {
+            html.append(siteUrl).append("/pages/").append(target).append(".html");
+         }
+         else {
+            switch (random.nextInt(3)) {
+               case 0:
+                  html.append(target).append(".html");
+                  break;
+               case 1:
+                  html.append("/pages/").append(target).append(".html");
+                  break;
+               default:
+                  html.append("../pages/").append(target).append(".html#top");
+                  break;
+            }
+         }
+         html.append("\">Page ").append(target).append("</a></li>\n");
+      }
+      return html.append("</ul>\n</body></html>\n").toString();
+   }
+
+   /**
+    * This method sends the body followed by paddingBytes of filler text.
+    */
+   private void send(final HttpExchange exchange, final int statusCode, final String contentType, final String body,
+       final int paddingBytes) throws IOException {
+      final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      final int padding = Math.max(0, paddingBytes);
+      exchange.getResponseHeaders().set("Content-Type", contentType);
+      exchange.sendResponseHeaders(statusCode, bytes.length + padding);
+      try (final OutputStream out = exchange.getResponseBody()) {
+         out.write(bytes);
+         for (int remaining = padding; remaining > 0; remaining -= FILLER.length) {
+            out.write(FILLER, 0, Math.min(remaining, FILLER.length));
+         }
+      }
+      bytesServed.addAndGet(bytes.length + padding);
+   }
+
+   private static byte[] createFiller(final int size) {
+      final byte[] filler = new byte[size];
+      final byte[] text = "Lorem ipsum dolor sit amet, consectetur adipiscing elit. ".getBytes(StandardCharsets.UTF_8);
+      for (int i = 0; i < size; i++) {
+         filler[i] = text[i % text.length];
+      }
+      return filler;
+   }
+
+   @Override
+   public String toString() {
+      return pageCount + " pages, " + seedCount + " seeds, " + outDegree + " links per page, "
+          + Math.round(absoluteLinkShare * 100) + "% absolute links, " + Math.round(notFoundShare * 100) + "% 404, "
+          + Math.round(serverErrorShare * 100) + "% 500, median page " + pageSizeBytes + " bytes, latency "
+          + latencyMillis + "+" + latencyJitterMillis + " ms" + (capacity > 0 ? ", capacity " + capacity : "");
+   }
+}
@@ -0,0 +1,75 @@
+package pkg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class measures {@link UniqueQueue} operations on a queue holding a fixed number of URLs.  The queue holds a
+ * window of size URLs out of a ring of 2 * size, so {@link #addRemove()} keeps the size constant while always adding
+ * a URL that is not queued, and the contains benchmarks have a URL to hit and one to miss.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UniqueQueueBenchmark {
+
+   @Param({"1000", "100000", "1000000"})
+   public int size;
+
+   private String[] links;
+
+   private UniqueQueue<String> queue;
+
+   private int next;
+
+   @Setup
+   public void fillQueue() {
+      links = new String[size * 2];
+      for (int i = 0; i < links.length; i++) {
+         links[i] = "https://host" + (i % 997) + ".example.com/articles/" + i + "/index.html";
+      }
+      queue = new UniqueQueue<>();
+      for (int i = 0; i < size; i++) {
+         queue.add(links[i]);
+      }
+      next = 0;
+   }
+
+   /**
+    * Adds the next URL of the ring and removes the oldest one.
+    */
+   @Benchmark
+   public String addRemove() {
+      queue.add(links[(next + size) % links.length]);
+      next = (next + 1) % links.length;
+      return queue.remove();
+   }
+
+   @Benchmark
+   public boolean addDuplicate() {
+      next = (next + 1) % size;
+      return queue.add(links[next]);
+   }
+
+   @Benchmark
+   public boolean containsHit() {
+      next = (next + 1) % size;
+      return queue.contains(links[next]);
+   }
+
+   @Benchmark
+   public boolean containsMiss() {
+      next = (next + 1) % size;
+      return queue.contains(links[size + next]);
+   }
+}
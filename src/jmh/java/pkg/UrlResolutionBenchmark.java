@@ -0,0 +1,57 @@
+package pkg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class measures {@link Crawler#createAbsoluteUrlFromRelative(String, String)} per link.  The inputs are the
+ * hrefs of a fixture page in document order, which mixes absolute, root relative, path relative, query only and
+ * non http links the way real pages do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UrlResolutionBenchmark {
+
+   @Param({"news-article.html", "link-directory.html"})
+   public String fixture;
+
+   private Crawler crawler;
+
+   private String[] hrefs;
+
+   private int next;
+
+   @Setup
+   public void loadHrefs() throws IOException {
+      crawler = BenchmarkFixtures.createCrawler();
+      final List<String> pageHrefs = new ArrayList<>();
+      StreamingLinkExtractor.extractLinks(BenchmarkFixtures.loadHtml(fixture), (href, baseHref) -> pageHrefs.add(href));
+      hrefs = pageHrefs.toArray(new String[0]);
+   }
+
+   @TearDown
+   public void closeCrawler() {
+      crawler.close();
+   }
+
+   @Benchmark
+   public String createAbsoluteUrlFromRelative() {
+      next = next + 1 == hrefs.length ? 0 : next + 1;
+      return crawler.createAbsoluteUrlFromRelative(BenchmarkFixtures.PAGE_URL, hrefs[next]);
+   }
+}
@@ -0,0 +1,134 @@
+package pkg;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * @author Brian Chipman
+ *
+ * This is a Bloom filter of URLs sized for an expected number of URLs and a false positive rate.  It uses about
+ * 1.2 bytes per URL at a 1% false positive rate.  {@link #contains(Object)} never misses a URL which was added, but
+ * may claim that a URL was added when it was not, so the crawler will skip roughly that share of new URLs.
+ * The bit positions are derived from the 64 bit {@link UrlFingerprint} with double hashing.  URLs cannot be removed.
+ * This class is not thread safe.
+ */
+public class BloomFilterSet extends AbstractSet<String> implements SeenUrlStore {
+
+   private final long[] bits;
+
+   private final long bitCount;
+
+   private final int hashCount;
+
+   private int size;
+
+   /**
+    * @param expectedInsertions number of URLs the filter is sized for.
+    * @param falsePositiveRate false positive rate once expectedInsertions URLs were added, e.g. 0.01.
+    */
+   public BloomFilterSet(final long expectedInsertions, final double falsePositiveRate) {
+      if (expectedInsertions < 1) {
+         throw new IllegalArgumentException("expectedInsertions must be at least 1: " + expectedInsertions);
+      }
+      if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+         throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1: " + falsePositiveRate);
+      }
+      final double ln2 = Math.log(2);
+      final long optimalBitCount = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2));
+      this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (optimalBitCount + 63) / 64)];
+      this.bitCount = 64L * bits.length;
+      this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * ln2));
+   }
+
+   @Override
+   public boolean add(final String url) {
+      final long fingerprint = UrlFingerprint.fingerprint(url);
+      final long hash1 = fingerprint & 0xffffffffL;
+      final long hash2 = fingerprint >>> 32;
+      boolean changed = false;
+      for (int i = 0; i < hashCount; i++) {
+         final long bitIndex = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitCount;
+         final int wordIndex = (int) (bitIndex >>> 6);
+         final long mask = 1L << bitIndex;
+         if ((bits[wordIndex] & mask) == 0) {
+            bits[wordIndex] |= mask;
+            changed = true;
+         }
+      }
+      if (changed) {
+         size++;
+      }
+      return changed;
+   }
+
+   @Override
+   public boolean contains(final Object o) {
+      if (!(o instanceof CharSequence)) {
+         return false;
+      }
+      final long fingerprint = UrlFingerprint.fingerprint((CharSequence) o);
+      final long hash1 = fingerprint & 0xffffffffL;
+      final long hash2 = fingerprint >>> 32;
+      for (int i = 0; i < hashCount; i++) {
+         final long bitIndex = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitCount;
+         if ((bits[(int) (bitIndex >>> 6)] & (1L << bitIndex)) == 0) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * @throws UnsupportedOperationException always, a Bloom filter cannot forget a URL.
+    */
+   @Override
+   public boolean remove(final Object o) {
+      throw new UnsupportedOperationException("URLs cannot be removed from a BloomFilterSet");
+   }
+
+   /**
+    * @return the number of URLs which were added and reported as new; URLs lost to false positives are not counted.
+    */
+   @Override
+   public int size() {
+      return size;
+   }
+
+   @Override
+   public void clear() {
+      Arrays.fill(bits, 0);
+      size = 0;
+   }
+
+   /**
+    * This set does not keep the URLs so it cannot be iterated.
+    *
+    * @throws UnsupportedOperationException always.
+    */
+   @Override
+   public Iterator<String> iterator() {
+      throw new UnsupportedOperationException("BloomFilterSet does not keep the URLs and cannot be iterated");
+   }
+
+   public int getHashCount() {
+      return hashCount;
+   }
+
+   /**
+    * @return the false positive rate expected for the number of URLs added so far.
+    */
+   public double getExpectedFalsePositiveRate() {
+      return Math.pow(1 - Math.exp(-(double) hashCount * size / bitCount), hashCount);
+   }
+
+   @Override
+   public long getMemoryUsageBytes() {
+      return 8L * bits.length;
+   }
+
+   @Override
+   public String toString() {
+      return "BloomFilterSet[size=" + size + ", bits=" + bitCount + ", hashes=" + hashCount + "]";
+   }
+}
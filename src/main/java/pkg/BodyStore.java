@@ -0,0 +1,377 @@
+package pkg;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class keeps the bodies of fetched pages on disk so they can be inspected or parsed again without fetching
+ * them.  Bodies are stored gzip compressed in files named by the SHA-256 hash of the body, so a page reachable from
+ * several URLs is stored once, and an index maps each URL to the hash of its body and the response headers listed
+ * in {@link #STORED_HEADERS}.
+ * The total size of the stored files is kept under a disk budget by deleting the least recently used bodies.  URLs
+ * whose body was deleted are dropped from the index when they are next looked up.
+ * The index is held in memory.  {@link #load()} reads the index written by an earlier crawl and {@link #close()}
+ * writes it back.  All methods may be called from several crawler workers at the same time; hashing, compression
+ * and writing are done outside the lock.  A written body is only moved into place and registered, and an evicted
+ * one only deleted, while holding the lock, so a body stored again while it is being evicted keeps its file.
+ */
+public class BodyStore implements Closeable {
+
+   private static final Logger LOG = LoggerFactory.getLogger(BodyStore.class);
+
+   private static final int MAGIC = 0x43524253;
+
+   private static final byte VERSION = 1;
+
+   private static final String INDEX_FILE = "index";
+
+   private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+   /**
+    * The response headers kept for each URL: the content type, needed to parse the body again, and the validators,
+    * so a {@link ValidatorCache} keeps working when pages are read from the store.
+    */
+   private static final String[] STORED_HEADERS = {"Content-Type", "ETag", "Last-Modified"};
+
+   private final Path directory;
+
+   private final long maxBytes;
+
+   private final Object lock = new Object();
+
+   /**
+    * Stored bodies by hash with their compressed size, least recently used first.
+    */
+   private final LinkedHashMap<String, Long> bodies = new LinkedHashMap<>(16, 0.75f, true);
+
+   private final Map<String, IndexEntry> urlIndex = new HashMap<>();
+
+   private long sizeBytes;
+
+   /**
+    * This class holds what the index knows about one URL.
+    */
+   private static class IndexEntry {
+
+      private final String hash;
+
+      private final Map<String, String> headers;
+
+      private IndexEntry(final String hash, final Map<String, String> headers) {
+         this.hash = hash;
+         this.headers = headers;
+      }
+   }
+
+   /**
+    * @param directory existing directory where bodies and the index are stored.
+    * @param maxBytes disk budget for the compressed bodies.
+    */
+   public BodyStore(final Path directory, final long maxBytes) {
+      this.directory = directory;
+      this.maxBytes = maxBytes;
+   }
+
+   public Path getDirectory() {
+      return directory;
+   }
+
+   /**
+    * This method reads the index written by an earlier crawl.  Nothing is read if there is no index.  Bodies whose
+    * file no longer exists are left out.
+    *
+    * @throws IOException if the index cannot be read.
+    */
+   public void load() throws IOException {
+      final Path indexFile = directory.resolve(INDEX_FILE);
+      if (!Files.exists(indexFile)) {
+         return;
+      }
+      synchronized (lock) {
+         try (final InputStream fileIn = Files.newInputStream(indexFile);
+             final DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn, 64 * 1024))) {
+            if (in.readInt() != MAGIC) {
+               throw new IOException("Not a body store index: " + indexFile);
+            }
+            final byte version = in.readByte();
+            if (version != VERSION) {
+               throw new IOException("Unsupported body store index version " + version + ": " + indexFile);
+            }
+            final int bodyCount = in.readInt();
+            for (int i = 0; i < bodyCount; i++) {
+               final String hash = in.readUTF();
+               final long size = in.readLong();
+               if (Files.exists(getBodyFile(hash))) {
+                  bodies.put(hash, size);
+                  sizeBytes += size;
+               }
+            }
+            final int urlCount = in.readInt();
+            for (int i = 0; i < urlCount; i++) {
+               final String url = readString(in);
+               final String hash = in.readUTF();
+               final Map<String, String> headers = new HashMap<>();
+               final int headerCount = in.readByte();
+               for (int j = 0; j < headerCount; j++) {
+                  headers.put(in.readUTF(), readString(in));
+               }
+               if (bodies.containsKey(hash)) {
+                  urlIndex.put(url, new IndexEntry(hash, headers));
+               }
+            }
+         }
+         catch (final EOFException e) {
+            throw new IOException("Body store index is truncated: " + indexFile, e);
+         }
+      }
+   }
+
+   /**
+    * Stores the body of a successful response.  Other responses are ignored.
+    *
+    * @param url String representing the requested URL.
+    * @param fetchResult the response.
+    * @throws IOException if the body cannot be written.
+    */
+   public void put(final String url, final FetchResult fetchResult) throws IOException {
+      if (!fetchResult.isSuccessful()) {
+         return;
+      }
+      final byte[] body = fetchResult.getBody();
+      final String hash = hash(body);
+      final Map<String, String> headers = new HashMap<>();
+      for (final String name : STORED_HEADERS) {
+         final String value = fetchResult.getHeader(name);
+         if (value != null) {
+            headers.put(name, value);
+         }
+      }
+      final IndexEntry indexEntry = new IndexEntry(hash, headers);
+      synchronized (lock) {
+         if (bodies.get(hash) != null) {
+            urlIndex.put(url, indexEntry);
+            return;
+         }
+      }
+
+      final byte[] compressed = compress(body);
+      final Path bodyFile = getBodyFile(hash);
+      Files.createDirectories(bodyFile.getParent());
+      final Path tempFile = Files.createTempFile(bodyFile.getParent(), hash, ".tmp");
+      Files.write(tempFile, compressed);
+
+      final List<String> evictedHashes = new ArrayList<>();
+      synchronized (lock) {
+         // moved while holding the lock, so an eviction of the same hash cannot delete it before it is registered
+         Files.move(tempFile, bodyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+         if (bodies.put(hash, (long) compressed.length) == null) {
+            sizeBytes += compressed.length;
+         }
+         urlIndex.put(url, indexEntry);
+         final Iterator<Map.Entry<String, Long>> leastRecentlyUsed = bodies.entrySet().iterator();
+         while (sizeBytes > maxBytes && leastRecentlyUsed.hasNext()) {
+            final Map.Entry<String, Long> evicted = leastRecentlyUsed.next();
+            if (!evicted.getKey().equals(hash)) {
+               sizeBytes -= evicted.getValue();
+               evictedHashes.add(evicted.getKey());
+               leastRecentlyUsed.remove();
+            }
+         }
+      }
+      for (final String evictedHash : evictedHashes) {
+         synchronized (lock) {
+            // another worker may have stored the same body again since it was evicted
+            if (!bodies.containsKey(evictedHash)) {
+               Files.deleteIfExists(getBodyFile(evictedHash));
+            }
+         }
+      }
+   }
+
+   /**
+    * @param url String representing the URL.
+    * @return a successful response holding the stored body and headers of the URL, or null if it is not stored.
+    * @throws IOException if the stored body cannot be read.
+    */
+   public FetchResult get(final String url) throws IOException {
+      final IndexEntry indexEntry;
+      synchronized (lock) {
+         indexEntry = urlIndex.get(url);
+         if (indexEntry == null) {
+            return null;
+         }
+         if (bodies.get(indexEntry.hash) == null) {
+            urlIndex.remove(url);
+            return null;
+         }
+      }
+      final byte[] body;
+      try {
+         body = decompress(Files.readAllBytes(getBodyFile(indexEntry.hash)));
+      }
+      catch (final NoSuchFileException e) {
+         return null;
+      }
+      return new FetchResult(url, 200, indexEntry.headers, body);
+   }
+
+   /**
+    * @return the number of distinct bodies stored.
+    */
+   public int getBodyCount() {
+      synchronized (lock) {
+         return bodies.size();
+      }
+   }
+
+   /**
+    * @return the total size of the compressed bodies on disk.
+    */
+   public long getSizeBytes() {
+      synchronized (lock) {
+         return sizeBytes;
+      }
+   }
+
+   /**
+    * This method writes the index to a temporary file and moves it over the index file.
+    *
+    * @throws IOException if the index cannot be written.
+    */
+   public void save() throws IOException {
+      final Path indexFile = directory.resolve(INDEX_FILE);
+      final Path tempFile = directory.resolve(INDEX_FILE + ".tmp");
+      synchronized (lock) {
+         try (final OutputStream fileOut = Files.newOutputStream(tempFile);
+             final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(bodies.size());
+            for (final Map.Entry<String, Long> body : bodies.entrySet()) {
+               out.writeUTF(body.getKey());
+               out.writeLong(body.getValue());
+            }
+            int urlCount = 0;
+            for (final IndexEntry indexEntry : urlIndex.values()) {
+               urlCount += bodies.containsKey(indexEntry.hash) ? 1 : 0;
+            }
+            out.writeInt(urlCount);
+            for (final Map.Entry<String, IndexEntry> url : urlIndex.entrySet()) {
+               if (bodies.containsKey(url.getValue().hash)) {
+                  writeString(out, url.getKey());
+                  out.writeUTF(url.getValue().hash);
+                  out.writeByte(url.getValue().headers.size());
+                  for (final Map.Entry<String, String> header : url.getValue().headers.entrySet()) {
+                     out.writeUTF(header.getKey());
+                     writeString(out, header.getValue());
+                  }
+               }
+            }
+         }
+      }
+      Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+   }
+
+   /**
+    * Saves the index.
+    *
+    * @throws IOException if the index cannot be written.
+    */
+   @Override
+   public void close() throws IOException {
+      save();
+      LOG.debug("Closed body store " + directory + " with " + getBodyCount() + " bodies in " + getSizeBytes()
+          + " bytes");
+   }
+
+   private Path getBodyFile(final String hash) {
+      return directory.resolve(hash.substring(0, 2)).resolve(hash + ".gz");
+   }
+
+   private static String hash(final byte[] body) {
+      try {
+         final byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+         final char[] hex = new char[digest.length * 2];
+         for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+         }
+         return new String(hex);
+      }
+      catch (final NoSuchAlgorithmException e) {
+         throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+      }
+   }
+
+   private static byte[] compress(final byte[] body) throws IOException {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+      try (final GZIPOutputStream gzipOut = new GZIPOutputStream(out, 8192)) {
+         gzipOut.write(body);
+      }
+      return out.toByteArray();
+   }
+
+   private static byte[] decompress(final byte[] compressed) throws IOException {
+      try (final InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed), 8192)) {
+         final ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+         final byte[] buffer = new byte[8192];
+         int read;
+         while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+         }
+         return out.toByteArray();
+      }
+   }
+
+   /**
+    * Writes a string as its UTF-8 length and bytes, or a length of -1 for null.
+    */
+   private static void writeString(final DataOutputStream out, final String s) throws IOException {
+      if (s == null) {
+         out.writeInt(-1);
+         return;
+      }
+      final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+   }
+
+   private static String readString(final DataInputStream in) throws IOException {
+      final int length = in.readInt();
+      if (length < 0) {
+         return null;
+      }
+      final byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+}
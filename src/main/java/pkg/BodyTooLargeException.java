@@ -0,0 +1,37 @@
+package pkg;
+
+import java.io.IOException;
+
+/**
+ * @author Brian Chipman
+ *
+ * This exception is thrown by {@link Crawler} for a response whose body is larger than the maximum body size of its
+ * {@link FetchPolicy}, when the policy skips such bodies instead of truncating them.
+ */
+public class BodyTooLargeException extends IOException {
+
+   private static final long serialVersionUID = 1L;
+
+   private final String url;
+
+   private final long maxBodyBytes;
+
+   public BodyTooLargeException(final String message, final String url, final long maxBodyBytes) {
+      super(message);
+      this.url = url;
+      this.maxBodyBytes = maxBodyBytes;
+   }
+
+   public String getUrl() {
+      return url;
+   }
+
+   public long getMaxBodyBytes() {
+      return maxBodyBytes;
+   }
+
+   @Override
+   public String toString() {
+      return super.toString() + ". URL=" + url + ", max body bytes=" + maxBodyBytes;
+   }
+}
@@ -0,0 +1,630 @@
+package pkg;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class connects one {@link Crawler} process to the other processes of a distributed crawl.  Each of the n
+ * nodes owns the URLs whose host hashes to its node ID (see {@link #partitionOf(String, int)}), so all requests to a
+ * host come from one node and each node only needs the seen set of its own URLs.  Links found for another node are
+ * forwarded to it over TCP in batches by a sender thread per peer.
+ * Termination is detected by node 0, the coordinator, with waves of status requests: every node reports whether it
+ * is idle and how many links it has forwarded and received.  The crawl is finished once two waves in a row find
+ * every node idle with unchanged counts and as many links received as forwarded, i.e. nothing is being crawled and
+ * no link is in transit.  The coordinator then tells every node to stop, and each node sends it its
+ * {@link CrawlerStats} so it can report the stats of the whole cluster.
+ * If a peer disconnects before the crawl is finished, the node stops crawling since the crawl can no longer finish.
+ */
+public class ClusterNode implements Closeable {
+
+   private static final Logger LOG = LoggerFactory.getLogger(ClusterNode.class);
+
+   private static final int COORDINATOR_ID = 0;
+
+   private static final byte LINKS = 1;
+
+   private static final byte STATUS_REQUEST = 2;
+
+   private static final byte STATUS = 3;
+
+   private static final byte TERMINATE = 4;
+
+   private static final byte STATS = 5;
+
+   private static final int BATCH_SIZE = 512;
+
+   private static final long WAVE_INTERVAL_MILLIS = 100;
+
+   private static final long WAVE_TIMEOUT_MILLIS = 5000;
+
+   private final int nodeId;
+
+   private final List<InetSocketAddress> nodeAddresses;
+
+   private final ServerSocket serverSocket;
+
+   private final Peer[] peers;
+
+   private final AtomicLong forwardedCount = new AtomicLong();
+
+   private final AtomicLong receivedCount = new AtomicLong();
+
+   private final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+   private final List<Socket> acceptedSockets = new CopyOnWriteArrayList<>();
+
+   private final List<CrawlerStats> peerStats = new CopyOnWriteArrayList<>();
+
+   private final CountDownLatch peerStatsLatch;
+
+   private long connectTimeoutMillis = 30000;
+
+   private Listener listener;
+
+   private volatile boolean terminated;
+
+   private volatile boolean closed;
+
+   /**
+    * The wave of status requests the coordinator is waiting for, see {@link #runWave(int)}.
+    */
+   private volatile Wave currentWave;
+
+   /**
+    * This interface is implemented by the crawler of the node.
+    */
+   public interface Listener {
+
+      /**
+       * Called with links forwarded by another node, which this node owns.
+       */
+      void linksReceived(List<String> links);
+
+      /**
+       * @return true if the node has nothing to crawl and is not crawling anything.
+       */
+      boolean isIdle();
+
+      /**
+       * Called once the whole cluster is finished, or can no longer finish.
+       */
+      void terminated();
+   }
+
+   /**
+    * This class holds the replies to one wave of status requests.
+    */
+   private static class Wave {
+
+      private final int waveId;
+
+      private final boolean[] idle;
+
+      private final long[] counts;
+
+      private final CountDownLatch replies;
+
+      private Wave(final int waveId, final int nodeCount) {
+         this.waveId = waveId;
+         this.idle = new boolean[nodeCount];
+         this.counts = new long[nodeCount * 2];
+         this.replies = new CountDownLatch(nodeCount - 1);
+      }
+
+      private synchronized void setStatus(final int node, final boolean nodeIdle, final long forwarded,
+          final long received) {
+         idle[node] = nodeIdle;
+         counts[node * 2] = forwarded;
+         counts[node * 2 + 1] = received;
+      }
+   }
+
+   /**
+    * Creates the node and starts listening for its peers.
+    *
+    * @param nodeId ID of this node, the index of its address in nodeAddresses.
+    * @param nodeAddresses the addresses of all nodes of the cluster, in the same order on every node.
+    * @throws IOException if this node's address cannot be listened on.
+    */
+   public ClusterNode(final int nodeId, final List<InetSocketAddress> nodeAddresses) throws IOException {
+      if (nodeId < 0 || nodeId >= nodeAddresses.size()) {
+         throw new IllegalArgumentException("Node " + nodeId + " is not one of " + nodeAddresses.size() + " nodes");
+      }
+      this.nodeId = nodeId;
+      this.nodeAddresses = new ArrayList<>(nodeAddresses);
+      this.peers = new Peer[nodeAddresses.size()];
+      this.peerStatsLatch = new CountDownLatch(nodeId == COORDINATOR_ID ? nodeAddresses.size() - 1 : 0);
+      this.serverSocket = new ServerSocket();
+      serverSocket.setReuseAddress(true);
+      serverSocket.bind(new InetSocketAddress(nodeAddresses.get(nodeId).getPort()));
+   }
+
+   /**
+    * Parses a comma separated list of host:port addresses.
+    *
+    * @param addresses the addresses, e.g. "localhost:7001,localhost:7002".
+    * @return the addresses.
+    * @throws IllegalArgumentException if an address has no port.
+    */
+   public static List<InetSocketAddress> parseAddresses(final String addresses) {
+      final List<InetSocketAddress> nodeAddresses = new ArrayList<>();
+      for (final String address : addresses.split(",")) {
+         final int colon = address.lastIndexOf(':');
+         if (colon < 0) {
+            throw new IllegalArgumentException("Address has no port: " + address);
+         }
+         nodeAddresses.add(new InetSocketAddress(address.substring(0, colon).trim(),
+             Integer.parseInt(address.substring(colon + 1).trim())));
+      }
+      return nodeAddresses;
+   }
+
+   /**
+    * @param url String representing an absolute URL.
+    * @param nodeCount number of nodes of the cluster.
+    * @return the ID of the node which owns the URL.
+    */
+   public static int partitionOf(final String url, final int nodeCount) {
+      return (int) Math.floorMod(UrlFingerprint.fingerprint(HostScheduler.getHost(url)), (long) nodeCount);
+   }
+
+   /**
+    * Sets how long {@link #start(Listener)} keeps trying to connect to peers which are not listening yet.
+    *
+    * @param connectTimeoutMillis the timeout, 30 seconds by default.
+    */
+   public void setConnectTimeoutMillis(final long connectTimeoutMillis) {
+      this.connectTimeoutMillis = connectTimeoutMillis;
+   }
+
+   public int getNodeId() {
+      return nodeId;
+   }
+
+   public int getNodeCount() {
+      return nodeAddresses.size();
+   }
+
+   /**
+    * @param url String representing an absolute URL.
+    * @return true if this node owns the URL.
+    */
+   public boolean isLocal(final String url) {
+      return nodeAddresses.size() == 1 || partitionOf(url, nodeAddresses.size()) == nodeId;
+   }
+
+   public boolean isTerminated() {
+      return terminated;
+   }
+
+   public long getForwardedCount() {
+      return forwardedCount.get();
+   }
+
+   public long getReceivedCount() {
+      return receivedCount.get();
+   }
+
+   /**
+    * Accepts connections from the peers, connects to every peer and, on the coordinator, starts detecting
+    * termination.
+    *
+    * @param listener the crawler of this node.
+    * @throws IOException if a peer cannot be connected to within the connect timeout.
+    */
+   public void start(final Listener listener) throws IOException {
+      this.listener = listener;
+      startThread("cluster-accept-" + nodeId, this::acceptPeers);
+      final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectTimeoutMillis);
+      for (int peerId = 0; peerId < peers.length; peerId++) {
+         if (peerId != nodeId) {
+            peers[peerId] = new Peer(peerId, connect(nodeAddresses.get(peerId), deadlineNanos));
+         }
+      }
+      for (final Peer peer : peers) {
+         if (peer != null) {
+            startThread("cluster-sender-" + nodeId + "-" + peer.peerId, peer::sendLinks);
+            startThread("cluster-replies-" + nodeId + "-" + peer.peerId, peer::readReplies);
+         }
+      }
+      LOG.info("Node " + nodeId + " connected to " + (peers.length - 1) + " peers");
+      if (peers.length == 1) {
+         terminate();
+      }
+      else if (nodeId == COORDINATOR_ID) {
+         startThread("cluster-termination", this::detectTermination);
+      }
+   }
+
+   /**
+    * Queues a link to be sent to the node which owns it.
+    *
+    * @param url String representing an absolute URL owned by another node.
+    */
+   public void forward(final String url) {
+      forwardedCount.incrementAndGet();
+      peers[partitionOf(url, peers.length)].outbox.add(url);
+   }
+
+   /**
+    * Sends the stats of this node to the coordinator or, on the coordinator, waits for the stats of every node.
+    *
+    * @param localStats the stats of this node.
+    * @param timeoutMillis how long the coordinator waits for the stats of the other nodes.
+    * @return on the coordinator, the stats of all nodes which sent them in time added up, otherwise null.
+    */
+   public CrawlerStats exchangeStats(final CrawlerStats localStats, final long timeoutMillis) {
+      if (nodeId != COORDINATOR_ID) {
+         try {
+            peers[COORDINATOR_ID].send(out -> {
+               out.writeByte(STATS);
+               localStats.writeTo(out);
+            });
+         }
+         catch (final IOException e) {
+            LOG.warn("Unable to send stats to the coordinator", e);
+         }
+         return null;
+      }
+      try {
+         if (!peerStatsLatch.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            LOG.warn("Only " + peerStats.size() + " of " + (peers.length - 1) + " nodes sent their stats in time");
+         }
+      }
+      catch (final InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      final CrawlerStats clusterStats = new CrawlerStats();
+      clusterStats.add(localStats);
+      for (final CrawlerStats stats : peerStats) {
+         clusterStats.add(stats);
+      }
+      return clusterStats;
+   }
+
+   /**
+    * Closes all connections and stops the threads of this node.
+    */
+   @Override
+   public void close() {
+      closed = true;
+      closeQuietly(serverSocket);
+      for (final Peer peer : peers) {
+         if (peer != null) {
+            closeQuietly(peer.socket);
+         }
+      }
+      for (final Socket socket : acceptedSockets) {
+         closeQuietly(socket);
+      }
+      for (final Thread thread : threads) {
+         thread.interrupt();
+      }
+   }
+
+   private void startThread(final String name, final Runnable runnable) {
+      final Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      threads.add(thread);
+      thread.start();
+   }
+
+   private Socket connect(final InetSocketAddress address, final long deadlineNanos) throws IOException {
+      while (true) {
+         final Socket socket = new Socket();
+         try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()), 1000);
+            return socket;
+         }
+         catch (final IOException e) {
+            closeQuietly(socket);
+            if (System.nanoTime() - deadlineNanos > 0) {
+               throw new IOException("Unable to connect to cluster node at " + address, e);
+            }
+            try {
+               Thread.sleep(100);
+            }
+            catch (final InterruptedException interrupted) {
+               Thread.currentThread().interrupt();
+               throw new IOException("Interrupted while connecting to " + address, e);
+            }
+         }
+      }
+   }
+
+   /**
+    * Accepts the connections of the peers, reading each on its own thread.
+    */
+   private void acceptPeers() {
+      while (!closed) {
+         try {
+            final Socket socket = serverSocket.accept();
+            socket.setTcpNoDelay(true);
+            acceptedSockets.add(socket);
+            startThread("cluster-receiver-" + nodeId + "-" + acceptedSockets.size(), () -> receive(socket));
+         }
+         catch (final IOException e) {
+            if (!closed) {
+               LOG.error("Node " + nodeId + " stopped accepting peers", e);
+            }
+            return;
+         }
+      }
+   }
+
+   /**
+    * Reads the messages sent by a peer: forwarded links, status requests, the order to stop and stats.
+    */
+   private void receive(final Socket socket) {
+      try (final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+          final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+         while (true) {
+            final byte type = in.readByte();
+            if (type == LINKS) {
+               final int linkCount = in.readInt();
+               final List<String> links = new ArrayList<>(linkCount);
+               for (int i = 0; i < linkCount; i++) {
+                  links.add(readString(in));
+               }
+               listener.linksReceived(links);
+               receivedCount.addAndGet(linkCount);
+            }
+            else if (type == STATUS_REQUEST) {
+               final int waveId = in.readInt();
+               final boolean idle = listener.isIdle();
+               out.writeByte(STATUS);
+               out.writeInt(waveId);
+               out.writeBoolean(idle);
+               out.writeLong(forwardedCount.get());
+               out.writeLong(receivedCount.get());
+               out.flush();
+            }
+            else if (type == TERMINATE) {
+               terminate();
+            }
+            else if (type == STATS) {
+               peerStats.add(CrawlerStats.readFrom(in));
+               peerStatsLatch.countDown();
+            }
+            else {
+               throw new IOException("Unknown message type " + type);
+            }
+         }
+      }
+      catch (final EOFException | SocketException e) {
+         peerLost(e);
+      }
+      catch (final IOException e) {
+         LOG.error("Node " + nodeId + " failed reading from a peer", e);
+         peerLost(e);
+      }
+   }
+
+   /**
+    * This method is run by the coordinator.  It runs waves of status requests until the crawl is finished.
+    */
+   private void detectTermination() {
+      long[] previousCounts = null;
+      int waveId = 0;
+      try {
+         while (!terminated && !closed) {
+            Thread.sleep(WAVE_INTERVAL_MILLIS);
+            final Wave wave = runWave(++waveId);
+            if (wave == null) {
+               previousCounts = null;
+               continue;
+            }
+            boolean allIdle = true;
+            long forwarded = 0;
+            long received = 0;
+            for (int node = 0; node < peers.length; node++) {
+               allIdle &= wave.idle[node];
+               forwarded += wave.counts[node * 2];
+               received += wave.counts[node * 2 + 1];
+            }
+            if (allIdle && forwarded == received && Arrays.equals(wave.counts, previousCounts)) {
+               LOG.info("All " + peers.length + " nodes are idle, " + forwarded + " links were forwarded");
+               for (final Peer peer : peers) {
+                  if (peer != null) {
+                     peer.send(out -> out.writeByte(TERMINATE));
+                  }
+               }
+               terminate();
+               return;
+            }
+            previousCounts = allIdle ? wave.counts : null;
+         }
+      }
+      catch (final InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      catch (final IOException e) {
+         LOG.error("Coordinator failed to reach a peer, stopping", e);
+         terminate();
+      }
+   }
+
+   /**
+    * Asks every node for its status.
+    *
+    * @return the statuses, or null if a node did not reply in time.
+    */
+   private Wave runWave(final int waveId) throws IOException, InterruptedException {
+      final Wave wave = new Wave(waveId, peers.length);
+      currentWave = wave;
+      wave.setStatus(nodeId, listener.isIdle(), forwardedCount.get(), receivedCount.get());
+      for (final Peer peer : peers) {
+         if (peer != null) {
+            peer.send(out -> {
+               out.writeByte(STATUS_REQUEST);
+               out.writeInt(waveId);
+            });
+         }
+      }
+      if (!wave.replies.await(WAVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+         LOG.warn("Not every node answered status request " + waveId + " in time");
+         return null;
+      }
+      synchronized (wave) {
+         return wave;
+      }
+   }
+
+   private void terminate() {
+      if (!terminated) {
+         terminated = true;
+         listener.terminated();
+      }
+   }
+
+   private void peerLost(final Exception e) {
+      if (!terminated && !closed) {
+         LOG.error("Node " + nodeId + " lost a peer before the crawl finished, stopping: " + e);
+         terminate();
+      }
+   }
+
+   private static void writeString(final DataOutputStream out, final String s) throws IOException {
+      final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+   }
+
+   private static String readString(final DataInputStream in) throws IOException {
+      final byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+
+   private static void closeQuietly(final Closeable closeable) {
+      try {
+         closeable.close();
+      }
+      catch (final IOException e) {
+         LOG.trace("Unable to close " + closeable, e);
+      }
+   }
+
+   /**
+    * Writes one message to a peer.
+    */
+   private interface Message {
+
+      void writeTo(DataOutputStream out) throws IOException;
+   }
+
+   /**
+    * This class is the connection from this node to one peer.  Messages are written by the sender thread, the
+    * coordinator and {@link #exchangeStats(CrawlerStats, long)}, one message at a time.  The peer replies to status
+    * requests on the same connection.
+    */
+   private class Peer {
+
+      private final int peerId;
+
+      private final Socket socket;
+
+      private final DataOutputStream out;
+
+      private final BlockingQueue<String> outbox = new LinkedBlockingQueue<>();
+
+      private Peer(final int peerId, final Socket socket) throws IOException {
+         this.peerId = peerId;
+         this.socket = socket;
+         this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+      }
+
+      private void send(final Message message) throws IOException {
+         synchronized (out) {
+            message.writeTo(out);
+            out.flush();
+         }
+      }
+
+      /**
+       * Sends the links in the outbox in batches of up to {@link #BATCH_SIZE}.  Links queued while a batch is sent
+       * go in the next batch, so batches grow with the rate links are found.
+       */
+      private void sendLinks() {
+         final List<String> batch = new ArrayList<>(BATCH_SIZE);
+         try {
+            while (!closed) {
+               batch.add(outbox.take());
+               outbox.drainTo(batch, BATCH_SIZE - 1);
+               send(message -> {
+                  message.writeByte(LINKS);
+                  message.writeInt(batch.size());
+                  for (final String link : batch) {
+                     writeString(message, link);
+                  }
+               });
+               batch.clear();
+            }
+         }
+         catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         catch (final IOException e) {
+            if (!closed) {
+               LOG.error("Node " + nodeId + " failed sending links to node " + peerId, e);
+               peerLost(e);
+            }
+         }
+      }
+
+      /**
+       * Reads the replies of the peer to status requests.
+       */
+      private void readReplies() {
+         try (final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (true) {
+               final byte type = in.readByte();
+               if (type != STATUS) {
+                  throw new IOException("Unexpected reply type " + type + " from node " + peerId);
+               }
+               final int waveId = in.readInt();
+               final boolean idle = in.readBoolean();
+               final long forwarded = in.readLong();
+               final long received = in.readLong();
+               final Wave wave = currentWave;
+               if (wave != null && wave.waveId == waveId) {
+                  wave.setStatus(peerId, idle, forwarded, received);
+                  wave.replies.countDown();
+               }
+            }
+         }
+         catch (final EOFException | SocketException e) {
+            peerLost(e);
+         }
+         catch (final IOException e) {
+            LOG.error("Node " + nodeId + " failed reading replies of node " + peerId, e);
+            peerLost(e);
+         }
+      }
+   }
+}
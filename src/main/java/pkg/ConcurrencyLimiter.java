@@ -0,0 +1,217 @@
+package pkg;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class adapts the number of requests {@link Crawler} keeps in flight, in total and per host, to the latency
+ * and failures it observes, using additive increase and multiplicative decrease (AIMD).  Each limit collects the
+ * fetches completed in a window of at least {@link #MIN_WINDOW_SIZE} samples, or as many as the limit.  At the end of
+ * a window whose p99 latency stays within {@link #LATENCY_TOLERANCE} times the usual p99 the limit is raised by one,
+ * provided at least half of it was used, so the limit does not grow while there is little to crawl; if the p99
+ * latency is higher the limit is cut to {@link #BACKOFF_RATIO} of it.  The limit is also cut at once when more than
+ * {@link #MAX_FAILURE_RATE} of a window are transient failures (see {@link RetryPolicy#isTransientFailure(Throwable)})
+ * such as timeouts, 429 and 5xx responses.  The usual p99 latency drops at once to a lower p99 latency of a window
+ * and only slowly rises to a higher one, so a limit which creeps up until the latency grows is still lowered, while
+ * the limits follow lasting changes in latency.
+ * The global limit is enforced by {@link Crawler} and the host limits by a {@link HostScheduler}, both capped by
+ * their own maximums.  All methods may be called from several crawler workers at the same time.
+ */
+public class ConcurrencyLimiter {
+
+   /**
+    * Minimum number of samples after which a limit is raised or lowered for latency.
+    */
+   static final int MIN_WINDOW_SIZE = 10;
+
+   /**
+    * Factor by which the p99 latency of a window may exceed the usual p99 latency before a limit is lowered.
+    */
+   static final double LATENCY_TOLERANCE = 1.5;
+
+   /**
+    * Share of the samples of a window which may be failures before a limit is lowered.
+    */
+   static final double MAX_FAILURE_RATE = 0.1;
+
+   /**
+    * Share of a limit which is kept when it is lowered.
+    */
+   static final double BACKOFF_RATIO = 0.7;
+
+   /**
+    * Weight of a higher p99 latency of the last window in the usual p99 latency.
+    */
+   private static final double LATENCY_SMOOTHING = 0.05;
+
+   private final int initialHostLimit;
+
+   private final int maxHostLimit;
+
+   private final Limit globalLimit;
+
+   private final ConcurrentMap<String, Limit> hostLimits = new ConcurrentHashMap<>();
+
+   private final LongAdder decreaseCount = new LongAdder();
+
+   /**
+    * @param initialLimit number of requests in flight in total at the start of the crawl.
+    * @param maxLimit maximum number of requests in flight in total.
+    * @param initialHostLimit number of requests in flight per host at the start of the crawl.
+    * @param maxHostLimit maximum number of requests in flight per host.
+    */
+   public ConcurrencyLimiter(final int initialLimit, final int maxLimit, final int initialHostLimit,
+       final int maxHostLimit) {
+      if (initialLimit < 1 || initialLimit > maxLimit || initialHostLimit < 1 || initialHostLimit > maxHostLimit) {
+         throw new IllegalArgumentException("Initial limits must be from 1 to their maximum");
+      }
+      this.initialHostLimit = initialHostLimit;
+      this.maxHostLimit = maxHostLimit;
+      this.globalLimit = new Limit(initialLimit, maxLimit);
+   }
+
+   /**
+    * @return the number of requests which may be in flight in total.
+    */
+   public int getLimit() {
+      return globalLimit.get();
+   }
+
+   /**
+    * @param host the host of a URL, see {@link HostScheduler#getHost(String)}.
+    * @return the number of requests to the host which may be in flight.
+    */
+   public int getHostLimit(final String host) {
+      final Limit hostLimit = hostLimits.get(host);
+      return hostLimit == null ? initialHostLimit : hostLimit.get();
+   }
+
+   /**
+    * @return the number of times a limit was lowered.
+    */
+   public long getDecreaseCount() {
+      return decreaseCount.sum();
+   }
+
+   /**
+    * Records that a fetch starts.  Every call must be followed by a call of
+    * {@link #record(String, long, boolean)} once the fetch is done.
+    *
+    * @param host the host of the URL to fetch.
+    */
+   public void start(final String host) {
+      globalLimit.start();
+      getOrCreateHostLimit(host).start();
+   }
+
+   /**
+    * Records a completed fetch.
+    *
+    * @param host the host of the fetched URL.
+    * @param latencyNanos time the fetch took.
+    * @param failed true if the fetch failed transiently, e.g. timed out or answered 5xx.
+    */
+   public void record(final String host, final long latencyNanos, final boolean failed) {
+      globalLimit.record(latencyNanos, failed);
+      getOrCreateHostLimit(host).record(latencyNanos, failed);
+   }
+
+   @Override
+   public String toString() {
+      return "ConcurrencyLimiter[limit=" + getLimit() + ", hosts=" + hostLimits.size() + ", decreases="
+          + decreaseCount + "]";
+   }
+
+   private Limit getOrCreateHostLimit(final String host) {
+      final Limit hostLimit = hostLimits.get(host);
+      return hostLimit != null ? hostLimit
+          : hostLimits.computeIfAbsent(host, k -> new Limit(initialHostLimit, maxHostLimit));
+   }
+
+   /**
+    * This class holds one limit and the samples of its current window.  It is guarded by its own monitor.
+    */
+   private final class Limit {
+
+      private final int maxLimit;
+
+      private double limit;
+
+      private long[] latencies = new long[MIN_WINDOW_SIZE];
+
+      private int sampleCount;
+
+      private int failureCount;
+
+      private int inFlightCount;
+
+      /**
+       * Most fetches in flight at the same time in the current window.
+       */
+      private int maxInFlightCount;
+
+      /**
+       * The usual p99 latency of the windows, 0 before the first window.
+       */
+      private double usualLatencyNanos;
+
+      private Limit(final int initialLimit, final int maxLimit) {
+         this.limit = initialLimit;
+         this.maxLimit = maxLimit;
+      }
+
+      private synchronized int get() {
+         return (int) limit;
+      }
+
+      private synchronized void start() {
+         inFlightCount++;
+         maxInFlightCount = Math.max(maxInFlightCount, inFlightCount);
+      }
+
+      private synchronized void record(final long latencyNanos, final boolean failed) {
+         inFlightCount = Math.max(0, inFlightCount - 1);
+         final int windowSize = Math.max(MIN_WINDOW_SIZE, (int) limit);
+         if (failed && ++failureCount > windowSize * MAX_FAILURE_RATE) {
+            decrease();
+            return;
+         }
+         if (sampleCount == latencies.length) {
+            latencies = Arrays.copyOf(latencies, Math.max(windowSize, sampleCount * 2));
+         }
+         latencies[sampleCount++] = latencyNanos;
+         if (sampleCount < windowSize) {
+            return;
+         }
+         Arrays.sort(latencies, 0, sampleCount);
+         final long p99LatencyNanos = latencies[(int) Math.ceil(sampleCount * 0.99) - 1];
+         if (usualLatencyNanos > 0 && p99LatencyNanos > usualLatencyNanos * LATENCY_TOLERANCE) {
+            decrease();
+         }
+         else {
+            if (2 * maxInFlightCount >= limit) {
+               limit = Math.min(maxLimit, limit + 1);
+            }
+            startWindow();
+         }
+         usualLatencyNanos = usualLatencyNanos == 0 || p99LatencyNanos < usualLatencyNanos ? p99LatencyNanos
+             : usualLatencyNanos + LATENCY_SMOOTHING * (p99LatencyNanos - usualLatencyNanos);
+      }
+
+      private void decrease() {
+         limit = Math.max(1, Math.floor(limit * BACKOFF_RATIO));
+         decreaseCount.increment();
+         startWindow();
+      }
+
+      private void startWindow() {
+         sampleCount = 0;
+         failureCount = 0;
+         maxInFlightCount = inFlightCount;
+      }
+   }
+}
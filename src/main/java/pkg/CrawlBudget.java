@@ -0,0 +1,112 @@
+package pkg;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class holds the hard limits of a crawl: the maximum depth of a link, the maximum number of pages crawled and
+ * the maximum number of pages crawled per host.  A page counts against the budget when a worker takes it from the
+ * frontier, so a crawl with a budget of n pages requests at most n pages, not counting retries.  Once the page
+ * budget is used up {@link Crawler} drops the rest of its frontier and finishes.
+ * The depth of links is only known when the frontier is a {@link LinkFrontier}, such as a {@link PriorityFrontier}
+ * or a {@link HostScheduler}.
+ * This class is not thread safe; {@link Crawler} only uses it while holding its frontier lock.
+ */
+public class CrawlBudget {
+
+   /**
+    * Passed for a limit which should not be applied.
+    */
+   public static final int UNLIMITED = -1;
+
+   private final int maxDepth;
+
+   private final long maxPages;
+
+   private final int maxPagesPerHost;
+
+   private final Map<String, Integer> hostPageCounts = new HashMap<>();
+
+   private long pageCount;
+
+   /**
+    * @param maxDepth maximum number of links followed from a seed, 0 to only crawl the seeds, or UNLIMITED.
+    * @param maxPages maximum number of pages crawled, or UNLIMITED.
+    * @param maxPagesPerHost maximum number of pages crawled per host, or UNLIMITED.
+    */
+   public CrawlBudget(final int maxDepth, final long maxPages, final int maxPagesPerHost) {
+      if (maxDepth < UNLIMITED || maxPages < UNLIMITED || maxPagesPerHost < UNLIMITED) {
+         throw new IllegalArgumentException("Limits must not be negative unless UNLIMITED");
+      }
+      this.maxDepth = maxDepth;
+      this.maxPages = maxPages;
+      this.maxPagesPerHost = maxPagesPerHost;
+   }
+
+   public int getMaxDepth() {
+      return maxDepth;
+   }
+
+   public long getMaxPages() {
+      return maxPages;
+   }
+
+   public int getMaxPagesPerHost() {
+      return maxPagesPerHost;
+   }
+
+   /**
+    * @return the number of pages taken so far.
+    */
+   public long getPageCount() {
+      return pageCount;
+   }
+
+   /**
+    * @param link String representing an absolute URL.
+    * @param depth number of links followed from a seed to reach the URL.
+    * @return true if the link may still be queued: the budget is not used up, the link is not too deep and its host
+    *         has pages left.
+    */
+   public boolean allows(final String link, final int depth) {
+      return !isExhausted() && (maxDepth == UNLIMITED || depth <= maxDepth)
+          && hasPagesLeft(HostScheduler.getHost(link));
+   }
+
+   /**
+    * Counts a page which is about to be crawled against the budget.
+    *
+    * @param link String representing the URL of the page.
+    * @return false if the budget or the budget of its host is used up, in which case the page must not be crawled.
+    */
+   public boolean tryTakePage(final String link) {
+      final String host = HostScheduler.getHost(link);
+      if (isExhausted() || !hasPagesLeft(host)) {
+         return false;
+      }
+      pageCount++;
+      if (maxPagesPerHost != UNLIMITED) {
+         hostPageCounts.merge(host, 1, Integer::sum);
+      }
+      return true;
+   }
+
+   /**
+    * @return true if the maximum number of pages has been taken.
+    */
+   public boolean isExhausted() {
+      return maxPages != UNLIMITED && pageCount >= maxPages;
+   }
+
+   @Override
+   public String toString() {
+      return "CrawlBudget[maxDepth=" + maxDepth + ", maxPages=" + maxPages + ", maxPagesPerHost=" + maxPagesPerHost
+          + ", pages=" + pageCount + "]";
+   }
+
+   private boolean hasPagesLeft(final String host) {
+      return maxPagesPerHost == UNLIMITED || hostPageCounts.getOrDefault(host, 0) < maxPagesPerHost;
+   }
+}
@@ -0,0 +1,415 @@
+package pkg;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class records the progress of a crawl in an append-only binary file so that a crawl which dies can be resumed
+ * with {@link Crawler#Crawler(String, PageFetcher, CrawlCheckpoint)}.
+ * Instead of writing snapshots, every link added to linksQueue and every link whose crawl finished is appended as a
+ * small record: the link itself when it is queued, and only its 64 bit {@link UrlFingerprint} with the result when
+ * its crawl finished.  Records are handed to a background thread which writes them in batches and forces them to
+ * disk every flush interval, so the crawl workers do not wait for the disk unless queueCapacity records are already
+ * waiting, in which case they block until the writer catches up rather than filling the heap.
+ * On resume, links which were queued but never finished (including the ones in flight when the crawl died) are
+ * queued again, finished links are visited and the request counts are rebuilt from the results.  Visited links are
+ * returned as fingerprints, since the URLs of finished links are not kept.  A record cut off by a crash is ignored.
+ * The file is then compacted: it is rewritten with only the links still queued and one result per finished link, so
+ * a crawl resumed many times does not replay every record ever written.
+ */
+public class CrawlCheckpoint implements Closeable {
+
+   private static final Logger LOG = LoggerFactory.getLogger(CrawlCheckpoint.class);
+
+   public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 5000;
+
+   public static final int DEFAULT_QUEUE_CAPACITY = 65536;
+
+   private static final int MAGIC = 0x43524b50;
+
+   private static final byte VERSION = 1;
+
+   private static final byte LINK_QUEUED = 'Q';
+
+   private static final byte LINK_SUCCEEDED = 'S';
+
+   private static final byte LINK_FAILED = 'F';
+
+   private static final int HEADER_BYTES = 5;
+
+   /**
+    * Longest link accepted when reading a checkpoint, so a corrupt length cannot exhaust the heap.
+    */
+   private static final int MAX_LINK_BYTES = 64 * 1024;
+
+   private static final Record END_OF_RECORDS = new Record(LINK_QUEUED, null);
+
+   private final Path file;
+
+   private final long flushIntervalMillis;
+
+   private final BlockingQueue<Record> records;
+
+   private Thread writerThread;
+
+   private volatile boolean failed;
+
+   /**
+    * Length of the complete records read by {@link #load()}, or -1 if the file was not loaded.
+    */
+   private long loadedBytes = -1;
+
+   /**
+    * This class holds the crawl state read back from a checkpoint file.
+    */
+   public static class State {
+
+      private final List<String> queuedLinks = new ArrayList<>();
+
+      private final FingerprintSet visitedLinks = new FingerprintSet();
+
+      private long successfulRequestCount;
+
+      private long failedRequestCount;
+
+      public List<String> getQueuedLinks() {
+         return queuedLinks;
+      }
+
+      /**
+       * @return the fingerprints of the links whose crawl finished.
+       */
+      public FingerprintSet getVisitedLinks() {
+         return visitedLinks;
+      }
+
+      public long getSuccessfulRequestCount() {
+         return successfulRequestCount;
+      }
+
+      public long getFailedRequestCount() {
+         return failedRequestCount;
+      }
+   }
+
+   /**
+    * This class is a single record waiting to be written.
+    */
+   private static class Record {
+
+      private final byte type;
+
+      private final String link;
+
+      private Record(final byte type, final String link) {
+         this.type = type;
+         this.link = link;
+      }
+   }
+
+   public CrawlCheckpoint(final Path file) {
+      this(file, DEFAULT_FLUSH_INTERVAL_MILLIS);
+   }
+
+   /**
+    * @param file the checkpoint file.
+    * @param flushIntervalMillis how often written records are forced to disk.
+    */
+   public CrawlCheckpoint(final Path file, final long flushIntervalMillis) {
+      this(file, flushIntervalMillis, DEFAULT_QUEUE_CAPACITY);
+   }
+
+   /**
+    * @param file the checkpoint file.
+    * @param flushIntervalMillis how often written records are forced to disk.
+    * @param queueCapacity maximum number of records waiting to be written.
+    */
+   public CrawlCheckpoint(final Path file, final long flushIntervalMillis, final int queueCapacity) {
+      this.file = file;
+      this.flushIntervalMillis = flushIntervalMillis;
+      this.records = new LinkedBlockingQueue<>(queueCapacity);
+   }
+
+   public Path getFile() {
+      return file;
+   }
+
+   /**
+    * @return true if the checkpoint file exists and contains state which can be resumed.
+    */
+   public boolean exists() {
+      try {
+         return Files.size(file) > HEADER_BYTES;
+      }
+      catch (final IOException e) {
+         return false;
+      }
+   }
+
+   /**
+    * Deletes the checkpoint file so the next crawl starts from the seed.
+    *
+    * @throws IOException if the file exists and cannot be deleted.
+    */
+   public void delete() throws IOException {
+      Files.deleteIfExists(file);
+   }
+
+   /**
+    * This method reads the crawl state from the checkpoint file and compacts it.  The length of the complete records
+    * is kept, so if compacting fails {@link #start()} still appends after the last complete record rather than after
+    * a record cut off by a crash.
+    *
+    * @return the crawl state.
+    * @throws IOException if the file cannot be read, is not a checkpoint file or cannot be compacted.
+    */
+   public State load() throws IOException {
+      final List<String> queuedInOrder = new ArrayList<>();
+      final FingerprintSet succeeded = new FingerprintSet();
+      final State state = new State();
+      final FingerprintSet finished = state.visitedLinks;
+      long offset = HEADER_BYTES;
+      try (final InputStream fileIn = Files.newInputStream(file);
+          final DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn, 64 * 1024))) {
+         readHeader(in);
+         while (true) {
+            final int type = in.read();
+            if (type == -1) {
+               break;
+            }
+            if (type == LINK_QUEUED) {
+               final int length = in.readInt();
+               if (length < 0 || length > MAX_LINK_BYTES) {
+                  throw new IOException("Invalid link length " + length + " at offset " + offset + " in checkpoint "
+                      + file);
+               }
+               final byte[] bytes = new byte[length];
+               in.readFully(bytes);
+               queuedInOrder.add(new String(bytes, StandardCharsets.UTF_8));
+               offset += 1 + 4 + length;
+            }
+            else if (type == LINK_SUCCEEDED || type == LINK_FAILED) {
+               final long fingerprint = in.readLong();
+               if (finished.addFingerprint(fingerprint)) {
+                  if (type == LINK_SUCCEEDED) {
+                     succeeded.addFingerprint(fingerprint);
+                     state.successfulRequestCount++;
+                  }
+                  else {
+                     state.failedRequestCount++;
+                  }
+               }
+               offset += 1 + 8;
+            }
+            else {
+               throw new IOException("Unknown record type " + type + " in checkpoint " + file);
+            }
+         }
+      }
+      catch (final EOFException e) {
+         LOG.warn("Ignoring incomplete last record of checkpoint " + file + " at offset " + offset);
+      }
+      loadedBytes = offset;
+      for (final String link : queuedInOrder) {
+         if (!finished.containsFingerprint(UrlFingerprint.fingerprint(link))) {
+            state.queuedLinks.add(link);
+         }
+      }
+      compact(state, succeeded);
+      return state;
+   }
+
+   /**
+    * This method rewrites the checkpoint file with a queued record for every link still queued and a result record
+    * for every finished link, dropping the queued records of finished links, duplicate results and a record cut off
+    * by a crash.  The new file replaces the old one atomically, so a crash while compacting leaves the old one.
+    */
+   private void compact(final State state, final FingerprintSet succeeded) throws IOException {
+      final Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+      try (final OutputStream fileOut = Files.newOutputStream(tempFile);
+          final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024))) {
+         out.writeInt(MAGIC);
+         out.writeByte(VERSION);
+         for (final String link : state.queuedLinks) {
+            write(out, new Record(LINK_QUEUED, link));
+         }
+         final IOException[] writeException = new IOException[1];
+         state.visitedLinks.forEachFingerprint(fingerprint -> {
+            try {
+               out.writeByte(succeeded.containsFingerprint(fingerprint) ? LINK_SUCCEEDED : LINK_FAILED);
+               out.writeLong(fingerprint);
+            }
+            catch (final IOException e) {
+               writeException[0] = e;
+            }
+         });
+         if (writeException[0] != null) {
+            throw writeException[0];
+         }
+      }
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      loadedBytes = Files.size(file);
+   }
+
+   /**
+    * This method opens the checkpoint file for appending and starts the background writer.  If the file was
+    * loaded, an incomplete last record is cut off first.
+    *
+    * @throws IOException if the file cannot be opened.
+    */
+   public void start() throws IOException {
+      final boolean newFile = !exists();
+      final FileOutputStream fileOut = new FileOutputStream(file.toFile(), !newFile);
+      if (!newFile && loadedBytes >= HEADER_BYTES && fileOut.getChannel().size() > loadedBytes) {
+         fileOut.getChannel().truncate(loadedBytes);
+      }
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+      if (newFile) {
+         out.writeInt(MAGIC);
+         out.writeByte(VERSION);
+      }
+      writerThread = new Thread(() -> writeRecords(fileOut, out), "crawl-checkpoint-writer");
+      writerThread.setDaemon(true);
+      writerThread.start();
+   }
+
+   /**
+    * Records that a link was added to linksQueue.
+    *
+    * @param link String representing the queued URL.
+    */
+   public void linkQueued(final String link) {
+      append(new Record(LINK_QUEUED, link));
+   }
+
+   /**
+    * Records that the crawl of a link finished.
+    *
+    * @param link String representing the crawled URL.
+    * @param successful true if the link was crawled successfully.
+    */
+   public void linkCrawled(final String link, final boolean successful) {
+      append(new Record(successful ? LINK_SUCCEEDED : LINK_FAILED, link));
+   }
+
+   /**
+    * Writes all pending records, forces them to disk and stops the background writer.
+    */
+   @Override
+   public void close() {
+      if (writerThread == null) {
+         return;
+      }
+      try {
+         // a writer which failed no longer takes records
+         if (!failed) {
+            records.put(END_OF_RECORDS);
+         }
+         writerThread.join();
+      }
+      catch (final InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      writerThread = null;
+   }
+
+   /**
+    * This method hands a record to the background writer, waiting while queueCapacity records are already waiting.
+    */
+   private void append(final Record record) {
+      if (writerThread != null && !failed) {
+         try {
+            records.put(record);
+         }
+         catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while waiting for the crawl checkpoint writer, dropping a record of " + record.link);
+         }
+      }
+   }
+
+   private void readHeader(final DataInputStream in) throws IOException {
+      if (in.readInt() != MAGIC) {
+         throw new IOException("Not a crawl checkpoint file: " + file);
+      }
+      final byte version = in.readByte();
+      if (version != VERSION) {
+         throw new IOException("Unsupported crawl checkpoint version " + version + ": " + file);
+      }
+   }
+
+   /**
+    * This method is run by the background writer until {@link #close()} is called.
+    */
+   private void writeRecords(final FileOutputStream fileOut, final DataOutputStream out) {
+      final List<Record> batch = new ArrayList<>();
+      long lastFlushMillis = System.currentTimeMillis();
+      boolean done = false;
+      try (final DataOutputStream closeableOut = out) {
+         while (!done) {
+            final Record first = records.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+            if (first != null) {
+               batch.add(first);
+               records.drainTo(batch);
+            }
+            for (final Record record : batch) {
+               if (record == END_OF_RECORDS) {
+                  done = true;
+                  break;
+               }
+               write(closeableOut, record);
+            }
+            batch.clear();
+            if (done || System.currentTimeMillis() - lastFlushMillis >= flushIntervalMillis) {
+               closeableOut.flush();
+               fileOut.getChannel().force(false);
+               lastFlushMillis = System.currentTimeMillis();
+            }
+         }
+      }
+      catch (final IOException e) {
+         failed = true;
+         records.clear();
+         LOG.error("Unable to write crawl checkpoint " + file + ", checkpointing is disabled", e);
+      }
+      catch (final InterruptedException e) {
+         failed = true;
+         records.clear();
+         LOG.warn("Crawl checkpoint writer was interrupted, checkpointing is disabled", e);
+      }
+   }
+
+   private static void write(final DataOutputStream out, final Record record) throws IOException {
+      out.writeByte(record.type);
+      if (record.type == LINK_QUEUED) {
+         final byte[] bytes = record.link.getBytes(StandardCharsets.UTF_8);
+         out.writeInt(bytes.length);
+         out.write(bytes);
+      }
+      else {
+         out.writeLong(UrlFingerprint.fingerprint(record.link));
+      }
+   }
+}
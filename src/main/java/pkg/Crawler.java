@@ -1,96 +1,1085 @@
 package pkg;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
+import org.jsoup.UnsupportedMimeTypeException;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Brian Chipman
  * This class implements the actual web crawler.
+ * The thread calling {@link #crawl()} takes links from linksQueue and hands them to a pool of worker threads, see
+ * {@link #setWorkerCount(int)}.  A worker starts the download of a page and returns; once the future of the
+ * {@link PageFetcher} completes a worker parses the page and queues its links.  No thread waits for the network, so
+ * a few workers keep as many requests in flight as {@link #setMaxInFlight(int)} allows.  linksQueue and
+ * visitedLinks are only accessed while holding frontierLock, so checking whether a link has been seen and adding it
+ * to the queue is a single atomic step.
+ * Pages are downloaded through a {@link PageFetcher} which can be replaced, e.g. in unit tests.
+ * Links which fail transiently can be retried later under a {@link RetryPolicy}, and hosts which keep failing can
+ * be skipped for a while with a {@link HostCircuitBreaker}.  Links waiting to be retried are held in pendingRetries
+ * until they are due and then put back in linksQueue.
+ * With a {@link PriorityFrontier} as linksQueue, or a {@link HostScheduler} with a {@link LinkScorer}, the most
+ * valuable links are crawled first, and a {@link CrawlBudget} limits the depth and the number of pages of the crawl.
+ * A crawl can be split over several processes with a {@link ClusterNode}, each crawling the hosts it owns and
+ * forwarding the links it finds for other hosts to their owners.
  */
-public class Crawler {
+public class Crawler implements Closeable {
 
    private static final Logger LOG = LoggerFactory.getLogger(Crawler.class);
 
-   private static final JsonParser JSON_PARSER = new JsonParser();
+   /**
+    * Seeds are read when linksQueue holds fewer links than this.
+    */
+   private static final int SEED_FEED_THRESHOLD = 1000;
+
+   private static final int SEED_BATCH_SIZE = 1000;
+
+   private static final long CLUSTER_STATS_TIMEOUT_MILLIS = 30000;
 
    private String startingPointUrl;
 
+   private final PageFetcher pageFetcher;
+
+   private final CrawlCheckpoint checkpoint;
+
    protected Queue<String> linksQueue = new UniqueQueue<>();
 
    protected Set<String> visitedLinks = new HashSet<>();
 
    protected final CrawlerStats crawlerStats = new CrawlerStats();
 
-   public Crawler(final String startingPointUrl) {
-      this.startingPointUrl = startingPointUrl;
-      getStartingLinks();
+   /**
+    * Guards linksQueue, visitedLinks, pendingRetries, inFlightCount, crawlBudget and crawlerTrapDetector.  The crawl
+    * thread waits on this object when the queue is empty but links are still being crawled which may add new links,
+    * links are waiting to be retried or no more links may be in flight.
+    */
+   private final Object frontierLock = new Object();
+
+   private int inFlightCount;
+
+   /**
+    * Seeds still to be read, or null once all have been read.  Guarded by frontierLock.
+    */
+   private SeedReader seedReader;
+
+   /**
+    * True while the crawl thread is reading seeds in {@link #feedSeeds()}.  Guarded by frontierLock.
+    */
+   private boolean seedFeeding;
+
+   private final Queue<PendingRetry> pendingRetries = new PriorityQueue<>();
+
+   /**
+    * Number of retries so far of each link which failed and has not yet been crawled for good.
+    */
+   private final ConcurrentMap<String, Integer> retryCounts = new ConcurrentHashMap<>();
+
+   private int workerCount = 1;
+
+   /**
+    * Maximum number of links crawled at the same time, or 0 for the worker count.
+    */
+   private int maxInFlight;
+
+   /**
+    * Runs the start of each crawl and the processing of each response while {@link #crawl()} runs.
+    */
+   private ExecutorService workerExecutor;
+
+   private HostScheduler hostScheduler;
+
+   private LinkExtractionMode linkExtractionMode = LinkExtractionMode.JSOUP;
+
+   private UrlCanonicalizer urlCanonicalizer = new UrlCanonicalizer();
+
+   private long statsReportIntervalMillis;
+
+   private ValidatorCache validatorCache;
+
+   private BodyStore bodyStore;
+
+   private boolean bodyStoreFirst;
+
+   private HostCircuitBreaker circuitBreaker;
+
+   private RetryPolicy retryPolicy;
+
+   private PageRecordWriter pageRecordWriter;
+
+   private LinkGraph linkGraph;
+
+   private ClusterNode clusterNode;
+
+   /**
+    * Links already forwarded to other nodes, so each is sent once.  Guarded by frontierLock.
+    */
+   private Set<String> forwardedLinks;
+
+   /**
+    * Links skipped by the {@link FetchPolicy} or rejected by the {@link CrawlerTrapDetector}, so each is checked and
+    * counted once however many pages link to it.  Guarded by frontierLock.
+    */
+   private final Set<String> rejectedLinks = new FingerprintSet();
+
+   private CrawlerStats clusterStats;
+
+   private CrawlBudget crawlBudget;
+
+   private SimHashStore simHashStore;
+
+   private CrawlerTrapDetector crawlerTrapDetector;
+
+   private ConcurrencyLimiter concurrencyLimiter;
+
+   private DnsCache dnsCache;
+
+   private FetchPolicy fetchPolicy;
+
+   /**
+    * Depth of each link being crawled or waiting for a retry, only kept when linksQueue is a {@link LinkFrontier}.
+    */
+   private final ConcurrentMap<String, Integer> linkDepths = new ConcurrentHashMap<>();
+
+   /**
+    * The outcome of crawling a link once.
+    */
+   private enum CrawlOutcome {
+      SUCCEEDED, FAILED, RETRYING
+   }
+
+   public Crawler(final String startingPointUrl) {
+      this(startingPointUrl, new HttpPageFetcher());
+   }
+
+   public Crawler(final String startingPointUrl, final PageFetcher pageFetcher) {
+      this(startingPointUrl, pageFetcher, null);
+   }
+
+   /**
+    * Creates a crawler which records its progress in a {@link CrawlCheckpoint}.  If the checkpoint file already
+    * holds the state of an earlier crawl, that crawl is resumed and the starting point URL is not requested.
+    *
+    * @param startingPointUrl URL of the JSON document listing the starting links.
+    * @param pageFetcher used to download pages.
+    * @param checkpoint checkpoint to resume from and record to, or null to crawl without checkpoints.
+    */
+   public Crawler(final String startingPointUrl, final PageFetcher pageFetcher, final CrawlCheckpoint checkpoint) {
+      this.startingPointUrl = startingPointUrl;
+      this.pageFetcher = pageFetcher;
+      this.checkpoint = checkpoint;
+      if (checkpoint != null && checkpoint.exists()) {
+         resumeFromCheckpoint();
+      }
+      else {
+         startCheckpoint();
+         getStartingLinks();
+      }
+   }
+
+   /**
+    * Creates a crawler which reads its starting links from a {@link SeedReader} while it crawls, a batch at a time
+    * whenever linksQueue runs low, so crawling starts at once and a large seed list is never held in memory.  When
+    * an earlier crawl is resumed from the checkpoint the seeds are read again, but those already queued or visited
+    * are ignored.
+    *
+    * @param seedReader the starting links, closed by {@link #close()}.
+    * @param pageFetcher used to download pages.
+    * @param checkpoint checkpoint to resume from and record to, or null to crawl without checkpoints.
+    */
+   public Crawler(final SeedReader seedReader, final PageFetcher pageFetcher, final CrawlCheckpoint checkpoint) {
+      this.startingPointUrl = seedReader.getLocation();
+      this.pageFetcher = pageFetcher;
+      this.checkpoint = checkpoint;
+      this.seedReader = seedReader;
+      if (checkpoint != null && checkpoint.exists()) {
+         resumeFromCheckpoint();
+      }
+      else {
+         startCheckpoint();
+      }
+   }
+
+   /**
+    * This method restores linksQueue, visitedLinks and the request counts from the checkpoint and then continues
+    * recording to it.
+    */
+   private void resumeFromCheckpoint() {
+      try {
+         final CrawlCheckpoint.State state = checkpoint.load();
+         linksQueue.addAll(state.getQueuedLinks());
+         // the checkpoint only keeps the fingerprints of visited links, so they can only be copied into a
+         // FingerprintSet
+         if (visitedLinks instanceof FingerprintSet) {
+            state.getVisitedLinks().forEachFingerprint(((FingerprintSet) visitedLinks)::addFingerprint);
+         }
+         else {
+            visitedLinks = state.getVisitedLinks();
+         }
+         crawlerStats.restore(state.getSuccessfulRequestCount(), state.getFailedRequestCount());
+         LOG.info("Resumed crawl from checkpoint " + checkpoint.getFile() + " with " + linksQueue.size()
+             + " queued and " + visitedLinks.size() + " visited links");
+      }
+      catch (final IOException e) {
+         LOG.error("Exception thrown when trying to resume from checkpoint " + checkpoint.getFile(), e);
+      }
+      startCheckpoint();
+   }
+
+   private void startCheckpoint() {
+      if (checkpoint == null) {
+         return;
+      }
+      try {
+         checkpoint.start();
+      }
+      catch (final IOException e) {
+         LOG.error("Exception thrown when trying to open checkpoint " + checkpoint.getFile()
+             + ", crawling without checkpoints", e);
+      }
+   }
+
+   /**
+    * This method obtains the JSON data found at the starting point URL and adds each URL to the linksQueue object.
+    * Note that since linksQueue is a custom UniqueQueue object, only unique URLs will be added; duplicate URLs will
+    * be ignored.  The links are read from the JSON text with a {@link SeedReader} rather than building a tree of the
+    * whole document.
+    */
+   private void getStartingLinks() {
+      try (final SeedReader startingLinks = new SeedReader(new StringReader(getJsonStringFromUrl(startingPointUrl)),
+          startingPointUrl)) {
+         String link;
+         while ((link = startingLinks.readLink()) != null) {
+            addLinkToQueue(link, 0);
+         }
+      }
+      catch (IOException e) {
+         LOG.error("Exception thrown when trying to get initial links from JSON URL", e);
+      }
+   }
+
+   /**
+    * This method reads the next batch of seeds from seedReader and adds them to linksQueue.  It is called by the
+    * crawl thread, which has set seedFeeding, and reads outside frontierLock so the workers keep crawling
+    * meanwhile.  Once all seeds are read, or reading fails, seedReader is closed and cleared.
+    */
+   private void feedSeeds() {
+      final List<String> seeds = new ArrayList<>(SEED_BATCH_SIZE);
+      boolean exhausted = false;
+      try {
+         String seed;
+         while (seeds.size() < SEED_BATCH_SIZE && (seed = seedReader.readLink()) != null) {
+            seeds.add(seed);
+         }
+         exhausted = seeds.size() < SEED_BATCH_SIZE;
+      }
+      catch (final IOException e) {
+         LOG.error("Exception thrown when trying to read seeds from " + seedReader.getLocation()
+             + ", crawling the seeds read so far", e);
+         exhausted = true;
+      }
+      finally {
+         synchronized (frontierLock) {
+            for (final String seed : seeds) {
+               if (isLocalLink(seed)) {
+                  addLinkToQueue(seed, 0);
+               }
+            }
+            if (exhausted) {
+               closeSeedReader();
+               seedReader = null;
+            }
+            seedFeeding = false;
+            frontierLock.notifyAll();
+         }
+      }
+   }
+
+   private void closeSeedReader() {
+      try {
+         seedReader.close();
+      }
+      catch (final IOException e) {
+         LOG.warn("Unable to close seeds " + seedReader.getLocation(), e);
+      }
+   }
+
+   /**
+    * Sets the number of worker threads used by {@link #crawl()}, which start the requests and parse the responses.
+    * Workers never wait for a response, so more workers only help when parsing is the bottleneck.
+    *
+    * @param workerCount number of worker threads, must be at least 1.
+    */
+   public void setWorkerCount(final int workerCount) {
+      if (workerCount < 1) {
+         throw new IllegalArgumentException("workerCount must be at least 1: " + workerCount);
+      }
+      this.workerCount = workerCount;
+   }
+
+   public int getWorkerCount() {
+      return workerCount;
+   }
+
+   /**
+    * Sets the maximum number of links crawled at the same time, which is the most requests ever in flight.  A
+    * {@link ConcurrencyLimiter} keeps the requests in flight within its own limit as well.
+    *
+    * @param maxInFlight maximum number of links crawled at the same time, or 0 (the default) for the worker count.
+    */
+   public void setMaxInFlight(final int maxInFlight) {
+      if (maxInFlight < 0) {
+         throw new IllegalArgumentException("maxInFlight must not be negative: " + maxInFlight);
+      }
+      synchronized (frontierLock) {
+         this.maxInFlight = maxInFlight;
+      }
+   }
+
+   /**
+    * @return the maximum number of links crawled at the same time.
+    */
+   public int getMaxInFlight() {
+      return maxInFlight == 0 ? workerCount : maxInFlight;
+   }
+
+   /**
+    * Puts a {@link HostScheduler} in front of the crawl so links are handed to workers host by host, with a cap on
+    * the requests in flight and a minimum delay per host, and with a {@link LinkScorer} the most valuable links
+    * first.  Any links already in linksQueue are moved to the scheduler.
+    *
+    * @param hostScheduler the scheduler which replaces linksQueue.
+    */
+   public void setHostScheduler(final HostScheduler hostScheduler) {
+      synchronized (frontierLock) {
+         setLinksQueue(hostScheduler);
+         this.hostScheduler = hostScheduler;
+         hostScheduler.setConcurrencyLimiter(concurrencyLimiter);
+      }
+   }
+
+   /**
+    * Adapts the number of requests in flight to the observed latency and failures.  Only as many links are crawled
+    * at the same time as the global limit of the {@link ConcurrencyLimiter} allows, up to {@link #getMaxInFlight()}.
+    * The host limits are applied by the {@link HostScheduler}, if one is set.
+    *
+    * @param concurrencyLimiter the limiter to use, or null (the default) to keep {@link #getMaxInFlight()} links in
+    *     flight.
+    */
+   public void setConcurrencyLimiter(final ConcurrencyLimiter concurrencyLimiter) {
+      synchronized (frontierLock) {
+         this.concurrencyLimiter = concurrencyLimiter;
+         if (hostScheduler != null) {
+            hostScheduler.setConcurrencyLimiter(concurrencyLimiter);
+         }
+      }
+   }
+
+   /**
+    * Replaces linksQueue, e.g. with a {@link UniqueQueue} backed by a {@link FingerprintSet} or a
+    * {@link SpillingQueue} to keep heap use flat for large frontiers.  Any links already in linksQueue are moved to
+    * the new queue.
+    *
+    * @param linksQueue empty queue which only accepts unique elements.
+    */
+   public void setLinksQueue(final Queue<String> linksQueue) {
+      synchronized (frontierLock) {
+         linksQueue.addAll(this.linksQueue);
+         this.linksQueue = linksQueue;
+         hostScheduler = linksQueue instanceof HostScheduler ? (HostScheduler) linksQueue : null;
+      }
+   }
+
+   /**
+    * Replaces the set of visited links, e.g. with a {@link FingerprintSet} or {@link BloomFilterSet} to crawl more
+    * URLs per GB of heap.  Any links already visited are added to the new set.  After resuming from a
+    * {@link CrawlCheckpoint} the visited links are fingerprints, so the new set must be a {@link FingerprintSet}.
+    *
+    * @param visitedLinks set of visited links.
+    * @throws IllegalArgumentException if the visited links are fingerprints and the new set is no FingerprintSet.
+    */
+   public void setVisitedLinks(final Set<String> visitedLinks) {
+      synchronized (frontierLock) {
+         if (this.visitedLinks instanceof FingerprintSet && !this.visitedLinks.isEmpty()) {
+            if (!(visitedLinks instanceof FingerprintSet)) {
+               throw new IllegalArgumentException("The visited links are fingerprints and need a FingerprintSet");
+            }
+            ((FingerprintSet) this.visitedLinks).forEachFingerprint(((FingerprintSet) visitedLinks)::addFingerprint);
+         }
+         else if (!this.visitedLinks.isEmpty()) {
+            visitedLinks.addAll(this.visitedLinks);
+         }
+         this.visitedLinks = visitedLinks;
+      }
+   }
+
+   /**
+    * Selects how links are found on crawled pages.  {@link LinkExtractionMode#JSOUP} (the default) uses
+    * {@link #getLinkElementsFromUrl(String)}, {@link LinkExtractionMode#STREAMING} scans the downloaded page with
+    * {@link StreamingLinkExtractor} instead of building a Jsoup Document.
+    *
+    * @param linkExtractionMode the mode to use.
+    */
+   public void setLinkExtractionMode(final LinkExtractionMode linkExtractionMode) {
+      this.linkExtractionMode = linkExtractionMode;
+   }
+
+   /**
+    * Replaces the {@link UrlCanonicalizer} used to resolve links, e.g. with one which also sorts query parameters.
+    *
+    * @param urlCanonicalizer the canonicalizer to use.
+    */
+   public void setUrlCanonicalizer(final UrlCanonicalizer urlCanonicalizer) {
+      this.urlCanonicalizer = urlCanonicalizer;
+   }
+
+   /**
+    * Makes the crawler revalidate pages with conditional GETs.  Pages found in the cache are requested with their
+    * validators and, if the server answers 304 Not Modified, the links remembered for them are queued without
+    * downloading or parsing the page.  Other pages are fetched in full and remembered in the cache.
+    *
+    * @param validatorCache the cache to use, or null (the default) to always fetch pages in full.
+    */
+   public void setValidatorCache(final ValidatorCache validatorCache) {
+      this.validatorCache = validatorCache;
+   }
+
+   /**
+    * Makes the crawler keep the body of every successful response in a {@link BodyStore}.
+    *
+    * @param bodyStore the store to use, or null (the default) to not store bodies.
+    * @param storeFirst true to read pages found in the store from it instead of fetching them.
+    */
+   public void setBodyStore(final BodyStore bodyStore, final boolean storeFirst) {
+      this.bodyStore = bodyStore;
+      this.bodyStoreFirst = storeFirst;
+   }
+
+   /**
+    * Makes the crawler stop requesting hosts which keep failing.  While the breaker of a host is open its links are
+    * deferred until the breaker lets a probe through if a {@link RetryPolicy} is set and the link has retries left,
+    * and dropped as failed otherwise.
+    *
+    * @param circuitBreaker the circuit breaker to use, or null (the default) to request every host.
+    */
+   public void setCircuitBreaker(final HostCircuitBreaker circuitBreaker) {
+      this.circuitBreaker = circuitBreaker;
+   }
+
+   /**
+    * Makes the crawler retry links which fail transiently, such as timeouts and 5xx responses.
+    *
+    * @param retryPolicy the retry policy to use, or null (the default) to not retry failed links.
+    */
+   public void setRetryPolicy(final RetryPolicy retryPolicy) {
+      this.retryPolicy = retryPolicy;
+   }
+
+   /**
+    * Makes the crawler write a record of every crawled page, with its status code, timing and the links found on
+    * it.  Links which are retried get a single record once they finally succeed or fail.
+    *
+    * @param pageRecordWriter the writer to use, or null (the default) to not write page records.
+    */
+   public void setPageRecordWriter(final PageRecordWriter pageRecordWriter) {
+      this.pageRecordWriter = pageRecordWriter;
+   }
+
+   /**
+    * Makes the crawler record the links found on every successfully crawled page in a {@link LinkGraph}, which can
+    * be exported once the crawl is done.
+    *
+    * @param linkGraph the graph to record to, or null (the default) to not record the link graph.
+    */
+   public void setLinkGraph(final LinkGraph linkGraph) {
+      this.linkGraph = linkGraph;
+   }
+
+   /**
+    * Makes this crawler one node of a distributed crawl.  Every node must be given the same seeds; each crawls only
+    * the seeds and links of the hosts it owns, forwards the links it finds for other hosts to their owners and keeps
+    * a seen set of its own links only.  {@link #crawl()} joins the cluster when it starts and returns once the
+    * whole cluster is finished, and on node 0 the stats of all nodes are then available from
+    * {@link #getClusterStats()}.
+    *
+    * @param clusterNode the node, closed by {@link #close()}, or null (the default) to crawl alone.
+    */
+   public void setClusterNode(final ClusterNode clusterNode) {
+      synchronized (frontierLock) {
+         this.clusterNode = clusterNode;
+         this.forwardedLinks = clusterNode == null ? null : new FingerprintSet();
+      }
+   }
+
+   /**
+    * Puts hard limits on the crawl.  A maximum depth needs a {@link LinkFrontier} as linksQueue, such as a
+    * {@link PriorityFrontier} or a {@link HostScheduler}, which keeps the depth of each link.  On a node of a
+    * cluster the budget applies to the node, and links received from other nodes are queued at depth 0.
+    *
+    * @param crawlBudget the limits, or null (the default) to crawl until linksQueue is empty.
+    */
+   public void setCrawlBudget(final CrawlBudget crawlBudget) {
+      synchronized (frontierLock) {
+         this.crawlBudget = crawlBudget;
+      }
+   }
+
+   /**
+    * Rejects new links which look like crawler traps, such as endless calendars or repeated path segments, before
+    * they are queued.
+    *
+    * @param crawlerTrapDetector the detector to use, or null (the default) to queue every new link.
+    */
+   public void setCrawlerTrapDetector(final CrawlerTrapDetector crawlerTrapDetector) {
+      synchronized (frontierLock) {
+         this.crawlerTrapDetector = crawlerTrapDetector;
+      }
+   }
+
+   /**
+    * Makes the crawl incremental: the {@link SimHash} of every downloaded page is compared with the one stored by
+    * an earlier crawl, and for a page which has not changed the stored links are queued instead of parsing the page
+    * again.  New and changed pages are stored.
+    *
+    * @param simHashStore the store to use, or null (the default) to parse every page.
+    */
+   public void setSimHashStore(final SimHashStore simHashStore) {
+      this.simHashStore = simHashStore;
+   }
+
+   /**
+    * Resolves the host of every URL with a {@link DnsCache} before it is fetched, so a URL on a host which does not
+    * resolve fails at once, and starts resolving each new host in the background when its first link is queued.
+    *
+    * @param dnsCache the cache to use, or null (the default) to leave host names to the {@link PageFetcher}.
+    */
+   public void setDnsCache(final DnsCache dnsCache) {
+      this.dnsCache = dnsCache;
+   }
+
+   /**
+    * Drops new links whose extension shows they are no pages before they are queued, and limits the size of the
+    * bodies which are parsed.  The same policy should be given to the {@link HttpPageFetcher}, which then also
+    * requests compressed responses and stops downloading responses of other content types after their headers.
+    *
+    * @param fetchPolicy the policy to use, or null (the default) to queue every link and parse whole bodies.
+    */
+   public void setFetchPolicy(final FetchPolicy fetchPolicy) {
+      this.fetchPolicy = fetchPolicy;
+   }
+
+   /**
+    * Makes {@link #crawl()} log its progress with a {@link CrawlerStatsReporter} while it runs.
+    *
+    * @param statsReportIntervalMillis time between progress reports, or 0 (the default) for no reports.
+    */
+   public void setStatsReportIntervalMillis(final long statsReportIntervalMillis) {
+      this.statsReportIntervalMillis = statsReportIntervalMillis;
+   }
+
+   /**
+    * This method iterates through all links in linksQueue, finding all links on a page and adding them back to
+    * linksQueue if they have not been seen before and are not already in linksQueue.  Crawler stats are incremented
+    * appropriately depending on if the link was able to be visited or not.
+    * Links are crawled in parallel, up to {@link #getMaxInFlight()} at a time, and this method returns once
+    * linksQueue is empty and no link is still being crawled.
+    * When this crawler is a node of a distributed crawl, this method returns once the whole cluster is finished.
+    *
+    * With a {@link CrawlBudget} this method returns once the page budget is used up.
+    *
+    * @throws IllegalStateException if the crawl budget has a maximum depth but linksQueue is no
+    *     {@link LinkFrontier}.
+    * @throws UncheckedIOException if this crawler cannot connect to the other nodes of its cluster.
+    */
+   public void crawl() {
+      synchronized (frontierLock) {
+         if (crawlBudget != null && crawlBudget.getMaxDepth() != CrawlBudget.UNLIMITED
+             && !(linksQueue instanceof LinkFrontier)) {
+            throw new IllegalStateException("A maximum crawl depth needs a LinkFrontier as linksQueue");
+         }
+      }
+      final long startNanos = System.nanoTime();
+      if (clusterNode != null) {
+         try {
+            clusterNode.start(new ClusterListener());
+         }
+         catch (final IOException e) {
+            throw new UncheckedIOException("Unable to join the cluster as node " + clusterNode.getNodeId(), e);
+         }
+      }
+      final CrawlerStatsReporter reporter = statsReportIntervalMillis > 0
+          ? new CrawlerStatsReporter(crawlerStats, this::getQueueSize,
+              concurrencyLimiter == null ? null : concurrencyLimiter::getLimit, statsReportIntervalMillis) : null;
+      workerExecutor = Executors.newFixedThreadPool(workerCount, new CrawlerThreadFactory());
+      String link;
+      while ((link = takeNextLink()) != null) {
+         final String nextLink = link;
+         workerExecutor.execute(() -> crawlLink(nextLink));
+      }
+      // no link is in flight any more unless the crawl was interrupted
+      workerExecutor.shutdown();
+      try {
+         while (!Thread.currentThread().isInterrupted() && !workerExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+            LOG.trace("Waiting for crawl workers to finish");
+         }
+      }
+      catch (final InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      if (Thread.currentThread().isInterrupted()) {
+         LOG.warn("Interrupted while crawling, abandoning the links in flight");
+         workerExecutor.shutdownNow();
+      }
+      if (reporter != null) {
+         reporter.close();
+      }
+      // rounded up, so a crawl which did any work never reports 0 ms
+      crawlerStats.setCrawlTimeMillis((System.nanoTime() - startNanos + 999999) / 1000000);
+      if (clusterNode != null) {
+         clusterStats = clusterNode.exchangeStats(crawlerStats, CLUSTER_STATS_TIMEOUT_MILLIS);
+      }
+   }
+
+   /**
+    * @param link String representing an absolute URL.
+    * @return true if this crawler crawls the link, i.e. it is not a node of a cluster or owns the link.
+    */
+   private boolean isLocalLink(final String link) {
+      return clusterNode == null || clusterNode.isLocal(link);
+   }
+
+   private int getQueueSize() {
+      synchronized (frontierLock) {
+         return linksQueue.size();
+      }
+   }
+
+   /**
+    * This method removes the next link from linksQueue and marks it as visited.  If linksQueue is empty but links
+    * are still being crawled, this method waits since those may add more links.  When a {@link HostScheduler} is
+    * used it also waits while links are queued but no host is ready to be requested.  Links in pendingRetries are
+    * moved back to linksQueue once they are due, and the crawl is only finished once none are left.  When linksQueue
+    * runs low and there are seeds left to read, the next batch of seeds is read first.  A node of a cluster skips
+    * links owned by other nodes, which can only be starting links since every node reads them, and is only finished
+    * once the whole cluster is.  Once the {@link CrawlBudget} is used up the rest of the frontier is dropped, and
+    * links whose host is over its budget are skipped.  While as many links are in flight as
+    * {@link #getMaxInFlight()} or the {@link ConcurrencyLimiter} allows, this method waits for one of them to finish.
+    *
+    * @return the next link to crawl, or null if the crawl is finished.
+    */
+   private String takeNextLink() {
+      try {
+         while (true) {
+            synchronized (frontierLock) {
+               while (true) {
+                  final long millisUntilRetry = queueDueRetries();
+                  if (crawlBudget != null && crawlBudget.isExhausted()) {
+                     dropFrontier();
+                  }
+                  if (seedReader != null && !seedFeeding && linksQueue.size() < SEED_FEED_THRESHOLD) {
+                     seedFeeding = true;
+                     break;
+                  }
+                  if (linksQueue.isEmpty()) {
+                     if (inFlightCount == 0 && millisUntilRetry < 0 && seedReader == null
+                         && (clusterNode == null || clusterNode.isTerminated())) {
+                        return null;
+                     }
+                     waitForFrontier(millisUntilRetry);
+                     continue;
+                  }
+                  if (inFlightCount >= getMaxInFlight()
+                      || (concurrencyLimiter != null && inFlightCount >= concurrencyLimiter.getLimit())) {
+                     waitForFrontier(millisUntilRetry);
+                     continue;
+                  }
+                  final String link = linksQueue.poll();
+                  if (link != null && !isLocalLink(link)) {
+                     LOG.trace("Skipping link owned by another node: " + link);
+                     if (hostScheduler != null) {
+                        hostScheduler.release(link);
+                     }
+                     continue;
+                  }
+                  if (link != null && crawlBudget != null && !retryCounts.containsKey(link)
+                      && !crawlBudget.tryTakePage(link)) {
+                     LOG.trace("Skipping link over the crawl budget: " + link);
+                     crawlerStats.recordBudgetReject();
+                     if (hostScheduler != null) {
+                        hostScheduler.release(link);
+                     }
+                     continue;
+                  }
+                  if (link != null) {
+                     if (linksQueue instanceof LinkFrontier) {
+                        linkDepths.put(link, ((LinkFrontier) linksQueue).getLastPolledDepth());
+                     }
+                     visitedLinks.add(link);
+                     inFlightCount++;
+                     return link;
+                  }
+                  final long millisUntilReady = hostScheduler.getMillisUntilReady();
+                  if (millisUntilReady != 0) {
+                     waitForFrontier(millisUntilRetry < 0
+                         || (millisUntilReady >= 0 && millisUntilReady < millisUntilRetry)
+                         ? millisUntilReady : millisUntilRetry);
+                  }
+               }
+            }
+            feedSeeds();
+         }
+      }
+      catch (final InterruptedException e) {
+         Thread.currentThread().interrupt();
+         return null;
+      }
+   }
+
+   /**
+    * This method drops the queued links, the links waiting for a retry and the seeds not read yet once the
+    * {@link CrawlBudget} is used up.  Must be called while holding frontierLock.
+    */
+   private void dropFrontier() {
+      if (!linksQueue.isEmpty() || !pendingRetries.isEmpty()) {
+         LOG.info("Crawl budget of " + crawlBudget.getMaxPages() + " pages used up, dropping " + linksQueue.size()
+             + " queued links and " + pendingRetries.size() + " links waiting for a retry");
+         linksQueue.clear();
+         pendingRetries.clear();
+      }
+      if (seedReader != null && !seedFeeding) {
+         closeSeedReader();
+         seedReader = null;
+      }
+   }
+
+   /**
+    * This method moves the links in pendingRetries which are due back to linksQueue.  They bypass the visitedLinks
+    * check of {@link #addLinkToQueue(String, int)} since they were marked as visited when first taken.  Must be
+    * called while holding frontierLock.
+    *
+    * @return the milliseconds until the next link in pendingRetries is due, or -1 if there is none.
+    */
+   private long queueDueRetries() {
+      final long nowNanos = System.nanoTime();
+      PendingRetry pendingRetry;
+      while ((pendingRetry = pendingRetries.peek()) != null && pendingRetry.dueNanos - nowNanos <= 0) {
+         pendingRetries.poll();
+         queueLink(pendingRetry.link, getLinkDepth(pendingRetry.link));
+      }
+      if (pendingRetry == null) {
+         return -1;
+      }
+      return Math.max(1, TimeUnit.NANOSECONDS.toMillis(pendingRetry.dueNanos - nowNanos));
+   }
+
+   /**
+    * Waits on frontierLock.  Must be called while holding frontierLock.
+    *
+    * @param timeoutMillis the longest time to wait, or a negative value to wait until notified.
+    */
+   private void waitForFrontier(final long timeoutMillis) throws InterruptedException {
+      if (timeoutMillis < 0) {
+         frontierLock.wait();
+      }
+      else if (timeoutMillis > 0) {
+         frontierLock.wait(timeoutMillis);
+      }
+   }
+
+   /**
+    * This method is called once a link is done with.  The crawl thread is woken up since another link may now be
+    * crawled, the host of the link may allow another request, the crawl may be finished or it may need to wake up
+    * for a retry.  Links to be retried are not recorded as crawled in the checkpoint.
+    *
+    * @param link String representing the URL which was crawled.
+    * @param outcome the outcome of crawling the link.
+    */
+   private void releaseLink(final String link, final CrawlOutcome outcome) {
+      synchronized (frontierLock) {
+         inFlightCount--;
+         if (outcome != CrawlOutcome.RETRYING) {
+            linkDepths.remove(link);
+            if (checkpoint != null) {
+               checkpoint.linkCrawled(link, outcome == CrawlOutcome.SUCCEEDED);
+            }
+         }
+         if (hostScheduler != null) {
+            hostScheduler.release(link);
+         }
+         frontierLock.notifyAll();
+      }
+   }
+
+   /**
+    * This method starts crawling a single link on a worker thread.  A link whose host has an open
+    * {@link HostCircuitBreaker} is deferred or dropped without being requested; otherwise the page is requested and
+    * the worker returns without waiting for it.  Once the response arrives {@link #processPage} runs on a worker and
+    * the link is released.
+    *
+    * @param link String representing the URL to crawl.
+    */
+   private void crawlLink(final String link) {
+      if (circuitBreaker != null) {
+         final String host = HostScheduler.getHost(link);
+         final long millisUntilAllowed = circuitBreaker.getMillisUntilAllowed(host);
+         if (millisUntilAllowed > 0) {
+            crawlerStats.recordCircuitBreakerReject();
+            if (scheduleRetry(link, millisUntilAllowed, false)) {
+               LOG.debug("Circuit breaker of host " + host + " is open, deferring this link: " + link);
+               releaseLink(link, CrawlOutcome.RETRYING);
+               return;
+            }
+            LOG.debug("Circuit breaker of host " + host + " is open, skipping this link: " + link);
+            crawlerStats.increment(false);
+            writePageRecord(link, 0, System.currentTimeMillis(), System.nanoTime(), null, "circuit breaker open");
+            releaseLink(link, CrawlOutcome.FAILED);
+            return;
+         }
+      }
+      if (retryPolicy != null) {
+         retryPolicy.recordAttempt();
+      }
+      final long startMillis = System.currentTimeMillis();
+      final long startNanos = System.nanoTime();
+      final ValidatorCache.Entry cached = validatorCache == null ? null : validatorCache.get(link);
+      final Map<String, String> requestHeaders = cached == null
+          ? Collections.emptyMap() : cached.getConditionalHeaders();
+      fetchHtmlPage(link, requestHeaders).whenCompleteAsync((fetchResult, failure) -> {
+         CrawlOutcome outcome = CrawlOutcome.FAILED;
+         try {
+            outcome = processPage(link, cached, fetchResult, failure, startMillis, startNanos);
+         }
+         finally {
+            releaseLink(link, outcome);
+         }
+      }, workerExecutor);
    }
 
    /**
-    * This method obtains the JSON data found at the starting point URL and adds each URL to the linksQueue object.
-    * Note that since linksQueue is a custom UniqueQueue object, only unique URLs will be added; duplicate URLs will
-    * be ignored.
+    * This method handles the response of a link, adding the links found on the page to linksQueue and recording the
+    * result in crawlerStats.  A link which failed transiently is scheduled for a retry if the {@link RetryPolicy}
+    * allows it.  Only the final outcome of a link is counted as a successful or failed request.
+    *
+    * @param link String representing the crawled URL.
+    * @param cached the {@link ValidatorCache} entry of the link when it was requested, or null.
+    * @param fetchResult the response of the link, or null if it failed.
+    * @param failure the reason the link failed, or null.
+    * @return the outcome of crawling the link.
     */
-   private void getStartingLinks() {
+   private CrawlOutcome processPage(final String link, final ValidatorCache.Entry cached,
+       final FetchResult fetchResult, final Throwable failure, final long startMillis, final long startNanos) {
+      final String host = circuitBreaker == null ? null : HostScheduler.getHost(link);
+      final List<String> pageLinks = pageRecordWriter == null && linkGraph == null && simHashStore == null ? null
+          : new ArrayList<>();
       try {
-         final String jsonText = getJsonStringFromUrl(startingPointUrl);
-         final JsonObject jsonObject = JSON_PARSER.parse(jsonText).getAsJsonObject();
-         final JsonArray jsonLinks = jsonObject.getAsJsonArray("links");
-         for (final JsonElement jsonLink : jsonLinks) {
-            linksQueue.add(jsonLink.getAsString());
+         if (failure != null) {
+            if (validatorCache != null) {
+               crawlerStats.recordValidatorCacheLookup(false);
+            }
+            throw unwrap(failure);
+         }
+         if (validatorCache != null) {
+            crawlLinkWithValidatorCache(link, cached, fetchResult, pageLinks);
+         }
+         else {
+            LOG.debug("Successfully crawled to this link: " + link);
+            crawlerStats.increment(true);
+            addFetchedPageLinksToQueue(fetchResult, link, pageLinks);
+         }
+         if (circuitBreaker != null) {
+            circuitBreaker.recordSuccess(host);
          }
+         retryCounts.remove(link);
+         if (linkGraph != null) {
+            linkGraph.addPage(link, pageLinks);
+         }
+         writePageRecord(link, fetchResult.getStatusCode(), startMillis, startNanos, pageLinks, null);
+         return CrawlOutcome.SUCCEEDED;
       }
-      catch (IOException e) {
-         LOG.error("Exception thrown when trying to get initial links from JSON URL", e);
+      catch (final Exception e) {
+         final boolean transientFailure = RetryPolicy.isTransientFailure(e);
+         if (circuitBreaker != null) {
+            if (!transientFailure && e instanceof HttpStatusException) {
+               circuitBreaker.recordSuccess(host);
+            }
+            else if (!transientFailure) {
+               // e.g. a link which is not a page, which says nothing about the host
+               circuitBreaker.releaseProbe(host);
+            }
+            else if (circuitBreaker.recordFailure(host)) {
+               crawlerStats.recordCircuitBreakerTrip();
+               LOG.info("Circuit breaker of host " + host + " opened after failing to crawl this link: " + link);
+            }
+         }
+         if (transientFailure && scheduleRetry(link, 0, true)) {
+            LOG.debug("Failed to crawl to this link (retrying later): " + link + " " + e);
+            return CrawlOutcome.RETRYING;
+         }
+         String logMessage = "Failed to crawl to this link (skipping and continuing): " + link;
+         crawlerStats.increment(false);
+         if (e instanceof HttpStatusException) {
+            logMessage += " status code: " + ((HttpStatusException) e).getStatusCode();
+            LOG.debug(logMessage);
+         }
+         else {
+            LOG.warn(logMessage, e);
+         }
+         writePageRecord(link, e instanceof HttpStatusException ? ((HttpStatusException) e).getStatusCode() : 0,
+             startMillis, startNanos, null, e.toString());
+         return CrawlOutcome.FAILED;
       }
    }
 
    /**
-    * This method iterates through all links in linksQueue, finding all links on a page and adding them back to
-    * linksQueue if they have not been seen before and are not already in linksQueue.  Crawler stats are incremented
-    * appropriately depending on if the link was able to be visited or not.
+    * This method hands the record of a crawled page to the {@link PageRecordWriter}, if one is set.
     */
-   public void crawl() {
-      final long startTimeMillis = System.currentTimeMillis();
-      while (!linksQueue.isEmpty()) {
-         final String link = linksQueue.remove();
-         try {
-            visitedLinks.add(link);
+   private void writePageRecord(final String link, final int statusCode, final long startMillis,
+       final long startNanos, final List<String> pageLinks, final String error) {
+      if (pageRecordWriter == null) {
+         return;
+      }
+      final long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+      try {
+         pageRecordWriter.write(new PageRecordWriter.PageRecord(link, statusCode, startMillis, durationMillis,
+             pageLinks, error));
+      }
+      catch (final IOException e) {
+         LOG.warn("Unable to write the page record of " + link, e);
+      }
+   }
 
-            final Elements linkElements = getLinkElementsFromUrl(link);
-            LOG.debug("Successfully crawled to this link: " + link);
+   /**
+    * This method puts a link in pendingRetries if the {@link RetryPolicy} allows another retry of it.
+    *
+    * @param link String representing the URL to retry.
+    * @param delayMillis delay before the retry, used when the retry is not counted against the retry budget.
+    * @param budgeted true if the retry is counted against the retry budget and delayed with exponential backoff,
+    *     false for links deferred by an open {@link HostCircuitBreaker}.
+    * @return true if the link will be retried.
+    */
+   private boolean scheduleRetry(final String link, final long delayMillis, final boolean budgeted) {
+      if (retryPolicy == null) {
+         return false;
+      }
+      final int retry = retryCounts.merge(link, 1, Integer::sum);
+      if (retry > retryPolicy.getMaxRetries() || (budgeted && !retryPolicy.tryAcquireRetry())) {
+         retryCounts.remove(link);
+         return false;
+      }
+      final long retryDelayMillis = budgeted ? retryPolicy.getDelayMillis(retry) : delayMillis;
+      if (budgeted) {
+         crawlerStats.recordRetry();
+      }
+      final long dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryDelayMillis);
+      synchronized (frontierLock) {
+         pendingRetries.add(new PendingRetry(link, dueNanos));
+      }
+      return true;
+   }
+
+   /**
+    * This method handles the response to a conditional GET of a link in the {@link ValidatorCache}, or to a plain
+    * GET of a new link, queueing the cached links on 304 Not Modified and otherwise parsing the page and caching its
+    * validators and links.
+    *
+    * @param link String representing the crawled URL.
+    * @param cached the cache entry of the link when it was requested, or null.
+    * @param fetchResult the response of the link.
+    * @param pageLinks receives every absolute URL queued for the page, or null.
+    * @throws IOException if the page could not be parsed.
+    */
+   private void crawlLinkWithValidatorCache(final String link, final ValidatorCache.Entry cached,
+       final FetchResult fetchResult, final List<String> pageLinks) throws IOException {
+      boolean cacheHit = false;
+      try {
+         if (cached != null && fetchResult.getStatusCode() == 304) {
+            cacheHit = true;
+            LOG.debug("Not modified, reusing the cached links of this link: " + link);
             crawlerStats.increment(true);
-            addPageLinksToQueue(linkElements, link);
-         }
-         catch (final Exception e) {
-            String logMessage = "Failed to crawl to this link (skipping and continuing): " + link;
-            crawlerStats.increment(false);
-            if (e instanceof HttpStatusException) {
-               logMessage += " status code: " + ((HttpStatusException) e).getStatusCode();
-               LOG.debug(logMessage);
+            final int linkDepth = getLinkDepth(link) + 1;
+            for (final String cachedLink : cached.getLinks()) {
+               addLinkToQueue(cachedLink, linkDepth);
             }
-            else {
-               LOG.warn(logMessage, e);
+            if (pageLinks != null) {
+               pageLinks.addAll(cached.getLinks());
+            }
+            return;
+         }
+         LOG.debug("Successfully crawled to this link: " + link);
+         crawlerStats.increment(true);
+         final List<String> cachedLinks = pageLinks == null ? new ArrayList<>() : pageLinks;
+         addFetchedPageLinksToQueue(fetchResult, link, cachedLinks);
+         validatorCache.put(link, fetchResult.getHeader("ETag"), fetchResult.getHeader("Last-Modified"), cachedLinks);
+      }
+      finally {
+         crawlerStats.recordValidatorCacheLookup(cacheHit);
+      }
+   }
+
+   /**
+    * This method adds the links of a downloaded page to linksQueue, finding them as selected by the
+    * {@link LinkExtractionMode}.  With a {@link SimHashStore} the stored links of a page whose text and link targets
+    * have not changed are queued instead, and the simhash, link hash and links of a new or changed page are stored.
+    *
+    * @param pageLinks receives every absolute URL found on the page; must not be null with a SimHashStore.
+    */
+   private void addFetchedPageLinksToQueue(final FetchResult fetchResult, final String currentLink,
+       final List<String> pageLinks) throws IOException {
+      long simHash = 0;
+      long linkHash = 0;
+      if (simHashStore != null) {
+         final String html = fetchResult.getBodyAsString();
+         simHash = SimHash.of(html);
+         linkHash = SimHash.linkHashOf(html);
+         final List<String> storedLinks = simHashStore.getLinksIfUnchanged(currentLink, simHash, linkHash);
+         crawlerStats.recordChangeCheck(storedLinks != null);
+         if (storedLinks != null) {
+            LOG.debug("Unchanged, reusing the stored links of this link: " + currentLink);
+            final int linkDepth = getLinkDepth(currentLink) + 1;
+            for (final String storedLink : storedLinks) {
+               addLinkToQueue(storedLink, linkDepth);
             }
+            pageLinks.addAll(storedLinks);
+            return;
          }
       }
-      crawlerStats.setCrawlTimeMillis(System.currentTimeMillis() - startTimeMillis);
+      if (linkExtractionMode == LinkExtractionMode.STREAMING) {
+         addHtmlPageLinksToQueue(fetchResult.getBodyAsString(), currentLink, pageLinks);
+      }
+      else {
+         addPageLinksToQueue(parseLinkElements(fetchResult, currentLink), currentLink, pageLinks);
+      }
+      if (simHashStore != null) {
+         simHashStore.put(currentLink, simHash, linkHash, pageLinks);
+      }
    }
 
    /**
@@ -101,42 +1090,147 @@ public class Crawler {
     * @param currentLink String representing the current URL location.
     */
    protected void addPageLinksToQueue(final Elements linkElements, final String currentLink) {
+      addPageLinksToQueue(linkElements, currentLink, null);
+   }
+
+   /**
+    * @param pageLinks receives every absolute URL found on the page, or null.
+    */
+   private void addPageLinksToQueue(final Elements linkElements, final String currentLink,
+       final List<String> pageLinks) {
+      final int linkDepth = getLinkDepth(currentLink) + 1;
       for (final Element linkElement : linkElements) {
          final String newLink = createAbsoluteUrlFromRelative(currentLink, linkElement.attr("href"));
-         if (newLink != null && !linksQueue.contains(newLink) && !visitedLinks.contains(newLink)) {
-            LOG.trace("Adding this link to queue: " + newLink);
-            linksQueue.add(newLink);
+         if (newLink != null) {
+            if (pageLinks != null) {
+               pageLinks.add(newLink);
+            }
+            addLinkToQueue(newLink, linkDepth);
+         }
+      }
+   }
+
+   /**
+    * This method scans the HTML page with {@link StreamingLinkExtractor} and adds any URL to the linksQueue object
+    * which is not already in the linksQueue and has not already been visited.  Links are resolved against the base
+    * tag of the page if it has one.  Since links are queued while the page is scanned, the parse time recorded in
+    * crawlerStats includes queueing them.
+    *
+    * @param html String containing the HTML of the current location.
+    * @param currentLink String representing the current URL location.
+    */
+   protected void addHtmlPageLinksToQueue(final String html, final String currentLink) {
+      addHtmlPageLinksToQueue(html, currentLink, null);
+   }
+
+   /**
+    * @param pageLinks receives every absolute URL found on the page, or null.
+    */
+   private void addHtmlPageLinksToQueue(final String html, final String currentLink, final List<String> pageLinks) {
+      final long startNanos = System.nanoTime();
+      StreamingLinkExtractor.extractLinks(html, new PageLinkHandler(currentLink, pageLinks));
+      crawlerStats.recordParse(System.nanoTime() - startNanos);
+   }
+
+   /**
+    * This method adds a single URL to linksQueue if it is not already in linksQueue and has not already been visited.
+    * The check and the add happen while holding frontierLock so two workers can never both add the same URL.
+    * On a node of a cluster, a link owned by another node is forwarded to it instead, once.  Links skipped by the
+    * {@link FetchPolicy}, rejected by the {@link CrawlerTrapDetector} or over the {@link CrawlBudget} are not added.
+    * Skipped and rejected links are remembered, so they are only checked and counted the first time they are found.
+    *
+    * @param newLink String representing an absolute URL.
+    * @param depth number of links followed from a seed to reach the URL.
+    * @return true if the link was added to linksQueue.
+    */
+   private boolean addLinkToQueue(final String newLink, final int depth) {
+      synchronized (frontierLock) {
+         if (!isLocalLink(newLink)) {
+            if (forwardedLinks.add(newLink)) {
+               clusterNode.forward(newLink);
+            }
+            return false;
+         }
+         if (linksQueue.contains(newLink) || visitedLinks.contains(newLink) || rejectedLinks.contains(newLink)) {
+            return false;
          }
+         if (fetchPolicy != null && fetchPolicy.isSkippedUrl(newLink)) {
+            LOG.trace("Skipping this link by its extension: " + newLink);
+            rejectedLinks.add(newLink);
+            crawlerStats.recordSkippedResource();
+            return false;
+         }
+         if (crawlerTrapDetector != null && crawlerTrapDetector.accept(newLink) != null) {
+            LOG.debug("Rejecting this link as a crawler trap: " + newLink);
+            rejectedLinks.add(newLink);
+            crawlerStats.recordTrapReject();
+            return false;
+         }
+         if (crawlBudget != null && !crawlBudget.allows(newLink, depth)) {
+            crawlerStats.recordBudgetReject();
+            return false;
+         }
+         LOG.trace("Adding this link to queue: " + newLink);
+         queueLink(newLink, depth);
+         if (checkpoint != null) {
+            checkpoint.linkQueued(newLink);
+         }
+         if (dnsCache != null) {
+            dnsCache.prefetch(HostScheduler.getHost(newLink));
+         }
+         frontierLock.notify();
+         return true;
+      }
+   }
+
+   /**
+    * Adds a link to linksQueue, with its depth if linksQueue is a {@link LinkFrontier}.  Must be called while
+    * holding frontierLock.
+    */
+   private void queueLink(final String link, final int depth) {
+      if (linksQueue instanceof LinkFrontier) {
+         ((LinkFrontier) linksQueue).offer(link, depth);
       }
+      else {
+         linksQueue.add(link);
+      }
+   }
+
+   /**
+    * @param link String representing a URL being crawled or waiting for a retry.
+    * @return the depth of the link, or 0 if linksQueue is no {@link LinkFrontier}.
+    */
+   private int getLinkDepth(final String link) {
+      final Integer depth = linkDepths.get(link);
+      return depth == null ? 0 : depth;
    }
 
    /**
-    * This method converts a relative URL to an absolute URL which is necessary for Jsoup to connect with.
-    * If relativeUrl is already an absolute URL, relativeUrl will be returned.
+    * This method converts a relative URL to an absolute URL which is necessary to fetch it, using the
+    * {@link UrlCanonicalizer}.  If relativeUrl is already an absolute URL, it is only canonicalized.  Links which do
+    * not resolve to an http or https URL, such as mailto: links, are dropped.
     *
     * @param currentUrl String representing the current URL location
     * @param relativeUrl String representing a relative URL
-    * @return String representing the absolute URL of the provided relative URL
+    * @return String representing the canonical absolute URL of the provided relative URL, or null if there is none
     */
    protected String createAbsoluteUrlFromRelative(final String currentUrl, final String relativeUrl) {
-      try {
-         // try to create URL from relative URL.  If successful, relativeUrl is already an absolute URL.
-         new URL(relativeUrl);
-         return relativeUrl;
-      }
-      catch (MalformedURLException e) {
-         LOG.trace("Unable to create absolute URL from relative URL", e);
+      final String absoluteUrl = urlCanonicalizer.resolve(currentUrl, relativeUrl);
+      if (absoluteUrl == null) {
+         LOG.trace("Unable to create absolute URL from " + relativeUrl + " on " + currentUrl);
       }
+      return absoluteUrl;
+   }
 
-      try {
-         // construct absolute URL from protocol and host of currentUrl + relativeUrl
-         final URL url = new URL(currentUrl);
-         return url.getProtocol() + "://" + url.getHost() + relativeUrl;
-      }
-      catch (MalformedURLException e) {
-         LOG.error("Unable to create absolute URL", e);
-         return null;
-      }
+   public CrawlerStats getCrawlerStats() {
+      return crawlerStats;
+   }
+
+   /**
+    * @return on node 0 of a cluster, the stats of all nodes added up once {@link #crawl()} returned, otherwise null.
+    */
+   public CrawlerStats getClusterStats() {
+      return clusterStats;
    }
 
    /**
@@ -144,11 +1238,107 @@ public class Crawler {
     */
    public void printStats() {
       LOG.info(crawlerStats.toString());
+      if (pageRecordWriter != null) {
+         LOG.info("Page records written so far to " + pageRecordWriter.getFile() + ": "
+             + pageRecordWriter.getWrittenCount() + ", writes which waited for the writer: "
+             + pageRecordWriter.getBlockedCount());
+      }
+      if (visitedLinks instanceof SeenUrlStore) {
+         LOG.info("Visited links store " + visitedLinks + " uses "
+             + ((SeenUrlStore) visitedLinks).getMemoryUsageBytes() / 1024 + " KB");
+      }
+      if (crawlBudget != null) {
+         LOG.info(crawlBudget.toString());
+      }
+      if (crawlerTrapDetector != null) {
+         LOG.info(crawlerTrapDetector.toString());
+      }
+      if (concurrencyLimiter != null) {
+         LOG.info(concurrencyLimiter.toString());
+      }
+      if (dnsCache != null) {
+         LOG.info(dnsCache.toString());
+      }
+      if (pageFetcher instanceof WarcRecordingFetcher || pageFetcher instanceof WarcReplayFetcher) {
+         LOG.info(pageFetcher.toString());
+      }
+      if (clusterNode != null) {
+         LOG.info("Links forwarded to other nodes: " + clusterNode.getForwardedCount()
+             + ", links received from other nodes: " + clusterNode.getReceivedCount());
+      }
+      if (clusterStats != null) {
+         LOG.info("Stats of all " + clusterNode.getNodeCount() + " nodes: " + clusterStats);
+      }
+   }
+
+   /**
+    * Closes the {@link PageFetcher}, {@link SeedReader}, {@link CrawlCheckpoint}, {@link PageRecordWriter},
+    * {@link ClusterNode} and {@link DnsCache} used by this crawler, saves the {@link ValidatorCache},
+    * {@link SimHashStore} and {@link BodyStore} and closes linksQueue if it holds resources such as the segment files
+    * of a {@link SpillingQueue}.
+    */
+   @Override
+   public void close() {
+      pageFetcher.close();
+      if (clusterNode != null) {
+         clusterNode.close();
+      }
+      if (dnsCache != null) {
+         dnsCache.close();
+      }
+      synchronized (frontierLock) {
+         if (seedReader != null) {
+            closeSeedReader();
+         }
+      }
+      if (pageRecordWriter != null) {
+         try {
+            pageRecordWriter.close();
+         }
+         catch (final IOException e) {
+            LOG.warn("Unable to write page records to " + pageRecordWriter.getFile(), e);
+         }
+      }
+      if (checkpoint != null) {
+         checkpoint.close();
+      }
+      if (validatorCache != null) {
+         try {
+            validatorCache.close();
+         }
+         catch (final IOException e) {
+            LOG.warn("Unable to save validator cache " + validatorCache.getFile(), e);
+         }
+      }
+      if (simHashStore != null) {
+         try {
+            simHashStore.close();
+         }
+         catch (final IOException e) {
+            LOG.warn("Unable to save simhash store " + simHashStore.getFile(), e);
+         }
+      }
+      if (bodyStore != null) {
+         try {
+            bodyStore.close();
+         }
+         catch (final IOException e) {
+            LOG.warn("Unable to save body store index in " + bodyStore.getDirectory(), e);
+         }
+      }
+      if (linksQueue instanceof Closeable) {
+         try {
+            ((Closeable) linksQueue).close();
+         }
+         catch (final IOException e) {
+            LOG.warn("Unable to close linksQueue", e);
+         }
+      }
    }
 
    /**
-    * This method uses Jsoup to connect to the provided URL and return a string representation of the JSON object
-    * located at the URL.
+    * This method uses the {@link PageFetcher} to download the provided URL and return a string representation of
+    * the JSON object located at the URL.
     * This code was extracted in order to be overriden in unit tests to make testing easier.
     *
     * @param url The URL for the JSON object
@@ -156,21 +1346,285 @@ public class Crawler {
     * @throws IOException if fails to get the JSON string from the URL
     */
    protected String getJsonStringFromUrl(final String url) throws IOException {
-      return Jsoup.connect(url).ignoreContentType(true).execute().body();
+      return fetchPage(url).getBodyAsString();
    }
 
    /**
-    * This method uses Jsoup to connect to the provided URL and return a Jsoup Elements object containing all a[href]
-    * objects found at the URL.
-    * This code was extracted in order to be overriden in unit tests to make testing easier.
+    * This method parses a downloaded page with Jsoup and returns all a[href] objects found on it.
+    */
+   private Elements parseLinkElements(final FetchResult fetchResult, final String url) throws IOException {
+      final long startNanos = System.nanoTime();
+      final Document document = Jsoup.parse(new ByteArrayInputStream(fetchResult.getBody()),
+          fetchResult.getCharset(), url);
+      final Elements linkElements = document.select("a[href]");
+      crawlerStats.recordParse(System.nanoTime() - startNanos);
+      return linkElements;
+   }
+
+   /**
+    * This method downloads the provided URL with {@link #fetchPage(String, Map)} and checks that the response is a
+    * text or XML document.  With a {@link FetchPolicy} a body over the maximum body size is truncated to it or
+    * skipped.
+    *
+    * @param url The URL to download.
+    * @param requestHeaders headers to send with the request.
+    * @return future completed with the response of the URL, or completed exceptionally with an
+    *     {@link UnsupportedMimeTypeException} if the response is not a text, XML or JSON document (see
+    *     {@link FetchPolicy#isAcceptedMimeType(String)}), a {@link BodyTooLargeException} if the body is too large and
+    *     the {@link FetchPolicy} skips such bodies or the failure of the request.
+    */
+   private CompletableFuture<FetchResult> fetchHtmlPage(final String url, final Map<String, String> requestHeaders) {
+      return fetchPage(url, requestHeaders).thenApply(fetchResult -> {
+         final String mimeType = fetchResult.getMimeType();
+         if (!FetchPolicy.isAcceptedMimeType(mimeType)) {
+            crawlerStats.recordSkippedResource();
+            throw new CompletionException(new UnsupportedMimeTypeException("Unhandled content type", mimeType, url));
+         }
+         if (fetchPolicy == null
+             || (!fetchResult.isTruncated() && fetchResult.getBody().length <= fetchPolicy.getMaxBodyBytes())) {
+            return fetchResult;
+         }
+         if (!fetchPolicy.isTruncateLargeBodies()) {
+            crawlerStats.recordSkippedResource();
+            throw new CompletionException(new BodyTooLargeException("Body larger than the maximum body size", url,
+                fetchPolicy.getMaxBodyBytes()));
+         }
+         crawlerStats.recordTruncatedBody();
+         if (fetchResult.getBody().length <= fetchPolicy.getMaxBodyBytes()) {
+            return fetchResult;
+         }
+         return new FetchResult(fetchResult.getUrl(), fetchResult.getStatusCode(), fetchResult.getHeaders(),
+             Arrays.copyOf(fetchResult.getBody(), (int) fetchPolicy.getMaxBodyBytes()),
+             fetchResult.getTransferredBytes(), true);
+      });
+   }
+
+   /**
+    * This method downloads the provided URL with the {@link PageFetcher} and waits for the response.
+    *
+    * @param url The URL to download.
+    * @return the response of the URL.
+    * @throws HttpStatusException if the response has an error status code.
+    * @throws IOException if the request failed.
+    */
+   protected FetchResult fetchPage(final String url) throws IOException {
+      try {
+         return fetchPage(url, Collections.emptyMap()).get();
+      }
+      catch (final InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while fetching " + url, e);
+      }
+      catch (final ExecutionException e) {
+         final Exception cause = unwrap(e);
+         if (cause instanceof IOException) {
+            throw (IOException) cause;
+         }
+         throw new IOException("Failed to fetch " + url, cause);
+      }
+   }
+
+   /**
+    * This method starts downloading the provided URL with the {@link PageFetcher} and returns without waiting for the
+    * response.  If a {@link BodyStore} is set a complete body is stored, and in store-first mode a stored body is
+    * returned without fetching.
     *
-    * @param url The URL to navigate to.
-    * @return Jsoup Elements object containing all found a[href] objects (i.e. links).
-    * @throws IOException
+    * @param url The URL to download.
+    * @param requestHeaders headers to send with the request.
+    * @return future completed with the response of the URL, or completed exceptionally with an
+    *     {@link HttpStatusException} if the response has an error status code or the failure of the request.
+    */
+   private CompletableFuture<FetchResult> fetchPage(final String url, final Map<String, String> requestHeaders) {
+      final String host = HostScheduler.getHost(url);
+      final long startNanos;
+      final CompletableFuture<FetchResult> future;
+      try {
+         if (bodyStore != null && bodyStoreFirst) {
+            final FetchResult storedResult = bodyStore.get(url);
+            if (storedResult != null) {
+               crawlerStats.recordBodyStoreRead();
+               return CompletableFuture.completedFuture(storedResult);
+            }
+         }
+         if (dnsCache != null && !host.isEmpty()) {
+            dnsCache.resolve(host);
+         }
+         startNanos = System.nanoTime();
+         if (concurrencyLimiter != null) {
+            concurrencyLimiter.start(host);
+         }
+         future = pageFetcher.fetch(url, requestHeaders);
+      }
+      catch (final IOException | RuntimeException e) {
+         final CompletableFuture<FetchResult> failed = new CompletableFuture<>();
+         failed.completeExceptionally(e);
+         return failed;
+      }
+      return future.handle((fetchResult, failure) -> {
+         final long fetchNanos = System.nanoTime() - startNanos;
+         if (failure != null) {
+            final Exception cause = unwrap(failure);
+            if (concurrencyLimiter != null) {
+               concurrencyLimiter.record(host, fetchNanos, RetryPolicy.isTransientFailure(cause));
+            }
+            throw new CompletionException(cause);
+         }
+         crawlerStats.recordFetch(url, fetchResult.getStatusCode(), fetchResult.getTransferredBytes(), fetchNanos);
+         final long savedBytes = getSavedBytes(fetchResult);
+         if (savedBytes > 0) {
+            crawlerStats.recordBytesSaved(savedBytes);
+         }
+         if (concurrencyLimiter != null) {
+            concurrencyLimiter.record(host, fetchNanos,
+                RetryPolicy.isTransientStatusCode(fetchResult.getStatusCode()));
+         }
+         if (fetchResult.getStatusCode() >= 400) {
+            throw new CompletionException(
+                new HttpStatusException("HTTP error fetching URL", fetchResult.getStatusCode(), url));
+         }
+         // a truncated body would later be read back from the store as if it were complete
+         if (bodyStore != null && !fetchResult.isTruncated()) {
+            try {
+               bodyStore.put(url, fetchResult);
+            }
+            catch (final IOException e) {
+               LOG.warn("Unable to store the body of " + url + " in " + bodyStore.getDirectory(), e);
+            }
+         }
+         return fetchResult;
+      });
+   }
+
+   /**
+    * @return the exception a failed future was completed with, without the {@link CompletionException},
+    *         {@link ExecutionException} or {@link UncheckedIOException} wrapping it.
+    */
+   private static Exception unwrap(final Throwable failure) {
+      Throwable cause = failure;
+      while ((cause instanceof CompletionException || cause instanceof ExecutionException
+          || cause instanceof UncheckedIOException) && cause.getCause() != null) {
+         cause = cause.getCause();
+      }
+      return cause instanceof Exception ? (Exception) cause : new IOException(cause);
+   }
+
+   /**
+    * @return the bytes of the response which were not downloaded because it was compressed or its body was not read
+    *         to the end.
+    */
+   private static long getSavedBytes(final FetchResult fetchResult) {
+      long savedBytes = Math.max(0, fetchResult.getBody().length - fetchResult.getTransferredBytes());
+      final long contentLength = fetchResult.getContentLength();
+      if (fetchResult.isTruncated() && contentLength > fetchResult.getTransferredBytes()) {
+         savedBytes += contentLength - fetchResult.getTransferredBytes();
+      }
+      return savedBytes;
+   }
+
+   /**
+    * Receives the links forwarded by the other nodes of the cluster and tells the {@link ClusterNode} whether this
+    * crawler is idle.
+    */
+   private class ClusterListener implements ClusterNode.Listener {
+
+      @Override
+      public void linksReceived(final List<String> links) {
+         synchronized (frontierLock) {
+            for (final String link : links) {
+               addLinkToQueue(link, 0);
+            }
+         }
+      }
+
+      @Override
+      public boolean isIdle() {
+         synchronized (frontierLock) {
+            return linksQueue.isEmpty() && inFlightCount == 0 && pendingRetries.isEmpty() && seedReader == null;
+         }
+      }
+
+      @Override
+      public void terminated() {
+         synchronized (frontierLock) {
+            frontierLock.notifyAll();
+         }
+      }
+   }
+
+   /**
+    * Resolves the links found by {@link StreamingLinkExtractor} on one page and adds them to linksQueue.  The base
+    * URL is only resolved once per page.
+    */
+   private class PageLinkHandler implements StreamingLinkExtractor.LinkHandler {
+
+      private final String currentLink;
+
+      private final List<String> pageLinks;
+
+      private final int linkDepth;
+
+      private String baseHref;
+
+      private String baseUrl;
+
+      /**
+       * @param pageLinks receives every absolute URL found on the page, or null.
+       */
+      private PageLinkHandler(final String currentLink, final List<String> pageLinks) {
+         this.currentLink = currentLink;
+         this.pageLinks = pageLinks;
+         this.linkDepth = getLinkDepth(currentLink) + 1;
+         this.baseUrl = currentLink;
+      }
+
+      @Override
+      public void handleLink(final String href, final String baseHref) {
+         if (baseHref != null && !baseHref.equals(this.baseHref)) {
+            this.baseHref = baseHref;
+            final String resolvedBaseUrl = createAbsoluteUrlFromRelative(currentLink, baseHref);
+            baseUrl = resolvedBaseUrl == null ? currentLink : resolvedBaseUrl;
+         }
+         final String newLink = createAbsoluteUrlFromRelative(baseUrl, href);
+         if (newLink != null) {
+            if (pageLinks != null) {
+               pageLinks.add(newLink);
+            }
+            addLinkToQueue(newLink, linkDepth);
+         }
+      }
+   }
+
+   /**
+    * A link waiting in pendingRetries, ordered by the time it is due.
+    */
+   private static class PendingRetry implements Comparable<PendingRetry> {
+
+      private final String link;
+
+      private final long dueNanos;
+
+      private PendingRetry(final String link, final long dueNanos) {
+         this.link = link;
+         this.dueNanos = dueNanos;
+      }
+
+      @Override
+      public int compareTo(final PendingRetry other) {
+         return Long.compare(dueNanos - other.dueNanos, 0);
+      }
+   }
+
+   /**
+    * Names the worker threads so log lines can be attributed to a worker.
     */
-   protected Elements getLinkElementsFromUrl(final String url) throws IOException {
-      final Document document = Jsoup.connect(url).get();
-      return document.select("a[href]");
+   private static class CrawlerThreadFactory implements ThreadFactory {
+
+      private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+      @Override
+      public Thread newThread(final Runnable runnable) {
+         return new Thread(runnable, "crawler-worker-" + threadNumber.getAndIncrement());
+      }
    }
 
 }
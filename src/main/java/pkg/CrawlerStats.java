@@ -1,45 +1,312 @@
 package pkg;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author Brian Chipman
  *
- * This class holds the number of successful, failed, and total requests done by {@link Crawler}.
+ * This class holds the number of successful, failed, and total requests done by {@link Crawler}, along with the
+ * number of requests per HTTP status code and per host, the number of bytes downloaded, the {@link ValidatorCache}
+ * hits and misses, the pages read from the {@link BodyStore}, the links dropped by the {@link CrawlBudget} and the
+ * {@link CrawlerTrapDetector}, the pages found unchanged by the {@link SimHashStore}, the bytes saved and resources
+ * skipped or truncated by the {@link FetchPolicy} and {@link LatencyHistogram}s of fetch and parse times.
+ * The counters may be incremented from several crawler worker threads at the same time.  They are
+ * {@link LongAdder}s, which do not contend when many threads increment them and do not overflow on long crawls.
+ * The stats of several crawler processes can be sent with {@link #writeTo(DataOutputStream)} and merged with
+ * {@link #add(CrawlerStats)}.
  */
 public class CrawlerStats {
 
-   private int successfulRequestCount;
+   private final LongAdder successfulRequestCount = new LongAdder();
 
-   private int failedRequestCount;
+   private final LongAdder failedRequestCount = new LongAdder();
 
-   private int totalRequestCount;
+   private final LongAdder bytesDownloaded = new LongAdder();
 
-   private long crawlTimeMillis;
+   private final LongAdder validatorCacheHitCount = new LongAdder();
+
+   private final LongAdder validatorCacheMissCount = new LongAdder();
+
+   private final LongAdder bodyStoreReadCount = new LongAdder();
+
+   private final LongAdder retryCount = new LongAdder();
+
+   private final LongAdder circuitBreakerTripCount = new LongAdder();
+
+   private final LongAdder circuitBreakerRejectCount = new LongAdder();
+
+   private final LongAdder budgetRejectCount = new LongAdder();
+
+   private final LongAdder trapRejectCount = new LongAdder();
+
+   private final LongAdder changeCheckCount = new LongAdder();
+
+   private final LongAdder unchangedPageCount = new LongAdder();
+
+   private final LongAdder bytesSaved = new LongAdder();
+
+   private final LongAdder skippedResourceCount = new LongAdder();
+
+   private final LongAdder truncatedBodyCount = new LongAdder();
+
+   private final ConcurrentMap<Integer, LongAdder> statusCodeCounts = new ConcurrentHashMap<>();
+
+   private final ConcurrentMap<String, LongAdder> hostCounts = new ConcurrentHashMap<>();
+
+   private final LatencyHistogram fetchLatency = new LatencyHistogram();
+
+   private final LatencyHistogram parseLatency = new LatencyHistogram();
+
+   private volatile long crawlTimeMillis;
 
    public CrawlerStats() {
    }
 
    public void increment(final boolean successful) {
       if (successful) {
-         successfulRequestCount++;
+         successfulRequestCount.increment();
+      }
+      else {
+         failedRequestCount.increment();
+      }
+   }
+
+   /**
+    * Adds the counts of an earlier crawl which is being resumed.
+    *
+    * @param successfulRequestCount number of successful requests of the earlier crawl.
+    * @param failedRequestCount number of failed requests of the earlier crawl.
+    */
+   public void restore(final long successfulRequestCount, final long failedRequestCount) {
+      this.successfulRequestCount.add(successfulRequestCount);
+      this.failedRequestCount.add(failedRequestCount);
+   }
+
+   /**
+    * Records a response received from a server.
+    *
+    * @param url the requested URL.
+    * @param statusCode HTTP status code of the response.
+    * @param bodyBytes size of the response body.
+    * @param fetchNanos time from sending the request until the whole body was read.
+    */
+   public void recordFetch(final String url, final int statusCode, final long bodyBytes, final long fetchNanos) {
+      increment(statusCodeCounts, statusCode);
+      final String host = HostScheduler.getHost(url);
+      if (host != null) {
+         increment(hostCounts, host);
+      }
+      bytesDownloaded.add(bodyBytes);
+      fetchLatency.record(fetchNanos);
+   }
+
+   /**
+    * Records the time taken to find the links of a page.
+    *
+    * @param parseNanos the time in nanoseconds.
+    */
+   public void recordParse(final long parseNanos) {
+      parseLatency.record(parseNanos);
+   }
+
+   /**
+    * Records whether a page was crawled from the {@link ValidatorCache} after a 304 Not Modified response.
+    *
+    * @param hit true if the cached links were reused, false if the page was fetched in full or failed.
+    */
+   public void recordValidatorCacheLookup(final boolean hit) {
+      if (hit) {
+         validatorCacheHitCount.increment();
       }
       else {
-         failedRequestCount++;
+         validatorCacheMissCount.increment();
+      }
+   }
+
+   /**
+    * Records that a page was read from the {@link BodyStore} instead of being fetched.
+    */
+   public void recordBodyStoreRead() {
+      bodyStoreReadCount.increment();
+   }
+
+   /**
+    * Records that a link which failed transiently was scheduled for a retry.
+    */
+   public void recordRetry() {
+      retryCount.increment();
+   }
+
+   /**
+    * Records that the {@link HostCircuitBreaker} of a host opened.
+    */
+   public void recordCircuitBreakerTrip() {
+      circuitBreakerTripCount.increment();
+   }
+
+   /**
+    * Records that a link was deferred or dropped because the {@link HostCircuitBreaker} of its host was open.
+    */
+   public void recordCircuitBreakerReject() {
+      circuitBreakerRejectCount.increment();
+   }
+
+   /**
+    * Records that a link was not queued or not crawled because of the {@link CrawlBudget}.
+    */
+   public void recordBudgetReject() {
+      budgetRejectCount.increment();
+   }
+
+   /**
+    * Records that a link was not queued because the {@link CrawlerTrapDetector} took it for a crawler trap.
+    */
+   public void recordTrapReject() {
+      trapRejectCount.increment();
+   }
+
+   /**
+    * Records bytes which were not downloaded thanks to the {@link FetchPolicy}, because the response was compressed
+    * or its body was not read to the end.
+    *
+    * @param savedBytes the number of bytes.
+    */
+   public void recordBytesSaved(final long savedBytes) {
+      bytesSaved.add(savedBytes);
+   }
+
+   /**
+    * Records that a link was not queued or not parsed because the {@link FetchPolicy} found it is no page, e.g. by
+    * its extension or Content-Type, or its body is too large.
+    */
+   public void recordSkippedResource() {
+      skippedResourceCount.increment();
+   }
+
+   /**
+    * Records that a page was parsed only up to the maximum body size of the {@link FetchPolicy}.
+    */
+   public void recordTruncatedBody() {
+      truncatedBodyCount.increment();
+   }
+
+   /**
+    * Records that a downloaded page was compared with the {@link SimHashStore}.
+    *
+    * @param unchanged true if the page had not changed.
+    */
+   public void recordChangeCheck(final boolean unchanged) {
+      changeCheckCount.increment();
+      if (unchanged) {
+         unchangedPageCount.increment();
       }
-      totalRequestCount++;
    }
 
-   public int getSuccessfulRequestCount() {
-      return successfulRequestCount;
+   public long getSuccessfulRequestCount() {
+      return successfulRequestCount.sum();
+   }
+
+   public long getFailedRequestCount() {
+      return failedRequestCount.sum();
+   }
+
+   public long getTotalRequestCount() {
+      return successfulRequestCount.sum() + failedRequestCount.sum();
+   }
+
+   public long getBytesDownloaded() {
+      return bytesDownloaded.sum();
    }
 
-   public int getFailedRequestCount() {
-      return failedRequestCount;
+   public long getValidatorCacheHitCount() {
+      return validatorCacheHitCount.sum();
    }
 
-   public int getTotalRequestCount() {
-      return totalRequestCount;
+   public long getValidatorCacheMissCount() {
+      return validatorCacheMissCount.sum();
+   }
+
+   public long getBodyStoreReadCount() {
+      return bodyStoreReadCount.sum();
+   }
+
+   public long getRetryCount() {
+      return retryCount.sum();
+   }
+
+   public long getCircuitBreakerTripCount() {
+      return circuitBreakerTripCount.sum();
+   }
+
+   public long getCircuitBreakerRejectCount() {
+      return circuitBreakerRejectCount.sum();
+   }
+
+   public long getBudgetRejectCount() {
+      return budgetRejectCount.sum();
+   }
+
+   public long getTrapRejectCount() {
+      return trapRejectCount.sum();
+   }
+
+   public long getChangeCheckCount() {
+      return changeCheckCount.sum();
+   }
+
+   public long getUnchangedPageCount() {
+      return unchangedPageCount.sum();
+   }
+
+   public long getBytesSaved() {
+      return bytesSaved.sum();
+   }
+
+   public long getSkippedResourceCount() {
+      return skippedResourceCount.sum();
+   }
+
+   public long getTruncatedBodyCount() {
+      return truncatedBodyCount.sum();
+   }
+
+   /**
+    * @return the percentage of the pages compared with the {@link SimHashStore} which had not changed, or 0 if no
+    *     page was compared.
+    */
+   public double getUnchangedPagePercentage() {
+      final long checked = changeCheckCount.sum();
+      return checked == 0 ? 0 : 100.0 * unchangedPageCount.sum() / checked;
+   }
+
+   /**
+    * @return the number of responses received per HTTP status code, sorted by status code.
+    */
+   public Map<Integer, Long> getStatusCodeCounts() {
+      return snapshot(statusCodeCounts);
+   }
+
+   /**
+    * @return the number of responses received per host, sorted by host.
+    */
+   public Map<String, Long> getHostCounts() {
+      return snapshot(hostCounts);
+   }
+
+   public LatencyHistogram getFetchLatency() {
+      return fetchLatency;
+   }
+
+   public LatencyHistogram getParseLatency() {
+      return parseLatency;
    }
 
    public long getCrawlTimeMillis() {
@@ -50,12 +317,136 @@ public class CrawlerStats {
       this.crawlTimeMillis = crawlTimeMillis;
    }
 
+   /**
+    * Adds the counts and durations of another crawl, e.g. one run by another process of a distributed crawl.  The
+    * crawl time becomes the longer of the two.
+    *
+    * @param other the stats to add.
+    */
+   public void add(final CrawlerStats other) {
+      final LongAdder[] counters = getCounters();
+      final LongAdder[] otherCounters = other.getCounters();
+      for (int i = 0; i < counters.length; i++) {
+         counters[i].add(otherCounters[i].sum());
+      }
+      for (final Map.Entry<Integer, LongAdder> count : other.statusCodeCounts.entrySet()) {
+         statusCodeCounts.computeIfAbsent(count.getKey(), k -> new LongAdder()).add(count.getValue().sum());
+      }
+      for (final Map.Entry<String, LongAdder> count : other.hostCounts.entrySet()) {
+         hostCounts.computeIfAbsent(count.getKey(), k -> new LongAdder()).add(count.getValue().sum());
+      }
+      fetchLatency.add(other.fetchLatency);
+      parseLatency.add(other.parseLatency);
+      crawlTimeMillis = Math.max(crawlTimeMillis, other.crawlTimeMillis);
+   }
+
+   /**
+    * Writes all counts and durations.
+    *
+    * @param out the stream to write to.
+    * @throws IOException if writing fails.
+    */
+   public void writeTo(final DataOutputStream out) throws IOException {
+      final LongAdder[] counters = getCounters();
+      out.writeByte(counters.length);
+      for (final LongAdder counter : counters) {
+         out.writeLong(counter.sum());
+      }
+      out.writeLong(crawlTimeMillis);
+      final Map<Integer, Long> statusCodes = getStatusCodeCounts();
+      out.writeInt(statusCodes.size());
+      for (final Map.Entry<Integer, Long> count : statusCodes.entrySet()) {
+         out.writeInt(count.getKey());
+         out.writeLong(count.getValue());
+      }
+      final Map<String, Long> hosts = getHostCounts();
+      out.writeInt(hosts.size());
+      for (final Map.Entry<String, Long> count : hosts.entrySet()) {
+         out.writeUTF(count.getKey());
+         out.writeLong(count.getValue());
+      }
+      fetchLatency.writeTo(out);
+      parseLatency.writeTo(out);
+   }
+
+   /**
+    * @param in a stream holding stats written by {@link #writeTo(DataOutputStream)}.
+    * @return the stats.
+    * @throws IOException if reading fails or the stats were written by a different version.
+    */
+   public static CrawlerStats readFrom(final DataInputStream in) throws IOException {
+      final CrawlerStats stats = new CrawlerStats();
+      final LongAdder[] counters = stats.getCounters();
+      final int counterCount = in.readByte();
+      if (counterCount != counters.length) {
+         throw new IOException("Expected " + counters.length + " counters but got " + counterCount);
+      }
+      for (final LongAdder counter : counters) {
+         counter.add(in.readLong());
+      }
+      stats.crawlTimeMillis = in.readLong();
+      final int statusCodeCount = in.readInt();
+      for (int i = 0; i < statusCodeCount; i++) {
+         stats.statusCodeCounts.computeIfAbsent(in.readInt(), k -> new LongAdder()).add(in.readLong());
+      }
+      final int hostCount = in.readInt();
+      for (int i = 0; i < hostCount; i++) {
+         stats.hostCounts.computeIfAbsent(in.readUTF(), k -> new LongAdder()).add(in.readLong());
+      }
+      stats.fetchLatency.add(LatencyHistogram.readFrom(in));
+      stats.parseLatency.add(LatencyHistogram.readFrom(in));
+      return stats;
+   }
+
+   /**
+    * @return every counter, in the order they are written by {@link #writeTo(DataOutputStream)}.
+    */
+   private LongAdder[] getCounters() {
+      return new LongAdder[] {successfulRequestCount, failedRequestCount, bytesDownloaded, validatorCacheHitCount,
+          validatorCacheMissCount, bodyStoreReadCount, retryCount, circuitBreakerTripCount, circuitBreakerRejectCount,
+          budgetRejectCount, trapRejectCount, changeCheckCount, unchangedPageCount, bytesSaved, skippedResourceCount,
+          truncatedBodyCount};
+   }
+
+   private static <K> void increment(final ConcurrentMap<K, LongAdder> counts, final K key) {
+      LongAdder count = counts.get(key);
+      if (count == null) {
+         count = counts.computeIfAbsent(key, k -> new LongAdder());
+      }
+      count.increment();
+   }
+
+   private static <K> Map<K, Long> snapshot(final ConcurrentMap<K, LongAdder> counts) {
+      final Map<K, Long> snapshot = new TreeMap<>();
+      for (final Map.Entry<K, LongAdder> count : counts.entrySet()) {
+         snapshot.put(count.getKey(), count.getValue().sum());
+      }
+      return snapshot;
+   }
+
    @Override
    public String toString() {
       return "\n"
-          + "  Total number of requests performed:  " + totalRequestCount + "\n"
+          + "  Total number of requests performed:  " + getTotalRequestCount() + "\n"
           + "  Total number of successful requests: " + successfulRequestCount + "\n"
           + "  Total number of failed requests:     " + failedRequestCount + "\n"
-          + "  Elapsed time for crawl (seconds):    " + TimeUnit.MILLISECONDS.toSeconds(crawlTimeMillis);
+          + "  Elapsed time for crawl (seconds):    " + TimeUnit.MILLISECONDS.toSeconds(crawlTimeMillis) + "\n"
+          + "  Responses by status code:            " + getStatusCodeCounts() + "\n"
+          + "  Number of hosts requested:           " + hostCounts.size() + "\n"
+          + "  Kilobytes downloaded:                " + bytesDownloaded.sum() / 1024 + "\n"
+          + "  Kilobytes saved by the fetch policy: " + bytesSaved.sum() / 1024 + "\n"
+          + "  Resources skipped / truncated:       " + skippedResourceCount + " / " + truncatedBodyCount + "\n"
+          + "  Validator cache hits / misses:       " + validatorCacheHitCount + " / " + validatorCacheMissCount
+          + "\n"
+          + "  Pages read from body store:          " + bodyStoreReadCount + "\n"
+          + "  Retries scheduled:                   " + retryCount + "\n"
+          + "  Circuit breaker trips / rejects:     " + circuitBreakerTripCount + " / " + circuitBreakerRejectCount
+          + "\n"
+          + "  Links over the crawl budget:         " + budgetRejectCount + "\n"
+          + "  Links rejected as crawler traps:     " + trapRejectCount + "\n"
+          + "  Unchanged pages:                     " + unchangedPageCount + " of " + changeCheckCount
+          + String.format(" (%.1f%%)", getUnchangedPagePercentage()) + "\n"
+          + "  Fetch time:                          " + fetchLatency + "\n"
+          + "  Parse time:                          " + parseLatency;
    }
 }
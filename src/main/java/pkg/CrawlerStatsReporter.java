@@ -0,0 +1,99 @@
+package pkg;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class logs the progress of a running crawl at a fixed interval: the pages crawled per second since the last
+ * report and since the start, the number of queued links, the bytes downloaded, the fetch time percentiles and the
+ * limit of a {@link ConcurrencyLimiter}, if one is used.
+ * Reports are made from a single daemon thread which only reads {@link CrawlerStats}, so reporting never slows the
+ * crawl workers down.
+ */
+public class CrawlerStatsReporter implements Closeable {
+
+   private static final Logger LOG = LoggerFactory.getLogger(CrawlerStatsReporter.class);
+
+   private final CrawlerStats crawlerStats;
+
+   private final IntSupplier queueSize;
+
+   private final IntSupplier concurrencyLimit;
+
+   private final long startNanos = System.nanoTime();
+
+   private final long initialRequestCount;
+
+   private final ScheduledExecutorService executor;
+
+   private long lastReportNanos = startNanos;
+
+   private long lastRequestCount;
+
+   /**
+    * Starts reporting.
+    *
+    * @param crawlerStats statistics of the crawl.
+    * @param queueSize returns the number of links waiting to be crawled.
+    * @param intervalMillis time between reports.
+    */
+   public CrawlerStatsReporter(final CrawlerStats crawlerStats, final IntSupplier queueSize,
+       final long intervalMillis) {
+      this(crawlerStats, queueSize, null, intervalMillis);
+   }
+
+   /**
+    * Starts reporting.
+    *
+    * @param crawlerStats statistics of the crawl.
+    * @param queueSize returns the number of links waiting to be crawled.
+    * @param concurrencyLimit returns the number of requests allowed in flight, or null if there is no limit.
+    * @param intervalMillis time between reports.
+    */
+   public CrawlerStatsReporter(final CrawlerStats crawlerStats, final IntSupplier queueSize,
+       final IntSupplier concurrencyLimit, final long intervalMillis) {
+      this.crawlerStats = crawlerStats;
+      this.queueSize = queueSize;
+      this.concurrencyLimit = concurrencyLimit;
+      this.initialRequestCount = crawlerStats.getTotalRequestCount();
+      this.lastRequestCount = initialRequestCount;
+      this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+         final Thread thread = new Thread(runnable, "crawler-stats-reporter");
+         thread.setDaemon(true);
+         return thread;
+      });
+      executor.scheduleAtFixedRate(this::report, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Stops reporting.
+    */
+   @Override
+   public void close() {
+      executor.shutdownNow();
+   }
+
+   private void report() {
+      final long nowNanos = System.nanoTime();
+      final long requestCount = crawlerStats.getTotalRequestCount();
+      final double intervalSeconds = Math.max(1, nowNanos - lastReportNanos) / 1e9;
+      final double totalSeconds = Math.max(1, nowNanos - startNanos) / 1e9;
+      final LatencyHistogram fetchLatency = crawlerStats.getFetchLatency();
+      LOG.info(String.format("Crawled %d pages, %.1f pages/s (%.1f overall), %d queued, %d KB downloaded, "
+              + "fetch p50 %.1f ms, p99 %.1f ms", requestCount, (requestCount - lastRequestCount) / intervalSeconds,
+          (requestCount - initialRequestCount) / totalSeconds, queueSize.getAsInt(),
+          crawlerStats.getBytesDownloaded() / 1024, fetchLatency.getPercentileMicros(50) / 1000.0,
+          fetchLatency.getPercentileMicros(99) / 1000.0)
+          + (concurrencyLimit == null ? "" : ", concurrency limit " + concurrencyLimit.getAsInt()));
+      lastReportNanos = nowNanos;
+      lastRequestCount = requestCount;
+   }
+}
@@ -0,0 +1,330 @@
+package pkg;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class rejects links which look like crawler traps, infinite spaces of URLs such as calendars, session IDs in
+ * the URL or relative links which repeat path segments like /a/b/a/b/a/b.  Each URL is checked for its length, the
+ * number of its path segments, how often one path segment repeats and the number of its query parameters.  In
+ * addition the URLs of each host are grouped by path template, the path and query parameter names with digits
+ * replaced by '#' and long tokens such as session IDs by '*', e.g. "/calendar?day=2024-05-17" and
+ * "/calendar?day=2024-05-18" both have the template "/calendar?day=".  Once maxUrlsPerTemplate distinct URLs of a
+ * template have been accepted, further URLs of it are rejected.  The counts are kept per 64 bit
+ * {@link UrlFingerprint} of the host and template in a table of primitives, since for URLs without digits the
+ * template is the whole path and there is about one template per accepted URL.
+ * Every URL passed to {@link #accept(String)} is counted as distinct, so it must only be called for URLs which are
+ * neither queued, visited nor rejected before.  This class is not thread safe; {@link Crawler} only uses it while
+ * holding its frontier lock.
+ */
+public class CrawlerTrapDetector {
+
+   public static final int DEFAULT_MAX_URL_LENGTH = 512;
+
+   public static final int DEFAULT_MAX_PATH_DEPTH = 16;
+
+   public static final int DEFAULT_MAX_SEGMENT_REPEATS = 2;
+
+   public static final int DEFAULT_MAX_QUERY_PARAMETERS = 10;
+
+   public static final int DEFAULT_MAX_URLS_PER_TEMPLATE = 10000;
+
+   /**
+    * Path segments and query parameter names at least this long which contain a digit are taken for tokens.
+    */
+   private static final int TOKEN_LENGTH = 16;
+
+   /**
+    * The reasons for which a link is rejected.
+    */
+   public enum Reason {
+      URL_LENGTH, PATH_DEPTH, REPEATED_SEGMENT, QUERY_PARAMETERS, TEMPLATE
+   }
+
+   private final int maxUrlLength;
+
+   private final int maxPathDepth;
+
+   private final int maxSegmentRepeats;
+
+   private final int maxQueryParameters;
+
+   private final int maxUrlsPerTemplate;
+
+   /**
+    * Number of URLs accepted per host and path template, keyed by the fingerprint of host + template.
+    */
+   private final TemplateCounts templateCounts = new TemplateCounts();
+
+   private final long[] rejectCounts = new long[Reason.values().length];
+
+   public CrawlerTrapDetector() {
+      this(DEFAULT_MAX_URL_LENGTH, DEFAULT_MAX_PATH_DEPTH, DEFAULT_MAX_SEGMENT_REPEATS, DEFAULT_MAX_QUERY_PARAMETERS,
+          DEFAULT_MAX_URLS_PER_TEMPLATE);
+   }
+
+   /**
+    * @param maxUrlLength maximum number of characters of a URL.
+    * @param maxPathDepth maximum number of path segments of a URL.
+    * @param maxSegmentRepeats maximum number of times the same path segment may occur in a path.
+    * @param maxQueryParameters maximum number of query parameters of a URL.
+    * @param maxUrlsPerTemplate maximum number of URLs accepted per host and path template.
+    */
+   public CrawlerTrapDetector(final int maxUrlLength, final int maxPathDepth, final int maxSegmentRepeats,
+       final int maxQueryParameters, final int maxUrlsPerTemplate) {
+      if (maxUrlLength < 1 || maxPathDepth < 1 || maxSegmentRepeats < 1 || maxQueryParameters < 0
+          || maxUrlsPerTemplate < 1) {
+         throw new IllegalArgumentException("Limits must be at least 1, maxQueryParameters at least 0");
+      }
+      this.maxUrlLength = maxUrlLength;
+      this.maxPathDepth = maxPathDepth;
+      this.maxSegmentRepeats = maxSegmentRepeats;
+      this.maxQueryParameters = maxQueryParameters;
+      this.maxUrlsPerTemplate = maxUrlsPerTemplate;
+   }
+
+   /**
+    * Checks a new link and counts it against its path template if it is accepted.
+    *
+    * @param link String representing an absolute URL which is neither queued nor visited.
+    * @return null if the link may be queued, otherwise the reason it was rejected.
+    */
+   public Reason accept(final String link) {
+      final Reason reason = check(link);
+      if (reason != null) {
+         rejectCounts[reason.ordinal()]++;
+      }
+      return reason;
+   }
+
+   /**
+    * @return the number of links rejected for the reason.
+    */
+   public long getRejectCount(final Reason reason) {
+      return rejectCounts[reason.ordinal()];
+   }
+
+   /**
+    * @return the number of links rejected for any reason.
+    */
+   public long getRejectCount() {
+      long rejectCount = 0;
+      for (final long count : rejectCounts) {
+         rejectCount += count;
+      }
+      return rejectCount;
+   }
+
+   /**
+    * @return the path template of the URL, without its host, e.g. "/archive/#/*?page=" for
+    *         "http://www.test.com/archive/2024/a1b2c3d4e5f6a7b8c9?page=3".
+    */
+   public static String getTemplate(final String link) {
+      final int pathStart = getPathStart(link);
+      final int queryStart = link.indexOf('?', pathStart);
+      final StringBuilder template = new StringBuilder(link.length() - pathStart);
+      final String path = link.substring(pathStart, queryStart < 0 ? link.length() : queryStart);
+      final String[] segments = path.split("/", -1);
+      for (int i = 0; i < segments.length; i++) {
+         if (i > 0) {
+            template.append('/');
+         }
+         final int parametersStart = segments[i].indexOf(';');
+         appendTemplate(template, parametersStart < 0 ? segments[i] : segments[i].substring(0, parametersStart));
+      }
+      if (queryStart >= 0) {
+         final List<String> names = new ArrayList<>();
+         for (final String parameter : link.substring(queryStart + 1).split("&")) {
+            final int valueStart = parameter.indexOf('=');
+            final StringBuilder name = new StringBuilder();
+            appendTemplate(name, valueStart < 0 ? parameter : parameter.substring(0, valueStart));
+            names.add(name.toString());
+         }
+         Collections.sort(names);
+         template.append('?').append(String.join("=&", names)).append('=');
+      }
+      return template.toString();
+   }
+
+   @Override
+   public String toString() {
+      final StringBuilder s = new StringBuilder("CrawlerTrapDetector[templates=").append(templateCounts.size)
+          .append(", templateBytes=").append(templateCounts.getMemoryUsageBytes());
+      for (final Reason reason : Reason.values()) {
+         s.append(", ").append(reason).append('=').append(rejectCounts[reason.ordinal()]);
+      }
+      return s.append(']').toString();
+   }
+
+   private Reason check(final String link) {
+      if (link.length() > maxUrlLength) {
+         return Reason.URL_LENGTH;
+      }
+      final int pathStart = getPathStart(link);
+      final int queryStart = link.indexOf('?', pathStart);
+      final List<String> segments = getPathSegments(link, pathStart, queryStart);
+      if (segments.size() > maxPathDepth) {
+         return Reason.PATH_DEPTH;
+      }
+      final Map<String, Integer> segmentCounts = new HashMap<>();
+      for (final String segment : segments) {
+         if (!segment.isEmpty() && segmentCounts.merge(segment, 1, Integer::sum) > maxSegmentRepeats) {
+            return Reason.REPEATED_SEGMENT;
+         }
+      }
+      if (queryStart >= 0 && countQueryParameters(link, queryStart) > maxQueryParameters) {
+         return Reason.QUERY_PARAMETERS;
+      }
+      final long key = UrlFingerprint.fingerprint(link.substring(0, pathStart) + getTemplate(link));
+      if (!templateCounts.incrementBelow(key, maxUrlsPerTemplate)) {
+         return Reason.TEMPLATE;
+      }
+      return null;
+   }
+
+   /**
+    * This class maps template fingerprints to counts in parallel open addressing tables of primitives with linear
+    * probing, about 17 bytes per template instead of the Strings, boxed Integers and entries of a HashMap.  The
+    * fingerprint 0 marks an empty slot; a template which hashes to 0 is stored as 1.  Entries are never removed.
+    */
+   private static class TemplateCounts {
+
+      private static final double MAX_LOAD_FACTOR = 0.7;
+
+      private long[] keys = new long[1024];
+
+      private int[] counts = new int[1024];
+
+      private int size;
+
+      /**
+       * Adds one to the count of the fingerprint unless it has reached the limit.
+       *
+       * @return true if the count was below limit and was incremented.
+       */
+      private boolean incrementBelow(final long fingerprint, final int limit) {
+         final long key = fingerprint == 0 ? 1 : fingerprint;
+         final int mask = keys.length - 1;
+         int index = indexOf(key, mask);
+         while (keys[index] != 0 && keys[index] != key) {
+            index = (index + 1) & mask;
+         }
+         if (keys[index] == key) {
+            if (counts[index] >= limit) {
+               return false;
+            }
+            counts[index]++;
+            return true;
+         }
+         keys[index] = key;
+         counts[index] = 1;
+         if (++size > keys.length * MAX_LOAD_FACTOR) {
+            resize(keys.length << 1);
+         }
+         return true;
+      }
+
+      private long getMemoryUsageBytes() {
+         return 12L * keys.length;
+      }
+
+      private static int indexOf(final long key, final int mask) {
+         return (int) (key ^ (key >>> 32)) & mask;
+      }
+
+      private void resize(final int capacity) {
+         final long[] oldKeys = keys;
+         final int[] oldCounts = counts;
+         keys = new long[capacity];
+         counts = new int[capacity];
+         final int mask = capacity - 1;
+         for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+               int index = indexOf(oldKeys[i], mask);
+               while (keys[index] != 0) {
+                  index = (index + 1) & mask;
+               }
+               keys[index] = oldKeys[i];
+               counts[index] = oldCounts[i];
+            }
+         }
+      }
+   }
+
+   /**
+    * @return the index of the path of the URL, i.e. the end of its scheme and host.
+    */
+   private static int getPathStart(final String link) {
+      final int schemeEnd = link.indexOf("://");
+      final int hostStart = schemeEnd < 0 ? 0 : schemeEnd + 3;
+      for (int i = hostStart; i < link.length(); i++) {
+         final char c = link.charAt(i);
+         if (c == '/' || c == '?') {
+            return i;
+         }
+      }
+      return link.length();
+   }
+
+   /**
+    * @return the segments of the path from pathStart to queryStart, or to the end if queryStart is negative, with
+    *         path parameters such as ";jsessionid=..." removed.
+    */
+   private static List<String> getPathSegments(final String link, final int pathStart, final int queryStart) {
+      final List<String> segments = new ArrayList<>();
+      final int pathEnd = queryStart < 0 ? link.length() : queryStart;
+      int segmentStart = pathStart + 1;
+      while (segmentStart <= pathEnd) {
+         int segmentEnd = link.indexOf('/', segmentStart);
+         if (segmentEnd < 0 || segmentEnd > pathEnd) {
+            segmentEnd = pathEnd;
+         }
+         final int parametersStart = link.indexOf(';', segmentStart);
+         segments.add(link.substring(segmentStart,
+             parametersStart >= 0 && parametersStart < segmentEnd ? parametersStart : segmentEnd));
+         segmentStart = segmentEnd + 1;
+      }
+      if (!segments.isEmpty() && segments.get(segments.size() - 1).isEmpty()) {
+         segments.remove(segments.size() - 1);
+      }
+      return segments;
+   }
+
+   private static int countQueryParameters(final String link, final int queryStart) {
+      int count = 1;
+      for (int i = queryStart + 1; i < link.length(); i++) {
+         if (link.charAt(i) == '&') {
+            count++;
+         }
+      }
+      return count;
+   }
+
+   /**
+    * Appends the part with runs of digits replaced by '#', or '*' if it looks like a token.
+    */
+   private static void appendTemplate(final StringBuilder template, final String part) {
+      boolean hasDigit = false;
+      for (int i = 0; i < part.length() && !hasDigit; i++) {
+         hasDigit = Character.isDigit(part.charAt(i));
+      }
+      if (hasDigit && part.length() >= TOKEN_LENGTH) {
+         template.append('*');
+         return;
+      }
+      for (int i = 0; i < part.length(); i++) {
+         final char c = part.charAt(i);
+         if (!Character.isDigit(c)) {
+            template.append(c);
+         }
+         else if (i == 0 || !Character.isDigit(part.charAt(i - 1))) {
+            template.append('#');
+         }
+      }
+   }
+}
@@ -0,0 +1,277 @@
+package pkg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class caches the addresses of host names for {@link Crawler}, so a crawl over thousands of hosts does not
+ * wait for a DNS lookup in front of every first request to a host.  Addresses are kept for ttlMillis, and host names
+ * which do not resolve for negativeTtlMillis, so links to a dead host fail at once.  {@link #prefetch(String)}
+ * resolves a host on a small pool of background threads, which {@link Crawler} does when a new host is queued, and
+ * {@link #resolve(String)} waits for a prefetch still in progress instead of starting a second lookup.  A prefetch
+ * still waiting for a thread is taken over by {@link #resolve(String)}, which looks the host up itself rather than
+ * waiting behind the other queued prefetches, and each host is looked up by one thread at a time.
+ * The lookups are made by a {@link Resolver}, by default {@link InetAddress#getAllByName(String)}, which also fills
+ * the JVM's own address cache used by {@link HttpPageFetcher}; the JVM keeps addresses for the time set by the
+ * networkaddress.cache.ttl security property.
+ * All methods may be called from several crawler workers at the same time.
+ */
+public class DnsCache implements Closeable {
+
+   /**
+    * Maximum number of prefetches waiting for a thread; further prefetches are dropped.
+    */
+   private static final int PREFETCH_QUEUE_CAPACITY = 10000;
+
+   private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+
+   /**
+    * This interface looks up the addresses of a host name.
+    */
+   public interface Resolver {
+
+      /**
+       * Resolves host names with {@link InetAddress#getAllByName(String)}.
+       */
+      Resolver SYSTEM = InetAddress::getAllByName;
+
+      /**
+       * @param host the host name to look up.
+       * @return the addresses of the host.
+       * @throws UnknownHostException if the host name does not resolve.
+       */
+      InetAddress[] resolve(String host) throws UnknownHostException;
+   }
+
+   private final Resolver resolver;
+
+   private final long ttlNanos;
+
+   private final long negativeTtlNanos;
+
+   private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+   private final ThreadPoolExecutor prefetchExecutor;
+
+   private final LongAdder hitCount = new LongAdder();
+
+   private final LongAdder missCount = new LongAdder();
+
+   private final LongAdder prefetchCount = new LongAdder();
+
+   private final LatencyHistogram lookupLatency = new LatencyHistogram();
+
+   /**
+    * This class holds the lookup of one host name, which is in progress until its future is done.  The lookup is
+    * made by the thread which sets started, so a queued prefetch and a resolve never both look the host up.
+    */
+   private static class Entry {
+
+      private final CompletableFuture<InetAddress[]> future = new CompletableFuture<>();
+
+      private final AtomicBoolean started = new AtomicBoolean();
+
+      private volatile long expiresAtNanos;
+
+      private boolean isValid(final long nowNanos) {
+         return !future.isDone() || expiresAtNanos - nowNanos > 0;
+      }
+   }
+
+   /**
+    * @param resolver looks up host names, e.g. {@link Resolver#SYSTEM}.
+    * @param ttlMillis time the addresses of a host are kept.
+    * @param negativeTtlMillis time a host name which does not resolve is kept.
+    * @param prefetchThreadCount number of threads resolving host names in the background.
+    */
+   public DnsCache(final Resolver resolver, final long ttlMillis, final long negativeTtlMillis,
+       final int prefetchThreadCount) {
+      if (ttlMillis < 0 || negativeTtlMillis < 0 || prefetchThreadCount < 1) {
+         throw new IllegalArgumentException("TTLs must not be negative and prefetchThreadCount must be at least 1");
+      }
+      this.resolver = resolver;
+      this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+      this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+      final String poolName = "dns-prefetch-" + POOL_NUMBER.getAndIncrement() + "-";
+      final AtomicInteger threadNumber = new AtomicInteger(1);
+      this.prefetchExecutor = new ThreadPoolExecutor(prefetchThreadCount, prefetchThreadCount, 0,
+          TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(PREFETCH_QUEUE_CAPACITY), runnable -> {
+             final Thread thread = new Thread(runnable, poolName + threadNumber.getAndIncrement());
+             thread.setDaemon(true);
+             return thread;
+          });
+   }
+
+   /**
+    * This method returns the addresses of a host, from the cache if they were looked up less than ttlMillis ago.
+    *
+    * @param host the host name to resolve.
+    * @return the addresses of the host.
+    * @throws UnknownHostException if the host name does not resolve, now or when last looked up.
+    * @throws InterruptedIOException if interrupted while waiting for a prefetch of the host.
+    */
+   public InetAddress[] resolve(final String host) throws IOException {
+      while (true) {
+         final Entry entry = entries.get(host);
+         if (entry != null && entry.isValid(System.nanoTime())) {
+            // take over a prefetch which is still waiting for a thread
+            if (lookup(host, entry)) {
+               missCount.increment();
+            }
+            else {
+               hitCount.increment();
+            }
+            return getAddresses(host, entry);
+         }
+         final Entry newEntry = new Entry();
+         if (entry == null ? entries.putIfAbsent(host, newEntry) == null : entries.replace(host, entry, newEntry)) {
+            missCount.increment();
+            lookup(host, newEntry);
+            return getAddresses(host, newEntry);
+         }
+         // another thread added an entry first, use that one
+      }
+   }
+
+   /**
+    * Starts resolving a host in the background unless it is cached or already being resolved.  The prefetch is
+    * dropped if too many are waiting.
+    *
+    * @param host the host name to resolve.
+    */
+   public void prefetch(final String host) {
+      final Entry entry = entries.get(host);
+      if (entry != null && entry.isValid(System.nanoTime())) {
+         return;
+      }
+      final Entry newEntry = new Entry();
+      if (entry == null ? entries.putIfAbsent(host, newEntry) != null : !entries.replace(host, entry, newEntry)) {
+         return;
+      }
+      try {
+         prefetchExecutor.execute(() -> lookup(host, newEntry));
+         prefetchCount.increment();
+      }
+      catch (final RejectedExecutionException e) {
+         if (newEntry.started.compareAndSet(false, true)) {
+            entries.remove(host, newEntry);
+            newEntry.future.completeExceptionally(e);
+         }
+      }
+   }
+
+   /**
+    * @return the number of host names in the cache, including expired ones not yet looked up again.
+    */
+   public int size() {
+      return entries.size();
+   }
+
+   public long getHitCount() {
+      return hitCount.sum();
+   }
+
+   public long getMissCount() {
+      return missCount.sum();
+   }
+
+   /**
+    * @return the percentage of {@link #resolve(String)} calls answered from the cache, or 0 if there was none.
+    */
+   public double getHitPercentage() {
+      final long hits = hitCount.sum();
+      final long total = hits + missCount.sum();
+      return total == 0 ? 0 : 100.0 * hits / total;
+   }
+
+   public long getPrefetchCount() {
+      return prefetchCount.sum();
+   }
+
+   /**
+    * @return the latency of the lookups made by the {@link Resolver}, in the background or not.
+    */
+   public LatencyHistogram getLookupLatency() {
+      return lookupLatency;
+   }
+
+   /**
+    * Stops the prefetch threads.
+    */
+   @Override
+   public void close() {
+      prefetchExecutor.shutdownNow();
+   }
+
+   @Override
+   public String toString() {
+      return "DnsCache[hosts=" + entries.size() + ", hits=" + hitCount + ", misses=" + missCount
+          + String.format(", hit rate=%.1f%%", getHitPercentage()) + ", prefetches=" + prefetchCount
+          + ", lookup time " + lookupLatency + "]";
+   }
+
+   /**
+    * Looks up the host with the resolver and completes the entry, unless another thread started its lookup.  A host
+    * which does not resolve is cached for negativeTtlNanos; an entry whose lookup failed otherwise is removed, so the
+    * next call looks the host up again.
+    *
+    * @return true if this thread looked the host up.
+    */
+   private boolean lookup(final String host, final Entry entry) {
+      if (!entry.started.compareAndSet(false, true)) {
+         return false;
+      }
+      final long startNanos = System.nanoTime();
+      try {
+         final InetAddress[] addresses = resolver.resolve(host);
+         entry.expiresAtNanos = System.nanoTime() + ttlNanos;
+         entry.future.complete(addresses);
+      }
+      catch (final UnknownHostException e) {
+         entry.expiresAtNanos = System.nanoTime() + negativeTtlNanos;
+         entry.future.completeExceptionally(e);
+      }
+      catch (final RuntimeException e) {
+         entries.remove(host, entry);
+         entry.future.completeExceptionally(e);
+      }
+      finally {
+         lookupLatency.record(System.nanoTime() - startNanos);
+      }
+      return true;
+   }
+
+   private static InetAddress[] getAddresses(final String host, final Entry entry) throws IOException {
+      try {
+         return entry.future.get();
+      }
+      catch (final InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while resolving " + host);
+      }
+      catch (final ExecutionException e) {
+         if (e.getCause() instanceof UnknownHostException) {
+            final UnknownHostException unknownHostException = new UnknownHostException(e.getCause().getMessage());
+            unknownHostException.initCause(e.getCause());
+            throw unknownHostException;
+         }
+         throw new IOException("Unable to resolve " + host, e.getCause());
+      }
+   }
+}
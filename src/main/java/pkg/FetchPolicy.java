@@ -0,0 +1,184 @@
+package pkg;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class decides what {@link HttpPageFetcher} and {@link Crawler} download, so bandwidth is not spent on
+ * resources the crawler cannot parse.  Links whose file extension shows they are not pages, e.g. ".pdf" or ".zip",
+ * are dropped before they are queued.  Responses are requested gzip or deflate compressed and decompressed while
+ * they are read; a response whose Content-Type is not text, XML or JSON is dropped as soon as its headers arrive,
+ * without reading the body.  Bodies are cut off after maxBodyBytes decompressed bytes, and then either parsed as far
+ * as they go or, if truncateLargeBodies is false, skipped with a {@link BodyTooLargeException}.
+ */
+public class FetchPolicy {
+
+   public static final long DEFAULT_MAX_BODY_BYTES = 5 * 1024 * 1024;
+
+   /**
+    * Extensions of links which are not crawled, in lower case without the dot.
+    */
+   public static final Set<String> DEFAULT_SKIPPED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(
+       Arrays.asList("7z", "apk", "avi", "bin", "bmp", "bz2", "css", "dmg", "doc", "docx", "eot", "exe", "flac", "gif",
+       "gz", "ico", "iso", "jar", "jpeg", "jpg", "js", "m4a", "mkv", "mov", "mp3", "mp4", "mpeg", "msi", "ogg", "otf",
+       "pdf", "png", "ppt", "pptx", "rar", "svg", "tar", "tgz", "tif", "tiff", "ttf", "wav", "webm", "webp", "woff",
+       "woff2", "xls", "xlsx", "xz", "zip")));
+
+   /**
+    * Value of the Accept-Encoding header sent with every request.
+    */
+   public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+   /**
+    * This {@link InflaterInputStream} ends its {@link Inflater} when it is closed, which InflaterInputStream only
+    * does for an inflater it created itself, so the native memory of the inflater is freed at once rather than when
+    * the garbage collector gets to it.
+    */
+   public static final class DeflateInputStream extends InflaterInputStream {
+
+      private DeflateInputStream(final InputStream in, final boolean zlib) {
+         super(in, new Inflater(!zlib), 8192);
+      }
+
+      public Inflater getInflater() {
+         return inf;
+      }
+
+      @Override
+      public void close() throws IOException {
+         try {
+            super.close();
+         }
+         finally {
+            inf.end();
+         }
+      }
+   }
+
+   private final long maxBodyBytes;
+
+   private final boolean truncateLargeBodies;
+
+   private final Set<String> skippedExtensions;
+
+   /**
+    * Creates a policy which truncates bodies after {@link #DEFAULT_MAX_BODY_BYTES} and skips the
+    * {@link #DEFAULT_SKIPPED_EXTENSIONS}.
+    */
+   public FetchPolicy() {
+      this(DEFAULT_MAX_BODY_BYTES, true, DEFAULT_SKIPPED_EXTENSIONS);
+   }
+
+   /**
+    * @param maxBodyBytes maximum number of decompressed bytes read of a response body.
+    * @param truncateLargeBodies true to parse the first maxBodyBytes of a larger body, false to skip it.
+    * @param skippedExtensions extensions of links which are not crawled, without the dot; case insensitive.
+    */
+   public FetchPolicy(final long maxBodyBytes, final boolean truncateLargeBodies,
+       final Collection<String> skippedExtensions) {
+      if (maxBodyBytes < 1) {
+         throw new IllegalArgumentException("maxBodyBytes must be at least 1: " + maxBodyBytes);
+      }
+      this.maxBodyBytes = maxBodyBytes;
+      this.truncateLargeBodies = truncateLargeBodies;
+      this.skippedExtensions = new HashSet<>();
+      for (final String extension : skippedExtensions) {
+         this.skippedExtensions.add(extension.toLowerCase(Locale.ROOT));
+      }
+   }
+
+   public long getMaxBodyBytes() {
+      return maxBodyBytes;
+   }
+
+   public boolean isTruncateLargeBodies() {
+      return truncateLargeBodies;
+   }
+
+   /**
+    * @param link String representing an absolute URL.
+    * @return true if the last path segment of the URL ends with a skipped extension, e.g. "/files/report.PDF".
+    */
+   public boolean isSkippedUrl(final String link) {
+      final int schemeEnd = link.indexOf("://");
+      int pathEnd = link.length();
+      for (int i = schemeEnd < 0 ? 0 : schemeEnd + 3; i < link.length(); i++) {
+         final char c = link.charAt(i);
+         if (c == '?' || c == '#' || c == ';') {
+            pathEnd = i;
+            break;
+         }
+      }
+      final int segmentStart = link.lastIndexOf('/', pathEnd - 1);
+      final int dot = link.lastIndexOf('.', pathEnd - 1);
+      if ((schemeEnd >= 0 && segmentStart < schemeEnd + 3) || dot <= segmentStart || dot == pathEnd - 1) {
+         return false;
+      }
+      return skippedExtensions.contains(link.substring(dot + 1, pathEnd).toLowerCase(Locale.ROOT));
+   }
+
+   /**
+    * @param mimeType the mime type of a response, see {@link FetchResult#getMimeType()}, or null if it has none.
+    * @return true if the body of the response is read and parsed: it has no mime type or is text, XML or JSON.  Used
+    *     by both {@link HttpPageFetcher} and {@link Crawler}, so no body is downloaded only to be dropped.
+    */
+   public static boolean isAcceptedMimeType(final String mimeType) {
+      return mimeType == null || mimeType.startsWith("text/") || mimeType.contains("xml") || mimeType.contains("json");
+   }
+
+   /**
+    * Wraps a response body stream so it is decompressed while it is read.  A deflate body may be zlib wrapped as
+    * the HTTP specification says or raw deflate data as some servers send.  An empty body, e.g. of a 304 response,
+    * is returned as it is.
+    *
+    * @param in the body as received.
+    * @param contentEncoding the Content-Encoding header of the response, or null if it has none.
+    * @return the decompressed body, which must be closed to free the native memory of a deflate or gzip decoder.
+    * @throws IOException if the content encoding is not supported or the gzip header is invalid.
+    */
+   public static InputStream decode(final InputStream in, final String contentEncoding) throws IOException {
+      final String encoding = contentEncoding == null ? "identity" : contentEncoding.trim().toLowerCase(Locale.ROOT);
+      if (encoding.isEmpty() || encoding.equals("identity")) {
+         return in;
+      }
+      final PushbackInputStream pushbackIn = new PushbackInputStream(in, 2);
+      final int first = pushbackIn.read();
+      final int second = first < 0 ? -1 : pushbackIn.read();
+      if (second >= 0) {
+         pushbackIn.unread(second);
+      }
+      if (first < 0) {
+         return pushbackIn;
+      }
+      pushbackIn.unread(first);
+      switch (encoding) {
+         case "gzip":
+         case "x-gzip":
+            return new GZIPInputStream(pushbackIn, 8192);
+         case "deflate":
+            // a zlib header has compression method 8 and is a multiple of 31
+            final boolean zlib = second >= 0 && (first & 0x0f) == 8 && (first << 8 | second) % 31 == 0;
+            return new DeflateInputStream(pushbackIn, zlib);
+         default:
+            throw new IOException("Unsupported content encoding: " + contentEncoding);
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "FetchPolicy[maxBodyBytes=" + maxBodyBytes + ", truncateLargeBodies=" + truncateLargeBodies
+          + ", skippedExtensions=" + skippedExtensions.size() + "]";
+   }
+}
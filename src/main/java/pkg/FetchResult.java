@@ -0,0 +1,156 @@
+package pkg;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class holds a fully read HTTP response returned by a {@link PageFetcher}.
+ * Header names are stored in lower case.  The body is decompressed; a fetcher which applies a {@link FetchPolicy}
+ * may have cut it off or not read it at all, which {@link #isTruncated()} tells.
+ */
+public class FetchResult {
+
+   private final String url;
+
+   private final int statusCode;
+
+   private final Map<String, String> headers;
+
+   private final byte[] body;
+
+   private final long transferredBytes;
+
+   private final boolean truncated;
+
+   public FetchResult(final String url, final int statusCode, final Map<String, String> headers, final byte[] body) {
+      this(url, statusCode, headers, body, body.length, false);
+   }
+
+   /**
+    * @param transferredBytes number of body bytes received, before they were decompressed.
+    * @param truncated true if the body was not read to its end.
+    */
+   public FetchResult(final String url, final int statusCode, final Map<String, String> headers, final byte[] body,
+       final long transferredBytes, final boolean truncated) {
+      this.url = url;
+      this.statusCode = statusCode;
+      final Map<String, String> lowerCaseHeaders = new HashMap<>();
+      for (final Map.Entry<String, String> header : headers.entrySet()) {
+         if (header.getKey() != null) {
+            lowerCaseHeaders.put(header.getKey().toLowerCase(Locale.ROOT), header.getValue());
+         }
+      }
+      this.headers = Collections.unmodifiableMap(lowerCaseHeaders);
+      this.body = body;
+      this.transferredBytes = transferredBytes;
+      this.truncated = truncated;
+   }
+
+   public String getUrl() {
+      return url;
+   }
+
+   public int getStatusCode() {
+      return statusCode;
+   }
+
+   public boolean isSuccessful() {
+      return statusCode >= 200 && statusCode < 300;
+   }
+
+   /**
+    * @param name header name, case insensitive.
+    * @return the header value or null if the response did not contain the header.
+    */
+   public String getHeader(final String name) {
+      return headers.get(name.toLowerCase(Locale.ROOT));
+   }
+
+   public Map<String, String> getHeaders() {
+      return headers;
+   }
+
+   public byte[] getBody() {
+      return body;
+   }
+
+   /**
+    * @return the number of body bytes received, which is less than the length of the body if it was compressed.
+    */
+   public long getTransferredBytes() {
+      return transferredBytes;
+   }
+
+   public boolean isTruncated() {
+      return truncated;
+   }
+
+   /**
+    * @return the Content-Length header, or -1 if there was none or it is not a number.
+    */
+   public long getContentLength() {
+      final String contentLength = getHeader("Content-Length");
+      if (contentLength == null) {
+         return -1;
+      }
+      try {
+         return Long.parseLong(contentLength.trim());
+      }
+      catch (final NumberFormatException e) {
+         return -1;
+      }
+   }
+
+   /**
+    * @return the mime type of the Content-Type header without parameters, or null if there was no Content-Type.
+    */
+   public String getMimeType() {
+      final String contentType = getHeader("Content-Type");
+      if (contentType == null) {
+         return null;
+      }
+      final int parametersStart = contentType.indexOf(';');
+      final String mimeType = parametersStart < 0 ? contentType : contentType.substring(0, parametersStart);
+      return mimeType.trim().toLowerCase(Locale.ROOT);
+   }
+
+   /**
+    * @return the charset named in the Content-Type header, or null if none was named or it is not supported.
+    */
+   public String getCharset() {
+      final String contentType = getHeader("Content-Type");
+      if (contentType == null) {
+         return null;
+      }
+      final int charsetStart = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+      if (charsetStart < 0) {
+         return null;
+      }
+      String charset = contentType.substring(charsetStart + "charset=".length());
+      final int charsetEnd = charset.indexOf(';');
+      if (charsetEnd >= 0) {
+         charset = charset.substring(0, charsetEnd);
+      }
+      charset = charset.trim().replace("\"", "").replace("'", "");
+      try {
+         return Charset.isSupported(charset) ? charset : null;
+      }
+      catch (final IllegalArgumentException e) {
+         return null;
+      }
+   }
+
+   /**
+    * @return the body decoded with the charset of the Content-Type header, or UTF-8 if none was named.
+    */
+   public String getBodyAsString() {
+      final String charset = getCharset();
+      return new String(body, charset == null ? StandardCharsets.UTF_8 : Charset.forName(charset));
+   }
+}
@@ -0,0 +1,193 @@
+package pkg;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.LongConsumer;
+
+/**
+ * @author Brian Chipman
+ *
+ * This is an exact set of URLs which only keeps the 64 bit {@link UrlFingerprint} of each URL in an open addressing
+ * table of primitive longs, using about 8 to 16 bytes per URL instead of the String and HashMap entry of a HashSet.
+ * Collisions are resolved with linear probing and removal uses backward shift deletion, so there are no tombstones.
+ * The fingerprint 0 marks an empty slot; a URL which hashes to 0 is stored as 1.
+ * This class is not thread safe.
+ */
+public class FingerprintSet extends AbstractSet<String> implements SeenUrlStore {
+
+   private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+   private static final double MAX_LOAD_FACTOR = 0.7;
+
+   private long[] table;
+
+   private int size;
+
+   private int resizeThreshold;
+
+   public FingerprintSet() {
+      this(DEFAULT_INITIAL_CAPACITY);
+   }
+
+   /**
+    * @param expectedSize number of URLs the set should hold before it has to grow.
+    */
+   public FingerprintSet(final int expectedSize) {
+      int capacity = 16;
+      while (capacity * MAX_LOAD_FACTOR < expectedSize) {
+         capacity <<= 1;
+      }
+      allocate(capacity);
+   }
+
+   @Override
+   public boolean add(final String url) {
+      return addFingerprint(fingerprintOf(url));
+   }
+
+   /**
+    * @param fingerprint the fingerprint of a URL, see {@link UrlFingerprint#fingerprint(CharSequence)}.
+    * @return true if the fingerprint was not yet in the set.
+    */
+   public boolean addFingerprint(final long fingerprint) {
+      final long key = fingerprint == 0 ? 1 : fingerprint;
+      final int mask = table.length - 1;
+      int index = indexOf(key, mask);
+      while (table[index] != 0) {
+         if (table[index] == key) {
+            return false;
+         }
+         index = (index + 1) & mask;
+      }
+      table[index] = key;
+      if (++size > resizeThreshold) {
+         resize(table.length << 1);
+      }
+      return true;
+   }
+
+   @Override
+   public boolean contains(final Object o) {
+      return o instanceof CharSequence && containsFingerprint(fingerprintOf((CharSequence) o));
+   }
+
+   /**
+    * @param fingerprint the fingerprint of a URL, see {@link UrlFingerprint#fingerprint(CharSequence)}.
+    * @return true if the fingerprint is in the set.
+    */
+   public boolean containsFingerprint(final long fingerprint) {
+      return slotOf(fingerprint == 0 ? 1 : fingerprint) >= 0;
+   }
+
+   /**
+    * This method passes every fingerprint in the set to the action, e.g. to copy a set without its URLs.  A URL whose
+    * fingerprint is 0 is passed as 1, as it is stored.
+    *
+    * @param action called once for every fingerprint.
+    */
+   public void forEachFingerprint(final LongConsumer action) {
+      for (final long key : table) {
+         if (key != 0) {
+            action.accept(key);
+         }
+      }
+   }
+
+   @Override
+   public boolean remove(final Object o) {
+      if (!(o instanceof CharSequence)) {
+         return false;
+      }
+      final long key = fingerprintOf((CharSequence) o);
+      int slot = slotOf(key == 0 ? 1 : key);
+      if (slot < 0) {
+         return false;
+      }
+      // shift back any following entries which would no longer be reachable from their home slot
+      final int mask = table.length - 1;
+      int next = (slot + 1) & mask;
+      while (table[next] != 0) {
+         final int home = indexOf(table[next], mask);
+         if (((next - home) & mask) >= ((next - slot) & mask)) {
+            table[slot] = table[next];
+            slot = next;
+         }
+         next = (next + 1) & mask;
+      }
+      table[slot] = 0;
+      size--;
+      return true;
+   }
+
+   @Override
+   public int size() {
+      return size;
+   }
+
+   @Override
+   public void clear() {
+      Arrays.fill(table, 0);
+      size = 0;
+   }
+
+   /**
+    * This set does not keep the URLs so it cannot be iterated.
+    *
+    * @throws UnsupportedOperationException always.
+    */
+   @Override
+   public Iterator<String> iterator() {
+      throw new UnsupportedOperationException("FingerprintSet does not keep the URLs and cannot be iterated");
+   }
+
+   @Override
+   public long getMemoryUsageBytes() {
+      return 8L * table.length;
+   }
+
+   @Override
+   public String toString() {
+      return "FingerprintSet[size=" + size + ", capacity=" + table.length + "]";
+   }
+
+   private static long fingerprintOf(final CharSequence url) {
+      return UrlFingerprint.fingerprint(url);
+   }
+
+   private static int indexOf(final long key, final int mask) {
+      return (int) (key ^ (key >>> 32)) & mask;
+   }
+
+   private int slotOf(final long key) {
+      final int mask = table.length - 1;
+      int index = indexOf(key, mask);
+      while (table[index] != 0) {
+         if (table[index] == key) {
+            return index;
+         }
+         index = (index + 1) & mask;
+      }
+      return -1;
+   }
+
+   private void allocate(final int capacity) {
+      table = new long[capacity];
+      resizeThreshold = (int) (capacity * MAX_LOAD_FACTOR);
+   }
+
+   private void resize(final int capacity) {
+      final long[] oldTable = table;
+      allocate(capacity);
+      final int mask = capacity - 1;
+      for (final long key : oldTable) {
+         if (key != 0) {
+            int index = indexOf(key, mask);
+            while (table[index] != 0) {
+               index = (index + 1) & mask;
+            }
+            table[index] = key;
+         }
+      }
+   }
+}
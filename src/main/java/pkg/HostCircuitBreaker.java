@@ -0,0 +1,145 @@
+package pkg;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class stops {@link Crawler} from requesting hosts which keep failing.  Each host has a breaker which opens
+ * after failureThreshold consecutive transient failures (timeouts, refused connections and 5xx responses, see
+ * {@link RetryPolicy#isTransientFailure(Throwable)}).  While a breaker is open no request is made to its host; once
+ * the cooldown has passed a single probe request is let through, which closes the breaker if it succeeds and opens
+ * it for another cooldown if it fails.  A probe whose outcome tells nothing about the health of the host, e.g. a link
+ * which is not a page, is handed back with {@link #releaseProbe(String)} so the next request becomes the probe.
+ * All methods may be called from several crawler workers at the same time.
+ */
+public class HostCircuitBreaker {
+
+   private final int failureThreshold;
+
+   private final long cooldownNanos;
+
+   private final ConcurrentMap<String, HostState> hosts = new ConcurrentHashMap<>();
+
+   /**
+    * This class holds the breaker of one host.  It is guarded by its own monitor.
+    */
+   private static class HostState {
+
+      private int consecutiveFailures;
+
+      private boolean open;
+
+      private boolean probing;
+
+      private long openUntilNanos;
+   }
+
+   /**
+    * @param failureThreshold number of consecutive failures which opens the breaker of a host.
+    * @param cooldownMillis time a breaker stays open before a probe request is allowed.
+    */
+   public HostCircuitBreaker(final int failureThreshold, final long cooldownMillis) {
+      if (failureThreshold < 1) {
+         throw new IllegalArgumentException("failureThreshold must be at least 1: " + failureThreshold);
+      }
+      this.failureThreshold = failureThreshold;
+      this.cooldownNanos = TimeUnit.MILLISECONDS.toNanos(cooldownMillis);
+   }
+
+   /**
+    * @param host the host about to be requested, or null if the URL has no host.
+    * @return 0 if the host may be requested now, otherwise the milliseconds until its breaker lets a probe through.
+    */
+   public long getMillisUntilAllowed(final String host) {
+      final HostState state = host == null ? null : hosts.get(host);
+      if (state == null) {
+         return 0;
+      }
+      synchronized (state) {
+         if (!state.open) {
+            return 0;
+         }
+         final long nanosUntilProbe = state.openUntilNanos - System.nanoTime();
+         if (nanosUntilProbe <= 0 && !state.probing) {
+            state.probing = true;
+            return 0;
+         }
+         return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanosUntilProbe > 0 ? nanosUntilProbe : cooldownNanos));
+      }
+   }
+
+   /**
+    * Closes the breaker of the host.
+    *
+    * @param host the host which answered, or null.
+    */
+   public void recordSuccess(final String host) {
+      final HostState state = host == null ? null : hosts.get(host);
+      if (state == null) {
+         return;
+      }
+      synchronized (state) {
+         state.consecutiveFailures = 0;
+         state.open = false;
+         state.probing = false;
+      }
+   }
+
+   /**
+    * Lets the next request to the host be the probe if the breaker of the host is open and its probe was let
+    * through, without closing or opening the breaker.  Called when a request ended without telling whether the host
+    * recovered, so an outstanding probe cannot block the host for the rest of the crawl.
+    *
+    * @param host the host which was requested, or null.
+    */
+   public void releaseProbe(final String host) {
+      final HostState state = host == null ? null : hosts.get(host);
+      if (state == null) {
+         return;
+      }
+      synchronized (state) {
+         state.probing = false;
+      }
+   }
+
+   /**
+    * Counts a transient failure of the host, opening its breaker when it reaches the threshold or when the probe
+    * request failed.
+    *
+    * @param host the host which failed, or null.
+    * @return true if this failure opened the breaker.
+    */
+   public boolean recordFailure(final String host) {
+      if (host == null) {
+         return false;
+      }
+      final HostState state = hosts.computeIfAbsent(host, h -> new HostState());
+      synchronized (state) {
+         state.consecutiveFailures++;
+         if (state.probing || (!state.open && state.consecutiveFailures >= failureThreshold)) {
+            state.open = true;
+            state.probing = false;
+            state.openUntilNanos = System.nanoTime() + cooldownNanos;
+            return true;
+         }
+         return false;
+      }
+   }
+
+   /**
+    * @param host the host.
+    * @return true if the breaker of the host is open.
+    */
+   public boolean isOpen(final String host) {
+      final HostState state = hosts.get(host);
+      if (state == null) {
+         return false;
+      }
+      synchronized (state) {
+         return state.open;
+      }
+   }
+}
@@ -0,0 +1,528 @@
+package pkg;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Brian Chipman
+ *
+ * This is a queue of unique URLs which hands out URLs host by host so that no single host can take over the
+ * crawl.  Each host has its own queue, a cap on the number of requests in flight and a minimum delay between two
+ * requests.  Hosts which are allowed to be requested are kept in a heap ordered by the time they become ready.
+ * Without a {@link LinkScorer} each host's URLs are handed out in FIFO order and {@link #poll()} always returns a URL
+ * of the host which has been waiting the longest.  With a scorer each host's queue is a {@link PriorityFrontier},
+ * and of the hosts which are ready {@link #poll()} takes the one whose best URL has the lowest score, so a page
+ * budget is spent on the most valuable pages while the hosts are still crawled politely.  The depth of every URL is
+ * kept, see {@link LinkFrontier}.
+ * {@link #poll()} returns null when URLs are queued but no host is ready yet; {@link #getMillisUntilReady()} tells
+ * the caller how long to wait.  Every URL returned by {@link #poll()} must be handed back with
+ * {@link #release(String)} once it has been crawled.  With a {@link ConcurrencyLimiter} the cap of each host is its
+ * adaptive host limit, up to maxInFlightPerHost.
+ * A host is only kept while it has queued URLs or URLs in flight, or until its minimum delay has passed after that,
+ * so the number of hosts kept does not grow with the number of hosts crawled.
+ * Duplicates are detected with the given set, e.g. a {@link FingerprintSet} to keep 16 bytes per queued URL rather
+ * than the URL itself.  With a spill directory at most maxInMemoryLinks URLs are kept in the host queues and the
+ * rest wait in FIFO order in a {@link SpillingQueue}, sharing the same set, until the host queues run low, so heap
+ * use stays flat however large the frontier grows.
+ * This class is not thread safe; {@link Crawler} only uses it while holding its frontier lock.
+ */
+public class HostScheduler extends AbstractQueue<String> implements LinkFrontier, Closeable {
+
+   private static final int HOST_QUEUE_INITIAL_CAPACITY = 4;
+
+   /**
+    * Orders ready hosts by the score of their best URL, then by the time they became ready.
+    */
+   private static final Comparator<HostQueue> BY_SCORE = Comparator.<HostQueue>comparingDouble(
+       hostQueue -> hostQueue.readyScore).thenComparing(Comparator.naturalOrder());
+
+   private final int maxInFlightPerHost;
+
+   private final long minDelayNanos;
+
+   private final LinkScorer scorer;
+
+   private final Map<String, HostQueue> hostQueues = new HashMap<>();
+
+   /**
+    * Hosts with queued URLs below their in flight cap which are waiting for their minimum delay to pass.
+    */
+   private final PriorityQueue<HostQueue> waitingHosts = new PriorityQueue<>();
+
+   /**
+    * Hosts with queued URLs below their in flight cap whose minimum delay has passed.
+    */
+   private final PriorityQueue<HostQueue> readyHosts = new PriorityQueue<>(BY_SCORE);
+
+   /**
+    * Hosts without queued URLs or URLs in flight, which are only kept until their minimum delay has passed, oldest
+    * first.
+    */
+   private final ArrayDeque<HostQueue> drainedHosts = new ArrayDeque<>();
+
+   private final Set<String> queuedLinks;
+
+   /**
+    * URLs which did not fit in the host queues, or null if nothing is spilled.
+    */
+   private SpillingQueue overflowQueue;
+
+   private int maxInMemoryLinks;
+
+   private long sequence;
+
+   private int size;
+
+   private int lastPolledDepth;
+
+   private ConcurrencyLimiter concurrencyLimiter;
+
+   /**
+    * Creates a scheduler which hands out the URLs of each host in FIFO order.
+    *
+    * @param maxInFlightPerHost maximum number of URLs of one host which may be crawled at the same time.
+    * @param minDelayMillis minimum time between the start of two requests to the same host.
+    */
+   public HostScheduler(final int maxInFlightPerHost, final long minDelayMillis) {
+      this(maxInFlightPerHost, minDelayMillis, null);
+   }
+
+   /**
+    * @param maxInFlightPerHost maximum number of URLs of one host which may be crawled at the same time.
+    * @param minDelayMillis minimum time between the start of two requests to the same host.
+    * @param scorer scores the URLs, lower scores are handed out first, or null to hand them out in FIFO order.
+    */
+   public HostScheduler(final int maxInFlightPerHost, final long minDelayMillis, final LinkScorer scorer) {
+      this(maxInFlightPerHost, minDelayMillis, scorer, new HashSet<>());
+   }
+
+   /**
+    * @param maxInFlightPerHost maximum number of URLs of one host which may be crawled at the same time.
+    * @param minDelayMillis minimum time between the start of two requests to the same host.
+    * @param scorer scores the URLs, lower scores are handed out first, or null to hand them out in FIFO order.
+    * @param queuedLinks empty set used to detect duplicates; it must support removal.
+    */
+   public HostScheduler(final int maxInFlightPerHost, final long minDelayMillis, final LinkScorer scorer,
+       final Set<String> queuedLinks) {
+      if (maxInFlightPerHost < 1) {
+         throw new IllegalArgumentException("maxInFlightPerHost must be at least 1: " + maxInFlightPerHost);
+      }
+      if (minDelayMillis < 0) {
+         throw new IllegalArgumentException("minDelayMillis must not be negative: " + minDelayMillis);
+      }
+      this.maxInFlightPerHost = maxInFlightPerHost;
+      this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+      // with a constant score a PriorityFrontier returns its URLs in the order they were queued
+      this.scorer = scorer == null ? (url, depth) -> 0 : scorer;
+      this.queuedLinks = queuedLinks;
+   }
+
+   /**
+    * This method returns the lower case host of an absolute URL without creating a {@link java.net.URL} object.
+    * User info and port are not part of the host.  URLs without a host are all grouped under the empty string.
+    *
+    * @param url String representing an absolute URL.
+    * @return the host of the URL.
+    */
+   public static String getHost(final String url) {
+      final int schemeEnd = url.indexOf("://");
+      if (schemeEnd < 0) {
+         return "";
+      }
+      final int hostStart = schemeEnd + 3;
+      int hostEnd = url.length();
+      for (int i = hostStart; i < url.length(); i++) {
+         final char c = url.charAt(i);
+         if (c == '/' || c == '?' || c == '#') {
+            hostEnd = i;
+            break;
+         }
+      }
+      String host = url.substring(hostStart, hostEnd);
+      final int userInfoEnd = host.lastIndexOf('@');
+      if (userInfoEnd >= 0) {
+         host = host.substring(userInfoEnd + 1);
+      }
+      final int portStart = host.lastIndexOf(':');
+      if (portStart >= 0 && host.indexOf(']', portStart) < 0) {
+         host = host.substring(0, portStart);
+      }
+      return host.toLowerCase(Locale.ROOT);
+   }
+
+   /**
+    * @param concurrencyLimiter the limiter whose host limits cap the requests in flight per host, or null (the
+    *     default) to only apply maxInFlightPerHost.
+    */
+   public void setConcurrencyLimiter(final ConcurrencyLimiter concurrencyLimiter) {
+      this.concurrencyLimiter = concurrencyLimiter;
+   }
+
+   /**
+    * Keeps at most maxInMemoryLinks URLs in the host queues and spills the rest to segment files in spillDirectory.
+    * Spilled URLs are moved back to the host queues, oldest first, once these hold half as many.  Must be called
+    * before any URL is queued.
+    *
+    * @param spillDirectory existing directory where segment files are written, see {@link SpillingQueue}.
+    * @param maxInMemoryLinks maximum number of URLs kept in the host queues.
+    */
+   public void setSpillDirectory(final Path spillDirectory, final int maxInMemoryLinks) {
+      if (maxInMemoryLinks < 2) {
+         throw new IllegalArgumentException("maxInMemoryLinks must be at least 2: " + maxInMemoryLinks);
+      }
+      if (size > 0) {
+         throw new IllegalStateException("The spill directory must be set before any URL is queued");
+      }
+      this.overflowQueue = new SpillingQueue(spillDirectory, maxInMemoryLinks, queuedLinks);
+      this.maxInMemoryLinks = maxInMemoryLinks;
+   }
+
+   /**
+    * Unlike {@link AbstractQueue#add(Object)} this does not throw when the URL is already queued, matching
+    * {@link UniqueQueue#add(Object)}.  The URL is queued at depth 0.
+    */
+   @Override
+   public boolean add(final String link) {
+      return offer(link, 0);
+   }
+
+   @Override
+   public boolean offer(final String link) {
+      return offer(link, 0);
+   }
+
+   @Override
+   public boolean offer(final String link, final int depth) {
+      // once URLs are spilled new ones are spilled too, so spilled URLs are not overtaken
+      if (overflowQueue != null && (!overflowQueue.isEmpty() || getInMemoryCount() >= maxInMemoryLinks)) {
+         if (!overflowQueue.offer(link, depth)) {
+            return false;
+         }
+         size++;
+         return true;
+      }
+      return queueInHost(link, depth);
+   }
+
+   /**
+    * This method adds a URL to the queue of its host, creating the queue if needed.
+    */
+   private boolean queueInHost(final String link, final int depth) {
+      removeDrainedHosts();
+      final String host = getHost(link);
+      HostQueue hostQueue = hostQueues.get(host);
+      if (hostQueue == null) {
+         hostQueue = new HostQueue(host, System.nanoTime(),
+             new PriorityFrontier(scorer, queuedLinks, HOST_QUEUE_INITIAL_CAPACITY));
+         hostQueues.put(host, hostQueue);
+      }
+      if (!hostQueue.links.offer(link, depth)) {
+         return false;
+      }
+      size++;
+      if (hostQueue.scheduled && hostQueue.ready && hostQueue.links.peekScore() < hostQueue.readyScore) {
+         // the host now has a better URL than the one it was ordered by
+         readyHosts.remove(hostQueue);
+         hostQueue.readyScore = hostQueue.links.peekScore();
+         readyHosts.add(hostQueue);
+      }
+      scheduleIfReady(hostQueue);
+      return true;
+   }
+
+   /**
+    * @return the next URL of the ready host whose best URL has the lowest score, of hosts with the same score the one
+    *     which is ready the longest, or null if no host is ready right now.
+    */
+   @Override
+   public String poll() {
+      refillFromOverflow();
+      removeDrainedHosts();
+      moveReadyHosts();
+      HostQueue hostQueue;
+      while (true) {
+         hostQueue = readyHosts.poll();
+         if (hostQueue == null) {
+            return null;
+         }
+         hostQueue.scheduled = false;
+         hostQueue.ready = false;
+         // the host limit may have been lowered since the host was scheduled
+         if (hostQueue.inFlightCount < getMaxInFlight(hostQueue)) {
+            break;
+         }
+      }
+      final String link = hostQueue.links.poll();
+      lastPolledDepth = hostQueue.links.getLastPolledDepth();
+      size--;
+      hostQueue.inFlightCount++;
+      hostQueue.readyAtNanos = System.nanoTime() + minDelayNanos;
+      scheduleIfReady(hostQueue);
+      return link;
+   }
+
+   @Override
+   public int getLastPolledDepth() {
+      return lastPolledDepth;
+   }
+
+   /**
+    * This method must be called once a URL returned by {@link #poll()} has been crawled, freeing up one in flight
+    * request for its host.
+    *
+    * @param link String representing the crawled URL.
+    */
+   public void release(final String link) {
+      final HostQueue hostQueue = hostQueues.get(getHost(link));
+      if (hostQueue != null && hostQueue.inFlightCount > 0) {
+         hostQueue.inFlightCount--;
+         scheduleIfReady(hostQueue);
+         if (isDrained(hostQueue)) {
+            drain(hostQueue);
+         }
+      }
+   }
+
+   /**
+    * @return milliseconds until a host becomes ready, 0 if a host is ready now, or -1 if every host with queued
+    *         URLs is waiting for a {@link #release(String)}.
+    */
+   public long getMillisUntilReady() {
+      refillFromOverflow();
+      moveReadyHosts();
+      if (!readyHosts.isEmpty()) {
+         return 0;
+      }
+      final HostQueue hostQueue = waitingHosts.peek();
+      if (hostQueue == null) {
+         return -1;
+      }
+      final long delayNanos = hostQueue.readyAtNanos - System.nanoTime();
+      return delayNanos <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(delayNanos) + 1;
+   }
+
+   /**
+    * @return the number of hosts kept: those with queued URLs or URLs in flight, and those still within their
+    *     minimum delay.
+    */
+   public int getHostCount() {
+      return hostQueues.size();
+   }
+
+   /**
+    * @return the number of queued URLs in the host queues, the rest are spilled.
+    */
+   public int getInMemoryCount() {
+      return overflowQueue == null ? size : size - overflowQueue.size();
+   }
+
+   @Override
+   public String peek() {
+      refillFromOverflow();
+      moveReadyHosts();
+      final HostQueue hostQueue = readyHosts.peek();
+      return hostQueue == null ? null : hostQueue.links.peek();
+   }
+
+   @Override
+   public boolean contains(final Object o) {
+      return queuedLinks.contains(o);
+   }
+
+   @Override
+   public int size() {
+      return size;
+   }
+
+   @Override
+   public boolean isEmpty() {
+      return size == 0;
+   }
+
+   /**
+    * @return an iterator over a snapshot of all queued URLs, grouped by host, followed by the spilled URLs.
+    */
+   @Override
+   public Iterator<String> iterator() {
+      final List<String> links = new ArrayList<>(size);
+      for (final HostQueue hostQueue : hostQueues.values()) {
+         links.addAll(hostQueue.links);
+      }
+      if (overflowQueue != null) {
+         links.addAll(overflowQueue);
+      }
+      return Collections.unmodifiableList(links).iterator();
+   }
+
+   @Override
+   public void clear() {
+      if (overflowQueue != null) {
+         overflowQueue.clear();
+      }
+      queuedLinks.clear();
+      waitingHosts.clear();
+      readyHosts.clear();
+      size = 0;
+      for (final HostQueue hostQueue : new ArrayList<>(hostQueues.values())) {
+         hostQueue.links.clear();
+         hostQueue.scheduled = false;
+         hostQueue.ready = false;
+         if (isDrained(hostQueue)) {
+            drain(hostQueue);
+         }
+      }
+   }
+
+   /**
+    * Deletes the segment files of the spilled URLs.
+    */
+   @Override
+   public void close() {
+      if (overflowQueue != null) {
+         overflowQueue.close();
+      }
+   }
+
+   /**
+    * This method moves spilled URLs back to the host queues, oldest first, once these hold at most half of
+    * maxInMemoryLinks, until they are full again.
+    */
+   private void refillFromOverflow() {
+      if (overflowQueue == null || overflowQueue.isEmpty() || getInMemoryCount() > maxInMemoryLinks / 2) {
+         return;
+      }
+      while (getInMemoryCount() < maxInMemoryLinks) {
+         final String link = overflowQueue.poll();
+         if (link == null) {
+            break;
+         }
+         // polling removed the URL from the shared set, so it is queued in its host again
+         size--;
+         queueInHost(link, overflowQueue.getLastPolledDepth());
+      }
+   }
+
+   /**
+    * This method adds the host to the waiting heap if it has queued URLs and is below its in flight cap.
+    */
+   private void scheduleIfReady(final HostQueue hostQueue) {
+      if (!hostQueue.scheduled && !hostQueue.links.isEmpty() && hostQueue.inFlightCount < getMaxInFlight(hostQueue)) {
+         hostQueue.sequence = sequence++;
+         hostQueue.scheduled = true;
+         waitingHosts.add(hostQueue);
+      }
+   }
+
+   /**
+    * This method moves the hosts whose minimum delay has passed from the waiting heap to the ready heap, ordered by
+    * the score of their best URL.
+    */
+   private void moveReadyHosts() {
+      final long nowNanos = System.nanoTime();
+      HostQueue hostQueue;
+      while ((hostQueue = waitingHosts.peek()) != null && hostQueue.readyAtNanos - nowNanos <= 0) {
+         waitingHosts.remove();
+         hostQueue.ready = true;
+         hostQueue.readyScore = hostQueue.links.peekScore();
+         readyHosts.add(hostQueue);
+      }
+   }
+
+   private static boolean isDrained(final HostQueue hostQueue) {
+      return hostQueue.links.isEmpty() && hostQueue.inFlightCount == 0;
+   }
+
+   /**
+    * This method removes a host without queued URLs or URLs in flight, or if its minimum delay has not passed yet,
+    * keeps it in drainedHosts until it has.
+    */
+   private void drain(final HostQueue hostQueue) {
+      if (hostQueue.readyAtNanos - System.nanoTime() <= 0) {
+         hostQueues.remove(hostQueue.host, hostQueue);
+      }
+      else if (!hostQueue.drained) {
+         hostQueue.drained = true;
+         drainedHosts.add(hostQueue);
+      }
+   }
+
+   /**
+    * This method removes the drained hosts whose minimum delay has passed, unless URLs were queued for them since.
+    */
+   private void removeDrainedHosts() {
+      final long nowNanos = System.nanoTime();
+      while (!drainedHosts.isEmpty() && drainedHosts.peek().readyAtNanos - nowNanos <= 0) {
+         final HostQueue hostQueue = drainedHosts.remove();
+         hostQueue.drained = false;
+         if (isDrained(hostQueue)) {
+            hostQueues.remove(hostQueue.host, hostQueue);
+         }
+      }
+   }
+
+   private int getMaxInFlight(final HostQueue hostQueue) {
+      return concurrencyLimiter == null ? maxInFlightPerHost
+          : Math.min(maxInFlightPerHost, concurrencyLimiter.getHostLimit(hostQueue.host));
+   }
+
+   /**
+    * This class holds the queued URLs and scheduling state of a single host.
+    */
+   private static class HostQueue implements Comparable<HostQueue> {
+
+      private final String host;
+
+      private final PriorityFrontier links;
+
+      private int inFlightCount;
+
+      private long readyAtNanos;
+
+      private long sequence;
+
+      private boolean scheduled;
+
+      /**
+       * True while the host is in the ready heap rather than the waiting heap.
+       */
+      private boolean ready;
+
+      private double readyScore;
+
+      private boolean drained;
+
+      private HostQueue(final String host, final long readyAtNanos, final PriorityFrontier links) {
+         this.host = host;
+         this.readyAtNanos = readyAtNanos;
+         this.links = links;
+      }
+
+      @Override
+      public int compareTo(final HostQueue other) {
+         final long diff = readyAtNanos - other.readyAtNanos;
+         if (diff != 0) {
+            return diff < 0 ? -1 : 1;
+         }
+         return Long.compare(sequence, other.sequence);
+      }
+
+      @Override
+      public String toString() {
+         return host + " (queued: " + links.size() + ", in flight: " + inFlightCount + ")";
+      }
+   }
+}
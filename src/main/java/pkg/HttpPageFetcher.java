@@ -0,0 +1,355 @@
+package pkg;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Brian Chipman
+ *
+ * This is the default {@link PageFetcher}, built on the non-blocking {@link HttpClient} of Java 11.  Requests are
+ * sent with {@link HttpClient#sendAsync}, so a request in flight does not hold a thread: a few threads handle the
+ * responses of thousands of requests.  HTTP/2 is used when the server supports it, multiplexing the requests to a
+ * host over one connection; other servers are requested with HTTP/1.1, and connections are kept alive and reused
+ * by the client.  At most maxConcurrentRequests requests are sent at the same time; further ones wait, without a
+ * thread, until one completes.  The read timeout is the time allowed until the response headers are received.
+ * With a {@link FetchPolicy}, responses are requested compressed and decompressed once received, a response whose
+ * Content-Type is not accepted by the policy is returned without a body, and a body is only received until it
+ * exceeds the maximum body size.  Such responses are {@link FetchResult#isTruncated() truncated}, and their body is
+ * cancelled instead of being received to the end.
+ */
+public class HttpPageFetcher implements PageFetcher {
+
+   public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+
+   public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30000;
+
+   public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 1024;
+
+   /**
+    * Number of threads handling responses, which do not block while waiting for the network.
+    */
+   public static final int DEFAULT_THREAD_COUNT = 4;
+
+   static final String USER_AGENT = "Mozilla/5.0 (compatible; cybercoders-crawler/1.0)";
+
+   private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+
+   private final Duration readTimeout;
+
+   private final int maxConcurrentRequests;
+
+   private final ExecutorService executor;
+
+   private final HttpClient httpClient;
+
+   private final FetchPolicy fetchPolicy;
+
+   /**
+    * Requests waiting for one of the maxConcurrentRequests to complete.  Guarded by itself.
+    */
+   private final ArrayDeque<Runnable> waitingRequests = new ArrayDeque<>();
+
+   /**
+    * Number of requests sent and not completed yet.  Guarded by waitingRequests.
+    */
+   private int inFlightCount;
+
+   public HttpPageFetcher() {
+      this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS, DEFAULT_MAX_CONCURRENT_REQUESTS);
+   }
+
+   /**
+    * @param connectTimeoutMillis timeout for establishing a connection.
+    * @param readTimeoutMillis timeout for receiving the response headers.
+    * @param maxConcurrentRequests maximum number of requests in flight at the same time.
+    */
+   public HttpPageFetcher(final int connectTimeoutMillis, final int readTimeoutMillis,
+       final int maxConcurrentRequests) {
+      this(connectTimeoutMillis, readTimeoutMillis, maxConcurrentRequests, null);
+   }
+
+   /**
+    * @param connectTimeoutMillis timeout for establishing a connection.
+    * @param readTimeoutMillis timeout for receiving the response headers.
+    * @param maxConcurrentRequests maximum number of requests in flight at the same time.
+    * @param fetchPolicy the policy deciding what is downloaded, or null to read every response in full.
+    */
+   public HttpPageFetcher(final int connectTimeoutMillis, final int readTimeoutMillis,
+       final int maxConcurrentRequests, final FetchPolicy fetchPolicy) {
+      if (maxConcurrentRequests < 1) {
+         throw new IllegalArgumentException("maxConcurrentRequests must be at least 1: " + maxConcurrentRequests);
+      }
+      this.readTimeout = Duration.ofMillis(readTimeoutMillis);
+      this.maxConcurrentRequests = maxConcurrentRequests;
+      this.fetchPolicy = fetchPolicy;
+      final String poolName = "page-fetcher-" + POOL_NUMBER.getAndIncrement() + "-";
+      final AtomicInteger threadNumber = new AtomicInteger(1);
+      this.executor = Executors.newFixedThreadPool(DEFAULT_THREAD_COUNT, runnable -> {
+         final Thread thread = new Thread(runnable, poolName + threadNumber.getAndIncrement());
+         thread.setDaemon(true);
+         return thread;
+      });
+      this.httpClient = HttpClient.newBuilder()
+          .version(HttpClient.Version.HTTP_2)
+          .followRedirects(HttpClient.Redirect.NORMAL)
+          .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+          .executor(executor)
+          .build();
+   }
+
+   @Override
+   public CompletableFuture<FetchResult> fetch(final String url) {
+      return fetch(url, Collections.emptyMap());
+   }
+
+   @Override
+   public CompletableFuture<FetchResult> fetch(final String url, final Map<String, String> requestHeaders) {
+      final HttpRequest request;
+      try {
+         request = createRequest(url, requestHeaders);
+      }
+      catch (final IOException e) {
+         return CompletableFuture.failedFuture(e);
+      }
+      final CompletableFuture<FetchResult> result = new CompletableFuture<>();
+      final Runnable send = () -> {
+         try {
+            httpClient.sendAsync(request, this::createBodySubscriber).whenComplete((response, failure) -> {
+               sendNextRequest();
+               if (failure != null) {
+                  result.completeExceptionally(failure);
+                  return;
+               }
+               try {
+                  result.complete(createFetchResult(response));
+               }
+               catch (final IOException e) {
+                  result.completeExceptionally(e);
+               }
+            });
+         }
+         catch (final RuntimeException e) {
+            sendNextRequest();
+            result.completeExceptionally(e);
+         }
+      };
+      synchronized (waitingRequests) {
+         if (inFlightCount >= maxConcurrentRequests) {
+            waitingRequests.add(send);
+            return result;
+         }
+         inFlightCount++;
+      }
+      send.run();
+      return result;
+   }
+
+   /**
+    * Stops the threads handling responses.  Requests still in flight are not completed.
+    */
+   @Override
+   public void close() {
+      executor.shutdownNow();
+   }
+
+   /**
+    * This method sends the oldest waiting request once a request has completed, or frees its place.
+    */
+   private void sendNextRequest() {
+      final Runnable send;
+      synchronized (waitingRequests) {
+         send = waitingRequests.poll();
+         if (send == null) {
+            inFlightCount--;
+            return;
+         }
+      }
+      send.run();
+   }
+
+   private HttpRequest createRequest(final String url, final Map<String, String> requestHeaders)
+       throws IOException {
+      final URI uri;
+      try {
+         uri = new URI(url);
+      }
+      catch (final URISyntaxException e) {
+         throw new IOException("Invalid URL: " + url, e);
+      }
+      if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+         throw new IOException("Only http and https URLs can be fetched: " + url);
+      }
+      final HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+          .timeout(readTimeout)
+          .header("User-Agent", USER_AGENT);
+      if (fetchPolicy != null) {
+         builder.header("Accept-Encoding", FetchPolicy.ACCEPT_ENCODING);
+      }
+      try {
+         for (final Map.Entry<String, String> header : requestHeaders.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+         }
+      }
+      catch (final IllegalArgumentException e) {
+         throw new IOException("Invalid request header for " + url, e);
+      }
+      return builder.GET().build();
+   }
+
+   /**
+    * This method decides from the status code and headers of a response how much of its body is received.
+    */
+   private HttpResponse.BodySubscriber<ReceivedBody> createBodySubscriber(final HttpResponse.ResponseInfo info) {
+      if (fetchPolicy == null) {
+         return new LimitedBodySubscriber(Long.MAX_VALUE);
+      }
+      final String contentType = info.headers().firstValue("Content-Type").orElse(null);
+      final FetchResult headersOnly = new FetchResult("", info.statusCode(),
+          contentType == null ? Collections.emptyMap() : Collections.singletonMap("Content-Type", contentType),
+          new byte[0]);
+      if (info.statusCode() < 400 && !FetchPolicy.isAcceptedMimeType(headersOnly.getMimeType())) {
+         return new LimitedBodySubscriber(-1);
+      }
+      return new LimitedBodySubscriber(fetchPolicy.getMaxBodyBytes());
+   }
+
+   /**
+    * This method decompresses the received body, reading at most the maximum body size of the {@link FetchPolicy}
+    * from it so a small compressed body cannot fill the heap.
+    */
+   private FetchResult createFetchResult(final HttpResponse<ReceivedBody> response) throws IOException {
+      final Map<String, String> headers = new HashMap<>();
+      for (final Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+         final List<String> values = header.getValue();
+         // HTTP/2 pseudo headers such as :status are no headers of the response
+         if (!header.getKey().startsWith(":") && values != null && !values.isEmpty()) {
+            headers.put(header.getKey(), values.get(values.size() - 1));
+         }
+      }
+      final String finalUrl = response.uri().toString();
+      final ReceivedBody receivedBody = response.body();
+      final byte[] bytes = receivedBody.bytes;
+      if (fetchPolicy == null) {
+         return new FetchResult(finalUrl, response.statusCode(), headers, bytes);
+      }
+      final String contentEncoding = response.headers().firstValue("Content-Encoding").orElse(null);
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      boolean truncated = receivedBody.truncated;
+      try (final InputStream in = FetchPolicy.decode(new ByteArrayInputStream(bytes), contentEncoding)) {
+         final byte[] buffer = new byte[8192];
+         long remaining = fetchPolicy.getMaxBodyBytes();
+         int read;
+         while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+            out.write(buffer, 0, read);
+            remaining -= read;
+         }
+         truncated |= remaining == 0 && in.read() != -1;
+      }
+      catch (final EOFException e) {
+         if (!receivedBody.truncated) {
+            throw e;
+         }
+         // the compressed body was cut off at the maximum body size
+      }
+      return new FetchResult(finalUrl, response.statusCode(), headers, out.toByteArray(), bytes.length, truncated);
+   }
+
+   /**
+    * The body of a response as it was received, before it is decompressed.
+    */
+   private static final class ReceivedBody {
+
+      private final byte[] bytes;
+
+      private final boolean truncated;
+
+      private ReceivedBody(final byte[] bytes, final boolean truncated) {
+         this.bytes = bytes;
+         this.truncated = truncated;
+      }
+   }
+
+   /**
+    * This class receives a body until it is complete or more than maxBytes bytes were received, and then cancels
+    * the rest of it.  With maxBytes -1 nothing is received.
+    */
+   private static final class LimitedBodySubscriber implements HttpResponse.BodySubscriber<ReceivedBody> {
+
+      private final long maxBytes;
+
+      private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+      private final CompletableFuture<ReceivedBody> body = new CompletableFuture<>();
+
+      private Flow.Subscription subscription;
+
+      private LimitedBodySubscriber(final long maxBytes) {
+         this.maxBytes = maxBytes;
+      }
+
+      @Override
+      public CompletionStage<ReceivedBody> getBody() {
+         return body;
+      }
+
+      @Override
+      public void onSubscribe(final Flow.Subscription subscription) {
+         this.subscription = subscription;
+         if (maxBytes < 0) {
+            subscription.cancel();
+            body.complete(new ReceivedBody(new byte[0], true));
+            return;
+         }
+         subscription.request(1);
+      }
+
+      @Override
+      public void onNext(final List<ByteBuffer> buffers) {
+         if (body.isDone()) {
+            return;
+         }
+         for (final ByteBuffer buffer : buffers) {
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            out.write(bytes, 0, bytes.length);
+         }
+         if (out.size() > maxBytes) {
+            subscription.cancel();
+            body.complete(new ReceivedBody(out.toByteArray(), true));
+            return;
+         }
+         subscription.request(1);
+      }
+
+      @Override
+      public void onError(final Throwable failure) {
+         body.completeExceptionally(failure);
+      }
+
+      @Override
+      public void onComplete() {
+         body.complete(new ReceivedBody(out.toByteArray(), false));
+      }
+   }
+}
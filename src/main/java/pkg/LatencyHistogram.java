@@ -0,0 +1,182 @@
+package pkg;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class is a fixed size histogram of durations which can be recorded from many threads at once without locks.
+ * Durations are kept in microseconds in log-linear buckets: every power of two is split into 16 buckets, so a
+ * percentile is reported within 1/16 (6.25%) of the recorded value while 544 buckets (about 4 KB) cover
+ * 1 microsecond to 19 hours.  Recording a duration is one array increment plus two {@link LongAdder} additions.
+ */
+public class LatencyHistogram {
+
+   private static final int SUB_BUCKET_BITS = 4;
+
+   private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+   private static final int MAX_EXPONENT = 36;
+
+   private static final long MAX_MICROS = (1L << (MAX_EXPONENT + 1)) - 1;
+
+   private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+   private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+   private final LongAdder count = new LongAdder();
+
+   private final LongAdder totalMicros = new LongAdder();
+
+   private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+   /**
+    * Records one duration.  Negative durations are recorded as 0.
+    *
+    * @param nanos the duration in nanoseconds.
+    */
+   public void record(final long nanos) {
+      final long micros = Math.min(MAX_MICROS, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+      buckets.incrementAndGet(getBucketIndex(micros));
+      count.increment();
+      totalMicros.add(micros);
+      maxMicros.accumulate(micros);
+   }
+
+   public long getCount() {
+      return count.sum();
+   }
+
+   public long getMaxMicros() {
+      return maxMicros.get();
+   }
+
+   public long getMeanMicros() {
+      final long recorded = count.sum();
+      return recorded == 0 ? 0 : totalMicros.sum() / recorded;
+   }
+
+   /**
+    * @param percentile the percentile to return, from 0 to 100, e.g. 99.9.
+    * @return the highest duration in microseconds of the bucket holding the percentile, or 0 if nothing was recorded.
+    */
+   public long getPercentileMicros(final double percentile) {
+      final long[] counts = new long[BUCKET_COUNT];
+      long recorded = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+         counts[i] = buckets.get(i);
+         recorded += counts[i];
+      }
+      if (recorded == 0) {
+         return 0;
+      }
+      final long rank = Math.max(1, (long) Math.ceil(recorded * Math.min(100, Math.max(0, percentile)) / 100));
+      long seen = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+         seen += counts[i];
+         if (seen >= rank) {
+            return Math.min(getBucketUpperBound(i), getMaxMicros());
+         }
+      }
+      return getMaxMicros();
+   }
+
+   /**
+    * Adds the durations recorded in another histogram to this one, e.g. to merge the histograms of several crawler
+    * processes.
+    *
+    * @param other the histogram to add.
+    */
+   public void add(final LatencyHistogram other) {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+         final long bucketCount = other.buckets.get(i);
+         if (bucketCount != 0) {
+            buckets.addAndGet(i, bucketCount);
+         }
+      }
+      count.add(other.count.sum());
+      totalMicros.add(other.totalMicros.sum());
+      maxMicros.accumulate(other.maxMicros.get());
+   }
+
+   /**
+    * Writes the histogram: the count, total and max followed by the index and count of each bucket which is not
+    * empty.
+    *
+    * @param out the stream to write to.
+    * @throws IOException if writing fails.
+    */
+   public void writeTo(final DataOutputStream out) throws IOException {
+      out.writeLong(count.sum());
+      out.writeLong(totalMicros.sum());
+      out.writeLong(maxMicros.get());
+      int usedBuckets = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+         usedBuckets += buckets.get(i) == 0 ? 0 : 1;
+      }
+      out.writeShort(usedBuckets);
+      for (int i = 0; i < BUCKET_COUNT && usedBuckets > 0; i++) {
+         final long bucketCount = buckets.get(i);
+         if (bucketCount != 0) {
+            out.writeShort(i);
+            out.writeLong(bucketCount);
+            usedBuckets--;
+         }
+      }
+   }
+
+   /**
+    * @param in a stream holding a histogram written by {@link #writeTo(DataOutputStream)}.
+    * @return the histogram.
+    * @throws IOException if reading fails or the histogram is not valid.
+    */
+   public static LatencyHistogram readFrom(final DataInputStream in) throws IOException {
+      final LatencyHistogram histogram = new LatencyHistogram();
+      histogram.count.add(in.readLong());
+      histogram.totalMicros.add(in.readLong());
+      histogram.maxMicros.accumulate(in.readLong());
+      final int usedBuckets = in.readShort();
+      for (int i = 0; i < usedBuckets; i++) {
+         final int index = in.readShort();
+         if (index < 0 || index >= BUCKET_COUNT) {
+            throw new IOException("Invalid histogram bucket " + index);
+         }
+         histogram.buckets.set(index, in.readLong());
+      }
+      return histogram;
+   }
+
+   private static int getBucketIndex(final long micros) {
+      if (micros < SUB_BUCKET_COUNT) {
+         return (int) micros;
+      }
+      final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+      final int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+      return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + subBucket;
+   }
+
+   private static long getBucketUpperBound(final int index) {
+      if (index < SUB_BUCKET_COUNT) {
+         return index;
+      }
+      final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+      final int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+      return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+   }
+
+   /**
+    * @return the count and the p50, p99, p999 and max durations in milliseconds.
+    */
+   @Override
+   public String toString() {
+      return String.format("count %d, p50 %.1f ms, p99 %.1f ms, p999 %.1f ms, max %.1f ms", getCount(),
+          getPercentileMicros(50) / 1000.0, getPercentileMicros(99) / 1000.0, getPercentileMicros(99.9) / 1000.0,
+          getMaxMicros() / 1000.0);
+   }
+}
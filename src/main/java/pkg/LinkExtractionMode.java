@@ -0,0 +1,19 @@
+package pkg;
+
+/**
+ * @author Brian Chipman
+ *
+ * This enum selects how {@link Crawler} finds the links on a crawled page.
+ */
+public enum LinkExtractionMode {
+
+   /**
+    * Parse the page into a Jsoup Document and select all a[href] elements.
+    */
+   JSOUP,
+
+   /**
+    * Scan the page with {@link StreamingLinkExtractor} without building a Document.
+    */
+   STREAMING
+}
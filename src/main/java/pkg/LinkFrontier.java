@@ -0,0 +1,25 @@
+package pkg;
+
+import java.util.Queue;
+
+/**
+ * @author Brian Chipman
+ *
+ * This is a queue of unique URLs which keeps the depth of each URL, the number of links followed from a seed to
+ * reach it.  {@link Crawler} queues the links it finds with their depth, so a {@link LinkScorer} can use it and a
+ * {@link CrawlBudget} can limit it.  {@link PriorityFrontier} and {@link HostScheduler} are link frontiers.
+ */
+public interface LinkFrontier extends Queue<String> {
+
+   /**
+    * @param link String representing an absolute URL.
+    * @param depth number of links followed from a seed to reach the URL.
+    * @return true if the URL was queued, false if it already was.
+    */
+   boolean offer(String link, int depth);
+
+   /**
+    * @return the depth of the URL last returned by {@link #poll()}.
+    */
+   int getLastPolledDepth();
+}
@@ -0,0 +1,183 @@
+package pkg;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class records the link graph of a crawl.  URLs are turned into int IDs with a {@link UrlDictionary} and the
+ * out-links of each crawled page are kept as a sorted int array of target IDs without duplicates.
+ * {@link #export(Path, Path)} writes the graph in compressed sparse row (CSR) form and the ID to URL table in a
+ * layout which can be memory-mapped as is, see {@link MappedLinkGraph}.
+ * All methods may be called from several crawler workers at the same time.
+ */
+public class LinkGraph {
+
+   static final int GRAPH_MAGIC = 0x43524753;
+
+   static final int URLS_MAGIC = 0x43525554;
+
+   static final byte VERSION = 1;
+
+   private static final int[] NO_LINKS = new int[0];
+
+   private final UrlDictionary urlDictionary;
+
+   /**
+    * Out-links of each page by ID, null for pages which were not crawled.
+    */
+   private int[][] outLinks = new int[1024][];
+
+   private long edgeCount;
+
+   public LinkGraph() {
+      this(new UrlDictionary());
+   }
+
+   public LinkGraph(final UrlDictionary urlDictionary) {
+      this.urlDictionary = urlDictionary;
+   }
+
+   public UrlDictionary getUrlDictionary() {
+      return urlDictionary;
+   }
+
+   /**
+    * Records the out-links of a crawled page, replacing any recorded before.
+    *
+    * @param url String representing the URL of the page.
+    * @param links the absolute URLs found on the page.
+    */
+   public void addPage(final String url, final List<String> links) {
+      final int id = urlDictionary.getOrAdd(url);
+      int[] targets = new int[links.size()];
+      for (int i = 0; i < targets.length; i++) {
+         targets[i] = urlDictionary.getOrAdd(links.get(i));
+      }
+      Arrays.sort(targets);
+      int targetCount = 0;
+      for (int i = 0; i < targets.length; i++) {
+         if (i == 0 || targets[i] != targets[i - 1]) {
+            targets[targetCount++] = targets[i];
+         }
+      }
+      setOutLinks(id, targetCount == 0 ? NO_LINKS : targetCount == targets.length ? targets
+          : Arrays.copyOf(targets, targetCount));
+   }
+
+   /**
+    * Records the out-links of a crawled page by ID, replacing any recorded before.
+    *
+    * @param id ID of the page in the {@link UrlDictionary} of this graph.
+    * @param targets the IDs of the pages it links to, sorted and without duplicates.
+    */
+   synchronized void setOutLinks(final int id, final int[] targets) {
+      if (id >= outLinks.length) {
+         outLinks = Arrays.copyOf(outLinks, Math.max(id + 1, outLinks.length * 2));
+      }
+      if (outLinks[id] != null) {
+         edgeCount -= outLinks[id].length;
+      }
+      outLinks[id] = targets;
+      edgeCount += targets.length;
+   }
+
+   /**
+    * @param url String representing the URL of a page.
+    * @return the IDs of the pages the page links to, or null if the page was not recorded.
+    */
+   public synchronized int[] getOutLinks(final String url) {
+      return getOutLinks(urlDictionary.getId(url));
+   }
+
+   /**
+    * @param id ID of a page in the {@link UrlDictionary} of this graph.
+    * @return the IDs of the pages the page links to, or null if the page was not recorded.
+    */
+   synchronized int[] getOutLinks(final int id) {
+      return id >= 0 && id < outLinks.length ? outLinks[id] : null;
+   }
+
+   /**
+    * @return the number of URLs in the graph, crawled or only linked to.
+    */
+   public int getNodeCount() {
+      return urlDictionary.size();
+   }
+
+   public synchronized long getEdgeCount() {
+      return edgeCount;
+   }
+
+   /**
+    * This method writes the graph and the ID to URL table, each to a temporary file which is then moved over the
+    * target file.  Numbers are big-endian.
+    * The graph file holds a magic number, a version byte, the number of nodes n as an int, the number of edges m as a
+    * long, n + 1 long offsets and m int targets; the out-links of node i are targets[offsets[i]] up to
+    * targets[offsets[i + 1]].  The URL file is described in {@link UrlDictionary#writeTo(DataOutputStream)} and is
+    * preceded by its own magic number and version byte.
+    *
+    * @param graphFile the file to write the graph to.
+    * @param urlFile the file to write the ID to URL table to.
+    * @throws IOException if a file cannot be written.
+    */
+   public synchronized void export(final Path graphFile, final Path urlFile) throws IOException {
+      final int nodeCount = urlDictionary.size();
+      write(graphFile, out -> {
+         out.writeInt(GRAPH_MAGIC);
+         out.writeByte(VERSION);
+         out.writeInt(nodeCount);
+         out.writeLong(edgeCount);
+         long offset = 0;
+         out.writeLong(offset);
+         for (int id = 0; id < nodeCount; id++) {
+            offset += getLinks(id).length;
+            out.writeLong(offset);
+         }
+         for (int id = 0; id < nodeCount; id++) {
+            for (final int target : getLinks(id)) {
+               out.writeInt(target);
+            }
+         }
+      });
+      write(urlFile, out -> {
+         out.writeInt(URLS_MAGIC);
+         out.writeByte(VERSION);
+         urlDictionary.writeTo(out);
+      });
+   }
+
+   @Override
+   public synchronized String toString() {
+      return "LinkGraph[nodes=" + urlDictionary.size() + ", edges=" + edgeCount + "]";
+   }
+
+   private int[] getLinks(final int id) {
+      return id < outLinks.length && outLinks[id] != null ? outLinks[id] : NO_LINKS;
+   }
+
+   /**
+    * Writes a file through a temporary file which is moved over it once complete.
+    */
+   private static void write(final Path file, final FileContent content) throws IOException {
+      final Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+      try (final OutputStream fileOut = Files.newOutputStream(tempFile);
+          final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024))) {
+         content.writeTo(out);
+      }
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+   }
+
+   private interface FileContent {
+
+      void writeTo(DataOutputStream out) throws IOException;
+   }
+}
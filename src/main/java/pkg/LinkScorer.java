@@ -0,0 +1,77 @@
+package pkg;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * @author Brian Chipman
+ *
+ * This interface scores links for a {@link PriorityFrontier} or a {@link HostScheduler}, which crawl the links with
+ * the lowest score first.
+ * Scorers are combined with {@link #plus(LinkScorer)}, e.g. byDepth().plus(hostFairness(0.1)).
+ * Scorers are called while the frontier lock of {@link Crawler} is held, so they do not need to be thread safe.
+ */
+public interface LinkScorer {
+
+   /**
+    * @param url String representing an absolute URL.
+    * @param depth number of links followed from a seed to reach the URL, 0 for the seeds.
+    * @return the score of the URL, lower scores are crawled first.
+    */
+   double score(String url, int depth);
+
+   /**
+    * @param other another scorer.
+    * @return a scorer which adds the scores of this scorer and the other one.
+    */
+   default LinkScorer plus(final LinkScorer other) {
+      return (url, depth) -> score(url, depth) + other.score(url, depth);
+   }
+
+   /**
+    * @return a scorer which crawls the links closest to the seeds first, i.e. breadth first.
+    */
+   static LinkScorer byDepth() {
+      return (url, depth) -> depth;
+   }
+
+   /**
+    * Returns a scorer which adds a penalty for every link of the same host scored before, so the links of a host
+    * with many links are spread out between those of other hosts.
+    *
+    * @param penaltyPerLink penalty added for each earlier link of the host.
+    * @return the scorer.
+    */
+   static LinkScorer hostFairness(final double penaltyPerLink) {
+      final Map<String, Integer> hostLinkCounts = new HashMap<>();
+      return (url, depth) -> penaltyPerLink * (hostLinkCounts.merge(HostScheduler.getHost(url), 1, Integer::sum) - 1);
+   }
+
+   /**
+    * Returns a scorer which adds the weight of every pattern found in the URL, e.g. a negative weight for
+    * "/products/" and a positive one for "\\?sort=".
+    *
+    * @param patternWeights weight of each regular expression, which may match any part of the URL.
+    * @return the scorer.
+    */
+   static LinkScorer urlPatterns(final Map<String, Double> patternWeights) {
+      final List<Pattern> patterns = new ArrayList<>();
+      final List<Double> weights = new ArrayList<>();
+      for (final Map.Entry<String, Double> patternWeight : patternWeights.entrySet()) {
+         patterns.add(Pattern.compile(patternWeight.getKey()));
+         weights.add(patternWeight.getValue());
+      }
+      return (url, depth) -> {
+         double score = 0;
+         for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matcher(url).find()) {
+               score += weights.get(i);
+            }
+         }
+         return score;
+      };
+   }
+}
@@ -1,16 +1,204 @@
 package pkg;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author Brian Chipman
  * https://github.com/OnAssignment/compass-interview
+ *
+ * Pass --resume to continue the crawl recorded in the checkpoint file instead of starting again from the seed.
+ * Pass --seeds=location to crawl from the seeds at an http or https URL or in a local file instead of the starting
+ * point document, see {@link SeedReader} for the formats.  The seeds are read while crawling.
+ * The validators and links of crawled pages are kept in a validator cache file between runs, so pages which have not
+ * changed since the last crawl are not downloaded again.  The simhashes and links of crawled pages are kept in a
+ * file as well, so pages whose text has barely changed are not parsed again.  Links which fail transiently are
+ * retried a few times, and hosts which keep failing are skipped for a minute at a time.  Links which look like
+ * crawler traps, see {@link CrawlerTrapDetector}, are not crawled.  The number of requests in flight, in total and
+ * per host, adapts to the latency and failures of the responses, see {@link ConcurrencyLimiter}.  Requests are sent
+ * without blocking, over HTTP/2 where the server supports it, so a few worker threads keep up to a thousand requests
+ * in flight, see {@link HttpPageFetcher}.  Host names are resolved in the background as soon as a new host is found
+ * and kept for a few minutes, see {@link DnsCache}.
+ * Pages are downloaded compressed, and links and responses which are not pages, as well as bodies over 5 MB, are not
+ * downloaded in full, see {@link FetchPolicy}.
+ * The URL, status code, timing and links of every crawled page are written to a gzip compressed newline-delimited
+ * JSON file, and the link graph is exported in compressed sparse row form once the crawl is done.
+ * Pass --cluster=host:port,host:port,... and --node=i to run node i of a distributed crawl, see {@link ClusterNode}.
+ * Every node is given the same list of nodes and the same seeds, and runs in its own working directory.
+ * Pass --max-pages=n to stop the crawl after n pages, see {@link CrawlBudget}.  Links closest to the seeds are
+ * crawled first, see {@link LinkScorer#byDepth()}, so the pages crawled are the most central ones.  Queued links are
+ * deduplicated by fingerprint and, past a million, spilled to disk, so heap use stays flat however large the
+ * frontier grows.
+ * Pass --warc-record=directory to record every response in WARC files, see {@link WarcRecordingFetcher}, and
+ * --warc-replay=directory to crawl such a recording offline instead of the web, see {@link WarcReplayFetcher}.
  */
 public class Main {
 
    private static final String URL_STARTING_POINT = "https://raw.githubusercontent.com/OnAssignment/compass-interview/master/data.json";
 
-   public static void main(final String[] args) {
-      final Crawler crawler = new Crawler(URL_STARTING_POINT);
-      crawler.crawl();
-      crawler.printStats();
+   private static final String SEEDS_OPTION = "--seeds=";
+
+   private static final String CLUSTER_OPTION = "--cluster=";
+
+   private static final String NODE_OPTION = "--node=";
+
+   private static final String MAX_PAGES_OPTION = "--max-pages=";
+
+   private static final String WARC_RECORD_OPTION = "--warc-record=";
+
+   private static final String WARC_REPLAY_OPTION = "--warc-replay=";
+
+   private static final String CHECKPOINT_FILE = "crawl.checkpoint";
+
+   private static final String VALIDATOR_CACHE_FILE = "crawl.validators";
+
+   private static final String SIMHASH_STORE_FILE = "crawl.simhashes";
+
+   private static final int SIMHASH_MAX_DISTANCE = 3;
+
+   private static final String PAGE_RECORDS_FILE = "crawl-pages.ndjson.gz";
+
+   private static final int PAGE_RECORD_QUEUE_CAPACITY = 4096;
+
+   private static final int PAGE_RECORD_BATCH_SIZE = 256;
+
+   private static final String LINK_GRAPH_FILE = "crawl-graph.csr";
+
+   private static final String LINK_GRAPH_URLS_FILE = "crawl-graph.urls";
+
+   private static final String FRONTIER_SPILL_DIRECTORY = "crawl-frontier";
+
+   private static final int MAX_IN_MEMORY_LINKS = 1000000;
+
+   private static final int WORKER_COUNT = 4;
+
+   private static final int MAX_IN_FLIGHT = HttpPageFetcher.DEFAULT_MAX_CONCURRENT_REQUESTS;
+
+   private static final int MAX_IN_FLIGHT_PER_HOST = 2;
+
+   private static final int INITIAL_CONCURRENCY_LIMIT = 2;
+
+   private static final long MIN_DELAY_PER_HOST_MILLIS = 100;
+
+   private static final long DNS_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+   private static final long DNS_NEGATIVE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+   private static final int DNS_PREFETCH_THREAD_COUNT = 4;
+
+   private static final long STATS_REPORT_INTERVAL_MILLIS = 10000;
+
+   private static final int CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+
+   private static final long CIRCUIT_BREAKER_COOLDOWN_MILLIS = 60000;
+
+   private static final int MAX_RETRIES = 3;
+
+   private static final long RETRY_BASE_DELAY_MILLIS = 1000;
+
+   private static final long RETRY_MAX_DELAY_MILLIS = 30000;
+
+   private static final double RETRY_BUDGET_RATIO = 0.1;
+
+   public static void main(final String[] args) throws IOException {
+      // the HttpClient resolves host names itself, so the JVM must keep the addresses the DnsCache looked up
+      Security.setProperty("networkaddress.cache.ttl", Long.toString(TimeUnit.MILLISECONDS.toSeconds(DNS_TTL_MILLIS)));
+      Security.setProperty("networkaddress.cache.negative.ttl",
+          Long.toString(TimeUnit.MILLISECONDS.toSeconds(DNS_NEGATIVE_TTL_MILLIS)));
+      final CrawlCheckpoint checkpoint = new CrawlCheckpoint(Paths.get(CHECKPOINT_FILE));
+      if (!Arrays.asList(args).contains("--resume")) {
+         checkpoint.delete();
+      }
+      String seedLocation = null;
+      String clusterAddresses = null;
+      int nodeId = 0;
+      long maxPages = CrawlBudget.UNLIMITED;
+      String warcRecordDirectory = null;
+      String warcReplayDirectory = null;
+      for (final String arg : args) {
+         if (arg.startsWith(SEEDS_OPTION)) {
+            seedLocation = arg.substring(SEEDS_OPTION.length());
+         }
+         else if (arg.startsWith(CLUSTER_OPTION)) {
+            clusterAddresses = arg.substring(CLUSTER_OPTION.length());
+         }
+         else if (arg.startsWith(NODE_OPTION)) {
+            nodeId = Integer.parseInt(arg.substring(NODE_OPTION.length()));
+         }
+         else if (arg.startsWith(MAX_PAGES_OPTION)) {
+            maxPages = Long.parseLong(arg.substring(MAX_PAGES_OPTION.length()));
+         }
+         else if (arg.startsWith(WARC_RECORD_OPTION)) {
+            warcRecordDirectory = arg.substring(WARC_RECORD_OPTION.length());
+         }
+         else if (arg.startsWith(WARC_REPLAY_OPTION)) {
+            warcReplayDirectory = arg.substring(WARC_REPLAY_OPTION.length());
+         }
+      }
+      final FetchPolicy fetchPolicy = new FetchPolicy();
+      final boolean replay = warcReplayDirectory != null;
+      PageFetcher pageFetcher;
+      if (replay) {
+         pageFetcher = new WarcReplayFetcher(Paths.get(warcReplayDirectory));
+      }
+      else {
+         pageFetcher = new HttpPageFetcher(HttpPageFetcher.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+             HttpPageFetcher.DEFAULT_READ_TIMEOUT_MILLIS, HttpPageFetcher.DEFAULT_MAX_CONCURRENT_REQUESTS, fetchPolicy);
+      }
+      if (warcRecordDirectory != null) {
+         pageFetcher = new WarcRecordingFetcher(pageFetcher,
+             new WarcWriter(Paths.get(warcRecordDirectory), WarcWriter.DEFAULT_MAX_FILE_BYTES));
+      }
+      try (final Crawler crawler = seedLocation == null
+          ? new Crawler(URL_STARTING_POINT, pageFetcher, checkpoint)
+          : new Crawler(SeedReader.open(seedLocation), pageFetcher, checkpoint)) {
+         crawler.setFetchPolicy(fetchPolicy);
+         crawler.setWorkerCount(WORKER_COUNT);
+         crawler.setMaxInFlight(MAX_IN_FLIGHT);
+         // a replay does not load any server, so it does not need to be polite; the links closest to the seeds are
+         // crawled first, so a page budget is spent on them
+         final HostScheduler hostScheduler = new HostScheduler(MAX_IN_FLIGHT_PER_HOST,
+             replay ? 0 : MIN_DELAY_PER_HOST_MILLIS, LinkScorer.byDepth(), new FingerprintSet());
+         final Path spillDirectory = Files.createDirectories(Paths.get(FRONTIER_SPILL_DIRECTORY));
+         hostScheduler.setSpillDirectory(spillDirectory, MAX_IN_MEMORY_LINKS);
+         crawler.setHostScheduler(hostScheduler);
+         crawler.setConcurrencyLimiter(new ConcurrencyLimiter(INITIAL_CONCURRENCY_LIMIT, MAX_IN_FLIGHT, 1,
+             MAX_IN_FLIGHT_PER_HOST));
+         if (!replay) {
+            crawler.setDnsCache(new DnsCache(DnsCache.Resolver.SYSTEM, DNS_TTL_MILLIS, DNS_NEGATIVE_TTL_MILLIS,
+                DNS_PREFETCH_THREAD_COUNT));
+         }
+         crawler.setVisitedLinks(new FingerprintSet());
+         crawler.setStatsReportIntervalMillis(STATS_REPORT_INTERVAL_MILLIS);
+         crawler.setCircuitBreaker(new HostCircuitBreaker(CIRCUIT_BREAKER_FAILURE_THRESHOLD,
+             CIRCUIT_BREAKER_COOLDOWN_MILLIS));
+         crawler.setRetryPolicy(new RetryPolicy(MAX_RETRIES, RETRY_BASE_DELAY_MILLIS, RETRY_MAX_DELAY_MILLIS,
+             RETRY_BUDGET_RATIO));
+         final ValidatorCache validatorCache = new ValidatorCache(Paths.get(VALIDATOR_CACHE_FILE));
+         validatorCache.load();
+         crawler.setValidatorCache(validatorCache);
+         final SimHashStore simHashStore = new SimHashStore(Paths.get(SIMHASH_STORE_FILE), SIMHASH_MAX_DISTANCE);
+         simHashStore.load();
+         crawler.setSimHashStore(simHashStore);
+         crawler.setPageRecordWriter(new PageRecordWriter(Paths.get(PAGE_RECORDS_FILE), PAGE_RECORD_QUEUE_CAPACITY,
+             PAGE_RECORD_BATCH_SIZE));
+         final LinkGraph linkGraph = new LinkGraph();
+         crawler.setLinkGraph(linkGraph);
+         if (maxPages != CrawlBudget.UNLIMITED) {
+            crawler.setCrawlBudget(new CrawlBudget(CrawlBudget.UNLIMITED, maxPages, CrawlBudget.UNLIMITED));
+         }
+         crawler.setCrawlerTrapDetector(new CrawlerTrapDetector());
+         if (clusterAddresses != null) {
+            crawler.setClusterNode(new ClusterNode(nodeId, ClusterNode.parseAddresses(clusterAddresses)));
+         }
+         crawler.crawl();
+         crawler.printStats();
+         linkGraph.export(Paths.get(LINK_GRAPH_FILE), Paths.get(LINK_GRAPH_URLS_FILE));
+      }
    }
 }
@@ -0,0 +1,115 @@
+package pkg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class reads a link graph exported by {@link LinkGraph#export(Path, Path)} by memory-mapping the files, so
+ * nothing is copied onto the heap until it is asked for.  It shows how downstream jobs can use the files and is used
+ * to check the export.  Each file is mapped as a single buffer, so files of up to 2 GB can be read.
+ */
+public class MappedLinkGraph {
+
+   private static final int GRAPH_HEADER_SIZE = 4 + 1 + 4 + 8;
+
+   private static final int URLS_HEADER_SIZE = 4 + 1 + 4;
+
+   private final int nodeCount;
+
+   private final long edgeCount;
+
+   private final LongBuffer offsets;
+
+   private final IntBuffer targets;
+
+   private final int urlCount;
+
+   private final LongBuffer urlOffsets;
+
+   private final ByteBuffer urlBytes;
+
+   private MappedLinkGraph(final MappedByteBuffer graph, final MappedByteBuffer urls) throws IOException {
+      if (graph.getInt() != LinkGraph.GRAPH_MAGIC || graph.get() != LinkGraph.VERSION) {
+         throw new IOException("Not a link graph file of version " + LinkGraph.VERSION);
+      }
+      nodeCount = graph.getInt();
+      edgeCount = graph.getLong();
+      offsets = slice(graph, GRAPH_HEADER_SIZE).asLongBuffer();
+      targets = slice(graph, GRAPH_HEADER_SIZE + 8L * (nodeCount + 1)).asIntBuffer();
+
+      if (urls.getInt() != LinkGraph.URLS_MAGIC || urls.get() != LinkGraph.VERSION) {
+         throw new IOException("Not a URL table file of version " + LinkGraph.VERSION);
+      }
+      urlCount = urls.getInt();
+      urlOffsets = slice(urls, URLS_HEADER_SIZE).asLongBuffer();
+      urlBytes = slice(urls, URLS_HEADER_SIZE + 8L * (urlCount + 1));
+   }
+
+   /**
+    * @param graphFile the graph file written by {@link LinkGraph#export(Path, Path)}.
+    * @param urlFile the URL table file written by {@link LinkGraph#export(Path, Path)}.
+    * @return the mapped graph.
+    * @throws IOException if a file cannot be mapped or has the wrong format.
+    */
+   public static MappedLinkGraph open(final Path graphFile, final Path urlFile) throws IOException {
+      return new MappedLinkGraph(map(graphFile), map(urlFile));
+   }
+
+   public int getNodeCount() {
+      return nodeCount;
+   }
+
+   public long getEdgeCount() {
+      return edgeCount;
+   }
+
+   /**
+    * @param id ID of a node.
+    * @return the IDs of the nodes the node links to, in ascending order.
+    */
+   public int[] getOutLinks(final int id) {
+      final int start = (int) offsets.get(id);
+      final int[] links = new int[(int) offsets.get(id + 1) - start];
+      for (int i = 0; i < links.length; i++) {
+         links[i] = targets.get(start + i);
+      }
+      return links;
+   }
+
+   /**
+    * @param id ID of a node.
+    * @return the URL of the node.
+    */
+   public String getUrl(final int id) {
+      if (id < 0 || id >= urlCount) {
+         throw new IndexOutOfBoundsException("No URL with ID " + id + " in a table of " + urlCount);
+      }
+      final int start = (int) urlOffsets.get(id);
+      final byte[] bytes = new byte[(int) urlOffsets.get(id + 1) - start];
+      for (int i = 0; i < bytes.length; i++) {
+         bytes[i] = urlBytes.get(start + i);
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+
+   private static MappedByteBuffer map(final Path file) throws IOException {
+      try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+         return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+   }
+
+   private static ByteBuffer slice(final ByteBuffer buffer, final long position) {
+      final ByteBuffer duplicate = buffer.duplicate();
+      duplicate.position((int) position);
+      return duplicate.slice();
+   }
+}
@@ -0,0 +1,45 @@
+package pkg;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author Brian Chipman
+ *
+ * This interface is used by {@link Crawler} to download pages.  Fetching is asynchronous: the returned future is
+ * completed with the response once it has been fully read, or completed exceptionally if the request failed.  HTTP
+ * error status codes are not failures; they are returned in {@link FetchResult#getStatusCode()}.
+ * {@link Crawler} does not wait for the future; it continues crawling the page once the future completes, so a
+ * fetcher should not block the calling thread either.  The number of requests in flight is bounded by
+ * {@link Crawler#setMaxInFlight(int)}.
+ * Tests can pass a lambda returning an already completed future instead of going over the network.
+ */
+@FunctionalInterface
+public interface PageFetcher extends Closeable {
+
+   /**
+    * @param url String representing the absolute URL to fetch.
+    * @return future completed with the response of the URL.
+    */
+   CompletableFuture<FetchResult> fetch(String url);
+
+   /**
+    * Fetches the URL sending extra request headers, such as the If-None-Match and If-Modified-Since headers of a
+    * conditional GET.  Fetchers which cannot send headers ignore them, which only means the full page is returned.
+    *
+    * @param url String representing the absolute URL to fetch.
+    * @param requestHeaders headers to send with the request.
+    * @return future completed with the response of the URL.
+    */
+   default CompletableFuture<FetchResult> fetch(final String url, final Map<String, String> requestHeaders) {
+      return fetch(url);
+   }
+
+   /**
+    * Releases any threads or connections held by this fetcher.
+    */
+   @Override
+   default void close() {
+   }
+}
@@ -0,0 +1,286 @@
+package pkg;
+
+import com.google.gson.stream.JsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class writes one JSON object per crawled page to a file, one object per line (newline-delimited JSON).  The
+ * file is gzip compressed if its name ends with ".gz".
+ * Records are handed to a background thread through a bounded queue and written in batches, so crawl workers never
+ * wait for the disk.  When the queue is full {@link #write(PageRecord)} blocks until the writer thread catches up,
+ * which slows the crawl down instead of letting the queue grow without limit.
+ * If writing fails the failure is logged, later records are dropped and {@link #close()} throws it.
+ */
+public class PageRecordWriter implements Closeable {
+
+   private static final Logger LOG = LoggerFactory.getLogger(PageRecordWriter.class);
+
+   /**
+    * Put in the queue by {@link #close()} to stop the writer thread.
+    */
+   private static final PageRecord END = new PageRecord("", 0, 0, 0, null, null);
+
+   private final Path file;
+
+   private final int batchSize;
+
+   private final BlockingQueue<PageRecord> queue;
+
+   private final Writer out;
+
+   private final Thread writerThread;
+
+   private final LongAdder writtenCount = new LongAdder();
+
+   private final LongAdder blockedCount = new LongAdder();
+
+   private volatile IOException failure;
+
+   private boolean closed;
+
+   /**
+    * This class holds what is written about one crawled page.
+    */
+   public static class PageRecord {
+
+      private final String url;
+
+      private final int statusCode;
+
+      private final long crawledAtMillis;
+
+      private final long durationMillis;
+
+      private final List<String> links;
+
+      private final String error;
+
+      /**
+       * @param url the crawled URL.
+       * @param statusCode HTTP status code of the response, or 0 if there was no response.
+       * @param crawledAtMillis time the crawl of the page started, in milliseconds since the epoch.
+       * @param durationMillis time taken to fetch and parse the page.
+       * @param links the absolute URLs found on the page, or null if the page failed.
+       * @param error description of the failure, or null if the page succeeded.
+       */
+      public PageRecord(final String url, final int statusCode, final long crawledAtMillis, final long durationMillis,
+          final List<String> links, final String error) {
+         this.url = url;
+         this.statusCode = statusCode;
+         this.crawledAtMillis = crawledAtMillis;
+         this.durationMillis = durationMillis;
+         this.links = links == null ? Collections.emptyList() : links;
+         this.error = error;
+      }
+
+      public String getUrl() {
+         return url;
+      }
+
+      public int getStatusCode() {
+         return statusCode;
+      }
+
+      public long getCrawledAtMillis() {
+         return crawledAtMillis;
+      }
+
+      public long getDurationMillis() {
+         return durationMillis;
+      }
+
+      public List<String> getLinks() {
+         return links;
+      }
+
+      public String getError() {
+         return error;
+      }
+   }
+
+   /**
+    * Opens the file and starts the writer thread.
+    *
+    * @param file the file to write, replaced if it exists.
+    * @param capacity maximum number of records waiting to be written before {@link #write(PageRecord)} blocks.
+    * @param batchSize maximum number of records written between flushes.
+    * @throws IOException if the file cannot be opened.
+    */
+   public PageRecordWriter(final Path file, final int capacity, final int batchSize) throws IOException {
+      this.file = file;
+      this.batchSize = batchSize;
+      this.queue = new ArrayBlockingQueue<>(capacity);
+      OutputStream fileOut = Files.newOutputStream(file);
+      if (file.getFileName().toString().endsWith(".gz")) {
+         fileOut = new GZIPOutputStream(fileOut, 64 * 1024);
+      }
+      this.out = new BufferedWriter(new OutputStreamWriter(fileOut, StandardCharsets.UTF_8), 64 * 1024);
+      this.writerThread = new Thread(this::drain, "page-record-writer");
+      writerThread.setDaemon(true);
+      writerThread.start();
+   }
+
+   public Path getFile() {
+      return file;
+   }
+
+   /**
+    * Queues a record to be written, waiting for room in the queue if the writer thread has fallen behind.
+    *
+    * @param record the record of a crawled page.
+    * @throws InterruptedIOException if interrupted while waiting for room in the queue.
+    */
+   public void write(final PageRecord record) throws InterruptedIOException {
+      if (failure != null) {
+         return;
+      }
+      if (!queue.offer(record)) {
+         blockedCount.increment();
+         try {
+            queue.put(record);
+         }
+         catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to write " + record.url);
+         }
+      }
+   }
+
+   /**
+    * @return the number of records written to the file.
+    */
+   public long getWrittenCount() {
+      return writtenCount.sum();
+   }
+
+   /**
+    * @return the number of times {@link #write(PageRecord)} had to wait for the writer thread.
+    */
+   public long getBlockedCount() {
+      return blockedCount.sum();
+   }
+
+   /**
+    * Waits for the queued records to be written and closes the file.
+    *
+    * @throws IOException if writing a record or closing the file failed.
+    */
+   @Override
+   public synchronized void close() throws IOException {
+      if (closed) {
+         return;
+      }
+      closed = true;
+      try {
+         queue.put(END);
+         writerThread.join();
+      }
+      catch (final InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while closing " + file);
+      }
+      if (failure != null) {
+         throw failure;
+      }
+      LOG.debug("Wrote " + getWrittenCount() + " page records to " + file);
+   }
+
+   /**
+    * This method is run by the writer thread.  It writes the queued records in batches until {@link #END} is taken.
+    */
+   private void drain() {
+      final List<PageRecord> batch = new ArrayList<>(batchSize);
+      try {
+         final JsonWriter jsonWriter = new JsonWriter(out);
+         // lenient so the writer accepts one top-level value per line
+         jsonWriter.setLenient(true);
+         boolean end = false;
+         while (!end) {
+            batch.add(queue.take());
+            queue.drainTo(batch, batchSize - 1);
+            for (final PageRecord record : batch) {
+               if (record == END) {
+                  end = true;
+                  break;
+               }
+               writeRecord(jsonWriter, record);
+               writtenCount.increment();
+            }
+            batch.clear();
+            out.flush();
+         }
+         out.close();
+      }
+      catch (final IOException e) {
+         LOG.error("Unable to write page records to " + file + ", dropping the remaining records", e);
+         failure = e;
+         discardUntilEnd();
+      }
+      catch (final InterruptedException e) {
+         failure = new InterruptedIOException("Interrupted while writing " + file);
+      }
+   }
+
+   /**
+    * Writes one record as a JSON object on its own line.  The record's members are written in a fixed order and
+    * "error" is only written for failed pages.
+    */
+   private void writeRecord(final JsonWriter jsonWriter, final PageRecord record) throws IOException {
+      jsonWriter.beginObject();
+      jsonWriter.name("url").value(record.url);
+      jsonWriter.name("status").value(record.statusCode);
+      jsonWriter.name("crawledAt").value(record.crawledAtMillis);
+      jsonWriter.name("durationMillis").value(record.durationMillis);
+      jsonWriter.name("links").beginArray();
+      for (final String link : record.links) {
+         jsonWriter.value(link);
+      }
+      jsonWriter.endArray();
+      if (record.error != null) {
+         jsonWriter.name("error").value(record.error);
+      }
+      jsonWriter.endObject();
+      out.write('\n');
+   }
+
+   /**
+    * Keeps taking records after a failure so workers waiting in {@link #write(PageRecord)} are not blocked forever.
+    */
+   private void discardUntilEnd() {
+      try {
+         out.close();
+      }
+      catch (final IOException e) {
+         LOG.debug("Unable to close " + file, e);
+      }
+      try {
+         while (queue.take() != END) {
+            LOG.trace("Dropping page record");
+         }
+      }
+      catch (final InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+}
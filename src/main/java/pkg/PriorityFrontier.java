@@ -0,0 +1,221 @@
+package pkg;
+
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * @author Brian Chipman
+ *
+ * This is a queue of unique URLs which returns the URL with the lowest {@link LinkScorer} score first, and of URLs
+ * with the same score the one queued first.  Each URL is queued with its depth, the number of links followed from a
+ * seed to reach it, which the scorer may use and which {@link #getLastPolledDepth()} returns once it is polled.
+ * The queue is a binary heap kept in parallel arrays of URLs, depths, scores and sequence numbers, so an entry takes
+ * 24 bytes besides the URL instead of a heap node object, and adding and polling take O(log n) with millions of
+ * URLs queued.  The set used to detect duplicates can be passed in, e.g. a {@link FingerprintSet}, and may be shared
+ * by several frontiers, as {@link HostScheduler} does with one frontier per host.
+ * This class is not thread safe; {@link Crawler} only uses it while holding its frontier lock.
+ */
+public class PriorityFrontier extends AbstractQueue<String> implements LinkFrontier {
+
+   private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+   private final LinkScorer scorer;
+
+   private final Set<String> queuedLinks;
+
+   private String[] links;
+
+   private int[] depths;
+
+   private double[] scores;
+
+   private long[] sequences;
+
+   private int size;
+
+   private long nextSequence;
+
+   private int lastPolledDepth;
+
+   public PriorityFrontier(final LinkScorer scorer) {
+      this(scorer, new HashSet<>());
+   }
+
+   /**
+    * @param scorer scores the URLs, lower scores are returned first.
+    * @param queuedLinks empty set used to detect duplicates; it must support removal.
+    */
+   public PriorityFrontier(final LinkScorer scorer, final Set<String> queuedLinks) {
+      this(scorer, queuedLinks, DEFAULT_INITIAL_CAPACITY);
+   }
+
+   /**
+    * @param scorer scores the URLs, lower scores are returned first.
+    * @param queuedLinks set used to detect duplicates; it must support removal.
+    * @param initialCapacity number of URLs the arrays hold before they grow, e.g. small for a frontier per host.
+    */
+   public PriorityFrontier(final LinkScorer scorer, final Set<String> queuedLinks, final int initialCapacity) {
+      if (initialCapacity < 1) {
+         throw new IllegalArgumentException("initialCapacity must be at least 1: " + initialCapacity);
+      }
+      this.scorer = scorer;
+      this.queuedLinks = queuedLinks;
+      links = new String[initialCapacity];
+      depths = new int[initialCapacity];
+      scores = new double[initialCapacity];
+      sequences = new long[initialCapacity];
+   }
+
+   /**
+    * Unlike {@link AbstractQueue#add(Object)} this does not throw when the URL is already queued, matching
+    * {@link UniqueQueue#add(Object)}.  The URL is queued at depth 0.
+    */
+   @Override
+   public boolean add(final String link) {
+      return offer(link, 0);
+   }
+
+   @Override
+   public boolean offer(final String link) {
+      return offer(link, 0);
+   }
+
+   @Override
+   public boolean offer(final String link, final int depth) {
+      if (!queuedLinks.add(link)) {
+         return false;
+      }
+      if (size == links.length) {
+         final int capacity = size * 2;
+         links = Arrays.copyOf(links, capacity);
+         depths = Arrays.copyOf(depths, capacity);
+         scores = Arrays.copyOf(scores, capacity);
+         sequences = Arrays.copyOf(sequences, capacity);
+      }
+      int index = size++;
+      final double score = scorer.score(link, depth);
+      final long sequence = nextSequence++;
+      while (index > 0) {
+         final int parent = (index - 1) >>> 1;
+         if (!isBefore(score, sequence, parent)) {
+            break;
+         }
+         move(parent, index);
+         index = parent;
+      }
+      set(index, link, depth, score, sequence);
+      return true;
+   }
+
+   /**
+    * @return the URL with the lowest score, or null if the queue is empty.
+    */
+   @Override
+   public String poll() {
+      if (size == 0) {
+         return null;
+      }
+      final String link = links[0];
+      lastPolledDepth = depths[0];
+      queuedLinks.remove(link);
+      final int last = --size;
+      if (last > 0) {
+         final String lastLink = links[last];
+         final int lastDepth = depths[last];
+         final double lastScore = scores[last];
+         final long lastSequence = sequences[last];
+         int index = 0;
+         int child;
+         while ((child = 2 * index + 1) < last) {
+            if (child + 1 < last && isBefore(scores[child + 1], sequences[child + 1], child)) {
+               child++;
+            }
+            if (!isBefore(scores[child], sequences[child], last)) {
+               break;
+            }
+            move(child, index);
+            index = child;
+         }
+         set(index, lastLink, lastDepth, lastScore, lastSequence);
+      }
+      links[last] = null;
+      return link;
+   }
+
+   @Override
+   public int getLastPolledDepth() {
+      return lastPolledDepth;
+   }
+
+   @Override
+   public String peek() {
+      return size == 0 ? null : links[0];
+   }
+
+   /**
+    * @return the score of the URL {@link #peek()} returns, or {@link Double#POSITIVE_INFINITY} if the queue is empty.
+    */
+   public double peekScore() {
+      return size == 0 ? Double.POSITIVE_INFINITY : scores[0];
+   }
+
+   @Override
+   public boolean contains(final Object o) {
+      return queuedLinks.contains(o);
+   }
+
+   @Override
+   public int size() {
+      return size;
+   }
+
+   @Override
+   public boolean isEmpty() {
+      return size == 0;
+   }
+
+   /**
+    * @return an iterator over the queued URLs in no particular order, which does not support removal.
+    */
+   @Override
+   public Iterator<String> iterator() {
+      return Collections.unmodifiableList(Arrays.asList(links).subList(0, size)).iterator();
+   }
+
+   /**
+    * Empties the queue and clears the set used to detect duplicates, also if it is shared.
+    */
+   @Override
+   public void clear() {
+      Arrays.fill(links, 0, size, null);
+      size = 0;
+      queuedLinks.clear();
+   }
+
+   @Override
+   public String toString() {
+      return "PriorityFrontier[size=" + size + "]";
+   }
+
+   /**
+    * @return true if an entry with the score and sequence number comes before the entry at the index.
+    */
+   private boolean isBefore(final double score, final long sequence, final int index) {
+      return score < scores[index] || (score == scores[index] && sequence < sequences[index]);
+   }
+
+   private void move(final int from, final int to) {
+      set(to, links[from], depths[from], scores[from], sequences[from]);
+   }
+
+   private void set(final int index, final String link, final int depth, final double score, final long sequence) {
+      links[index] = link;
+      depths[index] = depth;
+      scores[index] = score;
+      sequences[index] = sequence;
+   }
+}
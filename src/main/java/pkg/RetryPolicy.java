@@ -0,0 +1,110 @@
+package pkg;
+
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class decides whether and when {@link Crawler} retries a link which failed.  Only transient failures are
+ * retried: timeouts and other connection failures, 5xx responses and 408 and 429 responses.  Each link is retried at
+ * most maxRetries times after an exponentially growing delay, starting at baseDelayMillis and capped at
+ * maxDelayMillis, of which a random half is jitter so retries of many links to one host do not arrive together.
+ * Retries across the whole crawl are limited by a retry budget: at most {@link #MIN_RETRIES} plus retryBudgetRatio
+ * times the number of attempts made so far, so a widespread outage cannot multiply the load on the failing hosts.
+ */
+public class RetryPolicy {
+
+   public static final int MIN_RETRIES = 10;
+
+   private final int maxRetries;
+
+   private final long baseDelayMillis;
+
+   private final long maxDelayMillis;
+
+   private final double retryBudgetRatio;
+
+   private final AtomicLong attemptCount = new AtomicLong();
+
+   private final AtomicLong retryCount = new AtomicLong();
+
+   /**
+    * @param maxRetries maximum number of retries of one link.
+    * @param baseDelayMillis delay before the first retry.
+    * @param maxDelayMillis maximum delay before a retry.
+    * @param retryBudgetRatio maximum number of retries per attempt across the crawl, e.g. 0.1.
+    */
+   public RetryPolicy(final int maxRetries, final long baseDelayMillis, final long maxDelayMillis,
+       final double retryBudgetRatio) {
+      this.maxRetries = maxRetries;
+      this.baseDelayMillis = baseDelayMillis;
+      this.maxDelayMillis = maxDelayMillis;
+      this.retryBudgetRatio = retryBudgetRatio;
+   }
+
+   public int getMaxRetries() {
+      return maxRetries;
+   }
+
+   /**
+    * Counts an attempt to crawl a link, which adds to the retry budget.
+    */
+   public void recordAttempt() {
+      attemptCount.incrementAndGet();
+   }
+
+   /**
+    * Takes one retry from the retry budget.
+    *
+    * @return true if the budget allowed the retry.
+    */
+   public boolean tryAcquireRetry() {
+      while (true) {
+         final long retries = retryCount.get();
+         if (retries >= MIN_RETRIES + retryBudgetRatio * attemptCount.get()) {
+            return false;
+         }
+         if (retryCount.compareAndSet(retries, retries + 1)) {
+            return true;
+         }
+      }
+   }
+
+   /**
+    * @param retry the number of the retry, starting at 1.
+    * @return the delay before the retry in milliseconds.
+    */
+   public long getDelayMillis(final int retry) {
+      final long delay = Math.min(maxDelayMillis, baseDelayMillis << Math.min(30, Math.max(0, retry - 1)));
+      return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+   }
+
+   /**
+    * @param failure the exception thrown when crawling a link.
+    * @return true if the failure may go away by itself, so the link is worth retrying and the failure counts against
+    *     the host in a {@link HostCircuitBreaker}.
+    */
+   public static boolean isTransientFailure(final Throwable failure) {
+      if (failure instanceof HttpStatusException) {
+         return isTransientStatusCode(((HttpStatusException) failure).getStatusCode());
+      }
+      return failure instanceof IOException && !(failure instanceof UnsupportedMimeTypeException)
+          && !(failure instanceof BodyTooLargeException) && !(failure instanceof UnknownHostException)
+          && !(failure instanceof MalformedURLException);
+   }
+
+   /**
+    * @param statusCode the HTTP status code of a response.
+    * @return true if the status code tells of a failure which may go away by itself: 408, 429 or 5xx.
+    */
+   public static boolean isTransientStatusCode(final int statusCode) {
+      return statusCode >= 500 || statusCode == 408 || statusCode == 429;
+   }
+}
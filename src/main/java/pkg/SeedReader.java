@@ -0,0 +1,187 @@
+package pkg;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class reads the starting links of a crawl one at a time, so a seed list of millions of URLs is never held in
+ * memory as a whole.  Two formats are read:
+ * - a JSON document, either an object whose "links" member is an array of URLs, like the starting point document,
+ *   or an array of URLs.  The document is read with Gson's {@link JsonReader}, so only the current URL is parsed.
+ * - a text file with one URL per line.  Blank lines and lines starting with # are skipped.
+ * The format is told apart by the first character which is not whitespace.  Seeds can be read from an http or https
+ * URL or from a local file, and gzip compressed seeds are decompressed whatever their name.
+ */
+public class SeedReader implements Closeable {
+
+   private static final int BUFFER_SIZE = 64 * 1024;
+
+   private final String location;
+
+   private final BufferedReader reader;
+
+   private JsonReader jsonReader;
+
+   private boolean inLinks;
+
+   private boolean finished;
+
+   /**
+    * @param reader the seeds in either format.
+    * @param location where the seeds are read from, for messages.
+    * @throws IOException if the seeds cannot be read.
+    */
+   public SeedReader(final Reader reader, final String location) throws IOException {
+      this.location = location;
+      this.reader = reader instanceof BufferedReader ? (BufferedReader) reader
+          : new BufferedReader(reader, BUFFER_SIZE);
+      int c;
+      do {
+         this.reader.mark(1);
+         c = this.reader.read();
+      } while (c != -1 && Character.isWhitespace(c));
+      if (c == -1) {
+         finished = true;
+      }
+      else {
+         this.reader.reset();
+         if (c == '{' || c == '[') {
+            jsonReader = new JsonReader(this.reader);
+         }
+      }
+   }
+
+   /**
+    * Opens the seeds at an http or https URL or in a local file.
+    *
+    * @param location URL or path of the seeds.
+    * @return a reader of the seeds.
+    * @throws IOException if the seeds cannot be opened.
+    */
+   public static SeedReader open(final String location) throws IOException {
+      final InputStream in;
+      if (location.startsWith("http://") || location.startsWith("https://")) {
+         final HttpURLConnection connection = (HttpURLConnection) new URL(location).openConnection();
+         connection.setConnectTimeout(HttpPageFetcher.DEFAULT_CONNECT_TIMEOUT_MILLIS);
+         connection.setReadTimeout(HttpPageFetcher.DEFAULT_READ_TIMEOUT_MILLIS);
+         connection.setRequestProperty("User-Agent", HttpPageFetcher.USER_AGENT);
+         connection.setRequestProperty("Accept-Encoding", "gzip");
+         if (connection.getResponseCode() >= 400) {
+            connection.disconnect();
+            throw new IOException("HTTP error " + connection.getResponseCode() + " fetching seeds from " + location);
+         }
+         in = connection.getInputStream();
+      }
+      else {
+         in = Files.newInputStream(Paths.get(location));
+      }
+      try {
+         return new SeedReader(new InputStreamReader(decompress(in), StandardCharsets.UTF_8), location);
+      }
+      catch (final IOException e) {
+         in.close();
+         throw e;
+      }
+   }
+
+   public String getLocation() {
+      return location;
+   }
+
+   /**
+    * @return the next seed URL, or null once all seeds have been read.
+    * @throws IOException if the seeds cannot be read or are not valid JSON.
+    */
+   public String readLink() throws IOException {
+      if (finished) {
+         return null;
+      }
+      final String link = jsonReader == null ? readLine() : readJsonLink();
+      finished = link == null;
+      return link;
+   }
+
+   @Override
+   public void close() throws IOException {
+      finished = true;
+      reader.close();
+   }
+
+   private String readLine() throws IOException {
+      String line;
+      while ((line = reader.readLine()) != null) {
+         line = line.trim();
+         if (!line.isEmpty() && !line.startsWith("#")) {
+            return line;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Reads the next string of the links array, first finding the array if it was not found yet.  Values of the
+    * array which are not strings are skipped.
+    */
+   private String readJsonLink() throws IOException {
+      if (!inLinks && !findLinks()) {
+         return null;
+      }
+      while (jsonReader.hasNext()) {
+         if (jsonReader.peek() == JsonToken.STRING) {
+            return jsonReader.nextString();
+         }
+         jsonReader.skipValue();
+      }
+      return null;
+   }
+
+   /**
+    * Moves jsonReader into the links array.
+    *
+    * @return false if the document has no links array.
+    */
+   private boolean findLinks() throws IOException {
+      if (jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+         jsonReader.beginArray();
+         inLinks = true;
+         return true;
+      }
+      jsonReader.beginObject();
+      while (jsonReader.hasNext()) {
+         if (jsonReader.nextName().equals("links") && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+            jsonReader.beginArray();
+            inLinks = true;
+            return true;
+         }
+         jsonReader.skipValue();
+      }
+      return false;
+   }
+
+   /**
+    * Wraps the stream in a {@link GZIPInputStream} if it starts with the gzip magic number.
+    */
+   private static InputStream decompress(final InputStream in) throws IOException {
+      final BufferedInputStream bufferedIn = new BufferedInputStream(in, BUFFER_SIZE);
+      bufferedIn.mark(2);
+      final boolean gzip = bufferedIn.read() == 0x1f && bufferedIn.read() == 0x8b;
+      bufferedIn.reset();
+      return gzip ? new GZIPInputStream(bufferedIn, BUFFER_SIZE) : bufferedIn;
+   }
+}
@@ -0,0 +1,18 @@
+package pkg;
+
+import java.util.Set;
+
+/**
+ * @author Brian Chipman
+ *
+ * This interface is implemented by compact sets of URLs which can be used in place of a HashSet for
+ * {@link Crawler#setVisitedLinks(Set)} or as the set of a {@link UniqueQueue}.  The URLs themselves are not kept, so
+ * these sets cannot be iterated.
+ */
+public interface SeenUrlStore extends Set<String> {
+
+   /**
+    * @return an estimate of the heap used by this store in bytes.
+    */
+   long getMemoryUsageBytes();
+}
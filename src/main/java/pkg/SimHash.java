@@ -0,0 +1,144 @@
+package pkg;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class computes 64 bit simhash fingerprints of HTML pages (Charikar's similarity hash).  Each word of the text
+ * of the page is hashed, and bit i of the simhash is set if more words have bit i set in their hash than not.  Pages
+ * which differ in a few words, e.g. a timestamp or an ad, get simhashes which differ in a few bits, while unrelated
+ * pages differ in about 32 bits.  Tags and the contents of script and style elements are not part of the text.
+ * Since link targets are not part of the text either, {@link #linkHashOf(String)} hashes them separately, so a page
+ * whose links changed while its text did not can still be told apart.
+ */
+public final class SimHash {
+
+   private SimHash() {
+   }
+
+   /**
+    * @param html the HTML of the page.
+    * @return the simhash of the text of the page, 0 for a page without words.
+    */
+   public static long of(final String html) {
+      final int[] bitWeights = new int[64];
+      final int length = html.length();
+      int i = 0;
+      while (i < length) {
+         final char c = html.charAt(i);
+         if (c == '<') {
+            i = skipTag(html, i);
+         }
+         else if (Character.isLetterOrDigit(c)) {
+            long hash = 0xcbf29ce484222325L;
+            while (i < length && Character.isLetterOrDigit(html.charAt(i))) {
+               hash = (hash ^ Character.toLowerCase(html.charAt(i))) * 0x100000001b3L;
+               i++;
+            }
+            hash = UrlFingerprint.mix(hash);
+            for (int bit = 0; bit < 64; bit++) {
+               bitWeights[bit] += (hash >>> bit & 1) == 1 ? 1 : -1;
+            }
+         }
+         else {
+            i++;
+         }
+      }
+      long simHash = 0;
+      for (int bit = 0; bit < 64; bit++) {
+         if (bitWeights[bit] > 0) {
+            simHash |= 1L << bit;
+         }
+      }
+      return simHash;
+   }
+
+   /**
+    * @param html the HTML of the page.
+    * @return a hash of the href values of the page's tags, which does not depend on their order, 0 for a page
+    *     without any.
+    */
+   public static long linkHashOf(final String html) {
+      long linkHash = 0;
+      int i = html.indexOf('<');
+      while (i >= 0) {
+         int tagEnd = html.indexOf('>', i + 1);
+         tagEnd = tagEnd < 0 ? html.length() : tagEnd;
+         int href = indexOfIgnoreCase(html, "href", i + 1, tagEnd);
+         while (href >= 0) {
+            int valueStart = href + 4;
+            while (valueStart < tagEnd && Character.isWhitespace(html.charAt(valueStart))) {
+               valueStart++;
+            }
+            if (Character.isWhitespace(html.charAt(href - 1)) && valueStart < tagEnd
+                && html.charAt(valueStart) == '=') {
+               valueStart++;
+               while (valueStart < tagEnd && Character.isWhitespace(html.charAt(valueStart))) {
+                  valueStart++;
+               }
+               final char quote = valueStart < tagEnd ? html.charAt(valueStart) : ' ';
+               int valueEnd;
+               if (quote == '"' || quote == '\'') {
+                  valueStart++;
+                  valueEnd = html.indexOf(quote, valueStart);
+                  valueEnd = valueEnd < 0 || valueEnd > tagEnd ? tagEnd : valueEnd;
+               }
+               else {
+                  valueEnd = valueStart;
+                  while (valueEnd < tagEnd && !Character.isWhitespace(html.charAt(valueEnd))) {
+                     valueEnd++;
+                  }
+               }
+               linkHash += UrlFingerprint.fingerprint(html.subSequence(valueStart, valueEnd));
+               href = valueEnd;
+            }
+            href = indexOfIgnoreCase(html, "href", href + 1, tagEnd);
+         }
+         i = html.indexOf('<', skipTag(html, i));
+      }
+      return linkHash;
+   }
+
+   /**
+    * @return the number of bits in which the two simhashes differ, from 0 for the same text to 64.
+    */
+   public static int distance(final long simHash, final long otherSimHash) {
+      return Long.bitCount(simHash ^ otherSimHash);
+   }
+
+   /**
+    * Skips the tag starting at the index, and for a script or style start tag also the contents of the element.
+    *
+    * @return the index after the tag or element.
+    */
+   private static int skipTag(final String html, final int start) {
+      int end = html.indexOf('>', start + 1);
+      end = end < 0 ? html.length() : end + 1;
+      for (final String element : new String[] {"script", "style"}) {
+         if (html.regionMatches(true, start + 1, element, 0, element.length())
+             && start + 1 + element.length() < html.length()
+             && !Character.isLetterOrDigit(html.charAt(start + 1 + element.length()))) {
+            final int close = indexOfTag(html, "</" + element, end);
+            return close < 0 ? html.length() : close;
+         }
+      }
+      return end;
+   }
+
+   private static int indexOfTag(final String html, final String s, final int from) {
+      for (int i = from; i <= html.length() - s.length(); i++) {
+         if (html.charAt(i) == '<' && html.regionMatches(true, i, s, 0, s.length())) {
+            return i;
+         }
+      }
+      return -1;
+   }
+
+   private static int indexOfIgnoreCase(final String html, final String s, final int from, final int to) {
+      for (int i = from; i <= to - s.length(); i++) {
+         if (html.regionMatches(true, i, s, 0, s.length())) {
+            return i;
+         }
+      }
+      return -1;
+   }
+}
@@ -0,0 +1,226 @@
+package pkg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class remembers the {@link SimHash} and the links of every crawled page, so an incremental re-crawl can tell
+ * pages whose text has not meaningfully changed, e.g. only in an ad or a timestamp, from pages which have.  A page is
+ * unchanged if its simhash differs from the stored one in at most maxDistance bits and the hash of its link targets,
+ * see {@link SimHash#linkHashOf(String)}, is the same, and then its stored links are queued instead of parsing the
+ * page again.  The simhash only covers the text, so without the link hash a hub page whose links were replaced but
+ * whose anchor texts were not would be found unchanged and its old links queued.  The stored simhash is kept as
+ * the reference, so a page which changes a little on every crawl is still found changed once it has drifted far
+ * enough.
+ * Pages and links are kept as a {@link LinkGraph}, i.e. each URL once in a {@link UrlDictionary} and links as int
+ * IDs, with a simhash and a link hash per ID.  {@link #load()} reads the file written by an earlier crawl and
+ * {@link #close()} writes the store to a temporary file which then replaces the old one, like {@link ValidatorCache}.
+ * A file written before link hashes were stored is ignored, so every page is parsed once more.
+ * All methods may be called from several crawler workers at the same time.
+ */
+public class SimHashStore implements Closeable {
+
+   private static final int MAGIC = 0x43525348;
+
+   private static final byte VERSION = 2;
+
+   /**
+    * Version of files without link hashes, which are ignored.
+    */
+   private static final byte VERSION_WITHOUT_LINK_HASHES = 1;
+
+   private final Path file;
+
+   private final int maxDistance;
+
+   private LinkGraph linkGraph = new LinkGraph();
+
+   /**
+    * Simhash of each page by ID, for the pages which have out-links in linkGraph.
+    */
+   private long[] simHashes = new long[1024];
+
+   /**
+    * Link hash of each page by ID, for the pages which have out-links in linkGraph.
+    */
+   private long[] linkHashes = new long[1024];
+
+   private int pageCount;
+
+   /**
+    * @param file the file the store is loaded from and saved to.
+    * @param maxDistance the largest number of bits in which the simhash of an unchanged page may differ, e.g. 3.
+    */
+   public SimHashStore(final Path file, final int maxDistance) {
+      if (maxDistance < 0 || maxDistance > 64) {
+         throw new IllegalArgumentException("maxDistance must be from 0 to 64: " + maxDistance);
+      }
+      this.file = file;
+      this.maxDistance = maxDistance;
+   }
+
+   public Path getFile() {
+      return file;
+   }
+
+   public int getMaxDistance() {
+      return maxDistance;
+   }
+
+   /**
+    * @return the number of pages stored.
+    */
+   public synchronized int size() {
+      return pageCount;
+   }
+
+   /**
+    * This method reads the store saved by an earlier crawl, replacing the pages stored so far.  Nothing is read if
+    * the file does not exist or was written before link hashes were stored.
+    *
+    * @throws IOException if the file cannot be read or is not a simhash store file.
+    */
+   public synchronized void load() throws IOException {
+      if (!Files.exists(file)) {
+         return;
+      }
+      try (final InputStream fileIn = Files.newInputStream(file);
+          final DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn, 64 * 1024))) {
+         if (in.readInt() != MAGIC) {
+            throw new IOException("Not a simhash store file: " + file);
+         }
+         final byte version = in.readByte();
+         if (version == VERSION_WITHOUT_LINK_HASHES) {
+            return;
+         }
+         if (version != VERSION) {
+            throw new IOException("Unsupported simhash store version " + version + ": " + file);
+         }
+         final UrlDictionary urlDictionary = UrlDictionary.readFrom(in);
+         final LinkGraph loadedGraph = new LinkGraph(urlDictionary);
+         final long[] loadedSimHashes = new long[Math.max(1024, urlDictionary.size())];
+         final long[] loadedLinkHashes = new long[loadedSimHashes.length];
+         final int loadedPageCount = in.readInt();
+         for (int i = 0; i < loadedPageCount; i++) {
+            final int id = in.readInt();
+            final long simHash = in.readLong();
+            final long linkHash = in.readLong();
+            final int[] targets = new int[in.readInt()];
+            for (int j = 0; j < targets.length; j++) {
+               targets[j] = in.readInt();
+               if (targets[j] < 0 || targets[j] >= urlDictionary.size()) {
+                  throw new IOException("Invalid link target " + targets[j] + " in simhash store " + file);
+               }
+            }
+            if (id < 0 || id >= urlDictionary.size()) {
+               throw new IOException("Invalid page ID " + id + " in simhash store " + file);
+            }
+            loadedGraph.setOutLinks(id, targets);
+            loadedSimHashes[id] = simHash;
+            loadedLinkHashes[id] = linkHash;
+         }
+         linkGraph = loadedGraph;
+         simHashes = loadedSimHashes;
+         linkHashes = loadedLinkHashes;
+         pageCount = loadedPageCount;
+      }
+      catch (final EOFException e) {
+         throw new IOException("Simhash store file is truncated: " + file, e);
+      }
+   }
+
+   /**
+    * @param url String representing the URL of the page.
+    * @param simHash the simhash of the page just downloaded.
+    * @param linkHash the link hash of the page just downloaded.
+    * @return the stored links of the page if it is stored and has not changed, otherwise null.
+    */
+   public synchronized List<String> getLinksIfUnchanged(final String url, final long simHash, final long linkHash) {
+      final int id = linkGraph.getUrlDictionary().getId(url);
+      final int[] targets = linkGraph.getOutLinks(id);
+      if (targets == null || linkHashes[id] != linkHash || SimHash.distance(simHashes[id], simHash) > maxDistance) {
+         return null;
+      }
+      final List<String> links = new ArrayList<>(targets.length);
+      for (final int target : targets) {
+         links.add(linkGraph.getUrlDictionary().getUrl(target));
+      }
+      return links;
+   }
+
+   /**
+    * Remembers the simhash and links of a page which is new or has changed.
+    *
+    * @param url String representing the URL of the page.
+    * @param simHash the simhash of the page.
+    * @param linkHash the link hash of the page.
+    * @param links the absolute URLs of the links found on the page.
+    */
+   public synchronized void put(final String url, final long simHash, final long linkHash,
+       final List<String> links) {
+      final int id = linkGraph.getUrlDictionary().getOrAdd(url);
+      if (linkGraph.getOutLinks(id) == null) {
+         pageCount++;
+      }
+      linkGraph.addPage(url, links);
+      if (id >= simHashes.length) {
+         simHashes = Arrays.copyOf(simHashes, Math.max(id + 1, simHashes.length * 2));
+         linkHashes = Arrays.copyOf(linkHashes, simHashes.length);
+      }
+      simHashes[id] = simHash;
+      linkHashes[id] = linkHash;
+   }
+
+   /**
+    * This method writes all pages to a temporary file which is then moved over the store file.  The file holds the
+    * ID to URL table described in {@link UrlDictionary#writeTo(DataOutputStream)}, the number of pages and for each
+    * page its ID, simhash, link hash, number of links and the IDs of the links.
+    *
+    * @throws IOException if the file cannot be written.
+    */
+   @Override
+   public synchronized void close() throws IOException {
+      final Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+      try (final OutputStream fileOut = Files.newOutputStream(tempFile);
+          final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024))) {
+         out.writeInt(MAGIC);
+         out.writeByte(VERSION);
+         final UrlDictionary urlDictionary = linkGraph.getUrlDictionary();
+         urlDictionary.writeTo(out);
+         out.writeInt(pageCount);
+         for (int id = 0; id < urlDictionary.size(); id++) {
+            final int[] targets = linkGraph.getOutLinks(id);
+            if (targets != null) {
+               out.writeInt(id);
+               out.writeLong(simHashes[id]);
+               out.writeLong(linkHashes[id]);
+               out.writeInt(targets.length);
+               for (final int target : targets) {
+                  out.writeInt(target);
+               }
+            }
+         }
+      }
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+   }
+
+   @Override
+   public synchronized String toString() {
+      return "SimHashStore[pages=" + pageCount + ", maxDistance=" + maxDistance + "]";
+   }
+}
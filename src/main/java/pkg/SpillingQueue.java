@@ -0,0 +1,396 @@
+package pkg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * @author Brian Chipman
+ *
+ * This is a FIFO queue of unique URLs which keeps at most a fixed number of URLs on the heap and spills the rest to
+ * disk.  URLs are taken from an in memory head and added to an in memory tail.  When the tail is full it is written
+ * to an append-only segment file; when the head is empty the oldest segment is read back sequentially (or, if there
+ * are no segments, the tail becomes the head).  Order is therefore head, segments oldest to newest, tail.
+ * The depth of every URL is kept with it, see {@link LinkFrontier}.
+ * Duplicates are detected with a {@link FingerprintSet} by default, which costs about 16 bytes per queued URL rather
+ * than the URL itself.
+ * Segment files are created with unique names, so several queues can spill to the same directory, and are deleted
+ * once read and by {@link #close()}.  I/O errors are thrown as
+ * {@link UncheckedIOException} since the {@link java.util.Queue} methods cannot throw checked exceptions.
+ * This class is not thread safe; {@link Crawler} only uses it while holding its frontier lock.
+ */
+public class SpillingQueue extends AbstractQueue<String> implements LinkFrontier, Closeable {
+
+   private final Path spillDirectory;
+
+   private final int maxHeadSize;
+
+   private final int maxTailSize;
+
+   private final Set<String> set;
+
+   private LinkBuffer head;
+
+   private LinkBuffer tail;
+
+   private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+
+   private int size;
+
+   private int lastPolledDepth;
+
+   /**
+    * @param spillDirectory existing directory where segment files are written.
+    * @param maxInMemoryLinks maximum number of URLs kept on the heap, split between head and tail.
+    */
+   public SpillingQueue(final Path spillDirectory, final int maxInMemoryLinks) {
+      this(spillDirectory, maxInMemoryLinks, new FingerprintSet());
+   }
+
+   /**
+    * @param spillDirectory existing directory where segment files are written.
+    * @param maxInMemoryLinks maximum number of URLs kept on the heap, split between head and tail.
+    * @param set set used to detect duplicates; it must support removal.  It may be shared with other queues, such
+    *     as the host queues of a {@link HostScheduler}, so a URL is only queued once in any of them.
+    */
+   public SpillingQueue(final Path spillDirectory, final int maxInMemoryLinks, final Set<String> set) {
+      if (maxInMemoryLinks < 2) {
+         throw new IllegalArgumentException("maxInMemoryLinks must be at least 2: " + maxInMemoryLinks);
+      }
+      this.spillDirectory = spillDirectory;
+      this.maxHeadSize = maxInMemoryLinks / 2;
+      this.maxTailSize = maxInMemoryLinks - maxHeadSize;
+      this.set = set;
+      this.head = new LinkBuffer(maxHeadSize);
+      this.tail = new LinkBuffer(maxTailSize);
+   }
+
+   /**
+    * Unlike {@link AbstractQueue#add(Object)} this does not throw when the URL is already queued, matching
+    * {@link UniqueQueue#add(Object)}.  The URL is queued at depth 0.
+    */
+   @Override
+   public boolean add(final String link) {
+      return offer(link, 0);
+   }
+
+   @Override
+   public boolean offer(final String link) {
+      return offer(link, 0);
+   }
+
+   @Override
+   public boolean offer(final String link, final int depth) {
+      if (!set.add(link)) {
+         return false;
+      }
+      if (segments.isEmpty() && tail.isEmpty() && head.size() < maxHeadSize) {
+         head.add(link, depth);
+      }
+      else {
+         tail.add(link, depth);
+         if (tail.size() >= maxTailSize) {
+            spillTail();
+         }
+      }
+      size++;
+      return true;
+   }
+
+   @Override
+   public String poll() {
+      if (head.isEmpty()) {
+         refillHead();
+         if (head.isEmpty()) {
+            return null;
+         }
+      }
+      lastPolledDepth = head.peekDepth();
+      final String link = head.poll();
+      set.remove(link);
+      size--;
+      return link;
+   }
+
+   @Override
+   public String peek() {
+      if (head.isEmpty()) {
+         refillHead();
+      }
+      return head.peek();
+   }
+
+   @Override
+   public int getLastPolledDepth() {
+      return lastPolledDepth;
+   }
+
+   @Override
+   public boolean contains(final Object o) {
+      return set.contains(o);
+   }
+
+   @Override
+   public int size() {
+      return size;
+   }
+
+   @Override
+   public boolean isEmpty() {
+      return size == 0;
+   }
+
+   /**
+    * @return the number of segment files currently on disk.
+    */
+   public int getSegmentCount() {
+      return segments.size();
+   }
+
+   /**
+    * @return the number of URLs currently on the heap.
+    */
+   public int getInMemoryCount() {
+      return head.size() + tail.size();
+   }
+
+   /**
+    * @return a read-only iterator over all queued URLs in order.  Segments are read from disk one at a time.
+    */
+   @Override
+   public Iterator<String> iterator() {
+      final List<Iterable<String>> parts = new ArrayList<>();
+      parts.add(head.toList());
+      parts.addAll(segments);
+      parts.add(tail.toList());
+      return new Iterator<String>() {
+
+         private int partIndex;
+
+         private Iterator<String> current = Collections.emptyIterator();
+
+         @Override
+         public boolean hasNext() {
+            while (!current.hasNext() && partIndex < parts.size()) {
+               current = parts.get(partIndex++).iterator();
+            }
+            return current.hasNext();
+         }
+
+         @Override
+         public String next() {
+            if (!hasNext()) {
+               throw new NoSuchElementException();
+            }
+            return current.next();
+         }
+      };
+   }
+
+   @Override
+   public void clear() {
+      head.clear();
+      tail.clear();
+      set.clear();
+      while (!segments.isEmpty()) {
+         deleteSegment(segments.remove());
+      }
+      size = 0;
+   }
+
+   /**
+    * Deletes all segment files.
+    */
+   @Override
+   public void close() {
+      clear();
+   }
+
+   /**
+    * This method moves the oldest queued URLs into the empty head: the oldest segment if there is one, otherwise the
+    * tail.
+    */
+   private void refillHead() {
+      if (!segments.isEmpty()) {
+         final Segment segment = segments.remove();
+         readSegment(segment, head);
+         deleteSegment(segment);
+      }
+      else if (!tail.isEmpty()) {
+         final LinkBuffer emptyHead = head;
+         head = tail;
+         tail = emptyHead;
+      }
+   }
+
+   /**
+    * This method appends the whole tail to a new segment file and empties the tail.  Each URL is written as its
+    * depth, the length of its UTF-8 bytes and the bytes.
+    */
+   private void spillTail() {
+      Path path = null;
+      try {
+         path = Files.createTempFile(spillDirectory, "frontier-", ".seg");
+         try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path),
+             64 * 1024))) {
+            for (int i = tail.start; i < tail.end; i++) {
+               final byte[] bytes = tail.links[i].getBytes(StandardCharsets.UTF_8);
+               out.writeInt(tail.depths[i]);
+               out.writeInt(bytes.length);
+               out.write(bytes);
+            }
+         }
+      }
+      catch (final IOException e) {
+         throw new UncheckedIOException("Unable to write frontier segment " + path, e);
+      }
+      segments.add(new Segment(path, tail.size()));
+      tail.clear();
+   }
+
+   /**
+    * This method reads a whole segment file and appends its URLs to the buffer.
+    */
+   private static void readSegment(final Segment segment, final LinkBuffer buffer) {
+      try (final DataInputStream in = new DataInputStream(new BufferedInputStream(
+          Files.newInputStream(segment.path), 64 * 1024))) {
+         for (int i = 0; i < segment.linkCount; i++) {
+            final int depth = in.readInt();
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            buffer.add(new String(bytes, StandardCharsets.UTF_8), depth);
+         }
+      }
+      catch (final EOFException e) {
+         throw new UncheckedIOException("Frontier segment is truncated: " + segment.path, e);
+      }
+      catch (final IOException e) {
+         throw new UncheckedIOException("Unable to read frontier segment " + segment.path, e);
+      }
+   }
+
+   private static void deleteSegment(final Segment segment) {
+      try {
+         Files.deleteIfExists(segment.path);
+      }
+      catch (final IOException e) {
+         throw new UncheckedIOException("Unable to delete frontier segment " + segment.path, e);
+      }
+   }
+
+   /**
+    * This class describes one segment file.  Iterating it reads the whole file.
+    */
+   private static class Segment implements Iterable<String> {
+
+      private final Path path;
+
+      private final int linkCount;
+
+      private Segment(final Path path, final int linkCount) {
+         this.path = path;
+         this.linkCount = linkCount;
+      }
+
+      @Override
+      public Iterator<String> iterator() {
+         final LinkBuffer buffer = new LinkBuffer(linkCount);
+         readSegment(this, buffer);
+         return buffer.toList().iterator();
+      }
+   }
+
+   /**
+    * This class holds URLs and their depths in two parallel arrays, so depths are not boxed.  URLs are added at the
+    * end and taken from the start; the arrays are compacted or grown when the end is reached.
+    */
+   private static class LinkBuffer {
+
+      private String[] links;
+
+      private int[] depths;
+
+      private int start;
+
+      private int end;
+
+      private LinkBuffer(final int initialCapacity) {
+         links = new String[Math.max(1, initialCapacity)];
+         depths = new int[links.length];
+      }
+
+      private int size() {
+         return end - start;
+      }
+
+      private boolean isEmpty() {
+         return start == end;
+      }
+
+      private void add(final String link, final int depth) {
+         if (end == links.length) {
+            if (start > 0) {
+               System.arraycopy(links, start, links, 0, size());
+               System.arraycopy(depths, start, depths, 0, size());
+               Arrays.fill(links, size(), end, null);
+               end -= start;
+               start = 0;
+            }
+            else {
+               links = Arrays.copyOf(links, links.length * 2);
+               depths = Arrays.copyOf(depths, links.length);
+            }
+         }
+         links[end] = link;
+         depths[end++] = depth;
+      }
+
+      private String peek() {
+         return isEmpty() ? null : links[start];
+      }
+
+      private int peekDepth() {
+         return depths[start];
+      }
+
+      private String poll() {
+         if (isEmpty()) {
+            return null;
+         }
+         final String link = links[start];
+         links[start++] = null;
+         if (start == end) {
+            start = 0;
+            end = 0;
+         }
+         return link;
+      }
+
+      private void clear() {
+         Arrays.fill(links, start, end, null);
+         start = 0;
+         end = 0;
+      }
+
+      private List<String> toList() {
+         return new ArrayList<>(Arrays.asList(links).subList(start, end));
+      }
+   }
+}
@@ -0,0 +1,341 @@
+package pkg;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class finds the href of every a tag in an HTML page without building a DOM.  The page is scanned once and
+ * each href is handed to a {@link LinkHandler} as soon as it is found; only the href values themselves are copied
+ * out of the page.
+ * Comments, doctype/processing instructions, CDATA sections and the contents of script, style, textarea and title
+ * elements are skipped, so links inside them are not reported (the same as with Jsoup).  The href of the first base
+ * tag is passed along with every link found after it.
+ */
+public final class StreamingLinkExtractor {
+
+   private static final String[] RAW_TEXT_TAGS = {"script", "style", "textarea", "title"};
+
+   /**
+    * This interface receives the links found by {@link #extractLinks(CharSequence, LinkHandler)}.
+    */
+   @FunctionalInterface
+   public interface LinkHandler {
+
+      /**
+       * @param href the href attribute of an a tag with entities decoded and surrounding whitespace removed.
+       * @param baseHref the href of the base tag of the page, or null if no base tag was found before the link.
+       */
+      void handleLink(String href, String baseHref);
+   }
+
+   private StreamingLinkExtractor() {
+   }
+
+   /**
+    * This method scans the HTML for a tags and passes each href to the handler in document order.
+    *
+    * @param html the HTML page.
+    * @param handler receives every href found.
+    * @return the number of links passed to the handler.
+    */
+   public static int extractLinks(final CharSequence html, final LinkHandler handler) {
+      final int length = html.length();
+      final Tag tag = new Tag();
+      String baseHref = null;
+      int linkCount = 0;
+      int pos = 0;
+      while (pos < length) {
+         final int tagStart = indexOf(html, '<', pos);
+         if (tagStart < 0 || tagStart + 1 >= length) {
+            break;
+         }
+         final char next = html.charAt(tagStart + 1);
+         if (next == '!') {
+            if (regionMatches(html, tagStart, "<!--")) {
+               pos = skipPast(html, tagStart + 4, "-->");
+            }
+            else if (regionMatches(html, tagStart, "<![CDATA[")) {
+               pos = skipPast(html, tagStart + 9, "]]>");
+            }
+            else {
+               pos = skipPast(html, tagStart + 2, ">");
+            }
+            continue;
+         }
+         if (next == '?' || next == '/') {
+            pos = skipPast(html, tagStart + 2, ">");
+            continue;
+         }
+         if (!isLetter(next)) {
+            pos = tagStart + 1;
+            continue;
+         }
+
+         final int nameStart = tagStart + 1;
+         int nameEnd = nameStart;
+         while (nameEnd < length && !isTagNameEnd(html.charAt(nameEnd))) {
+            nameEnd++;
+         }
+         final boolean isAnchor = nameEquals(html, nameStart, nameEnd, "a");
+         final boolean isBase = baseHref == null && nameEquals(html, nameStart, nameEnd, "base");
+         tag.href = null;
+         tag.selfClosing = false;
+         pos = scanAttributes(html, nameEnd, isAnchor || isBase, tag);
+
+         if (tag.href != null) {
+            if (isAnchor) {
+               handler.handleLink(tag.href, baseHref);
+               linkCount++;
+            }
+            else {
+               baseHref = tag.href;
+            }
+         }
+         if (!tag.selfClosing) {
+            for (final String rawTextTag : RAW_TEXT_TAGS) {
+               if (nameEquals(html, nameStart, nameEnd, rawTextTag)) {
+                  pos = skipRawText(html, pos, rawTextTag);
+                  break;
+               }
+            }
+         }
+      }
+      return linkCount;
+   }
+
+   /**
+    * This class holds what {@link #scanAttributes} found in a start tag.  One instance is reused for every tag of a
+    * page.
+    */
+   private static final class Tag {
+
+      private String href;
+
+      private boolean selfClosing;
+   }
+
+   /**
+    * This method scans the attributes of a start tag up to and including its closing '&gt;'.
+    *
+    * @return the position after the tag.
+    */
+   private static int scanAttributes(final CharSequence html, final int start, final boolean wantHref,
+       final Tag tag) {
+      final int length = html.length();
+      int pos = start;
+      while (pos < length) {
+         final char c = html.charAt(pos);
+         if (c == '>') {
+            return pos + 1;
+         }
+         if (c == '/' || isWhitespace(c)) {
+            tag.selfClosing = c == '/';
+            pos++;
+            continue;
+         }
+         tag.selfClosing = false;
+
+         final int attrNameStart = pos;
+         while (pos < length && !isAttributeNameEnd(html.charAt(pos))) {
+            pos++;
+         }
+         final int attrNameEnd = pos;
+         while (pos < length && isWhitespace(html.charAt(pos))) {
+            pos++;
+         }
+         if (pos >= length || html.charAt(pos) != '=') {
+            continue;
+         }
+         pos++;
+         while (pos < length && isWhitespace(html.charAt(pos))) {
+            pos++;
+         }
+         if (pos >= length) {
+            break;
+         }
+
+         final int valueStart;
+         final int valueEnd;
+         final char quote = html.charAt(pos);
+         if (quote == '"' || quote == '\'') {
+            valueStart = pos + 1;
+            final int closingQuote = indexOf(html, quote, valueStart);
+            valueEnd = closingQuote < 0 ? length : closingQuote;
+            pos = closingQuote < 0 ? length : closingQuote + 1;
+         }
+         else {
+            valueStart = pos;
+            while (pos < length && !isWhitespace(html.charAt(pos)) && html.charAt(pos) != '>') {
+               pos++;
+            }
+            valueEnd = pos;
+         }
+         if (wantHref && tag.href == null && nameEquals(html, attrNameStart, attrNameEnd, "href")) {
+            tag.href = decodeEntities(html, valueStart, valueEnd).trim();
+         }
+      }
+      return length;
+   }
+
+   /**
+    * This method skips the contents of a raw text element such as script up to and including its end tag.
+    *
+    * @return the position after the end tag.
+    */
+   private static int skipRawText(final CharSequence html, final int start, final String tagName) {
+      final int length = html.length();
+      int pos = start;
+      while (pos < length) {
+         final int endTagStart = indexOf(html, '<', pos);
+         if (endTagStart < 0) {
+            return length;
+         }
+         final int nameStart = endTagStart + 2;
+         final int nameEnd = nameStart + tagName.length();
+         if (nameEnd <= length && html.charAt(endTagStart + 1) == '/'
+             && nameEquals(html, nameStart, nameEnd, tagName)
+             && (nameEnd == length || isTagNameEnd(html.charAt(nameEnd)))) {
+            return skipPast(html, nameEnd, ">");
+         }
+         pos = endTagStart + 1;
+      }
+      return length;
+   }
+
+   /**
+    * This method copies the attribute value, replacing the character references which commonly appear in URLs.
+    * Unknown named references are kept as they are.
+    */
+   private static String decodeEntities(final CharSequence html, final int start, final int end) {
+      boolean hasAmpersand = false;
+      for (int i = start; i < end && !hasAmpersand; i++) {
+         hasAmpersand = html.charAt(i) == '&';
+      }
+      if (!hasAmpersand) {
+         return html.subSequence(start, end).toString();
+      }
+      final StringBuilder builder = new StringBuilder(end - start);
+      int pos = start;
+      while (pos < end) {
+         final char c = html.charAt(pos);
+         if (c != '&') {
+            builder.append(c);
+            pos++;
+            continue;
+         }
+         int semicolon = pos + 1;
+         while (semicolon < end && semicolon - pos <= 10 && html.charAt(semicolon) != ';') {
+            semicolon++;
+         }
+         if (semicolon >= end || html.charAt(semicolon) != ';') {
+            builder.append(c);
+            pos++;
+            continue;
+         }
+         final String entity = html.subSequence(pos + 1, semicolon).toString();
+         final int codePoint = decodeEntity(entity);
+         if (codePoint < 0) {
+            builder.append(c);
+            pos++;
+            continue;
+         }
+         builder.appendCodePoint(codePoint);
+         pos = semicolon + 1;
+      }
+      return builder.toString();
+   }
+
+   private static int decodeEntity(final String entity) {
+      switch (entity) {
+         case "amp":
+            return '&';
+         case "lt":
+            return '<';
+         case "gt":
+            return '>';
+         case "quot":
+            return '"';
+         case "apos":
+            return '\'';
+         case "nbsp":
+            return 0xA0;
+         default:
+            break;
+      }
+      if (entity.length() < 2 || entity.charAt(0) != '#') {
+         return -1;
+      }
+      try {
+         final boolean hex = entity.charAt(1) == 'x' || entity.charAt(1) == 'X';
+         final int codePoint = hex ? Integer.parseInt(entity.substring(2), 16) : Integer.parseInt(entity.substring(1));
+         return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+      }
+      catch (final NumberFormatException e) {
+         return -1;
+      }
+   }
+
+   private static int skipPast(final CharSequence html, final int start, final String terminator) {
+      final int length = html.length();
+      final char first = terminator.charAt(0);
+      int pos = start;
+      while ((pos = indexOf(html, first, pos)) >= 0) {
+         if (regionMatches(html, pos, terminator)) {
+            return pos + terminator.length();
+         }
+         pos++;
+      }
+      return length;
+   }
+
+   private static int indexOf(final CharSequence html, final char c, final int start) {
+      for (int i = start; i < html.length(); i++) {
+         if (html.charAt(i) == c) {
+            return i;
+         }
+      }
+      return -1;
+   }
+
+   private static boolean regionMatches(final CharSequence html, final int start, final String s) {
+      if (start + s.length() > html.length()) {
+         return false;
+      }
+      for (int i = 0; i < s.length(); i++) {
+         if (html.charAt(start + i) != s.charAt(i)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * @return true if html[start, end) equals the lower case name, ignoring case.
+    */
+   private static boolean nameEquals(final CharSequence html, final int start, final int end, final String name) {
+      if (end - start != name.length()) {
+         return false;
+      }
+      for (int i = 0; i < name.length(); i++) {
+         if (Character.toLowerCase(html.charAt(start + i)) != name.charAt(i)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static boolean isLetter(final char c) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+   }
+
+   private static boolean isWhitespace(final char c) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+   }
+
+   private static boolean isTagNameEnd(final char c) {
+      return c == '>' || c == '/' || isWhitespace(c);
+   }
+
+   private static boolean isAttributeNameEnd(final char c) {
+      return c == '=' || c == '>' || c == '/' || isWhitespace(c);
+   }
+}
@@ -11,12 +11,25 @@ import java.util.Set;
  * @author Brian Chipman
  *
  * This is a quickly implemented FIFO queue which contains only unique elements.
+ * The set used to detect duplicates can be passed in, e.g. a {@link FingerprintSet} to avoid keeping a second copy
+ * of every URL.
  */
 public class UniqueQueue<T> implements Queue<T> {
 
    private final Queue<T> queue = new LinkedList<>();
 
-   private final Set<T> set = new HashSet<>();
+   private final Set<T> set;
+
+   public UniqueQueue() {
+      this(new HashSet<>());
+   }
+
+   /**
+    * @param set empty set used to detect duplicates; it must support removal.
+    */
+   public UniqueQueue(final Set<T> set) {
+      this.set = set;
+   }
 
    @Override
    public int size() {
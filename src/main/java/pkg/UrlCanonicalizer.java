@@ -0,0 +1,377 @@
+package pkg;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class resolves links against the URL of the page they were found on, following RFC 3986 section 5, and
+ * brings the result into a canonical form so that different spellings of the same URL are only crawled once:
+ * <ul>
+ * <li>scheme and host are lower cased and the default port (80 for http, 443 for https) is removed</li>
+ * <li>the fragment is removed</li>
+ * <li>dot segments are removed from the path and an empty path becomes "/"</li>
+ * <li>percent-encodings are upper cased, encoded unreserved characters are decoded and characters which are not
+ * allowed in a URL, such as spaces, are encoded</li>
+ * <li>optionally, query parameters are sorted</li>
+ * </ul>
+ * Only http and https URLs are returned; anything else, such as mailto: or javascript: links, resolves to null.
+ * Parsing is done by scanning the characters, no exceptions are used for invalid input.
+ */
+public class UrlCanonicalizer {
+
+   private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+   private final boolean sortQueryParameters;
+
+   public UrlCanonicalizer() {
+      this(false);
+   }
+
+   /**
+    * @param sortQueryParameters true to sort query parameters, e.g. "?b=2&amp;a=1" becomes "?a=1&amp;b=2".
+    */
+   public UrlCanonicalizer(final boolean sortQueryParameters) {
+      this.sortQueryParameters = sortQueryParameters;
+   }
+
+   /**
+    * This class holds the components of a URL reference, see RFC 3986 appendix B.  Components which are not present
+    * are null; the path is never null.
+    */
+   private static final class Reference {
+
+      private String scheme;
+
+      private String authority;
+
+      private String path;
+
+      private String query;
+   }
+
+   /**
+    * This method resolves a link against the URL of the current page and canonicalizes the result.
+    *
+    * @param baseUrl String representing the absolute URL of the current page.
+    * @param link String representing the link found on the page, absolute or relative.
+    * @return the canonical absolute URL, or null if the link cannot be resolved to an http or https URL.
+    */
+   public String resolve(final String baseUrl, final String link) {
+      if (link == null) {
+         return null;
+      }
+      final Reference reference = parse(stripWhitespace(link));
+      if (reference == null) {
+         return null;
+      }
+      final Reference target = new Reference();
+      if (reference.scheme != null) {
+         target.scheme = reference.scheme;
+         target.authority = reference.authority;
+         target.path = removeDotSegments(reference.path);
+         target.query = reference.query;
+      }
+      else {
+         final Reference base = baseUrl == null ? null : parse(stripWhitespace(baseUrl));
+         if (base == null || base.scheme == null || base.authority == null) {
+            return null;
+         }
+         target.scheme = base.scheme;
+         if (reference.authority != null) {
+            target.authority = reference.authority;
+            target.path = removeDotSegments(reference.path);
+            target.query = reference.query;
+         }
+         else {
+            target.authority = base.authority;
+            if (reference.path.isEmpty()) {
+               target.path = base.path;
+               target.query = reference.query != null ? reference.query : base.query;
+            }
+            else {
+               target.path = reference.path.charAt(0) == '/'
+                   ? removeDotSegments(reference.path) : removeDotSegments(merge(base, reference.path));
+               target.query = reference.query;
+            }
+         }
+      }
+      return recompose(target);
+   }
+
+   /**
+    * This method canonicalizes an absolute URL.
+    *
+    * @param url String representing an absolute URL.
+    * @return the canonical URL, or null if the URL is not an absolute http or https URL.
+    */
+   public String canonicalize(final String url) {
+      return resolve(null, url);
+   }
+
+   /**
+    * This method splits a URL reference into its components without validating them.
+    *
+    * @return the components, or null if the reference has a scheme but it is not valid.
+    */
+   private static Reference parse(final String url) {
+      final Reference reference = new Reference();
+      final int length = url.length();
+      int pos = 0;
+
+      // scheme, only if a ':' comes before any of "/?#"
+      for (int i = 0; i < length; i++) {
+         final char c = url.charAt(i);
+         if (c == ':') {
+            if (i == 0 || !isSchemeStart(url.charAt(0))) {
+               return null;
+            }
+            for (int j = 1; j < i; j++) {
+               if (!isSchemeChar(url.charAt(j))) {
+                  return null;
+               }
+            }
+            reference.scheme = url.substring(0, i).toLowerCase(Locale.ROOT);
+            pos = i + 1;
+            break;
+         }
+         if (c == '/' || c == '?' || c == '#') {
+            break;
+         }
+      }
+
+      // authority
+      if (url.startsWith("//", pos)) {
+         final int authorityEnd = indexOfAny(url, pos + 2, "/?#");
+         reference.authority = url.substring(pos + 2, authorityEnd);
+         pos = authorityEnd;
+      }
+
+      // path, query, fragment is dropped
+      final int pathEnd = indexOfAny(url, pos, "?#");
+      reference.path = url.substring(pos, pathEnd);
+      if (pathEnd < length && url.charAt(pathEnd) == '?') {
+         final int queryEnd = indexOfAny(url, pathEnd + 1, "#");
+         reference.query = url.substring(pathEnd + 1, queryEnd);
+      }
+      return reference;
+   }
+
+   /**
+    * This method merges a relative path with the path of the base URL, see RFC 3986 section 5.2.3.
+    */
+   private static String merge(final Reference base, final String path) {
+      if (base.authority != null && base.path.isEmpty()) {
+         return "/" + path;
+      }
+      final int lastSlash = base.path.lastIndexOf('/');
+      return lastSlash < 0 ? path : base.path.substring(0, lastSlash + 1) + path;
+   }
+
+   /**
+    * This method removes "." and ".." segments from a path, see RFC 3986 section 5.2.4.
+    */
+   private static String removeDotSegments(final String path) {
+      if (path.indexOf('.') < 0) {
+         return path;
+      }
+      final StringBuilder output = new StringBuilder(path.length());
+      final int length = path.length();
+      int pos = 0;
+      while (pos < length) {
+         if (path.startsWith("../", pos)) {
+            pos += 3;
+         }
+         else if (path.startsWith("./", pos)) {
+            pos += 2;
+         }
+         else if (path.startsWith("/./", pos)) {
+            pos += 2;
+         }
+         else if (pos + 2 == length && path.startsWith("/.", pos)) {
+            output.append('/');
+            pos += 2;
+         }
+         else if (path.startsWith("/../", pos) || (pos + 3 == length && path.startsWith("/..", pos))) {
+            output.setLength(Math.max(output.lastIndexOf("/"), 0));
+            if (pos + 3 == length) {
+               output.append('/');
+            }
+            pos += 3;
+         }
+         else if ((pos + 1 == length && path.charAt(pos) == '.')
+             || (pos + 2 == length && path.startsWith("..", pos))) {
+            pos = length;
+         }
+         else {
+            final int segmentEnd = path.indexOf('/', pos + 1);
+            final int end = segmentEnd < 0 ? length : segmentEnd;
+            output.append(path, pos, end);
+            pos = end;
+         }
+      }
+      return output.toString();
+   }
+
+   /**
+    * This method builds the canonical URL from its components.
+    *
+    * @return the URL, or null if it is not a valid http or https URL.
+    */
+   private String recompose(final Reference target) {
+      final boolean http = "http".equals(target.scheme);
+      if (!http && !"https".equals(target.scheme)) {
+         return null;
+      }
+      final String authority = canonicalizeAuthority(target.authority, http ? "80" : "443");
+      if (authority == null) {
+         return null;
+      }
+      final StringBuilder url = new StringBuilder(target.scheme.length() + authority.length()
+          + target.path.length() + (target.query == null ? 0 : target.query.length() + 1) + 3);
+      url.append(target.scheme).append("://").append(authority);
+      if (target.path.isEmpty()) {
+         url.append('/');
+      }
+      else {
+         appendNormalizedEncoding(url, target.path);
+      }
+      if (target.query != null) {
+         url.append('?');
+         appendNormalizedEncoding(url, sortQueryParameters ? sortQuery(target.query) : target.query);
+      }
+      return url.toString();
+   }
+
+   /**
+    * This method lower cases the host and removes an empty or default port.
+    *
+    * @return the canonical authority, or null if it has no host or an invalid port.
+    */
+   private static String canonicalizeAuthority(final String authority, final String defaultPort) {
+      if (authority == null) {
+         return null;
+      }
+      final int userInfoEnd = authority.lastIndexOf('@');
+      final String userInfo = userInfoEnd < 0 ? null : authority.substring(0, userInfoEnd);
+      final String hostAndPort = authority.substring(userInfoEnd + 1);
+      final int portStart = hostAndPort.lastIndexOf(':');
+      final boolean hasPort = portStart >= 0 && hostAndPort.indexOf(']', portStart) < 0;
+      final String host = (hasPort ? hostAndPort.substring(0, portStart) : hostAndPort).toLowerCase(Locale.ROOT);
+      String port = hasPort ? hostAndPort.substring(portStart + 1) : "";
+      if (host.isEmpty()) {
+         return null;
+      }
+      for (int i = 0; i < port.length(); i++) {
+         if (port.charAt(i) < '0' || port.charAt(i) > '9') {
+            return null;
+         }
+      }
+      int leadingZeros = 0;
+      while (leadingZeros < port.length() - 1 && port.charAt(leadingZeros) == '0') {
+         leadingZeros++;
+      }
+      port = port.substring(leadingZeros);
+      final StringBuilder canonical = new StringBuilder(authority.length());
+      if (userInfo != null) {
+         canonical.append(userInfo).append('@');
+      }
+      canonical.append(host);
+      if (!port.isEmpty() && !port.equals(defaultPort)) {
+         canonical.append(':').append(port);
+      }
+      return canonical.toString();
+   }
+
+   private static String sortQuery(final String query) {
+      if (query.indexOf('&') < 0) {
+         return query;
+      }
+      final String[] parameters = query.split("&", -1);
+      Arrays.sort(parameters);
+      return String.join("&", parameters);
+   }
+
+   /**
+    * This method appends the path or query, upper casing percent-encodings, decoding encoded unreserved characters
+    * and encoding characters which may not appear in a URL.
+    */
+   private static void appendNormalizedEncoding(final StringBuilder url, final String component) {
+      final int length = component.length();
+      for (int i = 0; i < length; i++) {
+         final char c = component.charAt(i);
+         if (c == '%' && i + 2 < length && isHexDigit(component.charAt(i + 1))
+             && isHexDigit(component.charAt(i + 2))) {
+            final int decoded = Character.digit(component.charAt(i + 1), 16) * 16
+                + Character.digit(component.charAt(i + 2), 16);
+            if (isUnreserved((char) decoded)) {
+               url.append((char) decoded);
+            }
+            else {
+               url.append('%').append(HEX_DIGITS[decoded >> 4]).append(HEX_DIGITS[decoded & 0xf]);
+            }
+            i += 2;
+         }
+         else if (c == '%' || mustEncode(c)) {
+            final int end = Character.isHighSurrogate(c) && i + 1 < length ? i + 2 : i + 1;
+            for (final byte b : component.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+               url.append('%').append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+            }
+            i = end - 1;
+         }
+         else {
+            url.append(c);
+         }
+      }
+   }
+
+   /**
+    * This method removes leading and trailing whitespace and any tab or line break, like browsers do with hrefs.
+    */
+   private static String stripWhitespace(final String url) {
+      final String trimmed = url.trim();
+      if (trimmed.indexOf('\t') < 0 && trimmed.indexOf('\n') < 0 && trimmed.indexOf('\r') < 0) {
+         return trimmed;
+      }
+      final StringBuilder builder = new StringBuilder(trimmed.length());
+      for (int i = 0; i < trimmed.length(); i++) {
+         final char c = trimmed.charAt(i);
+         if (c != '\t' && c != '\n' && c != '\r') {
+            builder.append(c);
+         }
+      }
+      return builder.toString();
+   }
+
+   private static int indexOfAny(final String s, final int start, final String chars) {
+      for (int i = start; i < s.length(); i++) {
+         if (chars.indexOf(s.charAt(i)) >= 0) {
+            return i;
+         }
+      }
+      return s.length();
+   }
+
+   private static boolean isSchemeStart(final char c) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+   }
+
+   private static boolean isSchemeChar(final char c) {
+      return isSchemeStart(c) || (c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.';
+   }
+
+   private static boolean isHexDigit(final char c) {
+      return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+   }
+
+   private static boolean isUnreserved(final char c) {
+      return isSchemeStart(c) || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_' || c == '~';
+   }
+
+   private static boolean mustEncode(final char c) {
+      return c <= 0x20 || c >= 0x7f || c == '"' || c == '<' || c == '>' || c == '\\' || c == '^' || c == '`'
+          || c == '{' || c == '|' || c == '}';
+   }
+}
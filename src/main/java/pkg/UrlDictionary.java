@@ -0,0 +1,248 @@
+package pkg;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class gives each URL a dense int ID, 0 for the first URL added, 1 for the next and so on, so a link graph
+ * can be held as int arrays instead of Strings.  The URLs are kept as UTF-8 bytes, one after another in a single
+ * byte arena, with an int offset per ID, which takes about the length of the URL plus 16 bytes per URL instead of
+ * the 60 or more bytes of overhead of a String and its HashMap entry.
+ * IDs are found through an open addressing table of IDs with linear probing.  The {@link UrlFingerprint} of each URL
+ * is kept, so most probes are rejected without comparing bytes and the table can grow without reading the arena.
+ * The arena holds at most 2 GB of URLs.  All methods may be called from several crawler workers at the same time.
+ */
+public class UrlDictionary {
+
+   private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+   private static final double MAX_LOAD_FACTOR = 0.7;
+
+   private static final int MAX_ARENA_SIZE = Integer.MAX_VALUE - 8;
+
+   private byte[] arena = new byte[64 * 1024];
+
+   private int arenaSize;
+
+   /**
+    * Start of the URL of each ID in the arena, followed by the end of the last URL.
+    */
+   private int[] offsets = new int[DEFAULT_INITIAL_CAPACITY + 1];
+
+   private int[] hashes = new int[DEFAULT_INITIAL_CAPACITY];
+
+   /**
+    * ID plus 1 of the URL in each slot, or 0 for an empty slot.
+    */
+   private int[] table;
+
+   private int size;
+
+   private int resizeThreshold;
+
+   public UrlDictionary() {
+      allocate(DEFAULT_INITIAL_CAPACITY * 2);
+   }
+
+   /**
+    * Returns the ID of the URL, adding the URL if it is not in the dictionary yet.
+    *
+    * @param url String representing the URL.
+    * @return the ID of the URL.
+    * @throws IllegalStateException if the arena is full.
+    */
+   public synchronized int getOrAdd(final String url) {
+      final int hash = hashOf(url);
+      final int mask = table.length - 1;
+      int index = hash & mask;
+      while (table[index] != 0) {
+         final int id = table[index] - 1;
+         if (hashes[id] == hash && matches(id, url)) {
+            return id;
+         }
+         index = (index + 1) & mask;
+      }
+      final int id = append(url, hash);
+      table[index] = id + 1;
+      if (size > resizeThreshold) {
+         resize(table.length << 1);
+      }
+      return id;
+   }
+
+   /**
+    * @param url String representing the URL.
+    * @return the ID of the URL, or -1 if it is not in the dictionary.
+    */
+   public synchronized int getId(final String url) {
+      final int hash = hashOf(url);
+      final int mask = table.length - 1;
+      int index = hash & mask;
+      while (table[index] != 0) {
+         final int id = table[index] - 1;
+         if (hashes[id] == hash && matches(id, url)) {
+            return id;
+         }
+         index = (index + 1) & mask;
+      }
+      return -1;
+   }
+
+   /**
+    * @param id an ID returned by {@link #getOrAdd(String)}.
+    * @return the URL of the ID.
+    * @throws IndexOutOfBoundsException if the ID is not in the dictionary.
+    */
+   public synchronized String getUrl(final int id) {
+      if (id < 0 || id >= size) {
+         throw new IndexOutOfBoundsException("No URL with ID " + id + " in a dictionary of " + size);
+      }
+      return new String(arena, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+   }
+
+   public synchronized int size() {
+      return size;
+   }
+
+   /**
+    * @return the bytes used by the arena, offsets, fingerprints and table.
+    */
+   public synchronized long getMemoryUsageBytes() {
+      return arena.length + 4L * (offsets.length + hashes.length + table.length);
+   }
+
+   /**
+    * This method writes the ID to URL table: the number of URLs, the offset of each URL and the end of the last one
+    * as longs, and then the UTF-8 bytes of all URLs in ID order.  Numbers are big-endian.
+    *
+    * @param out the stream to write to.
+    * @throws IOException if writing fails.
+    */
+   public synchronized void writeTo(final DataOutputStream out) throws IOException {
+      out.writeInt(size);
+      for (int id = 0; id <= size; id++) {
+         out.writeLong(offsets[id]);
+      }
+      out.write(arena, 0, arenaSize);
+   }
+
+   /**
+    * @param in a stream holding an ID to URL table written by {@link #writeTo(DataOutputStream)}.
+    * @return a dictionary holding the URLs with the same IDs.
+    * @throws IOException if reading fails or the table is invalid.
+    */
+   public static UrlDictionary readFrom(final DataInputStream in) throws IOException {
+      final int urlCount = in.readInt();
+      if (urlCount < 0) {
+         throw new IOException("Invalid URL table of " + urlCount + " URLs");
+      }
+      final long[] urlOffsets = new long[urlCount + 1];
+      for (int id = 0; id <= urlCount; id++) {
+         urlOffsets[id] = in.readLong();
+      }
+      if (urlOffsets[0] != 0 || urlOffsets[urlCount] > MAX_ARENA_SIZE) {
+         throw new IOException("Invalid URL table of " + urlCount + " URLs");
+      }
+      final byte[] bytes = new byte[(int) urlOffsets[urlCount]];
+      in.readFully(bytes);
+      final UrlDictionary urlDictionary = new UrlDictionary();
+      for (int id = 0; id < urlCount; id++) {
+         final String url = new String(bytes, (int) urlOffsets[id], (int) (urlOffsets[id + 1] - urlOffsets[id]),
+             StandardCharsets.UTF_8);
+         if (urlDictionary.getOrAdd(url) != id) {
+            throw new IOException("URL table holds " + url + " twice");
+         }
+      }
+      return urlDictionary;
+   }
+
+   @Override
+   public synchronized String toString() {
+      return "UrlDictionary[size=" + size + ", arenaBytes=" + arenaSize + "]";
+   }
+
+   private static int hashOf(final String url) {
+      final long fingerprint = UrlFingerprint.fingerprint(url);
+      return (int) (fingerprint ^ (fingerprint >>> 32));
+   }
+
+   /**
+    * Compares the URL of the ID with a String.  ASCII URLs, which is nearly all of them once canonicalized, are
+    * compared char by byte without encoding the String.
+    */
+   private boolean matches(final int id, final String url) {
+      final int start = offsets[id];
+      final int length = offsets[id + 1] - start;
+      if (length == url.length()) {
+         boolean ascii = true;
+         for (int i = 0; i < length && ascii; i++) {
+            final char c = url.charAt(i);
+            if (c >= 0x80) {
+               ascii = false;
+            }
+            else if (arena[start + i] != c) {
+               return false;
+            }
+         }
+         if (ascii) {
+            return true;
+         }
+      }
+      final byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+      if (bytes.length != length) {
+         return false;
+      }
+      for (int i = 0; i < length; i++) {
+         if (arena[start + i] != bytes[i]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Copies the URL to the end of the arena and gives it the next ID.
+    */
+   private int append(final String url, final int hash) {
+      final byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+      if (arenaSize + (long) bytes.length > MAX_ARENA_SIZE) {
+         throw new IllegalStateException("UrlDictionary arena is full with " + size + " URLs");
+      }
+      if (arenaSize + bytes.length > arena.length) {
+         final long capacity = Math.max(arenaSize + (long) bytes.length, 2L * arena.length);
+         arena = Arrays.copyOf(arena, (int) Math.min(capacity, MAX_ARENA_SIZE));
+      }
+      System.arraycopy(bytes, 0, arena, arenaSize, bytes.length);
+      arenaSize += bytes.length;
+      final int id = size++;
+      if (size == hashes.length) {
+         hashes = Arrays.copyOf(hashes, hashes.length * 2);
+         offsets = Arrays.copyOf(offsets, hashes.length + 1);
+      }
+      hashes[id] = hash;
+      offsets[id + 1] = arenaSize;
+      return id;
+   }
+
+   private void allocate(final int capacity) {
+      table = new int[capacity];
+      resizeThreshold = (int) (capacity * MAX_LOAD_FACTOR);
+   }
+
+   private void resize(final int capacity) {
+      allocate(capacity);
+      final int mask = capacity - 1;
+      for (int id = 0; id < size; id++) {
+         int index = hashes[id] & mask;
+         while (table[index] != 0) {
+            index = (index + 1) & mask;
+         }
+         table[index] = id + 1;
+      }
+   }
+}
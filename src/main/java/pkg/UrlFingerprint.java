@@ -0,0 +1,49 @@
+package pkg;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class computes 64 bit fingerprints of URLs.  Two different URLs get the same fingerprint with a probability
+ * of about n^2 / 2^65 for n URLs, i.e. practically never for crawls of up to billions of URLs.
+ */
+public final class UrlFingerprint {
+
+   private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+   private static final long FNV_PRIME = 0x100000001b3L;
+
+   private UrlFingerprint() {
+   }
+
+   /**
+    * This method hashes the characters with 64 bit FNV-1a followed by the MurmurHash3 finalizer, so every bit of the
+    * result depends on every character.
+    *
+    * @param url the URL to fingerprint.
+    * @return the 64 bit fingerprint of the URL.
+    */
+   public static long fingerprint(final CharSequence url) {
+      long hash = FNV_OFFSET_BASIS;
+      for (int i = 0; i < url.length(); i++) {
+         final char c = url.charAt(i);
+         hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+         hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+      }
+      return mix(hash);
+   }
+
+   /**
+    * This is the MurmurHash3 64 bit finalizer.
+    *
+    * @param value the value to mix.
+    * @return the mixed value.
+    */
+   public static long mix(long value) {
+      value ^= value >>> 33;
+      value *= 0xff51afd7ed558ccdL;
+      value ^= value >>> 33;
+      value *= 0xc4ceb9fe1a85ec53L;
+      value ^= value >>> 33;
+      return value;
+   }
+}
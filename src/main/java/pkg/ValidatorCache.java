@@ -0,0 +1,229 @@
+package pkg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class remembers the ETag and Last-Modified validators of crawled pages together with the links found on
+ * them, so a re-crawl can request each page with a conditional GET and, when the server answers 304 Not Modified,
+ * queue the remembered links without downloading or parsing the page again.
+ * Entries are held in memory while crawling.  {@link #load()} reads the file written by an earlier crawl and
+ * {@link #close()} writes all entries to a temporary file which then replaces the old one, so a crawl which dies
+ * leaves the cache of the previous crawl intact.
+ */
+public class ValidatorCache implements Closeable {
+
+   private static final int MAGIC = 0x43525643;
+
+   private static final byte VERSION = 1;
+
+   private final Path file;
+
+   private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+   /**
+    * This class holds the validators and links of one page.
+    */
+   public static class Entry {
+
+      private final String etag;
+
+      private final String lastModified;
+
+      private final List<String> links;
+
+      /**
+       * @param etag the ETag header of the page, or null.
+       * @param lastModified the Last-Modified header of the page, or null.
+       * @param links the absolute URLs of the links found on the page.
+       */
+      public Entry(final String etag, final String lastModified, final List<String> links) {
+         this.etag = etag;
+         this.lastModified = lastModified;
+         this.links = Collections.unmodifiableList(new ArrayList<>(links));
+      }
+
+      public String getEtag() {
+         return etag;
+      }
+
+      public String getLastModified() {
+         return lastModified;
+      }
+
+      public List<String> getLinks() {
+         return links;
+      }
+
+      /**
+       * @return the If-None-Match and If-Modified-Since headers which ask the server for the page only if it has
+       *     changed.
+       */
+      public Map<String, String> getConditionalHeaders() {
+         final Map<String, String> headers = new HashMap<>();
+         if (etag != null) {
+            headers.put("If-None-Match", etag);
+         }
+         if (lastModified != null) {
+            headers.put("If-Modified-Since", lastModified);
+         }
+         return headers;
+      }
+   }
+
+   /**
+    * @param file the file the cache is loaded from and saved to.
+    */
+   public ValidatorCache(final Path file) {
+      this.file = file;
+   }
+
+   public Path getFile() {
+      return file;
+   }
+
+   /**
+    * This method reads the entries saved by an earlier crawl.  Nothing is read if the file does not exist.
+    *
+    * @throws IOException if the file cannot be read or is not a validator cache file.
+    */
+   public void load() throws IOException {
+      if (!Files.exists(file)) {
+         return;
+      }
+      try (final InputStream fileIn = Files.newInputStream(file);
+          final DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn, 64 * 1024))) {
+         if (in.readInt() != MAGIC) {
+            throw new IOException("Not a validator cache file: " + file);
+         }
+         final byte version = in.readByte();
+         if (version != VERSION) {
+            throw new IOException("Unsupported validator cache version " + version + ": " + file);
+         }
+         final int entryCount = in.readInt();
+         for (int i = 0; i < entryCount; i++) {
+            final String url = readString(in);
+            final String etag = readString(in);
+            final String lastModified = readString(in);
+            final int linkCount = in.readInt();
+            final List<String> links = new ArrayList<>(linkCount);
+            for (int j = 0; j < linkCount; j++) {
+               links.add(readString(in));
+            }
+            entries.put(url, new Entry(etag, lastModified, links));
+         }
+      }
+      catch (final EOFException e) {
+         throw new IOException("Validator cache file is truncated: " + file, e);
+      }
+   }
+
+   /**
+    * @param url String representing the URL of the page.
+    * @return the entry of the page, or null if the page is not cached.
+    */
+   public Entry get(final String url) {
+      return entries.get(url);
+   }
+
+   /**
+    * Remembers the validators and links of a page.  Pages without an ETag or Last-Modified header cannot be
+    * revalidated, so they are not cached.
+    *
+    * @param url String representing the URL of the page.
+    * @param etag the ETag header of the page, or null.
+    * @param lastModified the Last-Modified header of the page, or null.
+    * @param links the absolute URLs of the links found on the page.
+    */
+   public void put(final String url, final String etag, final String lastModified, final List<String> links) {
+      if (etag == null && lastModified == null) {
+         entries.remove(url);
+      }
+      else {
+         entries.put(url, new Entry(etag, lastModified, links));
+      }
+   }
+
+   public int size() {
+      return entries.size();
+   }
+
+   /**
+    * This method writes all entries to a temporary file and moves it over the cache file.
+    *
+    * @throws IOException if the file cannot be written.
+    */
+   public void save() throws IOException {
+      final Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+      try (final OutputStream fileOut = Files.newOutputStream(tempFile);
+          final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024))) {
+         out.writeInt(MAGIC);
+         out.writeByte(VERSION);
+         final List<Map.Entry<String, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+         out.writeInt(snapshot.size());
+         for (final Map.Entry<String, Entry> entry : snapshot) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue().etag);
+            writeString(out, entry.getValue().lastModified);
+            out.writeInt(entry.getValue().links.size());
+            for (final String link : entry.getValue().links) {
+               writeString(out, link);
+            }
+         }
+      }
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+   }
+
+   /**
+    * Saves the cache.
+    *
+    * @throws IOException if the file cannot be written.
+    */
+   @Override
+   public void close() throws IOException {
+      save();
+   }
+
+   /**
+    * Writes a string as its UTF-8 length and bytes, or a length of -1 for null.
+    */
+   private static void writeString(final DataOutputStream out, final String s) throws IOException {
+      if (s == null) {
+         out.writeInt(-1);
+         return;
+      }
+      final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+   }
+
+   private static String readString(final DataInputStream in) throws IOException {
+      final int length = in.readInt();
+      if (length < 0) {
+         return null;
+      }
+      final byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+}
@@ -0,0 +1,74 @@
+package pkg;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author Brian Chipman
+ *
+ * This {@link PageFetcher} passes every fetch on to another fetcher and records each response it returns, including
+ * error responses and the seed document, with a {@link WarcWriter}, so the crawl can be replayed offline by a
+ * {@link WarcReplayFetcher}.  Requests which fail without a response are not recorded.  A response which cannot be
+ * recorded is logged and still returned, so a full disk does not stop the crawl.  Closing this fetcher closes the
+ * other fetcher and the writer.
+ */
+public class WarcRecordingFetcher implements PageFetcher {
+
+   private static final Logger LOG = LoggerFactory.getLogger(WarcRecordingFetcher.class);
+
+   private final PageFetcher pageFetcher;
+
+   private final WarcWriter warcWriter;
+
+   /**
+    * @param pageFetcher the fetcher whose responses are recorded.
+    * @param warcWriter the writer the responses are recorded with.
+    */
+   public WarcRecordingFetcher(final PageFetcher pageFetcher, final WarcWriter warcWriter) {
+      this.pageFetcher = pageFetcher;
+      this.warcWriter = warcWriter;
+   }
+
+   public WarcWriter getWarcWriter() {
+      return warcWriter;
+   }
+
+   @Override
+   public CompletableFuture<FetchResult> fetch(final String url) {
+      return fetch(url, Collections.emptyMap());
+   }
+
+   @Override
+   public CompletableFuture<FetchResult> fetch(final String url, final Map<String, String> requestHeaders) {
+      return pageFetcher.fetch(url, requestHeaders).thenApply(fetchResult -> {
+         try {
+            warcWriter.write(url, fetchResult);
+         }
+         catch (final IOException e) {
+            LOG.warn("Unable to record the response of " + url + " in " + warcWriter.getDirectory(), e);
+         }
+         return fetchResult;
+      });
+   }
+
+   @Override
+   public void close() {
+      pageFetcher.close();
+      try {
+         warcWriter.close();
+      }
+      catch (final IOException e) {
+         LOG.warn("Unable to close WARC files in " + warcWriter.getDirectory(), e);
+      }
+   }
+
+   @Override
+   public String toString() {
+      return warcWriter.toString();
+   }
+}
@@ -0,0 +1,288 @@
+package pkg;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @author Brian Chipman
+ *
+ * This {@link PageFetcher} serves the responses recorded by a {@link WarcWriter} instead of going over the network,
+ * so a crawl captured once can be run again offline, at full speed and with the same results, e.g. to benchmark
+ * changes to parsing or the frontier against real pages.  The index of the recording is read into memory, mapping
+ * each URL to the file, offset and length of its last record, and the WARC files are memory-mapped, so fetching a
+ * URL only copies and decompresses its own record.  A URL which was not recorded is answered with an empty 404
+ * response.  Request headers are ignored, so a conditional GET gets the recorded response.  A response recorded
+ * with a WARC-Truncated header is replayed as truncated, with the number of body bytes transferred when it was
+ * recorded.
+ * Fetches complete on the calling thread.  All methods may be called from several crawler workers at the same time.
+ */
+public class WarcReplayFetcher implements PageFetcher {
+
+   private static final byte[] HEADERS_END = {'\r', '\n', '\r', '\n'};
+
+   private final Path directory;
+
+   private final Map<String, Record> index = new HashMap<>();
+
+   private final String firstUrl;
+
+   private final LongAdder replayedCount = new LongAdder();
+
+   private final LongAdder missCount = new LongAdder();
+
+   /**
+    * This class holds the location of one record in a memory-mapped WARC file.
+    */
+   private static class Record {
+
+      private final MappedByteBuffer file;
+
+      private final int offset;
+
+      private final int length;
+
+      private Record(final MappedByteBuffer file, final int offset, final int length) {
+         this.file = file;
+         this.offset = offset;
+         this.length = length;
+      }
+   }
+
+   /**
+    * Reads the index of a recording and maps its WARC files.
+    *
+    * @param directory the directory a {@link WarcWriter} wrote to.
+    * @throws IOException if the index or a WARC file cannot be read, or the index does not match the files.
+    */
+   public WarcReplayFetcher(final Path directory) throws IOException {
+      this.directory = directory;
+      final Map<String, MappedByteBuffer> files = new HashMap<>();
+      String first = null;
+      try (final BufferedReader reader = Files.newBufferedReader(directory.resolve(WarcWriter.INDEX_FILE),
+          StandardCharsets.UTF_8)) {
+         String line;
+         while ((line = reader.readLine()) != null) {
+            final String[] fields = line.split(" ", 4);
+            if (fields.length != 4) {
+               throw new IOException("Invalid line in WARC index " + directory + ": " + line);
+            }
+            MappedByteBuffer file = files.get(fields[0]);
+            if (file == null) {
+               file = map(directory.resolve(fields[0]));
+               files.put(fields[0], file);
+            }
+            final long offset;
+            final long length;
+            try {
+               offset = Long.parseLong(fields[1]);
+               length = Long.parseLong(fields[2]);
+            }
+            catch (final NumberFormatException e) {
+               throw new IOException("Invalid line in WARC index " + directory + ": " + line, e);
+            }
+            if (offset < 0 || length < 0 || offset + length > file.capacity()) {
+               throw new IOException("Record outside of " + fields[0] + " in WARC index " + directory + ": " + line);
+            }
+            index.put(fields[3], new Record(file, (int) offset, (int) length));
+            if (first == null) {
+               first = fields[3];
+            }
+         }
+      }
+      this.firstUrl = first;
+   }
+
+   public Path getDirectory() {
+      return directory;
+   }
+
+   /**
+    * @return the URL of the first record, which for a crawl is its seed document, or null if there is no record.
+    */
+   public String getFirstUrl() {
+      return firstUrl;
+   }
+
+   /**
+    * @return the number of URLs recorded.
+    */
+   public int getRecordCount() {
+      return index.size();
+   }
+
+   /**
+    * @return the number of fetches answered from a record.
+    */
+   public long getReplayedCount() {
+      return replayedCount.sum();
+   }
+
+   /**
+    * @return the number of fetches of URLs which were not recorded.
+    */
+   public long getMissCount() {
+      return missCount.sum();
+   }
+
+   @Override
+   public CompletableFuture<FetchResult> fetch(final String url) {
+      final Record record = index.get(url);
+      if (record == null) {
+         missCount.increment();
+         return CompletableFuture.completedFuture(new FetchResult(url, 404, Collections.emptyMap(), new byte[0]));
+      }
+      final CompletableFuture<FetchResult> future = new CompletableFuture<>();
+      try {
+         future.complete(read(url, record));
+         replayedCount.increment();
+      }
+      catch (final IOException e) {
+         future.completeExceptionally(e);
+      }
+      return future;
+   }
+
+   @Override
+   public String toString() {
+      return "WarcReplayFetcher[directory=" + directory + ", records=" + index.size() + ", replayed="
+          + replayedCount + ", misses=" + missCount + "]";
+   }
+
+   private static MappedByteBuffer map(final Path file) throws IOException {
+      try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+         if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("WARC file too large to map: " + file);
+         }
+         return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+   }
+
+   /**
+    * Decompresses a response record and parses the HTTP response it holds.
+    */
+   private FetchResult read(final String url, final Record record) throws IOException {
+      final byte[] compressed = new byte[record.length];
+      final ByteBuffer file = record.file.duplicate();
+      file.position(record.offset);
+      file.get(compressed);
+      final byte[] bytes = decompress(compressed);
+
+      final int warcHeadersEnd = indexOf(bytes, HEADERS_END, 0);
+      if (warcHeadersEnd < 0 || !startsWith(bytes, "WARC/")) {
+         throw new IOException("Invalid WARC record of " + url + " in " + directory);
+      }
+      final Map<String, String> warcHeaders = parseHeaders(bytes, 0, warcHeadersEnd);
+      final int blockStart = warcHeadersEnd + HEADERS_END.length;
+      final int blockEnd;
+      try {
+         blockEnd = blockStart + Integer.parseInt(warcHeaders.getOrDefault("content-length", "-1").trim());
+      }
+      catch (final NumberFormatException e) {
+         throw new IOException("Invalid Content-Length in WARC record of " + url + " in " + directory, e);
+      }
+      if (!"response".equals(warcHeaders.get("warc-type")) || blockEnd < blockStart || blockEnd > bytes.length) {
+         throw new IOException("Invalid WARC response record of " + url + " in " + directory);
+      }
+
+      final int httpHeadersEnd = indexOf(bytes, HEADERS_END, blockStart);
+      if (httpHeadersEnd < 0 || httpHeadersEnd > blockEnd) {
+         throw new IOException("Invalid HTTP response in WARC record of " + url + " in " + directory);
+      }
+      final int statusLineEnd = indexOf(bytes, new byte[] {'\r', '\n'}, blockStart);
+      final String[] statusLine = new String(bytes, blockStart, statusLineEnd - blockStart, StandardCharsets.UTF_8)
+          .split(" ", 3);
+      final int statusCode;
+      try {
+         statusCode = Integer.parseInt(statusLine[1]);
+      }
+      catch (final ArrayIndexOutOfBoundsException | NumberFormatException e) {
+         throw new IOException("Invalid HTTP status line in WARC record of " + url + " in " + directory, e);
+      }
+      final Map<String, String> headers = parseHeaders(bytes, statusLineEnd + 2, httpHeadersEnd);
+      final int bodyStart = httpHeadersEnd + HEADERS_END.length;
+      final byte[] body = new byte[blockEnd - bodyStart];
+      System.arraycopy(bytes, bodyStart, body, 0, body.length);
+      final long transferredBytes;
+      try {
+         transferredBytes = Long.parseLong(warcHeaders.getOrDefault(
+             WarcWriter.TRANSFERRED_BYTES_HEADER.toLowerCase(Locale.ROOT), Integer.toString(body.length)));
+      }
+      catch (final NumberFormatException e) {
+         throw new IOException("Invalid " + WarcWriter.TRANSFERRED_BYTES_HEADER + " in WARC record of " + url + " in "
+             + directory, e);
+      }
+      return new FetchResult(url, statusCode, headers, body, transferredBytes,
+          warcHeaders.containsKey("warc-truncated"));
+   }
+
+   /**
+    * Parses "Name: value" lines separated by CRLF from start to end, with the names in lower case.
+    */
+   private static Map<String, String> parseHeaders(final byte[] bytes, final int start, final int end) {
+      final Map<String, String> headers = new HashMap<>();
+      if (start >= end) {
+         return headers;
+      }
+      for (final String line : new String(bytes, start, end - start, StandardCharsets.UTF_8).split("\r\n")) {
+         final int colon = line.indexOf(':');
+         if (colon > 0) {
+            headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+         }
+      }
+      return headers;
+   }
+
+   private static boolean startsWith(final byte[] bytes, final String prefix) {
+      if (bytes.length < prefix.length()) {
+         return false;
+      }
+      for (int i = 0; i < prefix.length(); i++) {
+         if (bytes[i] != prefix.charAt(i)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static int indexOf(final byte[] bytes, final byte[] target, final int from) {
+      for (int i = from; i <= bytes.length - target.length; i++) {
+         int j = 0;
+         while (j < target.length && bytes[i + j] == target[j]) {
+            j++;
+         }
+         if (j == target.length) {
+            return i;
+         }
+      }
+      return -1;
+   }
+
+   private static byte[] decompress(final byte[] compressed) throws IOException {
+      try (final InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed), 8192)) {
+         final ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+         final byte[] buffer = new byte[8192];
+         int read;
+         while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+         }
+         return out.toByteArray();
+      }
+   }
+}
@@ -0,0 +1,228 @@
+package pkg;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class records responses in WARC files (ISO 28500, WARC/1.0), see {@link WarcRecordingFetcher}, so a crawl can
+ * be replayed offline and repeatably by a {@link WarcReplayFetcher}.  Each response is written as a response record
+ * holding the HTTP status line, headers and body, compressed as a gzip member of its own, so a record can be read
+ * from its offset without reading the file from the start.  Records are appended to files named
+ * crawl-00000.warc.gz, crawl-00001.warc.gz and so on, each starting with a warcinfo record, and a new file is
+ * started before a record would make a file larger than maxFileBytes.
+ * Bodies are written as the fetcher returned them, i.e. decompressed, so the Content-Encoding and Transfer-Encoding
+ * headers are left out and Content-Length is the length of the body.  For every record a line with the file name,
+ * offset and length of the record and the requested URL is appended to the text file {@link #INDEX_FILE}.
+ * A body which was cut off or not read, see {@link FetchResult#isTruncated()}, is marked with the standard
+ * "WARC-Truncated: length" header, and the number of body bytes transferred is kept in the extension header
+ * {@link #TRANSFERRED_BYTES_HEADER}, so a replay returns the same result the crawler was given.
+ * All methods may be called from several crawler workers at the same time; records are compressed outside the lock.
+ */
+public class WarcWriter implements Closeable {
+
+   private static final Logger LOG = LoggerFactory.getLogger(WarcWriter.class);
+
+   public static final String INDEX_FILE = "index.txt";
+
+   public static final long DEFAULT_MAX_FILE_BYTES = 1024L * 1024 * 1024;
+
+   static final String FILE_PREFIX = "crawl-";
+
+   static final String FILE_SUFFIX = ".warc.gz";
+
+   /**
+    * WARC header holding {@link FetchResult#getTransferredBytes()} of a response record.
+    */
+   static final String TRANSFERRED_BYTES_HEADER = "X-Transferred-Bytes";
+
+   /**
+    * HTTP headers not written, since they describe the response as it was transferred rather than its body.
+    */
+   private static final String[] TRANSFER_HEADERS = {"content-encoding", "content-length", "transfer-encoding"};
+
+   private final Path directory;
+
+   private final long maxFileBytes;
+
+   private final Object lock = new Object();
+
+   private final BufferedWriter indexWriter;
+
+   private FileChannel file;
+
+   private String fileName;
+
+   private int fileCount;
+
+   private long fileRecordCount;
+
+   private long recordCount;
+
+   /**
+    * Creates the directory if needed.  An earlier recording in the directory is overwritten.
+    *
+    * @param directory the directory the WARC files and index are written to.
+    * @param maxFileBytes maximum size of a WARC file unless it holds a single larger record, at most
+    *     {@link Integer#MAX_VALUE} so a file can be memory-mapped in one piece.
+    * @throws IOException if the directory or the index cannot be created.
+    */
+   public WarcWriter(final Path directory, final long maxFileBytes) throws IOException {
+      if (maxFileBytes < 1 || maxFileBytes > Integer.MAX_VALUE) {
+         throw new IllegalArgumentException("maxFileBytes must be from 1 to " + Integer.MAX_VALUE + ": "
+             + maxFileBytes);
+      }
+      this.directory = directory;
+      this.maxFileBytes = maxFileBytes;
+      Files.createDirectories(directory);
+      this.indexWriter = Files.newBufferedWriter(directory.resolve(INDEX_FILE), StandardCharsets.UTF_8);
+   }
+
+   public Path getDirectory() {
+      return directory;
+   }
+
+   /**
+    * @return the number of response records written.
+    */
+   public long getRecordCount() {
+      synchronized (lock) {
+         return recordCount;
+      }
+   }
+
+   /**
+    * Appends a response record.
+    *
+    * @param url String representing the requested URL, under which the response is replayed.
+    * @param fetchResult the response.
+    * @throws IOException if the record cannot be written.
+    */
+   public void write(final String url, final FetchResult fetchResult) throws IOException {
+      final ByteArrayOutputStream http = new ByteArrayOutputStream(fetchResult.getBody().length + 512);
+      final StringBuilder httpHeaders = new StringBuilder("HTTP/1.1 ").append(fetchResult.getStatusCode())
+          .append(" \r\n");
+      for (final Map.Entry<String, String> header : fetchResult.getHeaders().entrySet()) {
+         if (!isTransferHeader(header.getKey())) {
+            httpHeaders.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+         }
+      }
+      httpHeaders.append("Content-Length: ").append(fetchResult.getBody().length).append("\r\n\r\n");
+      http.write(httpHeaders.toString().getBytes(StandardCharsets.UTF_8));
+      http.write(fetchResult.getBody());
+      final StringBuilder warcHeaders = new StringBuilder(TRANSFERRED_BYTES_HEADER).append(": ")
+          .append(fetchResult.getTransferredBytes()).append("\r\n");
+      if (fetchResult.isTruncated()) {
+         warcHeaders.append("WARC-Truncated: length\r\n");
+      }
+      final ByteBuffer record = ByteBuffer.wrap(compressRecord("response", url,
+          "application/http; msgtype=response", warcHeaders.toString(), http.toByteArray()));
+      synchronized (lock) {
+         if (file == null || (fileRecordCount > 0 && file.position() + record.capacity() > maxFileBytes)) {
+            startFile();
+         }
+         final long offset = file.position();
+         while (record.hasRemaining()) {
+            file.write(record);
+         }
+         indexWriter.write(fileName + " " + offset + " " + record.capacity() + " " + url + "\n");
+         recordCount++;
+         fileRecordCount++;
+      }
+   }
+
+   /**
+    * Closes the current WARC file and the index.
+    *
+    * @throws IOException if a file cannot be closed.
+    */
+   @Override
+   public void close() throws IOException {
+      synchronized (lock) {
+         try {
+            indexWriter.close();
+         }
+         finally {
+            if (file != null) {
+               file.close();
+            }
+         }
+      }
+      LOG.debug("Closed WARC writer " + directory + " with " + recordCount + " records in " + fileCount + " files");
+   }
+
+   @Override
+   public String toString() {
+      return "WarcWriter[directory=" + directory + ", records=" + getRecordCount() + "]";
+   }
+
+   /**
+    * Closes the current file and starts the next one with a warcinfo record.  Must be called while holding lock.
+    */
+   private void startFile() throws IOException {
+      if (file != null) {
+         file.close();
+      }
+      fileName = String.format(Locale.ROOT, "%s%05d%s", FILE_PREFIX, fileCount++, FILE_SUFFIX);
+      file = FileChannel.open(directory.resolve(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING);
+      fileRecordCount = 0;
+      final String info = "software: " + HttpPageFetcher.USER_AGENT + "\r\nformat: WARC File Format 1.0\r\n";
+      final ByteBuffer record = ByteBuffer.wrap(compressRecord("warcinfo", null, "application/warc-fields", "",
+          info.getBytes(StandardCharsets.UTF_8)));
+      while (record.hasRemaining()) {
+         file.write(record);
+      }
+   }
+
+   /**
+    * @param extraHeaders WARC header lines, each ending with CRLF, written after the standard ones.
+    * @return the WARC record as a gzip member.
+    */
+   private static byte[] compressRecord(final String type, final String url, final String contentType,
+       final String extraHeaders, final byte[] block) throws IOException {
+      final StringBuilder headers = new StringBuilder("WARC/1.0\r\n")
+          .append("WARC-Type: ").append(type).append("\r\n")
+          .append("WARC-Record-ID: <urn:uuid:").append(UUID.randomUUID()).append(">\r\n")
+          .append("WARC-Date: ").append(Instant.now().truncatedTo(ChronoUnit.SECONDS)).append("\r\n");
+      if (url != null) {
+         headers.append("WARC-Target-URI: ").append(url).append("\r\n");
+      }
+      headers.append(extraHeaders).append("Content-Type: ").append(contentType).append("\r\n")
+          .append("Content-Length: ").append(block.length).append("\r\n\r\n");
+      final ByteArrayOutputStream out = new ByteArrayOutputStream(block.length / 4 + 256);
+      try (final GZIPOutputStream gzipOut = new GZIPOutputStream(out, 8192)) {
+         gzipOut.write(headers.toString().getBytes(StandardCharsets.UTF_8));
+         gzipOut.write(block);
+         gzipOut.write("\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+      }
+      return out.toByteArray();
+   }
+
+   private static boolean isTransferHeader(final String name) {
+      for (final String transferHeader : TRANSFER_HEADERS) {
+         if (transferHeader.equalsIgnoreCase(name)) {
+            return true;
+         }
+      }
+      return false;
+   }
+}
@@ -0,0 +1,118 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pkg.BodyStore;
+import pkg.FetchResult;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link BodyStore} class.
+ */
+public class BodyStoreTest {
+
+   private Path directory;
+
+   @Before
+   public void before() throws IOException {
+      directory = Files.createTempDirectory("body-store-test");
+   }
+
+   @After
+   public void after() throws IOException {
+      try (final Stream<Path> paths = Files.walk(directory)) {
+         paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      }
+   }
+
+   /**
+    * Tests that a body is returned with its content type and that identical bodies are stored once, compressed.
+    */
+   @Test
+   public void testPut_01() throws IOException {
+      final BodyStore bodyStore = new BodyStore(directory, 1024 * 1024);
+      final String html = createHtml(100);
+      bodyStore.put("http://www.test.com/a.html", createResult("http://www.test.com/a.html", 200, html));
+      bodyStore.put("http://www.test.com/b.html", createResult("http://www.test.com/b.html", 200, html));
+      bodyStore.put("http://www.test.com/c.html", createResult("http://www.test.com/c.html", 404, "missing"));
+
+      Assert.assertEquals(1, bodyStore.getBodyCount());
+      Assert.assertTrue(bodyStore.getSizeBytes() < html.length() / 2);
+      final FetchResult fetchResult = bodyStore.get("http://www.test.com/b.html");
+      Assert.assertEquals(200, fetchResult.getStatusCode());
+      Assert.assertEquals("http://www.test.com/b.html", fetchResult.getUrl());
+      Assert.assertEquals("text/html", fetchResult.getMimeType());
+      Assert.assertEquals(html, fetchResult.getBodyAsString());
+      Assert.assertNull(bodyStore.get("http://www.test.com/c.html"));
+   }
+
+   /**
+    * Tests that the least recently used bodies are deleted to stay within the disk budget.
+    */
+   @Test
+   public void testPut_02() throws IOException {
+      final BodyStore bodyStore = new BodyStore(directory, 2500);
+      bodyStore.put("http://www.test.com/0.html", createResult("http://www.test.com/0.html", 200, createRandom(1000)));
+      bodyStore.put("http://www.test.com/1.html", createResult("http://www.test.com/1.html", 200, createRandom(1000)));
+      Assert.assertNotNull(bodyStore.get("http://www.test.com/0.html"));
+      bodyStore.put("http://www.test.com/2.html", createResult("http://www.test.com/2.html", 200, createRandom(1000)));
+
+      // 1.html was used least recently
+      Assert.assertEquals(2, bodyStore.getBodyCount());
+      Assert.assertTrue(bodyStore.getSizeBytes() <= 2500);
+      Assert.assertNotNull(bodyStore.get("http://www.test.com/0.html"));
+      Assert.assertNull(bodyStore.get("http://www.test.com/1.html"));
+      Assert.assertNotNull(bodyStore.get("http://www.test.com/2.html"));
+   }
+
+   /**
+    * Tests that a new store loads the index saved by an earlier one.
+    */
+   @Test
+   public void testLoad_01() throws IOException {
+      final BodyStore bodyStore = new BodyStore(directory, 1024 * 1024);
+      bodyStore.put("http://www.test.com/a.html", createResult("http://www.test.com/a.html", 200, createHtml(10)));
+      bodyStore.close();
+
+      final BodyStore loadedStore = new BodyStore(directory, 1024 * 1024);
+      loadedStore.load();
+      Assert.assertEquals(1, loadedStore.getBodyCount());
+      Assert.assertEquals(bodyStore.getSizeBytes(), loadedStore.getSizeBytes());
+      Assert.assertEquals(createHtml(10), loadedStore.get("http://www.test.com/a.html").getBodyAsString());
+   }
+
+   private static FetchResult createResult(final String url, final int statusCode, final String body) {
+      return new FetchResult(url, statusCode, Collections.singletonMap("Content-Type", "text/html"),
+          body.getBytes(StandardCharsets.UTF_8));
+   }
+
+   private static String createHtml(final int linkCount) {
+      final StringBuilder html = new StringBuilder("<html><body>");
+      for (int i = 0; i < linkCount; i++) {
+         html.append("<a href=\"/page/").append(i).append(".html\">Page ").append(i).append("</a>");
+      }
+      return html.append("</body></html>").toString();
+   }
+
+   /**
+    * @return text which does not compress, so its stored size is about its length.
+    */
+   private static String createRandom(final int length) {
+      final Random random = new Random(length + System.nanoTime());
+      final StringBuilder text = new StringBuilder(length);
+      for (int i = 0; i < length; i++) {
+         text.append((char) ('!' + random.nextInt(90)));
+      }
+      return text.toString();
+   }
+}
@@ -0,0 +1,231 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pkg.ClusterNode;
+import pkg.Crawler;
+import pkg.CrawlerStats;
+import pkg.HttpPageFetcher;
+import pkg.SeedReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link ClusterNode} class.  The crawls run against a local HTTP server which is
+ * reached as both localhost and 127.0.0.1, so the site has two hosts to partition.  Each page links to the next
+ * page on its own host and to the same page on the other host.
+ */
+public class ClusterNodeTest {
+
+   private static final String[] HOSTS = {"localhost", "127.0.0.1"};
+
+   private static final int PAGES_PER_HOST = 20;
+
+   private HttpServer server;
+
+   private int port;
+
+   private final Map<String, Integer> requestCounts = new ConcurrentHashMap<>();
+
+   private Path tempDirectory;
+
+   @Before
+   public void before() throws IOException {
+      server = HttpServer.create(new InetSocketAddress(0), 0);
+      server.createContext("/seeds.txt", exchange -> respond(exchange, "text/plain",
+          "http://" + HOSTS[0] + ":" + port + "/p0\n"));
+      server.createContext("/p", exchange -> {
+         final String host = exchange.getRequestHeaders().getFirst("Host").replaceFirst(":\\d+$", "");
+         final String path = exchange.getRequestURI().getPath();
+         requestCounts.merge(host + path, 1, Integer::sum);
+         final int page = Integer.parseInt(path.substring(2));
+         final String otherHost = host.equals(HOSTS[0]) ? HOSTS[1] : HOSTS[0];
+         final String html = (page + 1 < PAGES_PER_HOST ? "<a href=\"/p" + (page + 1) + "\">next</a>" : "")
+             + "<a href=\"http://" + otherHost + ":" + port + path + "\">other</a>";
+         respond(exchange, "text/html; charset=UTF-8", html);
+      });
+      server.start();
+      port = server.getAddress().getPort();
+      tempDirectory = Files.createTempDirectory("cluster-node-test");
+   }
+
+   @After
+   public void after() throws IOException {
+      server.stop(0);
+      try (final Stream<Path> paths = Files.walk(tempDirectory)) {
+         paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+      }
+   }
+
+   @Test
+   public void testPartitionOf_01() {
+      Assert.assertEquals(0, ClusterNode.partitionOf("http://www.test.com/a.html", 1));
+      final int partition = ClusterNode.partitionOf("http://www.test.com/a.html", 3);
+      Assert.assertTrue(partition >= 0 && partition < 3);
+      Assert.assertEquals(partition, ClusterNode.partitionOf("https://www.test.com/b/c.html?d=e", 3));
+      Assert.assertEquals(0, ClusterNode.partitionOf(url(HOSTS[0], 0), 3));
+      Assert.assertEquals(1, ClusterNode.partitionOf(url(HOSTS[1], 0), 3));
+   }
+
+   @Test
+   public void testParseAddresses_01() {
+      final List<InetSocketAddress> addresses = ClusterNode.parseAddresses("localhost:7001, 127.0.0.1:7002");
+      Assert.assertEquals(2, addresses.size());
+      Assert.assertEquals("localhost", addresses.get(0).getHostString());
+      Assert.assertEquals(7001, addresses.get(0).getPort());
+      Assert.assertEquals("127.0.0.1", addresses.get(1).getHostString());
+      Assert.assertEquals(7002, addresses.get(1).getPort());
+   }
+
+   /**
+    * Tests a cluster of three nodes in this process crawls every page exactly once, although only one node owns
+    * the seed, and that node 0 reports the stats of all nodes.
+    */
+   @Test
+   public void testCrawl_01() throws Exception {
+      final List<InetSocketAddress> addresses = getFreeAddresses(3);
+      final List<Crawler> crawlers = new ArrayList<>();
+      final List<Thread> threads = new ArrayList<>();
+      for (int nodeId = 0; nodeId < addresses.size(); nodeId++) {
+         final Crawler crawler = new Crawler(SeedReader.open(seedsUrl()), new HttpPageFetcher(), null);
+         crawler.setWorkerCount(2);
+         crawler.setClusterNode(new ClusterNode(nodeId, addresses));
+         crawlers.add(crawler);
+         threads.add(new Thread(crawler::crawl));
+      }
+      for (final Thread thread : threads) {
+         thread.start();
+      }
+      for (final Thread thread : threads) {
+         thread.join(TimeUnit.SECONDS.toMillis(60));
+         Assert.assertFalse(thread.isAlive());
+      }
+      long successfulRequestCount = 0;
+      for (final Crawler crawler : crawlers) {
+         successfulRequestCount += crawler.getCrawlerStats().getSuccessfulRequestCount();
+         crawler.close();
+      }
+      Assert.assertEquals(2 * PAGES_PER_HOST, successfulRequestCount);
+      assertEveryPageRequestedOnce();
+      final CrawlerStats clusterStats = crawlers.get(0).getClusterStats();
+      Assert.assertNotNull(clusterStats);
+      Assert.assertEquals(2 * PAGES_PER_HOST, clusterStats.getSuccessfulRequestCount());
+      Assert.assertEquals(0, clusterStats.getFailedRequestCount());
+      Assert.assertNull(crawlers.get(1).getClusterStats());
+   }
+
+   /**
+    * Tests a cluster of three nodes, with node 1 in a second crawler process started with the command line options
+    * of {@link pkg.Main}, crawls every page exactly once.  The hosts are owned by nodes 0 and 1, so each half of the
+    * site is only found through links forwarded between the processes.  Node 2 owns no host.
+    */
+   @Test
+   public void testCrawl_02() throws Exception {
+      final List<InetSocketAddress> addresses = getFreeAddresses(3);
+      final StringBuilder cluster = new StringBuilder();
+      for (final InetSocketAddress address : addresses) {
+         cluster.append(cluster.length() == 0 ? "" : ",").append("127.0.0.1:").append(address.getPort());
+      }
+      final Crawler idleCrawler = new Crawler(SeedReader.open(seedsUrl()), new HttpPageFetcher(), null);
+      idleCrawler.setClusterNode(new ClusterNode(2, addresses));
+      final Thread idleThread = new Thread(idleCrawler::crawl);
+      idleThread.start();
+      final File log = tempDirectory.resolve("node-1.log").toFile();
+      final Process process = new ProcessBuilder(Arrays.asList(
+          getJavaExecutable(), "-cp", System.getProperty("java.class.path"), "pkg.Main", "--seeds=" + seedsUrl(),
+          "--cluster=" + cluster, "--node=1"))
+          .directory(tempDirectory.toFile())
+          .redirectErrorStream(true)
+          .redirectOutput(log)
+          .start();
+      try (final Crawler crawler = new Crawler(SeedReader.open(seedsUrl()), new HttpPageFetcher(), null)) {
+         crawler.setWorkerCount(2);
+         crawler.setClusterNode(new ClusterNode(0, addresses));
+         crawler.crawl();
+
+         Assert.assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+         Assert.assertEquals(new String(Files.readAllBytes(log.toPath()), StandardCharsets.UTF_8), 0,
+             process.exitValue());
+         Assert.assertEquals(PAGES_PER_HOST, crawler.getCrawlerStats().getSuccessfulRequestCount());
+         Assert.assertEquals(2 * PAGES_PER_HOST, crawler.getClusterStats().getSuccessfulRequestCount());
+         Assert.assertEquals(2, crawler.getClusterStats().getHostCounts().size());
+      }
+      finally {
+         process.destroy();
+         idleThread.join(TimeUnit.SECONDS.toMillis(60));
+         idleCrawler.close();
+      }
+      Assert.assertEquals(0, idleCrawler.getCrawlerStats().getTotalRequestCount());
+      assertEveryPageRequestedOnce();
+   }
+
+   private void assertEveryPageRequestedOnce() {
+      Assert.assertEquals(2 * PAGES_PER_HOST, requestCounts.size());
+      for (final Map.Entry<String, Integer> entry : requestCounts.entrySet()) {
+         Assert.assertEquals(entry.getKey(), Integer.valueOf(1), entry.getValue());
+      }
+   }
+
+   private String seedsUrl() {
+      return "http://" + HOSTS[1] + ":" + port + "/seeds.txt";
+   }
+
+   private String url(final String host, final int page) {
+      return "http://" + host + ":" + port + "/p" + page;
+   }
+
+   private static void respond(final HttpExchange exchange, final String contentType, final String content)
+       throws IOException {
+      final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", contentType);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (final OutputStream out = exchange.getResponseBody()) {
+         out.write(bytes);
+      }
+   }
+
+   private static List<InetSocketAddress> getFreeAddresses(final int count) throws IOException {
+      final List<InetSocketAddress> addresses = new ArrayList<>();
+      final List<ServerSocket> sockets = new ArrayList<>();
+      try {
+         for (int i = 0; i < count; i++) {
+            final ServerSocket socket = new ServerSocket(0);
+            sockets.add(socket);
+            addresses.add(new InetSocketAddress("127.0.0.1", socket.getLocalPort()));
+         }
+      }
+      finally {
+         for (final ServerSocket socket : sockets) {
+            socket.close();
+         }
+      }
+      return addresses;
+   }
+
+   /**
+    * @return the java executable running this test.
+    */
+   private static String getJavaExecutable() {
+      return Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+   }
+}
@@ -0,0 +1,98 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pkg.ConcurrencyLimiter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link ConcurrencyLimiter} class.
+ */
+public class ConcurrencyLimiterTest {
+
+   private static final long LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+   /**
+    * Records fetchCount fetches of the host which are in flight at the same time.
+    */
+   private static void fetch(final ConcurrencyLimiter limiter, final int fetchCount, final long latencyNanos,
+       final boolean failed) {
+      for (int i = 0; i < fetchCount; i++) {
+         limiter.start("www.test.com");
+      }
+      for (int i = 0; i < fetchCount; i++) {
+         limiter.record("www.test.com", latencyNanos, failed);
+      }
+   }
+
+   /**
+    * Tests the limits are raised by one per window of samples with stable latency, up to their maximum.
+    */
+   @Test
+   public void testRecord_01() {
+      final ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 12, 1, 3);
+      Assert.assertEquals(2, limiter.getLimit());
+      Assert.assertEquals(1, limiter.getHostLimit("www.test.com"));
+      fetch(limiter, 10, LATENCY_NANOS, false);
+      Assert.assertEquals(3, limiter.getLimit());
+      Assert.assertEquals(2, limiter.getHostLimit("www.test.com"));
+      Assert.assertEquals(1, limiter.getHostLimit("other.test.com"));
+      for (int i = 0; i < 100; i++) {
+         fetch(limiter, 10, LATENCY_NANOS, false);
+      }
+      Assert.assertEquals(12, limiter.getLimit());
+      Assert.assertEquals(3, limiter.getHostLimit("www.test.com"));
+      Assert.assertEquals(0, limiter.getDecreaseCount());
+   }
+
+   /**
+    * Tests the limits are lowered once the p99 latency of a window is more than 1.5 times the usual one.
+    */
+   @Test
+   public void testRecord_02() {
+      final ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 8, 4, 4);
+      fetch(limiter, 10, LATENCY_NANOS, false);
+      fetch(limiter, 9, LATENCY_NANOS, false);
+      fetch(limiter, 1, 2 * LATENCY_NANOS, false);
+      Assert.assertEquals(5, limiter.getLimit());
+      Assert.assertEquals(2, limiter.getHostLimit("www.test.com"));
+      Assert.assertEquals(2, limiter.getDecreaseCount());
+   }
+
+   /**
+    * Tests the limits are lowered at once when more than a tenth of a window fails, but not below 1.
+    */
+   @Test
+   public void testRecord_03() {
+      final ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 8, 2, 4);
+      fetch(limiter, 1, LATENCY_NANOS, true);
+      Assert.assertEquals(8, limiter.getLimit());
+      fetch(limiter, 1, LATENCY_NANOS, true);
+      Assert.assertEquals(5, limiter.getLimit());
+      Assert.assertEquals(1, limiter.getHostLimit("www.test.com"));
+      fetch(limiter, 10, LATENCY_NANOS, true);
+      Assert.assertEquals(1, limiter.getLimit());
+      Assert.assertEquals(1, limiter.getHostLimit("www.test.com"));
+   }
+
+   /**
+    * Tests the limits are not raised while less than half of them is used.
+    */
+   @Test
+   public void testRecord_04() {
+      final ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 12, 4, 12);
+      for (int i = 0; i < 100; i++) {
+         fetch(limiter, 1, LATENCY_NANOS, false);
+      }
+      Assert.assertEquals(4, limiter.getLimit());
+      fetch(limiter, 10, LATENCY_NANOS, false);
+      Assert.assertEquals(5, limiter.getLimit());
+      Assert.assertEquals(5, limiter.getHostLimit("www.test.com"));
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testConcurrencyLimiter_01() {
+      new ConcurrencyLimiter(4, 2, 1, 1);
+   }
+}
@@ -0,0 +1,54 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pkg.CrawlBudget;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link CrawlBudget} class.
+ */
+public class CrawlBudgetTest {
+
+   @Test
+   public void testAllows_01() {
+      final CrawlBudget budget = new CrawlBudget(2, CrawlBudget.UNLIMITED, CrawlBudget.UNLIMITED);
+      Assert.assertTrue(budget.allows("http://www.test.com/", 0));
+      Assert.assertTrue(budget.allows("http://www.test.com/", 2));
+      Assert.assertFalse(budget.allows("http://www.test.com/", 3));
+      for (int i = 0; i < 1000; i++) {
+         Assert.assertTrue(budget.tryTakePage("http://www.test.com/" + i));
+      }
+      Assert.assertFalse(budget.isExhausted());
+   }
+
+   @Test
+   public void testTryTakePage_01() {
+      final CrawlBudget budget = new CrawlBudget(CrawlBudget.UNLIMITED, 3, CrawlBudget.UNLIMITED);
+      Assert.assertTrue(budget.tryTakePage("http://a.test.com/1"));
+      Assert.assertTrue(budget.tryTakePage("http://b.test.com/1"));
+      Assert.assertFalse(budget.isExhausted());
+      Assert.assertTrue(budget.allows("http://a.test.com/2", 100));
+      Assert.assertTrue(budget.tryTakePage("http://a.test.com/2"));
+      Assert.assertTrue(budget.isExhausted());
+      Assert.assertFalse(budget.tryTakePage("http://c.test.com/1"));
+      Assert.assertFalse(budget.allows("http://c.test.com/1", 0));
+      Assert.assertEquals(3, budget.getPageCount());
+   }
+
+   @Test
+   public void testTryTakePage_02() {
+      final CrawlBudget budget = new CrawlBudget(CrawlBudget.UNLIMITED, CrawlBudget.UNLIMITED, 2);
+      Assert.assertTrue(budget.tryTakePage("http://a.test.com/1"));
+      Assert.assertTrue(budget.tryTakePage("http://A.test.com:8080/2"));
+      Assert.assertFalse(budget.allows("http://a.test.com/3", 0));
+      Assert.assertFalse(budget.tryTakePage("http://a.test.com/3"));
+      Assert.assertTrue(budget.allows("http://b.test.com/1", 0));
+      Assert.assertTrue(budget.tryTakePage("http://b.test.com/1"));
+      Assert.assertEquals(3, budget.getPageCount());
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testCrawlBudget_01() {
+      new CrawlBudget(-2, CrawlBudget.UNLIMITED, CrawlBudget.UNLIMITED);
+   }
+}
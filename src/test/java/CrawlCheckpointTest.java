@@ -0,0 +1,183 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pkg.CrawlCheckpoint;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link CrawlCheckpoint} class.
+ */
+public class CrawlCheckpointTest {
+
+   private static final String URL_1 = "http://www.test.com/1";
+
+   private static final String URL_2 = "http://www.test.com/2";
+
+   private static final String URL_3 = "http://www.test.com/3";
+
+   private Path checkpointFile;
+
+   @Before
+   public void before() throws IOException {
+      checkpointFile = Files.createTempFile("crawl-checkpoint-test", ".checkpoint");
+      Files.delete(checkpointFile);
+   }
+
+   @After
+   public void after() throws IOException {
+      Files.deleteIfExists(checkpointFile);
+   }
+
+   @Test
+   public void testLoad_01() throws IOException {
+      final CrawlCheckpoint checkpoint = new CrawlCheckpoint(checkpointFile);
+      Assert.assertFalse(checkpoint.exists());
+      checkpoint.start();
+      checkpoint.linkQueued(URL_1);
+      checkpoint.linkQueued(URL_2);
+      checkpoint.linkCrawled(URL_1, false);
+      checkpoint.linkQueued(URL_3);
+      checkpoint.close();
+      Assert.assertTrue(checkpoint.exists());
+
+      final CrawlCheckpoint.State state = checkpoint.load();
+      Assert.assertEquals(Arrays.asList(URL_2, URL_3), state.getQueuedLinks());
+      Assert.assertEquals(1, state.getVisitedLinks().size());
+      Assert.assertTrue(state.getVisitedLinks().contains(URL_1));
+      Assert.assertEquals(0, state.getSuccessfulRequestCount());
+      Assert.assertEquals(1, state.getFailedRequestCount());
+   }
+
+   /**
+    * Tests that records appended after a restart are added to the earlier ones and that a record cut off by a crash
+    * is ignored.
+    */
+   @Test
+   public void testLoad_02() throws IOException {
+      final CrawlCheckpoint checkpoint = new CrawlCheckpoint(checkpointFile);
+      checkpoint.start();
+      checkpoint.linkQueued(URL_1);
+      checkpoint.linkQueued(URL_2);
+      checkpoint.close();
+
+      checkpoint.start();
+      checkpoint.linkCrawled(URL_2, true);
+      checkpoint.linkQueued(URL_3);
+      checkpoint.close();
+
+      // cut the last record in half
+      final byte[] bytes = Files.readAllBytes(checkpointFile);
+      Files.write(checkpointFile, Arrays.copyOf(bytes, bytes.length - 5));
+
+      final CrawlCheckpoint.State state = checkpoint.load();
+      Assert.assertEquals(Collections.singletonList(URL_1), state.getQueuedLinks());
+      Assert.assertEquals(1, state.getVisitedLinks().size());
+      Assert.assertTrue(state.getVisitedLinks().contains(URL_2));
+      Assert.assertEquals(1, state.getSuccessfulRequestCount());
+   }
+
+   @Test(expected = IOException.class)
+   public void testLoad_03() throws IOException {
+      Files.write(checkpointFile, "not a checkpoint".getBytes("UTF-8"));
+      new CrawlCheckpoint(checkpointFile).load();
+   }
+
+   /**
+    * Tests that a crawl resumed after a crash can be resumed again: the record cut off by the first crash must not
+    * be left in front of the records appended after it.
+    */
+   @Test
+   public void testLoad_04() throws IOException {
+      final CrawlCheckpoint checkpoint = new CrawlCheckpoint(checkpointFile);
+      checkpoint.start();
+      checkpoint.linkQueued(URL_1);
+      checkpoint.linkQueued(URL_2);
+      checkpoint.close();
+      final byte[] bytes = Files.readAllBytes(checkpointFile);
+      Files.write(checkpointFile, Arrays.copyOf(bytes, bytes.length - 3));
+
+      final CrawlCheckpoint firstResume = new CrawlCheckpoint(checkpointFile);
+      Assert.assertEquals(Collections.singletonList(URL_1), firstResume.load().getQueuedLinks());
+      firstResume.start();
+      firstResume.linkQueued(URL_2);
+      firstResume.linkQueued(URL_3);
+      firstResume.linkCrawled(URL_1, true);
+      firstResume.close();
+
+      final CrawlCheckpoint.State state = new CrawlCheckpoint(checkpointFile).load();
+      Assert.assertEquals(Arrays.asList(URL_2, URL_3), state.getQueuedLinks());
+      Assert.assertEquals(1, state.getVisitedLinks().size());
+      Assert.assertTrue(state.getVisitedLinks().contains(URL_1));
+      Assert.assertEquals(1, state.getSuccessfulRequestCount());
+   }
+
+   /**
+    * Tests that a corrupt link length is rejected before the link is allocated.
+    */
+   @Test(expected = IOException.class)
+   public void testLoad_05() throws IOException {
+      final CrawlCheckpoint checkpoint = new CrawlCheckpoint(checkpointFile);
+      checkpoint.start();
+      checkpoint.linkQueued(URL_1);
+      checkpoint.close();
+      final byte[] bytes = Files.readAllBytes(checkpointFile);
+      // the length of the first link follows the 5 byte header and the record type
+      bytes[6] = (byte) 0xff;
+      Files.write(checkpointFile, bytes);
+      checkpoint.load();
+   }
+
+   /**
+    * Tests that loading rewrites the file with only the links still queued and one result per finished link, and
+    * that the compacted file gives the same state.
+    */
+   @Test
+   public void testLoad_06() throws IOException {
+      final CrawlCheckpoint checkpoint = new CrawlCheckpoint(checkpointFile);
+      checkpoint.start();
+      checkpoint.linkQueued(URL_1);
+      checkpoint.linkQueued(URL_2);
+      checkpoint.linkQueued(URL_3);
+      checkpoint.linkCrawled(URL_1, true);
+      checkpoint.linkCrawled(URL_1, true);
+      checkpoint.linkCrawled(URL_2, false);
+      checkpoint.close();
+
+      checkpoint.load();
+      // the header, the queued record of URL_3 and two results
+      Assert.assertEquals(5 + 1 + 4 + URL_3.length() + 2 * (1 + 8), Files.size(checkpointFile));
+      final CrawlCheckpoint.State state = new CrawlCheckpoint(checkpointFile).load();
+      Assert.assertEquals(Collections.singletonList(URL_3), state.getQueuedLinks());
+      Assert.assertEquals(2, state.getVisitedLinks().size());
+      Assert.assertTrue(state.getVisitedLinks().contains(URL_1));
+      Assert.assertTrue(state.getVisitedLinks().contains(URL_2));
+      Assert.assertEquals(1, state.getSuccessfulRequestCount());
+      Assert.assertEquals(1, state.getFailedRequestCount());
+   }
+
+   /**
+    * Tests that with a queue of a single record every record is still written, the workers waiting for the writer.
+    */
+   @Test
+   public void testStart_01() throws IOException {
+      final CrawlCheckpoint checkpoint = new CrawlCheckpoint(checkpointFile, 1000, 1);
+      checkpoint.start();
+      for (int i = 0; i < 1000; i++) {
+         checkpoint.linkQueued(URL_1 + i);
+      }
+      checkpoint.linkCrawled(URL_1 + 0, true);
+      checkpoint.close();
+
+      final CrawlCheckpoint.State state = checkpoint.load();
+      Assert.assertEquals(999, state.getQueuedLinks().size());
+      Assert.assertTrue(state.getVisitedLinks().contains(URL_1 + 0));
+   }
+}
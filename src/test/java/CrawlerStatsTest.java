@@ -3,6 +3,16 @@ import org.junit.Before;
 import org.junit.Test;
 import pkg.CrawlerStats;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
  * @author Brian Chipman
  *
@@ -29,4 +39,108 @@ public class CrawlerStatsTest {
       Assert.assertEquals(1, crawlerStats.getFailedRequestCount());
       Assert.assertEquals(3, crawlerStats.getTotalRequestCount());
    }
+
+   @Test
+   public void testIncrement_02() throws InterruptedException {
+      final List<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+         threads.add(new Thread(() -> {
+            for (int j = 0; j < 1000; j++) {
+               crawlerStats.increment(j % 2 == 0);
+            }
+         }));
+      }
+      for (final Thread thread : threads) {
+         thread.start();
+      }
+      for (final Thread thread : threads) {
+         thread.join();
+      }
+      Assert.assertEquals(2000, crawlerStats.getSuccessfulRequestCount());
+      Assert.assertEquals(2000, crawlerStats.getFailedRequestCount());
+      Assert.assertEquals(4000, crawlerStats.getTotalRequestCount());
+   }
+
+   @Test
+   public void testRecordFetch_01() {
+      crawlerStats.recordFetch("http://www.test.com/a.html", 200, 100, 1000000);
+      crawlerStats.recordFetch("http://www.test.com/b.html", 404, 10, 2000000);
+      crawlerStats.recordFetch("https://other.test.com/", 200, 1000, 3000000);
+      crawlerStats.recordParse(500000);
+
+      final Map<Integer, Long> statusCodeCounts = new TreeMap<>();
+      statusCodeCounts.put(200, 2L);
+      statusCodeCounts.put(404, 1L);
+      Assert.assertEquals(statusCodeCounts, crawlerStats.getStatusCodeCounts());
+      final Map<String, Long> hostCounts = new TreeMap<>();
+      hostCounts.put("other.test.com", 1L);
+      hostCounts.put("www.test.com", 2L);
+      Assert.assertEquals(hostCounts, crawlerStats.getHostCounts());
+      Assert.assertEquals(1110, crawlerStats.getBytesDownloaded());
+      Assert.assertEquals(3, crawlerStats.getFetchLatency().getCount());
+      Assert.assertEquals(3000, crawlerStats.getFetchLatency().getMaxMicros());
+      Assert.assertEquals(1, crawlerStats.getParseLatency().getCount());
+   }
+
+   @Test
+   public void testRestore_01() {
+      crawlerStats.restore(3000000000L, 1);
+      crawlerStats.increment(true);
+      Assert.assertEquals(3000000001L, crawlerStats.getSuccessfulRequestCount());
+      Assert.assertEquals(3000000002L, crawlerStats.getTotalRequestCount());
+   }
+
+   @Test
+   public void testAdd_01() {
+      crawlerStats.increment(true);
+      crawlerStats.recordFetch("http://www.test.com/a.html", 200, 100, 1000000);
+      crawlerStats.recordRetry();
+      crawlerStats.setCrawlTimeMillis(500);
+      final CrawlerStats otherStats = new CrawlerStats();
+      otherStats.increment(true);
+      otherStats.increment(false);
+      otherStats.recordFetch("http://www.test.com/b.html", 404, 10, 5000000);
+      otherStats.recordFetch("https://other.test.com/", 200, 1000, 3000000);
+      otherStats.setCrawlTimeMillis(800);
+
+      crawlerStats.add(otherStats);
+      Assert.assertEquals(2, crawlerStats.getSuccessfulRequestCount());
+      Assert.assertEquals(1, crawlerStats.getFailedRequestCount());
+      Assert.assertEquals(1110, crawlerStats.getBytesDownloaded());
+      Assert.assertEquals(1, crawlerStats.getRetryCount());
+      Assert.assertEquals(800, crawlerStats.getCrawlTimeMillis());
+      Assert.assertEquals(Long.valueOf(2), crawlerStats.getStatusCodeCounts().get(200));
+      Assert.assertEquals(Long.valueOf(2), crawlerStats.getHostCounts().get("www.test.com"));
+      Assert.assertEquals(3, crawlerStats.getFetchLatency().getCount());
+      Assert.assertEquals(5000, crawlerStats.getFetchLatency().getMaxMicros());
+   }
+
+   @Test
+   public void testWriteTo_01() throws IOException {
+      crawlerStats.increment(true);
+      crawlerStats.increment(false);
+      crawlerStats.recordFetch("http://www.test.com/a.html", 200, 100, 1000000);
+      crawlerStats.recordFetch("http://www.test.com/b.html", 404, 10, 2000000);
+      crawlerStats.recordParse(500000);
+      crawlerStats.recordValidatorCacheLookup(true);
+      crawlerStats.recordCircuitBreakerTrip();
+      crawlerStats.recordBytesSaved(4096);
+      crawlerStats.recordSkippedResource();
+      crawlerStats.setCrawlTimeMillis(1234);
+
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (final DataOutputStream out = new DataOutputStream(bytes)) {
+         crawlerStats.writeTo(out);
+      }
+      final CrawlerStats readStats = CrawlerStats.readFrom(new DataInputStream(
+          new ByteArrayInputStream(bytes.toByteArray())));
+      Assert.assertEquals(crawlerStats.toString(), readStats.toString());
+      Assert.assertEquals(crawlerStats.getStatusCodeCounts(), readStats.getStatusCodeCounts());
+      Assert.assertEquals(crawlerStats.getHostCounts(), readStats.getHostCounts());
+      Assert.assertEquals(1, readStats.getValidatorCacheHitCount());
+      Assert.assertEquals(1, readStats.getCircuitBreakerTripCount());
+      Assert.assertEquals(4096, readStats.getBytesSaved());
+      Assert.assertEquals(1, readStats.getSkippedResourceCount());
+      Assert.assertEquals(1234, readStats.getCrawlTimeMillis());
+   }
 }
@@ -1,7 +1,7 @@
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import org.jsoup.HttpStatusException;
+import com.google.gson.JsonParser;
 import org.jsoup.nodes.Attributes;
 import org.jsoup.nodes.Element;
 import org.jsoup.parser.Tag;
@@ -12,15 +12,58 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pkg.BodyStore;
+import pkg.ConcurrencyLimiter;
+import pkg.CrawlBudget;
+import pkg.CrawlCheckpoint;
 import pkg.Crawler;
 import pkg.CrawlerStats;
+import pkg.CrawlerTrapDetector;
+import pkg.DnsCache;
+import pkg.FetchPolicy;
+import pkg.FetchResult;
+import pkg.FingerprintSet;
+import pkg.HostCircuitBreaker;
+import pkg.HostScheduler;
+import pkg.LinkGraph;
+import pkg.LinkExtractionMode;
+import pkg.LinkScorer;
+import pkg.PageFetcher;
+import pkg.PageRecordWriter;
+import pkg.PriorityFrontier;
+import pkg.RetryPolicy;
+import pkg.SeedReader;
+import pkg.SimHashStore;
+import pkg.UniqueQueue;
+import pkg.ValidatorCache;
+import pkg.WarcRecordingFetcher;
+import pkg.WarcReplayFetcher;
+import pkg.WarcWriter;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
  * @author Brian Chipman
@@ -53,7 +96,20 @@ public class CrawlerTest {
 
    private static class MockCrawler extends Crawler {
       public MockCrawler(final String startingPointUrl) {
-         super(startingPointUrl);
+         super(startingPointUrl, MockCrawler::fetchMockPage);
+      }
+
+      /**
+       * Serves the links of LINK_TO_ELEMENTS_MAP as an HTML page, or status 500 for any other URL.
+       */
+      private static CompletableFuture<FetchResult> fetchMockPage(final String url) {
+         final Elements elements = LINK_TO_ELEMENTS_MAP.get(url);
+         final Map<String, String> headers = Collections.singletonMap("Content-Type", "text/html");
+         if (elements == null) {
+            return CompletableFuture.completedFuture(new FetchResult(url, 500, headers, new byte[0]));
+         }
+         return CompletableFuture.completedFuture(new FetchResult(url, 200, headers,
+             elements.outerHtml().getBytes(StandardCharsets.UTF_8)));
       }
 
       @Override
@@ -71,15 +127,6 @@ public class CrawlerTest {
          return STARTING_LINKS_JSON.toString();
       }
 
-      @Override
-      protected Elements getLinkElementsFromUrl(final String url) throws HttpStatusException {
-         final Elements elements = LINK_TO_ELEMENTS_MAP.get(url);
-         if (elements != null) {
-            return elements;
-         }
-         throw new HttpStatusException("Bad link!", 500, url);
-      }
-
       @Override
       public void addPageLinksToQueue(final Elements linkElements, final String currentLink) {
          super.addPageLinksToQueue(linkElements, currentLink);
@@ -305,4 +352,980 @@ public class CrawlerTest {
       Assert.assertEquals(crawlerStats.getTotalRequestCount(),
           crawlerStats.getSuccessfulRequestCount() + crawlerStats.getFailedRequestCount());
    }
+
+   /**
+    * Tests the {@link Crawler#crawl()} method with several workers by confirming the same links are visited as with
+    * a single worker and that every link is only crawled once.
+    */
+   @Test
+   public void testCrawl_02() {
+      final MockCrawler singleWorkerCrawler = new MockCrawler(null);
+      singleWorkerCrawler.crawl();
+
+      crawler.setWorkerCount(4);
+      crawler.crawl();
+
+      // confirm the same links were visited and linksQueue is empty at end
+      Assert.assertEquals(singleWorkerCrawler.getVisitedLinks(), crawler.getVisitedLinks());
+      Assert.assertTrue(crawler.getLinksQueue().isEmpty());
+
+      // confirm each visited link was requested exactly once
+      final CrawlerStats crawlerStats = crawler.getCrawlerStats();
+      Assert.assertEquals(crawler.getVisitedLinks().size(), crawlerStats.getTotalRequestCount());
+      Assert.assertEquals(singleWorkerCrawler.getCrawlerStats().getSuccessfulRequestCount(),
+          crawlerStats.getSuccessfulRequestCount());
+   }
+
+   /**
+    * Tests the {@link Crawler#crawl()} method with several workers and a {@link HostScheduler} by confirming the same
+    * links are visited as without the scheduler.
+    */
+   @Test
+   public void testCrawl_03() {
+      final MockCrawler singleWorkerCrawler = new MockCrawler(null);
+      singleWorkerCrawler.crawl();
+
+      crawler.setWorkerCount(4);
+      crawler.setHostScheduler(new HostScheduler(2, 1));
+
+      // confirm the starting links were moved to the scheduler
+      Assert.assertTrue(crawler.getLinksQueue() instanceof HostScheduler);
+      Assert.assertFalse(crawler.getLinksQueue().isEmpty());
+      crawler.crawl();
+
+      Assert.assertEquals(singleWorkerCrawler.getVisitedLinks(), crawler.getVisitedLinks());
+      Assert.assertTrue(crawler.getLinksQueue().isEmpty());
+      Assert.assertEquals(crawler.getVisitedLinks().size(), crawler.getCrawlerStats().getTotalRequestCount());
+   }
+
+   /**
+    * This is a helper method which creates a {@link Crawler} using a fake {@link pkg.PageFetcher} in place of the
+    * network.  The seed links to URL_1 and URL_2, which link to URL_4 and URL_5; URL_5 is not found.
+    *
+    * @param checkpoint checkpoint passed to the crawler, may be null.
+    * @return Crawler object with its starting links loaded.
+    */
+   private static Crawler createFakeFetcherCrawler(final CrawlCheckpoint checkpoint) {
+      return new Crawler("http://www.test.com/seed.json", createFakeFetcher(), checkpoint);
+   }
+
+   private static PageFetcher createFakeFetcher() {
+      final Map<String, String> pages = new HashMap<>();
+      pages.put("http://www.test.com/seed.json", "{\"links\": [\"" + URL_1 + "\", \"" + URL_2 + "\"]}");
+      pages.put(URL_1, "<html><body><a href=\"" + REL_URL_4 + "\">4</a></body></html>");
+      pages.put(URL_2, "<html><body><a href=\"" + URL_1 + "\">1</a><a href=\"" + REL_URL_5 + "\">5</a></body></html>");
+      pages.put(URL_4, "<html><body></body></html>");
+
+      return new PageFetcher() {
+
+         @Override
+         public CompletableFuture<FetchResult> fetch(final String url) {
+            return fetch(url, Collections.emptyMap());
+         }
+
+         /**
+          * Every page has the ETag "v1", so a conditional GET for it answers 304 Not Modified.
+          */
+         @Override
+         public CompletableFuture<FetchResult> fetch(final String url, final Map<String, String> requestHeaders) {
+            final String page = pages.get(url);
+            final Map<String, String> headers = new HashMap<>();
+            headers.put("Content-Type", "text/html");
+            if (page == null) {
+               return CompletableFuture.completedFuture(new FetchResult(url, 404, headers, new byte[0]));
+            }
+            headers.put("ETag", "\"v1\"");
+            if ("\"v1\"".equals(requestHeaders.get("If-None-Match"))) {
+               return CompletableFuture.completedFuture(new FetchResult(url, 304, headers, new byte[0]));
+            }
+            return CompletableFuture.completedFuture(new FetchResult(url, 200, headers,
+                page.getBytes(StandardCharsets.UTF_8)));
+         }
+      };
+   }
+
+   /**
+    * Tests the {@link Crawler} class with a fake {@link pkg.PageFetcher} in place of the network.
+    */
+   @Test
+   public void testCrawl_04() {
+      final Crawler fetcherCrawler = createFakeFetcherCrawler(null);
+      fetcherCrawler.crawl();
+
+      // URL_1, URL_2 and URL_4 succeed, URL_5 is not found
+      Assert.assertEquals(4, fetcherCrawler.getCrawlerStats().getTotalRequestCount());
+      Assert.assertEquals(3, fetcherCrawler.getCrawlerStats().getSuccessfulRequestCount());
+      Assert.assertEquals(1, fetcherCrawler.getCrawlerStats().getFailedRequestCount());
+   }
+
+   /**
+    * Tests the {@link Crawler} class with {@link LinkExtractionMode#STREAMING} finds the same links as with Jsoup.
+    */
+   @Test
+   public void testCrawl_05() {
+      final Crawler fetcherCrawler = createFakeFetcherCrawler(null);
+      fetcherCrawler.setLinkExtractionMode(LinkExtractionMode.STREAMING);
+      fetcherCrawler.crawl();
+
+      Assert.assertEquals(4, fetcherCrawler.getCrawlerStats().getTotalRequestCount());
+      Assert.assertEquals(3, fetcherCrawler.getCrawlerStats().getSuccessfulRequestCount());
+      Assert.assertEquals(1, fetcherCrawler.getCrawlerStats().getFailedRequestCount());
+   }
+
+   /**
+    * Tests the {@link Crawler} class with {@link FingerprintSet} in place of the HashSets of visitedLinks and
+    * linksQueue.
+    */
+   @Test
+   public void testCrawl_06() {
+      final Crawler fetcherCrawler = createFakeFetcherCrawler(null);
+      fetcherCrawler.setLinksQueue(new UniqueQueue<>(new FingerprintSet()));
+      fetcherCrawler.setVisitedLinks(new FingerprintSet());
+      fetcherCrawler.setWorkerCount(2);
+      fetcherCrawler.crawl();
+
+      Assert.assertEquals(4, fetcherCrawler.getCrawlerStats().getTotalRequestCount());
+      Assert.assertEquals(3, fetcherCrawler.getCrawlerStats().getSuccessfulRequestCount());
+   }
+
+   /**
+    * Tests the {@link Crawler} class records the status code, host, size and time of every response.
+    */
+   @Test
+   public void testCrawl_08() {
+      final Crawler fetcherCrawler = createFakeFetcherCrawler(null);
+      fetcherCrawler.crawl();
+
+      // the seed, URL_1, URL_2 and URL_4 are found and URL_5 is not
+      final CrawlerStats crawlerStats = fetcherCrawler.getCrawlerStats();
+      Assert.assertEquals(Long.valueOf(4), crawlerStats.getStatusCodeCounts().get(200));
+      Assert.assertEquals(Long.valueOf(1), crawlerStats.getStatusCodeCounts().get(404));
+      Assert.assertEquals(5, crawlerStats.getFetchLatency().getCount());
+      Assert.assertEquals(3, crawlerStats.getParseLatency().getCount());
+      Assert.assertTrue(crawlerStats.getBytesDownloaded() > 0);
+   }
+
+   /**
+    * Tests that a second crawl with a {@link ValidatorCache} reuses the cached links of pages which answer 304 Not
+    * Modified.
+    */
+   @Test
+   public void testCrawl_09() throws IOException {
+      final Path cacheFile = Files.createTempFile("crawler-test", ".validators");
+      Files.delete(cacheFile);
+      try {
+         final Crawler firstCrawler = createFakeFetcherCrawler(null);
+         firstCrawler.setValidatorCache(new ValidatorCache(cacheFile));
+         firstCrawler.crawl();
+         firstCrawler.close();
+         Assert.assertEquals(0, firstCrawler.getCrawlerStats().getValidatorCacheHitCount());
+         Assert.assertEquals(4, firstCrawler.getCrawlerStats().getValidatorCacheMissCount());
+
+         final ValidatorCache validatorCache = new ValidatorCache(cacheFile);
+         validatorCache.load();
+         Assert.assertEquals(3, validatorCache.size());
+         final Crawler secondCrawler = createFakeFetcherCrawler(null);
+         secondCrawler.setValidatorCache(validatorCache);
+         secondCrawler.crawl();
+
+         // URL_1, URL_2 and URL_4 are not modified and URL_5, found through the cached links of URL_2, is not found
+         final CrawlerStats crawlerStats = secondCrawler.getCrawlerStats();
+         Assert.assertEquals(3, crawlerStats.getValidatorCacheHitCount());
+         Assert.assertEquals(1, crawlerStats.getValidatorCacheMissCount());
+         Assert.assertEquals(3, crawlerStats.getSuccessfulRequestCount());
+         Assert.assertEquals(1, crawlerStats.getFailedRequestCount());
+         Assert.assertEquals(Long.valueOf(3), crawlerStats.getStatusCodeCounts().get(304));
+         Assert.assertEquals(0, crawlerStats.getParseLatency().getCount());
+      }
+      finally {
+         Files.deleteIfExists(cacheFile);
+      }
+   }
+
+   /**
+    * Tests that a crawl in store-first mode reads the pages stored by an earlier crawl instead of fetching them.
+    */
+   @Test
+   public void testCrawl_10() throws IOException {
+      final Path directory = Files.createTempDirectory("crawler-test");
+      try {
+         final Crawler firstCrawler = createFakeFetcherCrawler(null);
+         firstCrawler.setBodyStore(new BodyStore(directory, 1024 * 1024), false);
+         firstCrawler.crawl();
+         firstCrawler.close();
+
+         final BodyStore bodyStore = new BodyStore(directory, 1024 * 1024);
+         bodyStore.load();
+         final Crawler secondCrawler = createFakeFetcherCrawler(null);
+         secondCrawler.setBodyStore(bodyStore, true);
+         secondCrawler.crawl();
+
+         // URL_1, URL_2 and URL_4 are read from the store and URL_5 is fetched and not found
+         final CrawlerStats crawlerStats = secondCrawler.getCrawlerStats();
+         Assert.assertEquals(3, crawlerStats.getBodyStoreReadCount());
+         Assert.assertEquals(3, crawlerStats.getSuccessfulRequestCount());
+         Assert.assertEquals(1, crawlerStats.getFailedRequestCount());
+         Assert.assertEquals(Long.valueOf(1), crawlerStats.getStatusCodeCounts().get(404));
+         // only the seed, fetched before the store was set, is fetched successfully
+         Assert.assertEquals(Long.valueOf(1), crawlerStats.getStatusCodeCounts().get(200));
+      }
+      finally {
+         try (final Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+         }
+      }
+   }
+
+   /**
+    * Tests resuming a crawl from a {@link CrawlCheckpoint} in which only URL_1 was crawled.
+    */
+   @Test
+   public void testCrawl_07() throws IOException {
+      final Path checkpointFile = Files.createTempFile("crawler-test", ".checkpoint");
+      Files.delete(checkpointFile);
+      try {
+         final CrawlCheckpoint checkpoint = new CrawlCheckpoint(checkpointFile);
+         checkpoint.start();
+         checkpoint.linkQueued(URL_1);
+         checkpoint.linkQueued(URL_2);
+         checkpoint.linkQueued(URL_4);
+         checkpoint.linkCrawled(URL_1, true);
+         checkpoint.close();
+
+         final Crawler resumedCrawler = createFakeFetcherCrawler(new CrawlCheckpoint(checkpointFile));
+         Assert.assertEquals(1, resumedCrawler.getCrawlerStats().getSuccessfulRequestCount());
+         resumedCrawler.crawl();
+         resumedCrawler.close();
+
+         // URL_1 is not crawled again, URL_2 and URL_4 succeed and URL_5 is not found
+         Assert.assertEquals(4, resumedCrawler.getCrawlerStats().getTotalRequestCount());
+         Assert.assertEquals(3, resumedCrawler.getCrawlerStats().getSuccessfulRequestCount());
+
+         // the finished crawl is recorded in the checkpoint
+         final CrawlCheckpoint.State state = new CrawlCheckpoint(checkpointFile).load();
+         Assert.assertTrue(state.getQueuedLinks().isEmpty());
+         Assert.assertEquals(4, state.getVisitedLinks().size());
+         for (final String link : Arrays.asList(URL_1, URL_2, URL_4, URL_5)) {
+            Assert.assertTrue(state.getVisitedLinks().contains(link));
+         }
+         Assert.assertEquals(3, state.getSuccessfulRequestCount());
+         Assert.assertEquals(1, state.getFailedRequestCount());
+      }
+      finally {
+         Files.deleteIfExists(checkpointFile);
+      }
+   }
+
+   /**
+    * Creates a crawler whose seed lists URL_1, URL_2 and URL_3, which are empty pages.  Each URL in failureCounts
+    * answers 503 Service Unavailable that many times before it answers normally, and URL_3 is not found.
+    */
+   private static Crawler createFailingFetcherCrawler(final Map<String, Integer> failureCounts) {
+      final Map<String, AtomicInteger> remainingFailures = new HashMap<>();
+      for (final Map.Entry<String, Integer> failureCount : failureCounts.entrySet()) {
+         remainingFailures.put(failureCount.getKey(), new AtomicInteger(failureCount.getValue()));
+      }
+      return new Crawler("http://www.test.com/seed.json", url -> {
+         final Map<String, String> headers = Collections.singletonMap("Content-Type", "text/html");
+         final AtomicInteger failures = remainingFailures.get(url);
+         final int statusCode = failures != null && failures.getAndDecrement() > 0 ? 503
+             : URL_3.equals(url) ? 404 : 200;
+         final String page = url.endsWith(".json")
+             ? "{\"links\": [\"" + URL_1 + "\", \"" + URL_2 + "\", \"" + URL_3 + "\"]}" : "<html><body></body></html>";
+         return CompletableFuture.completedFuture(new FetchResult(url, statusCode, headers,
+             page.getBytes(StandardCharsets.UTF_8)));
+      });
+   }
+
+   /**
+    * Tests that a link which answers 503 is retried until it succeeds and that the 404 is not retried.
+    */
+   @Test
+   public void testCrawl_11() {
+      final Crawler retryingCrawler = createFailingFetcherCrawler(Collections.singletonMap(URL_1, 2));
+      retryingCrawler.setRetryPolicy(new RetryPolicy(3, 1, 10, 0.1));
+      retryingCrawler.crawl();
+
+      final CrawlerStats stats = retryingCrawler.getCrawlerStats();
+      Assert.assertEquals(2, stats.getRetryCount());
+      Assert.assertEquals(2, stats.getSuccessfulRequestCount());
+      Assert.assertEquals(1, stats.getFailedRequestCount());
+      Assert.assertEquals(Long.valueOf(2), stats.getStatusCodeCounts().get(503));
+      Assert.assertEquals(Long.valueOf(1), stats.getStatusCodeCounts().get(404));
+   }
+
+   /**
+    * Tests that a link which keeps answering 503 is given up on after the maximum number of retries.
+    */
+   @Test
+   public void testCrawl_12() {
+      final Crawler retryingCrawler = createFailingFetcherCrawler(Collections.singletonMap(URL_1, 10));
+      retryingCrawler.setWorkerCount(4);
+      retryingCrawler.setRetryPolicy(new RetryPolicy(3, 1, 10, 0.1));
+      retryingCrawler.crawl();
+
+      final CrawlerStats stats = retryingCrawler.getCrawlerStats();
+      Assert.assertEquals(3, stats.getRetryCount());
+      Assert.assertEquals(1, stats.getSuccessfulRequestCount());
+      Assert.assertEquals(2, stats.getFailedRequestCount());
+      Assert.assertEquals(Long.valueOf(4), stats.getStatusCodeCounts().get(503));
+   }
+
+   /**
+    * Tests that once the circuit breaker of a host opens, its remaining links are dropped without being requested.
+    */
+   @Test
+   public void testCrawl_13() {
+      final Map<String, Integer> failureCounts = new HashMap<>();
+      failureCounts.put(URL_1, 1);
+      failureCounts.put(URL_2, 1);
+      final Crawler breakerCrawler = createFailingFetcherCrawler(failureCounts);
+      breakerCrawler.setCircuitBreaker(new HostCircuitBreaker(2, 60000));
+      breakerCrawler.crawl();
+
+      // URL_1 and URL_2 fail and open the breaker, so URL_3 is not requested
+      final CrawlerStats stats = breakerCrawler.getCrawlerStats();
+      Assert.assertEquals(1, stats.getCircuitBreakerTripCount());
+      Assert.assertEquals(1, stats.getCircuitBreakerRejectCount());
+      Assert.assertEquals(3, stats.getFailedRequestCount());
+      Assert.assertNull(stats.getStatusCodeCounts().get(404));
+   }
+
+   /**
+    * Tests that a probe which is rejected by its content type does not keep the breaker of its host blocked: the
+    * link found on other.test.com after the cooldown of www.test.com must become the next probe and be crawled.
+    */
+   @Test
+   public void testCrawl_27() throws InterruptedException {
+      final PageFetcher fetcher = url -> {
+         String contentType = "text/html";
+         String page = "<html><body></body></html>";
+         if (url.endsWith(".json")) {
+            page = "{\"links\": [\"http://www.test.com/image\", \"http://other.test.com/\"]}";
+         }
+         else if (url.equals("http://www.test.com/image")) {
+            contentType = "image/png";
+         }
+         else if (url.equals("http://other.test.com/")) {
+            page = "<html><body><a href=\"http://www.test.com/page\">page</a></body></html>";
+         }
+         return CompletableFuture.completedFuture(new FetchResult(url, 200,
+             Collections.singletonMap("Content-Type", contentType), page.getBytes(StandardCharsets.UTF_8)));
+      };
+      final Crawler breakerCrawler = new Crawler("http://www.test.com/seed.json", fetcher);
+      breakerCrawler.setRetryPolicy(new RetryPolicy(5, 1, 10, 0.1));
+      final HostCircuitBreaker breaker = new HostCircuitBreaker(1, 100);
+      breakerCrawler.setCircuitBreaker(breaker);
+      // the image is the probe of www.test.com before other.test.com, opened 50 ms later, is crawled
+      breaker.recordFailure("www.test.com");
+      Thread.sleep(50);
+      breaker.recordFailure("other.test.com");
+      breakerCrawler.crawl();
+
+      final CrawlerStats stats = breakerCrawler.getCrawlerStats();
+      Assert.assertEquals(2, stats.getSuccessfulRequestCount());
+      Assert.assertEquals(1, stats.getFailedRequestCount());
+      Assert.assertFalse(breaker.isOpen("www.test.com"));
+   }
+
+   /**
+    * Tests that a {@link PageRecordWriter} receives one record per crawled page with the links found on it.
+    */
+   @Test
+   public void testCrawl_14() throws IOException {
+      final Path recordsFile = Files.createTempFile("crawler-test", ".ndjson");
+      try {
+         final Crawler recordingCrawler = createFakeFetcherCrawler(null);
+         recordingCrawler.setPageRecordWriter(new PageRecordWriter(recordsFile, 16, 4));
+         recordingCrawler.crawl();
+         recordingCrawler.close();
+
+         final Map<String, JsonObject> records = new HashMap<>();
+         for (final String line : Files.readAllLines(recordsFile, StandardCharsets.UTF_8)) {
+            final JsonObject record = new JsonParser().parse(line).getAsJsonObject();
+            records.put(record.get("url").getAsString(), record);
+         }
+         Assert.assertEquals(new HashSet<>(Arrays.asList(URL_1, URL_2, URL_4, URL_5)), records.keySet());
+         final List<String> links = new ArrayList<>();
+         for (final JsonElement link : records.get(URL_2).getAsJsonArray("links")) {
+            links.add(link.getAsString());
+         }
+         Assert.assertEquals(Arrays.asList(URL_1, URL_5), links);
+         Assert.assertEquals(200, records.get(URL_2).get("status").getAsInt());
+         Assert.assertEquals(404, records.get(URL_5).get("status").getAsInt());
+         Assert.assertTrue(records.get(URL_5).has("error"));
+      }
+      finally {
+         Files.deleteIfExists(recordsFile);
+      }
+   }
+
+   /**
+    * Tests that a {@link LinkGraph} receives the links of every successfully crawled page.
+    */
+   @Test
+   public void testCrawl_15() {
+      final Crawler graphCrawler = createFakeFetcherCrawler(null);
+      final LinkGraph linkGraph = new LinkGraph();
+      graphCrawler.setLinkGraph(linkGraph);
+      graphCrawler.setWorkerCount(4);
+      graphCrawler.crawl();
+
+      // URL_1 -> URL_4, URL_2 -> URL_1 and URL_5, URL_4 has no links and URL_5 is not found
+      Assert.assertEquals(3, linkGraph.getEdgeCount());
+      Assert.assertEquals(4, linkGraph.getNodeCount());
+      final int[] url2Links = linkGraph.getOutLinks(URL_2);
+      Assert.assertEquals(2, url2Links.length);
+      Assert.assertEquals(new HashSet<>(Arrays.asList(URL_1, URL_5)), new HashSet<>(Arrays.asList(
+          linkGraph.getUrlDictionary().getUrl(url2Links[0]), linkGraph.getUrlDictionary().getUrl(url2Links[1]))));
+      Assert.assertEquals(0, linkGraph.getOutLinks(URL_4).length);
+      Assert.assertNull(linkGraph.getOutLinks(URL_5));
+   }
+
+   /**
+    * Tests a crawl whose seeds are read from a {@link SeedReader} in batches while the crawl runs.
+    */
+   @Test
+   public void testCrawl_16() throws IOException {
+      final StringBuilder seeds = new StringBuilder();
+      for (int i = 0; i < 2500; i++) {
+         seeds.append("http://www.test.com/seed/").append(i).append('\n');
+      }
+      final PageFetcher fetcher = url -> CompletableFuture.completedFuture(new FetchResult(url, 200,
+          Collections.singletonMap("Content-Type", "text/html"),
+          ("<html><body><a href=\"" + URL_1 + "\">1</a></body></html>").getBytes(StandardCharsets.UTF_8)));
+      final Crawler seedCrawler = new Crawler(new SeedReader(new StringReader(seeds.toString()), "seeds"), fetcher,
+          null);
+      seedCrawler.setWorkerCount(4);
+      seedCrawler.crawl();
+      seedCrawler.close();
+
+      // every seed and URL_1, which every page links to
+      Assert.assertEquals(2501, seedCrawler.getCrawlerStats().getSuccessfulRequestCount());
+      Assert.assertEquals(0, seedCrawler.getCrawlerStats().getFailedRequestCount());
+   }
+
+   /**
+    * Creates a crawler of an endless site where each page links to three pages one level deeper, recording the
+    * links it fetches.
+    */
+   private static Crawler createTreeCrawler(final List<String> fetchedLinks) throws IOException {
+      final PageFetcher fetcher = url -> {
+         fetchedLinks.add(url);
+         final String path = url.substring(url.indexOf("/d"));
+         final int depth = Integer.parseInt(path.substring(2, path.indexOf('/', 1)));
+         final int page = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+         final StringBuilder html = new StringBuilder("<html><body>");
+         for (int i = 0; i < 3; i++) {
+            html.append("<a href=\"/d").append(depth + 1).append('/').append(page * 3 + i).append("\">x</a>");
+         }
+         return CompletableFuture.completedFuture(new FetchResult(url, 200,
+             Collections.singletonMap("Content-Type", "text/html"),
+             html.append("</body></html>").toString().getBytes(StandardCharsets.UTF_8)));
+      };
+      final Crawler treeCrawler = new Crawler(new SeedReader(new StringReader("http://www.test.com/d0/0"), "seeds"),
+          fetcher, null);
+      treeCrawler.setLinksQueue(new PriorityFrontier(LinkScorer.byDepth()));
+      return treeCrawler;
+   }
+
+   /**
+    * Tests a crawl of an endless site stops at the maximum depth of its {@link CrawlBudget}.
+    */
+   @Test
+   public void testCrawl_17() throws IOException {
+      final List<String> fetchedLinks = Collections.synchronizedList(new ArrayList<>());
+      final Crawler treeCrawler = createTreeCrawler(fetchedLinks);
+      treeCrawler.setCrawlBudget(new CrawlBudget(2, CrawlBudget.UNLIMITED, CrawlBudget.UNLIMITED));
+      treeCrawler.setWorkerCount(4);
+      treeCrawler.crawl();
+      treeCrawler.close();
+
+      // 1 + 3 + 9 pages, the 27 links to depth 3 are dropped
+      Assert.assertEquals(13, treeCrawler.getCrawlerStats().getSuccessfulRequestCount());
+      Assert.assertEquals(13, fetchedLinks.size());
+      Assert.assertEquals(27, treeCrawler.getCrawlerStats().getBudgetRejectCount());
+   }
+
+   /**
+    * Tests a crawl stops after the maximum number of pages of its {@link CrawlBudget}, crawling the pages closest
+    * to the seed first.
+    */
+   @Test
+   public void testCrawl_18() throws IOException {
+      final List<String> fetchedLinks = Collections.synchronizedList(new ArrayList<>());
+      final Crawler treeCrawler = createTreeCrawler(fetchedLinks);
+      treeCrawler.setCrawlBudget(new CrawlBudget(CrawlBudget.UNLIMITED, 5, CrawlBudget.UNLIMITED));
+      treeCrawler.crawl();
+      treeCrawler.close();
+
+      Assert.assertEquals(Arrays.asList("http://www.test.com/d0/0", "http://www.test.com/d1/0",
+          "http://www.test.com/d1/1", "http://www.test.com/d1/2", "http://www.test.com/d2/0"), fetchedLinks);
+      Assert.assertEquals(5, treeCrawler.getCrawlerStats().getSuccessfulRequestCount());
+   }
+
+   /**
+    * Tests a maximum depth is refused without a {@link pkg.LinkFrontier}, which keeps the depth of the links.
+    */
+   @Test(expected = IllegalStateException.class)
+   public void testCrawl_19() {
+      crawler.setCrawlBudget(new CrawlBudget(2, CrawlBudget.UNLIMITED, CrawlBudget.UNLIMITED));
+      crawler.crawl();
+   }
+
+   /**
+    * Tests a crawl with a {@link HostScheduler} and a {@link LinkScorer} stops at the maximum depth of its
+    * {@link CrawlBudget} and spends a page budget on the pages closest to the seed, like a {@link PriorityFrontier}.
+    */
+   @Test
+   public void testCrawl_30() throws IOException {
+      final List<String> fetchedLinks = Collections.synchronizedList(new ArrayList<>());
+      final Crawler depthCrawler = createTreeCrawler(fetchedLinks);
+      depthCrawler.setHostScheduler(new HostScheduler(4, 0, LinkScorer.byDepth()));
+      depthCrawler.setCrawlBudget(new CrawlBudget(2, CrawlBudget.UNLIMITED, CrawlBudget.UNLIMITED));
+      depthCrawler.setWorkerCount(4);
+      depthCrawler.crawl();
+      depthCrawler.close();
+      Assert.assertEquals(13, fetchedLinks.size());
+      Assert.assertEquals(27, depthCrawler.getCrawlerStats().getBudgetRejectCount());
+
+      fetchedLinks.clear();
+      final Crawler pageCrawler = createTreeCrawler(fetchedLinks);
+      pageCrawler.setHostScheduler(new HostScheduler(1, 0, LinkScorer.byDepth()));
+      pageCrawler.setCrawlBudget(new CrawlBudget(CrawlBudget.UNLIMITED, 5, CrawlBudget.UNLIMITED));
+      pageCrawler.crawl();
+      pageCrawler.close();
+      Assert.assertEquals(Arrays.asList("http://www.test.com/d0/0", "http://www.test.com/d1/0",
+          "http://www.test.com/d1/1", "http://www.test.com/d1/2", "http://www.test.com/d2/0"), fetchedLinks);
+   }
+
+   /**
+    * Tests that a second crawl with a {@link SimHashStore} queues the stored links of unchanged pages instead of
+    * parsing them.
+    */
+   @Test
+   public void testCrawl_20() throws IOException {
+      final Path storeFile = Files.createTempFile("crawler-test", ".simhashes");
+      Files.delete(storeFile);
+      try {
+         final Crawler firstCrawler = createFakeFetcherCrawler(null);
+         firstCrawler.setSimHashStore(new SimHashStore(storeFile, 3));
+         firstCrawler.crawl();
+         firstCrawler.close();
+         Assert.assertEquals(3, firstCrawler.getCrawlerStats().getChangeCheckCount());
+         Assert.assertEquals(0, firstCrawler.getCrawlerStats().getUnchangedPageCount());
+         Assert.assertEquals(3, firstCrawler.getCrawlerStats().getParseLatency().getCount());
+
+         final SimHashStore simHashStore = new SimHashStore(storeFile, 3);
+         simHashStore.load();
+         Assert.assertEquals(3, simHashStore.size());
+         final Crawler secondCrawler = createFakeFetcherCrawler(null);
+         secondCrawler.setSimHashStore(simHashStore);
+         secondCrawler.crawl();
+
+         // URL_1, URL_2 and URL_4 are unchanged and URL_5, found through the stored links of URL_2, is not found
+         final CrawlerStats crawlerStats = secondCrawler.getCrawlerStats();
+         Assert.assertEquals(3, crawlerStats.getUnchangedPageCount());
+         Assert.assertEquals(100.0, crawlerStats.getUnchangedPagePercentage(), 0.001);
+         Assert.assertEquals(3, crawlerStats.getSuccessfulRequestCount());
+         Assert.assertEquals(1, crawlerStats.getFailedRequestCount());
+         Assert.assertEquals(0, crawlerStats.getParseLatency().getCount());
+      }
+      finally {
+         Files.deleteIfExists(storeFile);
+      }
+   }
+
+   /**
+    * Tests that a second crawl with a {@link SimHashStore} parses a page again whose link targets changed while its
+    * text, including the anchor texts, did not, and so finds the new link instead of queueing the stored one.
+    */
+   @Test
+   public void testCrawl_29() throws IOException {
+      final Path storeFile = Files.createTempFile("crawler-test", ".simhashes");
+      Files.delete(storeFile);
+      try {
+         final Map<String, String> pages = new ConcurrentHashMap<>();
+         pages.put("http://www.test.com/", "<html><body><a href=\"/hub\">Hub</a></body></html>");
+         pages.put("http://www.test.com/hub", "<html><body><p>Latest stories</p><a href=\"/a\">Next</a></body></html>");
+         final Set<String> fetchedUrls = ConcurrentHashMap.newKeySet();
+         final PageFetcher fetcher = url -> {
+            fetchedUrls.add(url);
+            return CompletableFuture.completedFuture(new FetchResult(url, 200,
+                Collections.singletonMap("Content-Type", "text/html"),
+                pages.getOrDefault(url, "<html><body></body></html>").getBytes(StandardCharsets.UTF_8)));
+         };
+         final Crawler firstCrawler = new Crawler(new SeedReader(new StringReader("http://www.test.com/"), "seeds"),
+             fetcher, null);
+         firstCrawler.setSimHashStore(new SimHashStore(storeFile, 3));
+         firstCrawler.crawl();
+         firstCrawler.close();
+         Assert.assertTrue(fetchedUrls.contains("http://www.test.com/a"));
+
+         fetchedUrls.clear();
+         pages.put("http://www.test.com/hub", "<html><body><p>Latest stories</p><a href=\"/b\">Next</a></body></html>");
+         final SimHashStore simHashStore = new SimHashStore(storeFile, 3);
+         simHashStore.load();
+         final Crawler secondCrawler = new Crawler(new SeedReader(new StringReader("http://www.test.com/"), "seeds"),
+             fetcher, null);
+         secondCrawler.setSimHashStore(simHashStore);
+         secondCrawler.crawl();
+         secondCrawler.close();
+
+         Assert.assertTrue(fetchedUrls.contains("http://www.test.com/b"));
+         Assert.assertFalse(fetchedUrls.contains("http://www.test.com/a"));
+      }
+      finally {
+         Files.deleteIfExists(storeFile);
+      }
+   }
+
+   /**
+    * Tests a crawl of an endless calendar stops once the {@link CrawlerTrapDetector} rejects its path template.
+    */
+   @Test
+   public void testCrawl_21() throws IOException {
+      final PageFetcher fetcher = url -> {
+         final int day = Integer.parseInt(url.substring(url.indexOf("day=") + 4));
+         return CompletableFuture.completedFuture(new FetchResult(url, 200,
+             Collections.singletonMap("Content-Type", "text/html"),
+             ("<html><body><a href=\"?day=" + (day + 1) + "\">next</a></body></html>")
+                 .getBytes(StandardCharsets.UTF_8)));
+      };
+      final Crawler calendarCrawler = new Crawler(new SeedReader(
+          new StringReader("http://www.test.com/calendar?day=0"), "seeds"), fetcher, null);
+      calendarCrawler.setCrawlerTrapDetector(new CrawlerTrapDetector(512, 16, 2, 10, 5));
+      calendarCrawler.crawl();
+      calendarCrawler.close();
+
+      // days 0 to 4, the link to day 5 is rejected
+      Assert.assertEquals(5, calendarCrawler.getCrawlerStats().getSuccessfulRequestCount());
+      Assert.assertEquals(1, calendarCrawler.getCrawlerStats().getTrapRejectCount());
+   }
+
+   /**
+    * Creates a crawler of an endless site where each page links to ten more, served by a server which answers 503
+    * while more than capacity requests are in flight.  The crawl stops after 150 pages.  Pages which answer 503 are
+    * not parsed, so each page links to enough others that the crawl does not run out of links before then.
+    *
+    * @param maxInFlight receives the most requests the server had in flight at the same time.
+    */
+   private static Crawler createOverloadedSiteCrawler(final int capacity, final AtomicInteger maxInFlight)
+       throws IOException {
+      final AtomicInteger inFlight = new AtomicInteger();
+      final PageFetcher fetcher = url -> {
+         final int requests = inFlight.incrementAndGet();
+         maxInFlight.accumulateAndGet(requests, Math::max);
+         try {
+            Thread.sleep(2);
+         }
+         catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         finally {
+            inFlight.decrementAndGet();
+         }
+         final int page = Integer.parseInt(url.substring(url.lastIndexOf('/') + 1));
+         final StringBuilder html = new StringBuilder("<html><body>");
+         for (int i = 1; i <= 10; i++) {
+            html.append("<a href=\"/p/").append(page * 10 + i).append("\">x</a>");
+         }
+         return CompletableFuture.completedFuture(new FetchResult(url, requests > capacity ? 503 : 200,
+             Collections.singletonMap("Content-Type", "text/html"),
+             html.append("</body></html>").toString().getBytes(StandardCharsets.UTF_8)));
+      };
+      final Crawler siteCrawler = new Crawler(new SeedReader(new StringReader("http://www.test.com/p/0"), "seeds"),
+          fetcher, null);
+      siteCrawler.setCrawlBudget(new CrawlBudget(CrawlBudget.UNLIMITED, 150, CrawlBudget.UNLIMITED));
+      return siteCrawler;
+   }
+
+   /**
+    * Tests the workers never crawl more links at the same time than the limit of the {@link ConcurrencyLimiter}.
+    */
+   @Test
+   public void testCrawl_22() throws IOException {
+      final AtomicInteger maxInFlight = new AtomicInteger();
+      final Crawler siteCrawler = createOverloadedSiteCrawler(Integer.MAX_VALUE, maxInFlight);
+      siteCrawler.setWorkerCount(8);
+      siteCrawler.setConcurrencyLimiter(new ConcurrencyLimiter(1, 1, 1, 1));
+      siteCrawler.crawl();
+      siteCrawler.close();
+
+      Assert.assertEquals(150, siteCrawler.getCrawlerStats().getSuccessfulRequestCount());
+      Assert.assertEquals(1, maxInFlight.get());
+   }
+
+   /**
+    * Tests the {@link ConcurrencyLimiter} backs off from a server which fails when it gets too many requests.
+    */
+   @Test
+   public void testCrawl_23() throws IOException {
+      final AtomicInteger maxInFlight = new AtomicInteger();
+      final Crawler siteCrawler = createOverloadedSiteCrawler(3, maxInFlight);
+      final ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(12, 12, 12, 12);
+      siteCrawler.setWorkerCount(12);
+      siteCrawler.setHostScheduler(new HostScheduler(12, 0));
+      siteCrawler.setConcurrencyLimiter(concurrencyLimiter);
+      siteCrawler.crawl();
+      siteCrawler.close();
+
+      Assert.assertEquals(150, siteCrawler.getCrawlerStats().getTotalRequestCount());
+      Assert.assertTrue(concurrencyLimiter.getDecreaseCount() > 0);
+      Assert.assertTrue(concurrencyLimiter.getLimit() < 12);
+      Assert.assertTrue(concurrencyLimiter.getHostLimit("www.test.com") < 12);
+   }
+
+   /**
+    * Tests links to a host which does not resolve fail without being fetched, and every host is looked up once by
+    * the {@link DnsCache}.
+    */
+   @Test
+   public void testCrawl_24() throws IOException {
+      final Set<String> fetchedUrls = ConcurrentHashMap.newKeySet();
+      final PageFetcher fetcher = url -> {
+         fetchedUrls.add(url);
+         return CompletableFuture.completedFuture(new FetchResult(url, 200,
+             Collections.singletonMap("Content-Type", "text/html"),
+             ("<html><body><a href=\"http://dead.test.com/1\">1</a><a href=\"http://dead.test.com/2\">2</a>"
+                 + "<a href=\"http://other.test.com/\">other</a></body></html>").getBytes(StandardCharsets.UTF_8)));
+      };
+      final Map<String, AtomicInteger> lookupCounts = new ConcurrentHashMap<>();
+      final DnsCache.Resolver resolver = host -> {
+         lookupCounts.computeIfAbsent(host, k -> new AtomicInteger()).incrementAndGet();
+         if (host.equals("dead.test.com")) {
+            throw new UnknownHostException(host);
+         }
+         return new InetAddress[] {InetAddress.getByAddress(host, new byte[] {127, 0, 0, 1})};
+      };
+      final DnsCache dnsCache = new DnsCache(resolver, 60000, 60000, 2);
+      final Crawler dnsCrawler = new Crawler(new SeedReader(new StringReader("http://www.test.com/"), "seeds"),
+          fetcher, null);
+      dnsCrawler.setWorkerCount(4);
+      dnsCrawler.setDnsCache(dnsCache);
+      dnsCrawler.crawl();
+      dnsCrawler.close();
+
+      Assert.assertEquals(2, dnsCrawler.getCrawlerStats().getSuccessfulRequestCount());
+      Assert.assertEquals(2, dnsCrawler.getCrawlerStats().getFailedRequestCount());
+      Assert.assertFalse(fetchedUrls.contains("http://dead.test.com/1"));
+      Assert.assertFalse(fetchedUrls.contains("http://dead.test.com/2"));
+      for (final String host : new String[] {"www.test.com", "other.test.com", "dead.test.com"}) {
+         Assert.assertEquals(host, 1, lookupCounts.get(host).get());
+      }
+      Assert.assertEquals(4, dnsCache.getHitCount() + dnsCache.getMissCount());
+   }
+
+   /**
+    * Tests the {@link FetchPolicy} drops links by their extension before fetching them, skips responses which are
+    * no pages, and truncates or skips a body over the maximum body size.
+    */
+   @Test
+   public void testCrawl_25() throws IOException {
+      for (final boolean truncateLargeBodies : new boolean[] {true, false}) {
+         final Set<String> fetchedUrls = ConcurrentHashMap.newKeySet();
+         final PageFetcher fetcher = url -> {
+            fetchedUrls.add(url);
+            String contentType = "text/html";
+            String html = "<html><body>" + url + "</body></html>";
+            if (url.endsWith("/")) {
+               html = "<html><body><a href=\"/report.pdf\">1</a><a href=\"/logo.PNG?v=2\">2</a>"
+                   + "<a href=\"/image\">3</a><a href=\"/large\">4</a><a href=\"/next\">5</a></body></html>";
+            }
+            else if (url.endsWith("/image")) {
+               contentType = "image/png";
+            }
+            else if (url.endsWith("/large")) {
+               html = "<html><body><a href=\"/early\">early</a>" + String.join("", Collections.nCopies(100, "<p>x</p>"))
+                   + "<a href=\"/late\">late</a></body></html>";
+            }
+            return CompletableFuture.completedFuture(new FetchResult(url, 200,
+                Collections.singletonMap("Content-Type", contentType), html.getBytes(StandardCharsets.UTF_8)));
+         };
+         final Crawler policyCrawler = new Crawler(new SeedReader(new StringReader("http://www.test.com/"), "seeds"),
+             fetcher, null);
+         policyCrawler.setFetchPolicy(new FetchPolicy(200, truncateLargeBodies,
+             FetchPolicy.DEFAULT_SKIPPED_EXTENSIONS));
+         policyCrawler.crawl();
+         policyCrawler.close();
+
+         final CrawlerStats stats = policyCrawler.getCrawlerStats();
+         Assert.assertFalse(fetchedUrls.contains("http://www.test.com/report.pdf"));
+         Assert.assertFalse(fetchedUrls.contains("http://www.test.com/logo.PNG?v=2"));
+         Assert.assertFalse(fetchedUrls.contains("http://www.test.com/late"));
+         Assert.assertEquals(truncateLargeBodies, fetchedUrls.contains("http://www.test.com/early"));
+         if (truncateLargeBodies) {
+            // the seed, /large, /next and /early; /image is skipped
+            Assert.assertEquals(4, stats.getSuccessfulRequestCount());
+            Assert.assertEquals(3, stats.getSkippedResourceCount());
+            Assert.assertEquals(1, stats.getTruncatedBodyCount());
+         }
+         else {
+            Assert.assertEquals(2, stats.getSuccessfulRequestCount());
+            Assert.assertEquals(4, stats.getSkippedResourceCount());
+            Assert.assertEquals(0, stats.getTruncatedBodyCount());
+         }
+      }
+   }
+
+   /**
+    * Tests a crawl recorded by a {@link WarcRecordingFetcher} is replayed offline by a {@link WarcReplayFetcher} with
+    * the same results, including the seed document and the response of the page which was not found.
+    */
+   @Test
+   public void testCrawl_26() throws IOException {
+      final Path directory = Files.createTempDirectory("crawler-test");
+      try {
+         final WarcWriter warcWriter = new WarcWriter(directory, WarcWriter.DEFAULT_MAX_FILE_BYTES);
+         final Crawler recordingCrawler = new Crawler("http://www.test.com/seed.json",
+             new WarcRecordingFetcher(createFakeFetcher(), warcWriter));
+         recordingCrawler.crawl();
+         recordingCrawler.close();
+         Assert.assertEquals(5, warcWriter.getRecordCount());
+
+         final WarcReplayFetcher replayFetcher = new WarcReplayFetcher(directory);
+         Assert.assertEquals("http://www.test.com/seed.json", replayFetcher.getFirstUrl());
+         final Crawler replayCrawler = new Crawler(replayFetcher.getFirstUrl(), replayFetcher);
+         replayCrawler.crawl();
+         replayCrawler.close();
+
+         final CrawlerStats recordedStats = recordingCrawler.getCrawlerStats();
+         final CrawlerStats replayedStats = replayCrawler.getCrawlerStats();
+         Assert.assertEquals(recordedStats.getSuccessfulRequestCount(), replayedStats.getSuccessfulRequestCount());
+         Assert.assertEquals(recordedStats.getFailedRequestCount(), replayedStats.getFailedRequestCount());
+         Assert.assertEquals(recordedStats.getStatusCodeCounts(), replayedStats.getStatusCodeCounts());
+         Assert.assertEquals(5, replayFetcher.getReplayedCount());
+         Assert.assertEquals(0, replayFetcher.getMissCount());
+      }
+      finally {
+         try (final Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+         }
+      }
+   }
+
+   /**
+    * Tests truncated responses, including the headers-only response of a type which is not read, are not put in the
+    * {@link BodyStore}, and that JSON responses, which the fetcher downloads, are parsed as well.
+    */
+   @Test
+   public void testCrawl_28() throws IOException {
+      final Path directory = Files.createTempDirectory("crawler-test");
+      try {
+         final PageFetcher fetcher = url -> {
+            String contentType = "text/html";
+            String page = "<html><body></body></html>";
+            boolean truncated = false;
+            if (url.endsWith("/")) {
+               page = "<html><body><a href=\"/partial\">1</a><a href=\"/image\">2</a><a href=\"/data\">3</a>"
+                   + "</body></html>";
+            }
+            else if (url.endsWith("/partial")) {
+               page = "<html><body><p>cut off";
+               truncated = true;
+            }
+            else if (url.endsWith("/image")) {
+               contentType = "image/png";
+               page = "";
+               truncated = true;
+            }
+            else if (url.endsWith("/data")) {
+               contentType = "application/json";
+               page = "{\"links\": []}";
+            }
+            final byte[] body = page.getBytes(StandardCharsets.UTF_8);
+            return CompletableFuture.completedFuture(new FetchResult(url, 200,
+                Collections.singletonMap("Content-Type", contentType), body, body.length, truncated));
+         };
+         final BodyStore bodyStore = new BodyStore(directory, 1024 * 1024);
+         final Crawler storeCrawler = new Crawler(new SeedReader(new StringReader("http://www.test.com/"), "seeds"),
+             fetcher, null);
+         storeCrawler.setBodyStore(bodyStore, false);
+         storeCrawler.crawl();
+         storeCrawler.close();
+
+         Assert.assertNotNull(bodyStore.get("http://www.test.com/"));
+         Assert.assertNotNull(bodyStore.get("http://www.test.com/data"));
+         Assert.assertNull(bodyStore.get("http://www.test.com/partial"));
+         Assert.assertNull(bodyStore.get("http://www.test.com/image"));
+         // the seed, /partial and /data are parsed; /image is skipped
+         Assert.assertEquals(3, storeCrawler.getCrawlerStats().getSuccessfulRequestCount());
+         Assert.assertEquals(1, storeCrawler.getCrawlerStats().getSkippedResourceCount());
+      }
+      finally {
+         try (final Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+         }
+      }
+   }
+
+   /**
+    * Tests a link skipped by its extension and a link rejected as a crawler trap are only checked and counted once,
+    * however many pages link to them.
+    */
+   @Test
+   public void testCrawl_31() throws IOException {
+      final PageFetcher fetcher = url -> {
+         String html = "<html><body><a href=\"/report.pdf\">1</a><a href=\"/x/x/x/x\">2</a></body></html>";
+         if (url.endsWith("/")) {
+            html = "<html><body><a href=\"/a\">1</a><a href=\"/b\">2</a><a href=\"/c\">3</a>"
+                + "<a href=\"/report.pdf\">4</a></body></html>";
+         }
+         return CompletableFuture.completedFuture(new FetchResult(url, 200,
+             Collections.singletonMap("Content-Type", "text/html"), html.getBytes(StandardCharsets.UTF_8)));
+      };
+      final Crawler rejectCrawler = new Crawler(new SeedReader(new StringReader("http://www.test.com/"), "seeds"),
+          fetcher, null);
+      rejectCrawler.setFetchPolicy(new FetchPolicy());
+      rejectCrawler.setCrawlerTrapDetector(new CrawlerTrapDetector());
+      rejectCrawler.crawl();
+      rejectCrawler.close();
+
+      final CrawlerStats stats = rejectCrawler.getCrawlerStats();
+      Assert.assertEquals(4, stats.getSuccessfulRequestCount());
+      Assert.assertEquals(1, stats.getSkippedResourceCount());
+      Assert.assertEquals(1, stats.getTrapRejectCount());
+   }
+
+   /**
+    * Tests a single worker keeps as many requests in flight as {@link Crawler#setMaxInFlight(int)} allows, since it
+    * does not wait for the responses.
+    */
+   @Test
+   public void testCrawl_32() throws IOException {
+      final ScheduledExecutorService server = Executors.newSingleThreadScheduledExecutor();
+      final AtomicInteger inFlight = new AtomicInteger();
+      final AtomicInteger maxInFlight = new AtomicInteger();
+      final PageFetcher fetcher = url -> {
+         maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+         final CompletableFuture<FetchResult> future = new CompletableFuture<>();
+         server.schedule(() -> {
+            inFlight.decrementAndGet();
+            future.complete(new FetchResult(url, 200, Collections.singletonMap("Content-Type", "text/html"),
+                new byte[0]));
+         }, 50, TimeUnit.MILLISECONDS);
+         return future;
+      };
+      final StringBuilder seeds = new StringBuilder();
+      for (int i = 0; i < 20; i++) {
+         seeds.append("http://www.test.com/").append(i).append('\n');
+      }
+      final Crawler asyncCrawler = new Crawler(new SeedReader(new StringReader(seeds.toString()), "seeds"),
+          fetcher, null);
+      asyncCrawler.setMaxInFlight(10);
+      asyncCrawler.crawl();
+      asyncCrawler.close();
+      server.shutdown();
+
+      Assert.assertEquals(20, asyncCrawler.getCrawlerStats().getSuccessfulRequestCount());
+      Assert.assertEquals(10, maxInFlight.get());
+   }
+
+   /**
+    * Tests the {@link Crawler#setWorkerCount(int)} method rejects a worker count below 1.
+    */
+   @Test(expected = IllegalArgumentException.class)
+   public void testSetWorkerCount_01() {
+      crawler.setWorkerCount(0);
+   }
 }
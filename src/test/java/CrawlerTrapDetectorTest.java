@@ -0,0 +1,83 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pkg.CrawlerTrapDetector;
+import pkg.CrawlerTrapDetector.Reason;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link CrawlerTrapDetector} class.
+ */
+public class CrawlerTrapDetectorTest {
+
+   @Test
+   public void testAccept_01() {
+      final CrawlerTrapDetector detector = new CrawlerTrapDetector(100, 4, 2, 2, 1000);
+      Assert.assertNull(detector.accept("http://www.test.com"));
+      Assert.assertNull(detector.accept("http://www.test.com/"));
+      Assert.assertNull(detector.accept("http://www.test.com/a/b/c/d/"));
+      Assert.assertNull(detector.accept("http://www.test.com/a/b/a/b?x=1&y=2"));
+      Assert.assertEquals(Reason.PATH_DEPTH, detector.accept("http://www.test.com/a/b/c/d/e"));
+      Assert.assertEquals(Reason.REPEATED_SEGMENT, detector.accept("http://www.test.com/a/b/a/a"));
+      Assert.assertEquals(Reason.REPEATED_SEGMENT, detector.accept("http://www.test.com/a;sid=1/b/a;sid=2/a;sid=3"));
+      Assert.assertEquals(Reason.QUERY_PARAMETERS, detector.accept("http://www.test.com/a?x=1&y=2&z=3"));
+      Assert.assertEquals(Reason.URL_LENGTH, detector.accept("http://www.test.com/" + new String(new char[81])
+          .replace('\0', 'x')));
+      Assert.assertEquals(2, detector.getRejectCount(Reason.REPEATED_SEGMENT));
+      Assert.assertEquals(0, detector.getRejectCount(Reason.TEMPLATE));
+      Assert.assertEquals(5, detector.getRejectCount());
+   }
+
+   /**
+    * Tests the URLs of a calendar are accepted until the limit of their template is reached, separately per host.
+    */
+   @Test
+   public void testAccept_02() {
+      final CrawlerTrapDetector detector = new CrawlerTrapDetector(100, 16, 2, 10, 3);
+      for (int day = 1; day <= 3; day++) {
+         Assert.assertNull(detector.accept("http://www.test.com/calendar?day=2024-05-" + day));
+      }
+      Assert.assertEquals(Reason.TEMPLATE, detector.accept("http://www.test.com/calendar?day=2024-05-4"));
+      Assert.assertEquals(Reason.TEMPLATE, detector.accept("http://www.test.com/calendar?day=2025-01-01"));
+      Assert.assertNull(detector.accept("http://www.test.com/calendar?day=2024-05-4&view=week"));
+      Assert.assertNull(detector.accept("http://other.test.com/calendar?day=2024-05-4"));
+      Assert.assertNull(detector.accept("http://www.test.com/calendar/2024/05/1"));
+      Assert.assertEquals(2, detector.getRejectCount(Reason.TEMPLATE));
+   }
+
+   /**
+    * Tests the counts of many templates, one per URL as for URLs without digits, survive the growth of the table.
+    * Path parameters are not part of the template, so each round adds a URL to every template.
+    */
+   @Test
+   public void testAccept_03() {
+      final CrawlerTrapDetector detector = new CrawlerTrapDetector(100, 16, 2, 10, 2);
+      for (int round = 0; round < 3; round++) {
+         for (int i = 0; i < 20000; i++) {
+            final StringBuilder page = new StringBuilder();
+            for (final char digit : Integer.toString(i).toCharArray()) {
+               page.append((char) ('a' + digit - '0'));
+            }
+            final String link = "http://www.test.com/pages/" + page + ";s=" + round;
+            Assert.assertEquals(link, round < 2 ? null : Reason.TEMPLATE, detector.accept(link));
+         }
+      }
+      Assert.assertEquals(20000, detector.getRejectCount(Reason.TEMPLATE));
+   }
+
+   @Test
+   public void testGetTemplate_01() {
+      Assert.assertEquals("", CrawlerTrapDetector.getTemplate("http://www.test.com"));
+      Assert.assertEquals("/", CrawlerTrapDetector.getTemplate("http://www.test.com/"));
+      Assert.assertEquals("/archive/#/*?page=", CrawlerTrapDetector.getTemplate(
+          "http://www.test.com/archive/2024/a1b2c3d4e5f6a7b8c9?page=3"));
+      Assert.assertEquals("/item-#.html?id=&sort=", CrawlerTrapDetector.getTemplate(
+          "http://www.test.com/item-12.html;jsessionid=ABC?sort=asc&id=7"));
+      Assert.assertEquals("?x=", CrawlerTrapDetector.getTemplate("http://www.test.com?x"));
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testCrawlerTrapDetector_01() {
+      new CrawlerTrapDetector(0, 16, 2, 10, 1000);
+   }
+}
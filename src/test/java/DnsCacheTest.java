@@ -0,0 +1,287 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pkg.DnsCache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link DnsCache} class.
+ */
+public class DnsCacheTest {
+
+   /**
+    * Number of lookups made by the resolver of each test, by host.
+    */
+   private final Map<String, AtomicInteger> lookupCounts = new ConcurrentHashMap<>();
+
+   /**
+    * Resolves every host except unknown.test.com to 127.0.0.1 and counts the lookups.
+    */
+   private final DnsCache.Resolver resolver = host -> {
+      lookupCounts.computeIfAbsent(host, k -> new AtomicInteger()).incrementAndGet();
+      if (host.equals("unknown.test.com")) {
+         throw new UnknownHostException(host);
+      }
+      return new InetAddress[] {InetAddress.getByAddress(host, new byte[] {127, 0, 0, 1})};
+   };
+
+   private int getLookupCount(final String host) {
+      final AtomicInteger lookupCount = lookupCounts.get(host);
+      return lookupCount == null ? 0 : lookupCount.get();
+   }
+
+   /**
+    * Tests a host is looked up once and then answered from the cache.
+    */
+   @Test
+   public void testResolve_01() throws IOException {
+      try (final DnsCache dnsCache = new DnsCache(resolver, 60000, 60000, 1)) {
+         final InetAddress[] addresses = dnsCache.resolve("www.test.com");
+         Assert.assertEquals(1, addresses.length);
+         Assert.assertEquals("127.0.0.1", addresses[0].getHostAddress());
+         Assert.assertArrayEquals(addresses, dnsCache.resolve("www.test.com"));
+         dnsCache.resolve("www.test.com");
+         dnsCache.resolve("other.test.com");
+
+         Assert.assertEquals(1, getLookupCount("www.test.com"));
+         Assert.assertEquals(1, getLookupCount("other.test.com"));
+         Assert.assertEquals(2, dnsCache.size());
+         Assert.assertEquals(2, dnsCache.getHitCount());
+         Assert.assertEquals(2, dnsCache.getMissCount());
+         Assert.assertEquals(50.0, dnsCache.getHitPercentage(), 0.001);
+         Assert.assertEquals(2, dnsCache.getLookupLatency().getCount());
+      }
+   }
+
+   /**
+    * Tests a host is looked up again once its addresses expired.
+    */
+   @Test
+   public void testResolve_02() throws IOException, InterruptedException {
+      try (final DnsCache dnsCache = new DnsCache(resolver, 20, 20, 1)) {
+         dnsCache.resolve("www.test.com");
+         Thread.sleep(50);
+         dnsCache.resolve("www.test.com");
+
+         Assert.assertEquals(2, getLookupCount("www.test.com"));
+         Assert.assertEquals(0, dnsCache.getHitCount());
+      }
+   }
+
+   /**
+    * Tests a host which does not resolve fails from the cache without another lookup.
+    */
+   @Test
+   public void testResolve_03() throws IOException {
+      try (final DnsCache dnsCache = new DnsCache(resolver, 60000, 60000, 1)) {
+         for (int i = 0; i < 3; i++) {
+            try {
+               dnsCache.resolve("unknown.test.com");
+               Assert.fail("UnknownHostException expected");
+            }
+            catch (final UnknownHostException e) {
+               Assert.assertEquals("unknown.test.com", e.getMessage());
+            }
+         }
+
+         Assert.assertEquals(1, getLookupCount("unknown.test.com"));
+         Assert.assertEquals(2, dnsCache.getHitCount());
+      }
+   }
+
+   /**
+    * Tests a host which does not resolve is looked up again once the negative TTL expired, while resolvable hosts
+    * are still cached.
+    */
+   @Test
+   public void testResolve_04() throws IOException, InterruptedException {
+      try (final DnsCache dnsCache = new DnsCache(resolver, 60000, 20, 1)) {
+         dnsCache.resolve("www.test.com");
+         try {
+            dnsCache.resolve("unknown.test.com");
+            Assert.fail("UnknownHostException expected");
+         }
+         catch (final UnknownHostException e) {
+            // expected
+         }
+         Thread.sleep(50);
+         dnsCache.resolve("www.test.com");
+         try {
+            dnsCache.resolve("unknown.test.com");
+            Assert.fail("UnknownHostException expected");
+         }
+         catch (final UnknownHostException e) {
+            // expected
+         }
+
+         Assert.assertEquals(1, getLookupCount("www.test.com"));
+         Assert.assertEquals(2, getLookupCount("unknown.test.com"));
+      }
+   }
+
+   /**
+    * Tests a failure of the resolver other than an unknown host is not cached.
+    */
+   @Test
+   public void testResolve_05() throws IOException {
+      final AtomicInteger lookupCount = new AtomicInteger();
+      final DnsCache.Resolver failingResolver = host -> {
+         if (lookupCount.incrementAndGet() == 1) {
+            throw new IllegalStateException("resolver unavailable");
+         }
+         return resolver.resolve(host);
+      };
+      try (final DnsCache dnsCache = new DnsCache(failingResolver, 60000, 60000, 1)) {
+         try {
+            dnsCache.resolve("www.test.com");
+            Assert.fail("IOException expected");
+         }
+         catch (final IOException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+         }
+         Assert.assertEquals(0, dnsCache.size());
+         Assert.assertEquals(1, dnsCache.resolve("www.test.com").length);
+         Assert.assertEquals(2, lookupCount.get());
+      }
+   }
+
+   /**
+    * Tests a prefetched host is looked up in the background once, and resolving it waits for the prefetch instead
+    * of looking it up again.
+    */
+   @Test
+   public void testPrefetch_01() throws IOException, InterruptedException {
+      final CountDownLatch lookupStarted = new CountDownLatch(1);
+      final CountDownLatch lookupReleased = new CountDownLatch(1);
+      final DnsCache.Resolver slowResolver = host -> {
+         lookupStarted.countDown();
+         try {
+            lookupReleased.await();
+         }
+         catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         return resolver.resolve(host);
+      };
+      try (final DnsCache dnsCache = new DnsCache(slowResolver, 60000, 60000, 2)) {
+         dnsCache.prefetch("www.test.com");
+         Assert.assertTrue(lookupStarted.await(5, TimeUnit.SECONDS));
+         dnsCache.prefetch("www.test.com");
+         final Thread releaser = new Thread(() -> {
+            try {
+               Thread.sleep(20);
+            }
+            catch (final InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+            lookupReleased.countDown();
+         });
+         releaser.start();
+         Assert.assertEquals(1, dnsCache.resolve("www.test.com").length);
+         releaser.join();
+         dnsCache.prefetch("www.test.com");
+
+         Assert.assertEquals(1, getLookupCount("www.test.com"));
+         Assert.assertEquals(1, dnsCache.getPrefetchCount());
+         Assert.assertEquals(1, dnsCache.getHitCount());
+         Assert.assertEquals(0, dnsCache.getMissCount());
+      }
+   }
+
+   /**
+    * Tests resolving a host whose prefetch is still queued behind a slow lookup looks it up on the calling thread
+    * at once, and that the queued prefetch does not look it up again.
+    */
+   @Test
+   public void testPrefetch_02() throws IOException, InterruptedException {
+      final CountDownLatch lookupStarted = new CountDownLatch(1);
+      final CountDownLatch lookupReleased = new CountDownLatch(1);
+      final DnsCache.Resolver slowResolver = host -> {
+         if (host.equals("slow.test.com")) {
+            lookupStarted.countDown();
+            try {
+               lookupReleased.await();
+            }
+            catch (final InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+         }
+         return resolver.resolve(host);
+      };
+      try (final DnsCache dnsCache = new DnsCache(slowResolver, 60000, 60000, 1)) {
+         dnsCache.prefetch("slow.test.com");
+         Assert.assertTrue(lookupStarted.await(5, TimeUnit.SECONDS));
+         dnsCache.prefetch("www.test.com");
+         dnsCache.prefetch("last.test.com");
+
+         Assert.assertEquals(1, dnsCache.resolve("www.test.com").length);
+         Assert.assertEquals(1, getLookupCount("www.test.com"));
+         Assert.assertEquals(1, dnsCache.getMissCount());
+         lookupReleased.countDown();
+         Assert.assertEquals(1, dnsCache.resolve("slow.test.com").length);
+         // the single prefetch thread runs the queued prefetches in order, so www.test.com's is done after this one
+         final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+         while (getLookupCount("last.test.com") == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+         }
+         Assert.assertEquals(1, getLookupCount("last.test.com"));
+         Assert.assertEquals(1, getLookupCount("www.test.com"));
+      }
+   }
+
+   /**
+    * Tests concurrent misses of one host make a single lookup.
+    */
+   @Test
+   public void testResolve_06() throws InterruptedException {
+      final DnsCache.Resolver slowResolver = host -> {
+         try {
+            Thread.sleep(50);
+         }
+         catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         return resolver.resolve(host);
+      };
+      try (final DnsCache dnsCache = new DnsCache(slowResolver, 60000, 60000, 1)) {
+         final AtomicInteger resolvedCount = new AtomicInteger();
+         final Thread[] threads = new Thread[8];
+         for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+               try {
+                  resolvedCount.addAndGet(dnsCache.resolve("www.test.com").length);
+               }
+               catch (final IOException e) {
+                  throw new UncheckedIOException(e);
+               }
+            });
+            threads[i].start();
+         }
+         for (final Thread thread : threads) {
+            thread.join();
+         }
+
+         Assert.assertEquals(threads.length, resolvedCount.get());
+         Assert.assertEquals(1, getLookupCount("www.test.com"));
+         Assert.assertEquals(1, dnsCache.getMissCount());
+      }
+   }
+
+   /**
+    * Tests the constructor rejects a prefetch thread count below 1.
+    */
+   @Test(expected = IllegalArgumentException.class)
+   public void testDnsCache_01() {
+      new DnsCache(resolver, 60000, 60000, 0);
+   }
+}
@@ -0,0 +1,139 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pkg.FetchPolicy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link FetchPolicy} class.
+ */
+public class FetchPolicyTest {
+
+   private static final String HTML = "<html><body><a href=\"/next\">next</a></body></html>";
+
+   private final FetchPolicy fetchPolicy = new FetchPolicy();
+
+   private static String read(final InputStream in) throws IOException {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[16];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+         out.write(buffer, 0, read);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+   }
+
+   private static byte[] deflate(final boolean zlib) throws IOException {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (final DeflaterOutputStream out = new DeflaterOutputStream(bytes, new Deflater(Deflater.DEFAULT_COMPRESSION,
+          !zlib))) {
+         out.write(HTML.getBytes(StandardCharsets.UTF_8));
+      }
+      return bytes.toByteArray();
+   }
+
+   /**
+    * Tests links are skipped by the extension of their last path segment, ignoring case, query and fragment.
+    */
+   @Test
+   public void testIsSkippedUrl_01() {
+      Assert.assertTrue(fetchPolicy.isSkippedUrl("http://www.test.com/files/report.pdf"));
+      Assert.assertTrue(fetchPolicy.isSkippedUrl("http://www.test.com/files/report.PDF"));
+      Assert.assertTrue(fetchPolicy.isSkippedUrl("http://www.test.com/images/logo.png?v=2"));
+      Assert.assertTrue(fetchPolicy.isSkippedUrl("http://www.test.com/download/archive.zip#top"));
+      Assert.assertTrue(fetchPolicy.isSkippedUrl("http://www.test.com/a.tar.gz"));
+      Assert.assertFalse(fetchPolicy.isSkippedUrl("http://www.test.com/index.html"));
+      Assert.assertFalse(fetchPolicy.isSkippedUrl("http://www.test.com/page.php?file=report.pdf"));
+      Assert.assertFalse(fetchPolicy.isSkippedUrl("http://www.test.com/pdf/"));
+      Assert.assertFalse(fetchPolicy.isSkippedUrl("http://www.test.com/v1.0/docs"));
+      Assert.assertFalse(fetchPolicy.isSkippedUrl("http://www.test.com/file."));
+   }
+
+   /**
+    * Tests a host name ending in a skipped extension is not taken for a file.
+    */
+   @Test
+   public void testIsSkippedUrl_02() {
+      Assert.assertFalse(fetchPolicy.isSkippedUrl("http://www.test.js"));
+      Assert.assertFalse(fetchPolicy.isSkippedUrl("http://www.test.js/"));
+      Assert.assertFalse(fetchPolicy.isSkippedUrl("http://www.test.js?q=1"));
+   }
+
+   /**
+    * Tests the skipped extensions can be configured.
+    */
+   @Test
+   public void testIsSkippedUrl_03() {
+      final FetchPolicy htmlOnlyPolicy = new FetchPolicy(1024, false, Collections.singleton("PHP"));
+      Assert.assertTrue(htmlOnlyPolicy.isSkippedUrl("http://www.test.com/index.php"));
+      Assert.assertFalse(htmlOnlyPolicy.isSkippedUrl("http://www.test.com/report.pdf"));
+   }
+
+   @Test
+   public void testIsAcceptedMimeType_01() {
+      Assert.assertTrue(FetchPolicy.isAcceptedMimeType(null));
+      Assert.assertTrue(FetchPolicy.isAcceptedMimeType("text/html"));
+      Assert.assertTrue(FetchPolicy.isAcceptedMimeType("application/xhtml+xml"));
+      Assert.assertTrue(FetchPolicy.isAcceptedMimeType("application/json"));
+      Assert.assertFalse(FetchPolicy.isAcceptedMimeType("application/pdf"));
+      Assert.assertFalse(FetchPolicy.isAcceptedMimeType("image/png"));
+   }
+
+   /**
+    * Tests gzip, zlib wrapped deflate, raw deflate and uncompressed bodies are decoded.
+    */
+   @Test
+   public void testDecode_01() throws IOException {
+      final ByteArrayOutputStream gzipBytes = new ByteArrayOutputStream();
+      try (final GZIPOutputStream out = new GZIPOutputStream(gzipBytes)) {
+         out.write(HTML.getBytes(StandardCharsets.UTF_8));
+      }
+      Assert.assertEquals(HTML, read(FetchPolicy.decode(new ByteArrayInputStream(gzipBytes.toByteArray()), "gzip")));
+      Assert.assertEquals(HTML, read(FetchPolicy.decode(new ByteArrayInputStream(deflate(true)), "deflate")));
+      Assert.assertEquals(HTML, read(FetchPolicy.decode(new ByteArrayInputStream(deflate(false)), "Deflate")));
+      Assert.assertEquals(HTML, read(FetchPolicy.decode(
+          new ByteArrayInputStream(HTML.getBytes(StandardCharsets.UTF_8)), null)));
+      Assert.assertEquals("", read(FetchPolicy.decode(new ByteArrayInputStream(new byte[0]), "identity")));
+      Assert.assertEquals("", read(FetchPolicy.decode(new ByteArrayInputStream(new byte[0]), "gzip")));
+   }
+
+   @Test(expected = IOException.class)
+   public void testDecode_02() throws IOException {
+      FetchPolicy.decode(new ByteArrayInputStream(new byte[] {1, 2, 3}), "br");
+   }
+
+   /**
+    * Tests closing a deflate body ends its inflater, so its native memory is freed.
+    */
+   @Test
+   public void testDecode_03() throws IOException {
+      final InputStream in = FetchPolicy.decode(new ByteArrayInputStream(deflate(true)), "deflate");
+      Assert.assertTrue(in instanceof FetchPolicy.DeflateInputStream);
+      final Inflater inflater = ((FetchPolicy.DeflateInputStream) in).getInflater();
+      Assert.assertEquals(HTML, read(in));
+      in.close();
+      try {
+         inflater.getBytesRead();
+         Assert.fail("Expected the inflater to be ended");
+      }
+      catch (final NullPointerException e) {
+         // an ended inflater throws NullPointerException
+      }
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testFetchPolicy_01() {
+      new FetchPolicy(0, true, FetchPolicy.DEFAULT_SKIPPED_EXTENSIONS);
+   }
+}
@@ -0,0 +1,68 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pkg.HostCircuitBreaker;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link HostCircuitBreaker} class.
+ */
+public class HostCircuitBreakerTest {
+
+   /**
+    * Tests that the breaker opens after the threshold of consecutive failures and that a success resets the count.
+    */
+   @Test
+   public void testRecordFailure_01() {
+      final HostCircuitBreaker breaker = new HostCircuitBreaker(3, 60000);
+      Assert.assertFalse(breaker.recordFailure("www.test.com"));
+      Assert.assertFalse(breaker.recordFailure("www.test.com"));
+      breaker.recordSuccess("www.test.com");
+      Assert.assertFalse(breaker.recordFailure("www.test.com"));
+      Assert.assertFalse(breaker.recordFailure("www.test.com"));
+      Assert.assertEquals(0, breaker.getMillisUntilAllowed("www.test.com"));
+      Assert.assertTrue(breaker.recordFailure("www.test.com"));
+
+      Assert.assertTrue(breaker.isOpen("www.test.com"));
+      Assert.assertTrue(breaker.getMillisUntilAllowed("www.test.com") > 59000);
+      Assert.assertEquals(0, breaker.getMillisUntilAllowed("www.other.com"));
+   }
+
+   /**
+    * Tests that a single probe is let through after the cooldown and that a failed probe opens the breaker again.
+    */
+   @Test
+   public void testGetMillisUntilAllowed_01() throws InterruptedException {
+      final HostCircuitBreaker breaker = new HostCircuitBreaker(1, 20);
+      Assert.assertTrue(breaker.recordFailure("www.test.com"));
+      Thread.sleep(40);
+
+      Assert.assertEquals(0, breaker.getMillisUntilAllowed("www.test.com"));
+      Assert.assertTrue(breaker.getMillisUntilAllowed("www.test.com") > 0);
+      Assert.assertTrue(breaker.recordFailure("www.test.com"));
+      Thread.sleep(40);
+
+      Assert.assertEquals(0, breaker.getMillisUntilAllowed("www.test.com"));
+      breaker.recordSuccess("www.test.com");
+      Assert.assertFalse(breaker.isOpen("www.test.com"));
+      Assert.assertEquals(0, breaker.getMillisUntilAllowed("www.test.com"));
+   }
+
+   /**
+    * Tests that a released probe lets the next request through as the probe while the breaker stays open.
+    */
+   @Test
+   public void testReleaseProbe_01() throws InterruptedException {
+      final HostCircuitBreaker breaker = new HostCircuitBreaker(1, 20);
+      Assert.assertTrue(breaker.recordFailure("www.test.com"));
+      Thread.sleep(40);
+
+      Assert.assertEquals(0, breaker.getMillisUntilAllowed("www.test.com"));
+      Assert.assertTrue(breaker.getMillisUntilAllowed("www.test.com") > 0);
+      breaker.releaseProbe("www.test.com");
+      Assert.assertTrue(breaker.isOpen("www.test.com"));
+      Assert.assertEquals(0, breaker.getMillisUntilAllowed("www.test.com"));
+      Assert.assertTrue(breaker.getMillisUntilAllowed("www.test.com") > 0);
+      breaker.releaseProbe("www.other.com");
+   }
+}
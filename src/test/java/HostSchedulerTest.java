@@ -0,0 +1,203 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pkg.FingerprintSet;
+import pkg.HostScheduler;
+import pkg.LinkScorer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link HostScheduler} class.
+ */
+public class HostSchedulerTest {
+
+   private static final String URL_A_1 = "http://a.test.com/1";
+
+   private static final String URL_A_2 = "http://a.test.com/2";
+
+   private static final String URL_A_3 = "http://a.test.com/3";
+
+   private static final String URL_B_1 = "http://b.test.com/1";
+
+   private static final String URL_B_2 = "http://b.test.com/2";
+
+   @Test
+   public void testGetHost_01() {
+      Assert.assertEquals("www.test.com", HostScheduler.getHost("http://www.test.com/abc/4"));
+      Assert.assertEquals("www.test.com", HostScheduler.getHost("HTTPS://user@WWW.Test.com:8080?q=1"));
+      Assert.assertEquals("[::1]", HostScheduler.getHost("http://[::1]:8080/"));
+      Assert.assertEquals("", HostScheduler.getHost("badlink1"));
+   }
+
+   /**
+    * Tests host names are lower cased the same way whatever the default locale, e.g. a Turkish one which lower cases
+    * "I" to a dotless i.
+    */
+   @Test
+   public void testGetHost_02() {
+      final Locale defaultLocale = Locale.getDefault();
+      try {
+         Locale.setDefault(new Locale("tr", "TR"));
+         Assert.assertEquals("www.testing.com", HostScheduler.getHost("http://WWW.TESTING.COM/INDEX"));
+      }
+      finally {
+         Locale.setDefault(defaultLocale);
+      }
+   }
+
+   /**
+    * Tests that URLs are handed out alternating between hosts instead of in plain FIFO order.
+    */
+   @Test
+   public void testPoll_01() {
+      final HostScheduler scheduler = new HostScheduler(1, 0);
+      scheduler.add(URL_A_1);
+      scheduler.add(URL_A_2);
+      scheduler.add(URL_B_1);
+      scheduler.add(URL_B_2);
+      Assert.assertFalse(scheduler.add(URL_A_1));
+      Assert.assertEquals(4, scheduler.size());
+      Assert.assertEquals(2, scheduler.getHostCount());
+
+      Assert.assertEquals(URL_A_1, scheduler.poll());
+      Assert.assertEquals(URL_B_1, scheduler.poll());
+
+      // both hosts are at their in flight cap
+      Assert.assertNull(scheduler.poll());
+      Assert.assertEquals(-1, scheduler.getMillisUntilReady());
+      Assert.assertEquals(2, scheduler.size());
+
+      scheduler.release(URL_B_1);
+      Assert.assertEquals(URL_B_2, scheduler.poll());
+      scheduler.release(URL_A_1);
+      Assert.assertEquals(URL_A_2, scheduler.poll());
+      Assert.assertTrue(scheduler.isEmpty());
+      Assert.assertNull(scheduler.poll());
+   }
+
+   /**
+    * Tests that a host is not handed out again before its minimum delay has passed.
+    */
+   @Test
+   public void testPoll_02() {
+      final HostScheduler scheduler = new HostScheduler(2, 60000);
+      scheduler.add(URL_A_1);
+      scheduler.add(URL_A_2);
+      scheduler.add(URL_B_1);
+
+      Assert.assertEquals(URL_A_1, scheduler.poll());
+      Assert.assertEquals(URL_B_1, scheduler.poll());
+      Assert.assertNull(scheduler.poll());
+      Assert.assertTrue(scheduler.getMillisUntilReady() > 0);
+      Assert.assertTrue(scheduler.contains(URL_A_2));
+      Assert.assertFalse(scheduler.contains(URL_A_3));
+   }
+
+   /**
+    * Tests that with a {@link LinkScorer} each host hands out its best URL first, that of the ready hosts the one
+    * with the best URL goes first, and that the depth of each URL is kept.
+    */
+   @Test
+   public void testPoll_03() {
+      final HostScheduler scheduler = new HostScheduler(1, 0, LinkScorer.byDepth());
+      scheduler.offer(URL_A_1, 3);
+      scheduler.offer(URL_A_2, 1);
+      scheduler.offer(URL_B_1, 2);
+      Assert.assertFalse(scheduler.offer(URL_A_2, 0));
+
+      Assert.assertEquals(URL_A_2, scheduler.poll());
+      Assert.assertEquals(1, scheduler.getLastPolledDepth());
+      Assert.assertEquals(URL_B_1, scheduler.poll());
+      Assert.assertEquals(2, scheduler.getLastPolledDepth());
+      scheduler.release(URL_A_2);
+      scheduler.release(URL_B_1);
+
+      // a better URL queued for a host which is already ready moves the host ahead
+      scheduler.offer(URL_B_2, 4);
+      Assert.assertEquals(URL_A_1, scheduler.peek());
+      scheduler.offer("http://b.test.com/3", 0);
+      Assert.assertEquals("http://b.test.com/3", scheduler.poll());
+      Assert.assertEquals(0, scheduler.getLastPolledDepth());
+      Assert.assertEquals(URL_A_1, scheduler.poll());
+      Assert.assertEquals(3, scheduler.getLastPolledDepth());
+      Assert.assertEquals(1, scheduler.size());
+   }
+
+   /**
+    * Tests a host is dropped once it has no queued URLs and none in flight, and with a minimum delay only once the
+    * delay has passed, so the delay still applies to URLs queued for it again.
+    */
+   @Test
+   public void testRelease_01() throws InterruptedException {
+      final HostScheduler scheduler = new HostScheduler(1, 0);
+      scheduler.add(URL_A_1);
+      scheduler.add(URL_B_1);
+      Assert.assertEquals(URL_A_1, scheduler.poll());
+      scheduler.release(URL_A_1);
+      Assert.assertEquals(1, scheduler.getHostCount());
+      Assert.assertEquals(URL_B_1, scheduler.poll());
+      scheduler.release(URL_B_1);
+      Assert.assertEquals(0, scheduler.getHostCount());
+
+      final HostScheduler delayScheduler = new HostScheduler(1, 50);
+      delayScheduler.add(URL_A_1);
+      Assert.assertEquals(URL_A_1, delayScheduler.poll());
+      delayScheduler.release(URL_A_1);
+      Assert.assertEquals(1, delayScheduler.getHostCount());
+      delayScheduler.add(URL_A_2);
+      Assert.assertNull(delayScheduler.poll());
+      Thread.sleep(60);
+      Assert.assertEquals(URL_A_2, delayScheduler.poll());
+      delayScheduler.release(URL_A_2);
+      Thread.sleep(60);
+      delayScheduler.add(URL_B_1);
+      Assert.assertEquals(1, delayScheduler.getHostCount());
+   }
+
+   /**
+    * Tests that URLs over maxInMemoryLinks are spilled to disk, deduplicated with the shared set and handed out
+    * with their depth once the host queues run low.
+    */
+   @Test
+   public void testSpill_01() throws IOException {
+      final Path spillDirectory = Files.createTempDirectory("host-scheduler-test");
+      try (final HostScheduler scheduler = new HostScheduler(1000, 0, null, new FingerprintSet())) {
+         scheduler.setSpillDirectory(spillDirectory, 10);
+         for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(scheduler.offer("http://host" + (i % 3) + ".test.com/" + i, i));
+            Assert.assertFalse(scheduler.offer("http://host" + (i % 3) + ".test.com/" + i, i));
+            Assert.assertTrue(scheduler.getInMemoryCount() <= 10);
+         }
+         Assert.assertEquals(100, scheduler.size());
+         Assert.assertTrue(scheduler.contains("http://host0.test.com/99"));
+         try (final Stream<Path> files = Files.list(spillDirectory)) {
+            Assert.assertTrue(files.count() > 0);
+         }
+
+         final Set<String> polled = new HashSet<>();
+         String link;
+         while ((link = scheduler.poll()) != null) {
+            Assert.assertTrue(scheduler.getInMemoryCount() <= 10);
+            Assert.assertEquals(link.substring(link.lastIndexOf('/') + 1),
+                Integer.toString(scheduler.getLastPolledDepth()));
+            polled.add(link);
+         }
+         Assert.assertEquals(100, polled.size());
+         Assert.assertTrue(scheduler.isEmpty());
+      }
+      finally {
+         try (final Stream<Path> files = Files.list(spillDirectory)) {
+            Assert.assertEquals(0, files.count());
+         }
+         Files.delete(spillDirectory);
+      }
+   }
+}
@@ -0,0 +1,202 @@
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pkg.FetchPolicy;
+import pkg.FetchResult;
+import pkg.HttpPageFetcher;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link HttpPageFetcher} class, run against a local HTTP server.
+ */
+public class HttpPageFetcherTest {
+
+   private HttpServer server;
+
+   private HttpPageFetcher fetcher;
+
+   private String baseUrl;
+
+   /**
+    * Body of the /gzip and /large pages, which compresses well.
+    */
+   private static final String LARGE_HTML = "<html><body>" + String.join("", Collections.nCopies(1000,
+       "<p>The same paragraph again.</p>")) + "</body></html>";
+
+   @Before
+   public void before() throws IOException {
+      server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+      server.createContext("/page", exchange -> {
+         final byte[] body = "<a href=\"/next\">next</a>".getBytes(StandardCharsets.UTF_8);
+         exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+         exchange.sendResponseHeaders(200, body.length);
+         try (final OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+         }
+      });
+      server.createContext("/etag", exchange -> {
+         final boolean notModified = "\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"));
+         exchange.getResponseHeaders().add("ETag", "\"v1\"");
+         exchange.sendResponseHeaders(notModified ? 304 : 200, -1);
+         exchange.close();
+      });
+      server.createContext("/missing", exchange -> {
+         exchange.sendResponseHeaders(404, -1);
+         exchange.close();
+      });
+      server.createContext("/slow", exchange -> {
+         try {
+            Thread.sleep(2000);
+         }
+         catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         exchange.sendResponseHeaders(200, -1);
+         exchange.close();
+      });
+      server.createContext("/gzip", exchange -> {
+         final boolean gzip = String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")).contains("gzip");
+         exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+         if (gzip) {
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+         }
+         exchange.sendResponseHeaders(200, 0);
+         try (final OutputStream out = gzip ? new GZIPOutputStream(exchange.getResponseBody())
+             : exchange.getResponseBody()) {
+            out.write(LARGE_HTML.getBytes(StandardCharsets.UTF_8));
+         }
+      });
+      server.createContext("/large", exchange -> {
+         final byte[] body = LARGE_HTML.getBytes(StandardCharsets.UTF_8);
+         exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+         exchange.sendResponseHeaders(200, body.length);
+         try (final OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+         }
+      });
+      server.createContext("/report.bin", exchange -> {
+         final byte[] body = new byte[1024 * 1024];
+         exchange.getResponseHeaders().add("Content-Type", "application/pdf");
+         exchange.sendResponseHeaders(200, body.length);
+         try (final OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+         }
+         catch (final IOException e) {
+            // the fetcher closes the connection without reading the body
+         }
+      });
+      server.start();
+      baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+      fetcher = new HttpPageFetcher(1000, 200, 4);
+   }
+
+   @After
+   public void after() {
+      fetcher.close();
+      server.stop(0);
+   }
+
+   @Test
+   public void testFetch_01() throws Exception {
+      final FetchResult fetchResult = fetcher.fetch(baseUrl + "/page").get();
+      Assert.assertEquals(200, fetchResult.getStatusCode());
+      Assert.assertEquals("text/html", fetchResult.getMimeType());
+      Assert.assertEquals("UTF-8", fetchResult.getCharset());
+      Assert.assertEquals("<a href=\"/next\">next</a>", fetchResult.getBodyAsString());
+   }
+
+   /**
+    * Tests that an error status code is returned instead of failing the future.
+    */
+   @Test
+   public void testFetch_02() throws Exception {
+      final FetchResult fetchResult = fetcher.fetch(baseUrl + "/missing").get();
+      Assert.assertEquals(404, fetchResult.getStatusCode());
+      Assert.assertFalse(fetchResult.isSuccessful());
+   }
+
+   /**
+    * Tests that the read timeout fails the future.
+    */
+   @Test(expected = ExecutionException.class)
+   public void testFetch_03() throws Exception {
+      fetcher.fetch(baseUrl + "/slow").get();
+   }
+
+   /**
+    * Tests that request headers are sent, here making a conditional GET.
+    */
+   @Test
+   public void testFetch_04() throws Exception {
+      final FetchResult fetchResult = fetcher.fetch(baseUrl + "/etag").get();
+      Assert.assertEquals(200, fetchResult.getStatusCode());
+      Assert.assertEquals("\"v1\"", fetchResult.getHeader("ETag"));
+      final FetchResult conditionalResult = fetcher.fetch(baseUrl + "/etag",
+          Collections.singletonMap("If-None-Match", "\"v1\"")).get();
+      Assert.assertEquals(304, conditionalResult.getStatusCode());
+      Assert.assertEquals(0, conditionalResult.getBody().length);
+   }
+
+   /**
+    * Tests a gzip compressed response is requested with a {@link FetchPolicy} and decompressed while it is read.
+    */
+   @Test
+   public void testFetch_05() throws Exception {
+      try (final HttpPageFetcher policyFetcher = new HttpPageFetcher(1000, 1000, 4, new FetchPolicy())) {
+         final FetchResult fetchResult = policyFetcher.fetch(baseUrl + "/gzip").get();
+         Assert.assertEquals(LARGE_HTML, fetchResult.getBodyAsString());
+         Assert.assertFalse(fetchResult.isTruncated());
+         Assert.assertTrue(fetchResult.getTransferredBytes() > 0);
+         Assert.assertTrue(fetchResult.getTransferredBytes() < fetchResult.getBody().length / 10);
+      }
+      final FetchResult uncompressedResult = fetcher.fetch(baseUrl + "/gzip").get();
+      Assert.assertEquals(LARGE_HTML, uncompressedResult.getBodyAsString());
+      Assert.assertEquals(uncompressedResult.getBody().length, uncompressedResult.getTransferredBytes());
+   }
+
+   /**
+    * Tests a response whose Content-Type is not accepted by the {@link FetchPolicy} is returned without its body.
+    */
+   @Test
+   public void testFetch_06() throws Exception {
+      try (final HttpPageFetcher policyFetcher = new HttpPageFetcher(1000, 1000, 4, new FetchPolicy())) {
+         final FetchResult fetchResult = policyFetcher.fetch(baseUrl + "/report.bin").get();
+         Assert.assertEquals(200, fetchResult.getStatusCode());
+         Assert.assertEquals("application/pdf", fetchResult.getMimeType());
+         Assert.assertEquals(0, fetchResult.getBody().length);
+         Assert.assertEquals(0, fetchResult.getTransferredBytes());
+         Assert.assertEquals(1024 * 1024, fetchResult.getContentLength());
+         Assert.assertTrue(fetchResult.isTruncated());
+      }
+   }
+
+   /**
+    * Tests a body is only read up to the maximum body size of the {@link FetchPolicy}, compressed or not.
+    */
+   @Test
+   public void testFetch_07() throws Exception {
+      final FetchPolicy fetchPolicy = new FetchPolicy(1000, true, FetchPolicy.DEFAULT_SKIPPED_EXTENSIONS);
+      try (final HttpPageFetcher policyFetcher = new HttpPageFetcher(1000, 1000, 4, fetchPolicy)) {
+         for (final String path : Arrays.asList("/large", "/gzip")) {
+            final FetchResult fetchResult = policyFetcher.fetch(baseUrl + path).get();
+            Assert.assertEquals(LARGE_HTML.substring(0, 1000), fetchResult.getBodyAsString());
+            Assert.assertTrue(fetchResult.isTruncated());
+         }
+         final FetchResult fetchResult = policyFetcher.fetch(baseUrl + "/page").get();
+         Assert.assertEquals("<a href=\"/next\">next</a>", fetchResult.getBodyAsString());
+         Assert.assertFalse(fetchResult.isTruncated());
+      }
+   }
+}
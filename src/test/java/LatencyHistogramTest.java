@@ -0,0 +1,115 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pkg.LatencyHistogram;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link LatencyHistogram} class.
+ */
+public class LatencyHistogramTest {
+
+   /**
+    * Tests an empty histogram reports 0 for everything.
+    */
+   @Test
+   public void testGetPercentileMicros_01() {
+      final LatencyHistogram histogram = new LatencyHistogram();
+      Assert.assertEquals(0, histogram.getCount());
+      Assert.assertEquals(0, histogram.getPercentileMicros(50));
+      Assert.assertEquals(0, histogram.getMeanMicros());
+      Assert.assertEquals(0, histogram.getMaxMicros());
+   }
+
+   /**
+    * Tests percentiles of 1 to 10000 milliseconds are reported within the bucket precision of 1/16.
+    */
+   @Test
+   public void testGetPercentileMicros_02() {
+      final LatencyHistogram histogram = new LatencyHistogram();
+      for (int millis = 1; millis <= 10000; millis++) {
+         histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+      }
+      Assert.assertEquals(10000, histogram.getCount());
+      assertWithinPrecision(5000000, histogram.getPercentileMicros(50));
+      assertWithinPrecision(9900000, histogram.getPercentileMicros(99));
+      assertWithinPrecision(9990000, histogram.getPercentileMicros(99.9));
+      Assert.assertEquals(10000000, histogram.getPercentileMicros(100));
+      Assert.assertEquals(10000000, histogram.getMaxMicros());
+      Assert.assertEquals(5000500, histogram.getMeanMicros());
+   }
+
+   /**
+    * Tests small durations are recorded exactly and negative or huge durations are clamped.
+    */
+   @Test
+   public void testGetPercentileMicros_03() {
+      final LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(7));
+      Assert.assertEquals(7, histogram.getPercentileMicros(50));
+      histogram.record(-1);
+      Assert.assertEquals(0, histogram.getPercentileMicros(0));
+      histogram.record(Long.MAX_VALUE);
+      Assert.assertTrue(histogram.getPercentileMicros(100) > TimeUnit.HOURS.toMicros(19));
+   }
+
+   /**
+    * Tests durations recorded from several threads at once are all counted.
+    */
+   @Test
+   public void testRecord_01() throws InterruptedException {
+      final LatencyHistogram histogram = new LatencyHistogram();
+      final List<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+         threads.add(new Thread(() -> {
+            for (int j = 0; j < 10000; j++) {
+               histogram.record(TimeUnit.MICROSECONDS.toNanos(j));
+            }
+         }));
+      }
+      for (final Thread thread : threads) {
+         thread.start();
+      }
+      for (final Thread thread : threads) {
+         thread.join();
+      }
+      Assert.assertEquals(40000, histogram.getCount());
+      Assert.assertEquals(9999, histogram.getMaxMicros());
+   }
+
+   /**
+    * Tests a histogram written and read back can be added to another one.
+    */
+   @Test
+   public void testAdd_01() throws IOException {
+      final LatencyHistogram histogram = new LatencyHistogram();
+      final LatencyHistogram otherHistogram = new LatencyHistogram();
+      for (int i = 1; i <= 100; i++) {
+         histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+         otherHistogram.record(TimeUnit.MICROSECONDS.toNanos(i + 100));
+      }
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (final DataOutputStream out = new DataOutputStream(bytes)) {
+         otherHistogram.writeTo(out);
+      }
+      histogram.add(LatencyHistogram.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+      Assert.assertEquals(200, histogram.getCount());
+      Assert.assertEquals(200, histogram.getMaxMicros());
+      Assert.assertEquals(100, histogram.getMeanMicros());
+      assertWithinPrecision(100, histogram.getPercentileMicros(50));
+   }
+
+   private static void assertWithinPrecision(final long expected, final long actual) {
+      Assert.assertTrue("expected about " + expected + " but was " + actual,
+          Math.abs(actual - expected) <= expected / 16);
+   }
+}
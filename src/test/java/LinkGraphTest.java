@@ -0,0 +1,83 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pkg.LinkGraph;
+import pkg.MappedLinkGraph;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link LinkGraph} class.
+ */
+public class LinkGraphTest {
+
+   private Path graphFile;
+
+   private Path urlFile;
+
+   @Before
+   public void before() throws IOException {
+      graphFile = Files.createTempFile("link-graph-test", ".csr");
+      urlFile = Files.createTempFile("link-graph-test", ".urls");
+   }
+
+   @After
+   public void after() throws IOException {
+      Files.deleteIfExists(graphFile);
+      Files.deleteIfExists(urlFile);
+   }
+
+   /**
+    * Tests that out-links are kept sorted and without duplicates and that replacing a page updates the edge count.
+    */
+   @Test
+   public void testAddPage_01() {
+      final LinkGraph linkGraph = new LinkGraph();
+      linkGraph.addPage("http://www.test.com/a", Arrays.asList("http://www.test.com/c", "http://www.test.com/b",
+          "http://www.test.com/c"));
+      Assert.assertArrayEquals(new int[] {1, 2}, linkGraph.getOutLinks("http://www.test.com/a"));
+      Assert.assertEquals(2, linkGraph.getEdgeCount());
+      Assert.assertNull(linkGraph.getOutLinks("http://www.test.com/b"));
+
+      linkGraph.addPage("http://www.test.com/a", Collections.singletonList("http://www.test.com/a"));
+      Assert.assertArrayEquals(new int[] {0}, linkGraph.getOutLinks("http://www.test.com/a"));
+      Assert.assertEquals(1, linkGraph.getEdgeCount());
+      Assert.assertEquals(3, linkGraph.getNodeCount());
+   }
+
+   /**
+    * Tests that the exported files can be memory-mapped and read back.
+    */
+   @Test
+   public void testExport_01() throws IOException {
+      final LinkGraph linkGraph = new LinkGraph();
+      linkGraph.addPage("http://www.test.com/a", Arrays.asList("http://www.test.com/b", "http://www.test.com/c"));
+      linkGraph.addPage("http://www.test.com/c", Arrays.asList("http://www.test.com/a", "http://www.test.com/d"));
+      linkGraph.addPage("http://www.test.com/d", Collections.emptyList());
+      linkGraph.export(graphFile, urlFile);
+
+      final MappedLinkGraph mappedGraph = MappedLinkGraph.open(graphFile, urlFile);
+      Assert.assertEquals(4, mappedGraph.getNodeCount());
+      Assert.assertEquals(4, mappedGraph.getEdgeCount());
+      Assert.assertArrayEquals(new int[] {1, 2}, mappedGraph.getOutLinks(0));
+      Assert.assertArrayEquals(new int[0], mappedGraph.getOutLinks(1));
+      Assert.assertArrayEquals(new int[] {0, 3}, mappedGraph.getOutLinks(2));
+      Assert.assertArrayEquals(new int[0], mappedGraph.getOutLinks(3));
+      Assert.assertEquals("http://www.test.com/a", mappedGraph.getUrl(0));
+      Assert.assertEquals("http://www.test.com/d", mappedGraph.getUrl(3));
+   }
+
+   @Test(expected = IOException.class)
+   public void testExport_02() throws IOException {
+      Files.write(graphFile, new byte[64]);
+      Files.write(urlFile, new byte[64]);
+      MappedLinkGraph.open(graphFile, urlFile);
+   }
+}
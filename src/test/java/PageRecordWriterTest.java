@@ -0,0 +1,83 @@
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pkg.PageRecordWriter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link PageRecordWriter} class.
+ */
+public class PageRecordWriterTest {
+
+   private Path file;
+
+   @Before
+   public void before() throws IOException {
+      file = Files.createTempFile("page-record-writer-test", ".ndjson.gz");
+   }
+
+   @After
+   public void after() throws IOException {
+      Files.deleteIfExists(file);
+   }
+
+   /**
+    * Tests that every record is written as one JSON object per line of a gzip compressed file, in order, even when
+    * the queue is much smaller than the number of records.
+    */
+   @Test
+   public void testWrite_01() throws IOException {
+      final PageRecordWriter writer = new PageRecordWriter(file, 4, 3);
+      writer.write(new PageRecordWriter.PageRecord("http://www.test.com/a", 200, 1000, 5,
+          Arrays.asList("http://www.test.com/b", "http://www.test.com/c"), null));
+      writer.write(new PageRecordWriter.PageRecord("http://www.test.com/b", 404, 2000, 1, null,
+          "org.jsoup.HttpStatusException: HTTP error fetching URL"));
+      for (int i = 0; i < 1000; i++) {
+         writer.write(new PageRecordWriter.PageRecord("http://www.test.com/" + i, 200, 3000, 0, null, null));
+      }
+      writer.close();
+      Assert.assertEquals(1002, writer.getWrittenCount());
+
+      final List<JsonObject> records = readRecords();
+      Assert.assertEquals(1002, records.size());
+      final JsonObject first = records.get(0);
+      Assert.assertEquals("http://www.test.com/a", first.get("url").getAsString());
+      Assert.assertEquals(200, first.get("status").getAsInt());
+      Assert.assertEquals(1000, first.get("crawledAt").getAsLong());
+      Assert.assertEquals(5, first.get("durationMillis").getAsLong());
+      Assert.assertEquals(2, first.getAsJsonArray("links").size());
+      Assert.assertFalse(first.has("error"));
+      Assert.assertEquals(404, records.get(1).get("status").getAsInt());
+      Assert.assertEquals(0, records.get(1).getAsJsonArray("links").size());
+      Assert.assertTrue(records.get(1).get("error").getAsString().contains("HttpStatusException"));
+      Assert.assertEquals("http://www.test.com/999", records.get(1001).get("url").getAsString());
+   }
+
+   private List<JsonObject> readRecords() throws IOException {
+      final JsonParser jsonParser = new JsonParser();
+      final List<JsonObject> records = new ArrayList<>();
+      try (final BufferedReader in = new BufferedReader(new InputStreamReader(
+          new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+         String line;
+         while ((line = in.readLine()) != null) {
+            records.add(jsonParser.parse(line).getAsJsonObject());
+         }
+      }
+      return records;
+   }
+}
@@ -0,0 +1,125 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pkg.FingerprintSet;
+import pkg.LinkScorer;
+import pkg.PriorityFrontier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link PriorityFrontier} and {@link LinkScorer} classes.
+ */
+public class PriorityFrontierTest {
+
+   /**
+    * Tests links are returned by depth and, at the same depth, in the order they were queued.
+    */
+   @Test
+   public void testPoll_01() {
+      final PriorityFrontier frontier = new PriorityFrontier(LinkScorer.byDepth());
+      frontier.offer("http://www.test.com/2a", 2);
+      frontier.offer("http://www.test.com/1a", 1);
+      frontier.offer("http://www.test.com/2b", 2);
+      frontier.add("http://www.test.com/0");
+      frontier.offer("http://www.test.com/1b", 1);
+      Assert.assertFalse(frontier.offer("http://www.test.com/1a", 0));
+      Assert.assertEquals(5, frontier.size());
+      Assert.assertTrue(frontier.contains("http://www.test.com/2b"));
+      Assert.assertEquals("http://www.test.com/0", frontier.peek());
+
+      Assert.assertEquals("http://www.test.com/0", frontier.poll());
+      Assert.assertEquals(0, frontier.getLastPolledDepth());
+      Assert.assertEquals("http://www.test.com/1a", frontier.poll());
+      Assert.assertEquals("http://www.test.com/1b", frontier.poll());
+      Assert.assertEquals(1, frontier.getLastPolledDepth());
+      Assert.assertEquals("http://www.test.com/2a", frontier.poll());
+      Assert.assertEquals("http://www.test.com/2b", frontier.poll());
+      Assert.assertEquals(2, frontier.getLastPolledDepth());
+      Assert.assertNull(frontier.poll());
+      Assert.assertTrue(frontier.isEmpty());
+      Assert.assertFalse(frontier.contains("http://www.test.com/2b"));
+
+      // a polled link can be queued again
+      Assert.assertTrue(frontier.offer("http://www.test.com/1a", 1));
+   }
+
+   /**
+    * Tests many links with random scores come out in ascending order.
+    */
+   @Test
+   public void testPoll_02() {
+      final Random random = new Random(42);
+      final List<Integer> depths = new ArrayList<>();
+      final PriorityFrontier frontier = new PriorityFrontier(LinkScorer.byDepth(), new FingerprintSet());
+      for (int i = 0; i < 100000; i++) {
+         final int depth = random.nextInt(1000);
+         depths.add(depth);
+         frontier.offer("http://www.test.com/" + i, depth);
+      }
+      Collections.sort(depths);
+      for (final int depth : depths) {
+         Assert.assertNotNull(frontier.poll());
+         Assert.assertEquals(depth, frontier.getLastPolledDepth());
+      }
+      Assert.assertTrue(frontier.isEmpty());
+   }
+
+   @Test
+   public void testClear_01() {
+      final PriorityFrontier frontier = new PriorityFrontier(LinkScorer.byDepth());
+      frontier.add("http://www.test.com/a");
+      frontier.add("http://www.test.com/b");
+      Assert.assertEquals(new HashSet<>(Arrays.asList("http://www.test.com/a", "http://www.test.com/b")),
+          new HashSet<>(frontier));
+      frontier.clear();
+      Assert.assertTrue(frontier.isEmpty());
+      Assert.assertNull(frontier.poll());
+      Assert.assertTrue(frontier.add("http://www.test.com/a"));
+   }
+
+   /**
+    * Tests the links of a host with many links are spread out between the links of other hosts.
+    */
+   @Test
+   public void testHostFairness_01() {
+      final PriorityFrontier frontier = new PriorityFrontier(LinkScorer.byDepth().plus(LinkScorer.hostFairness(1)));
+      frontier.add("http://a.test.com/1");
+      frontier.add("http://a.test.com/2");
+      frontier.add("http://a.test.com/3");
+      frontier.add("http://b.test.com/1");
+      frontier.add("http://b.test.com/2");
+      Assert.assertEquals("http://a.test.com/1", frontier.poll());
+      Assert.assertEquals("http://b.test.com/1", frontier.poll());
+      Assert.assertEquals("http://a.test.com/2", frontier.poll());
+      Assert.assertEquals("http://b.test.com/2", frontier.poll());
+      Assert.assertEquals("http://a.test.com/3", frontier.poll());
+   }
+
+   @Test
+   public void testUrlPatterns_01() {
+      final Map<String, Double> patternWeights = new LinkedHashMap<>();
+      patternWeights.put("/products/", -10.0);
+      patternWeights.put("\\?sort=", 5.0);
+      final LinkScorer scorer = LinkScorer.urlPatterns(patternWeights);
+      Assert.assertEquals(-10.0, scorer.score("http://www.test.com/products/1", 0), 0);
+      Assert.assertEquals(-5.0, scorer.score("http://www.test.com/products/?sort=price", 0), 0);
+      Assert.assertEquals(0.0, scorer.score("http://www.test.com/about", 0), 0);
+
+      final PriorityFrontier frontier = new PriorityFrontier(LinkScorer.byDepth().plus(scorer));
+      frontier.offer("http://www.test.com/about", 1);
+      frontier.offer("http://www.test.com/products/?sort=price", 1);
+      frontier.offer("http://www.test.com/products/1", 3);
+      Assert.assertEquals("http://www.test.com/products/1", frontier.poll());
+      Assert.assertEquals("http://www.test.com/products/?sort=price", frontier.poll());
+      Assert.assertEquals("http://www.test.com/about", frontier.poll());
+   }
+}
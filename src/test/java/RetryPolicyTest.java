@@ -0,0 +1,66 @@
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+import org.junit.Assert;
+import org.junit.Test;
+import pkg.BodyTooLargeException;
+import pkg.RetryPolicy;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link RetryPolicy} class.
+ */
+public class RetryPolicyTest {
+
+   @Test
+   public void testIsTransientFailure_01() {
+      Assert.assertTrue(RetryPolicy.isTransientFailure(new HttpStatusException("", 503, "http://www.test.com")));
+      Assert.assertTrue(RetryPolicy.isTransientFailure(new HttpStatusException("", 429, "http://www.test.com")));
+      Assert.assertTrue(RetryPolicy.isTransientFailure(new SocketTimeoutException()));
+      Assert.assertTrue(RetryPolicy.isTransientFailure(new IOException("Connection reset")));
+      Assert.assertFalse(RetryPolicy.isTransientFailure(new HttpStatusException("", 404, "http://www.test.com")));
+      Assert.assertFalse(RetryPolicy.isTransientFailure(new UnknownHostException("www.test.com")));
+      Assert.assertFalse(RetryPolicy.isTransientFailure(
+          new UnsupportedMimeTypeException("", "image/png", "http://www.test.com")));
+      Assert.assertFalse(RetryPolicy.isTransientFailure(new BodyTooLargeException("", "http://www.test.com", 1024)));
+      Assert.assertFalse(RetryPolicy.isTransientFailure(new IllegalArgumentException()));
+   }
+
+   /**
+    * Tests that the delay grows exponentially with jitter of up to half the delay and is capped.
+    */
+   @Test
+   public void testGetDelayMillis_01() {
+      final RetryPolicy retryPolicy = new RetryPolicy(5, 100, 1000, 0.1);
+      for (int i = 0; i < 100; i++) {
+         final long firstDelay = retryPolicy.getDelayMillis(1);
+         Assert.assertTrue(firstDelay >= 50 && firstDelay <= 100);
+         final long thirdDelay = retryPolicy.getDelayMillis(3);
+         Assert.assertTrue(thirdDelay >= 200 && thirdDelay <= 400);
+         final long tenthDelay = retryPolicy.getDelayMillis(10);
+         Assert.assertTrue(tenthDelay >= 500 && tenthDelay <= 1000);
+      }
+   }
+
+   /**
+    * Tests that retries are limited to the minimum plus the budget ratio of the attempts.
+    */
+   @Test
+   public void testTryAcquireRetry_01() {
+      final RetryPolicy retryPolicy = new RetryPolicy(3, 100, 1000, 0.1);
+      for (int i = 0; i < RetryPolicy.MIN_RETRIES; i++) {
+         Assert.assertTrue(retryPolicy.tryAcquireRetry());
+      }
+      Assert.assertFalse(retryPolicy.tryAcquireRetry());
+      for (int i = 0; i < 20; i++) {
+         retryPolicy.recordAttempt();
+      }
+      Assert.assertTrue(retryPolicy.tryAcquireRetry());
+      Assert.assertTrue(retryPolicy.tryAcquireRetry());
+      Assert.assertFalse(retryPolicy.tryAcquireRetry());
+   }
+}
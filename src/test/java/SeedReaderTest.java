@@ -0,0 +1,94 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pkg.SeedReader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link SeedReader} class.
+ */
+public class SeedReaderTest {
+
+   /**
+    * Tests reading the links array of a JSON object, skipping other members and values which are not strings.
+    */
+   @Test
+   public void testReadLink_01() throws IOException {
+      final String json = "{\"name\": \"seeds\", \"other\": [\"http://www.test.com/x\"],\n"
+          + " \"links\": [\"http://www.test.com/1\", 2, null, \"http://www.test.com/2\"], \"more\": {}}";
+      Assert.assertEquals(Arrays.asList("http://www.test.com/1", "http://www.test.com/2"), readAll(json));
+   }
+
+   /**
+    * Tests reading a JSON array of links and a JSON object without links.
+    */
+   @Test
+   public void testReadLink_02() throws IOException {
+      Assert.assertEquals(Arrays.asList("http://www.test.com/1", "http://www.test.com/2"),
+          readAll("  [\"http://www.test.com/1\", \"http://www.test.com/2\"]"));
+      Assert.assertEquals(Collections.emptyList(), readAll("{\"pages\": []}"));
+      Assert.assertEquals(Collections.emptyList(), readAll(" \n "));
+   }
+
+   /**
+    * Tests reading one link per line, skipping blank lines and comments.
+    */
+   @Test
+   public void testReadLink_03() throws IOException {
+      Assert.assertEquals(Arrays.asList("http://www.test.com/1", "http://www.test.com/2"),
+          readAll("\n# seeds\nhttp://www.test.com/1\r\n\n  http://www.test.com/2  \n"));
+   }
+
+   @Test(expected = IOException.class)
+   public void testReadLink_04() throws IOException {
+      readAll("{\"links\": [\"http://www.test.com/1\", ");
+   }
+
+   /**
+    * Tests opening a gzip compressed file of links, one per line.
+    */
+   @Test
+   public void testOpen_01() throws IOException {
+      final Path file = Files.createTempFile("seed-reader-test", ".txt");
+      try {
+         try (final OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            for (int i = 0; i < 10000; i++) {
+               out.write(("http://www.test.com/" + i + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+         }
+         try (final SeedReader seedReader = SeedReader.open(file.toString())) {
+            for (int i = 0; i < 10000; i++) {
+               Assert.assertEquals("http://www.test.com/" + i, seedReader.readLink());
+            }
+            Assert.assertNull(seedReader.readLink());
+         }
+      }
+      finally {
+         Files.deleteIfExists(file);
+      }
+   }
+
+   private static List<String> readAll(final String seeds) throws IOException {
+      final List<String> links = new ArrayList<>();
+      try (final SeedReader seedReader = new SeedReader(new StringReader(seeds), "test")) {
+         String link;
+         while ((link = seedReader.readLink()) != null) {
+            links.add(link);
+         }
+         Assert.assertNull(seedReader.readLink());
+      }
+      return links;
+   }
+}
@@ -0,0 +1,97 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pkg.BloomFilterSet;
+import pkg.FingerprintSet;
+import pkg.UniqueQueue;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for the {@link pkg.SeenUrlStore} implementations {@link FingerprintSet} and
+ * {@link BloomFilterSet}.
+ */
+public class SeenUrlStoreTest {
+
+   private static final int URL_COUNT = 100000;
+
+   private static String url(final int i) {
+      return "http://www.test.com/page/" + i;
+   }
+
+   @Test
+   public void testFingerprintSet_01() {
+      final FingerprintSet set = new FingerprintSet(16);
+      for (int i = 0; i < URL_COUNT; i++) {
+         Assert.assertTrue(set.add(url(i)));
+      }
+      Assert.assertFalse(set.add(url(0)));
+      Assert.assertEquals(URL_COUNT, set.size());
+      for (int i = 0; i < URL_COUNT; i++) {
+         Assert.assertTrue(set.contains(url(i)));
+      }
+      Assert.assertFalse(set.contains(url(URL_COUNT)));
+      Assert.assertTrue(set.getMemoryUsageBytes() <= 16L * URL_COUNT * 2);
+   }
+
+   /**
+    * Tests that removing URLs keeps every other URL reachable.
+    */
+   @Test
+   public void testFingerprintSet_02() {
+      final FingerprintSet set = new FingerprintSet(16);
+      for (int i = 0; i < URL_COUNT; i++) {
+         set.add(url(i));
+      }
+      for (int i = 0; i < URL_COUNT; i += 2) {
+         Assert.assertTrue(set.remove(url(i)));
+      }
+      Assert.assertFalse(set.remove(url(0)));
+      Assert.assertEquals(URL_COUNT / 2, set.size());
+      for (int i = 0; i < URL_COUNT; i++) {
+         Assert.assertEquals(i % 2 == 1, set.contains(url(i)));
+      }
+      set.clear();
+      Assert.assertTrue(set.isEmpty());
+      Assert.assertFalse(set.contains(url(1)));
+   }
+
+   /**
+    * Tests a {@link UniqueQueue} using a {@link FingerprintSet} to detect duplicates.
+    */
+   @Test
+   public void testFingerprintSet_03() {
+      final UniqueQueue<String> queue = new UniqueQueue<>(new FingerprintSet());
+      Assert.assertTrue(queue.add(url(1)));
+      Assert.assertFalse(queue.add(url(1)));
+      Assert.assertTrue(queue.add(url(2)));
+      Assert.assertEquals(url(1), queue.remove());
+      Assert.assertTrue(queue.add(url(1)));
+      Assert.assertEquals(2, queue.size());
+   }
+
+   @Test
+   public void testBloomFilterSet_01() {
+      final BloomFilterSet set = new BloomFilterSet(URL_COUNT, 0.01);
+      for (int i = 0; i < URL_COUNT; i++) {
+         set.add(url(i));
+      }
+      for (int i = 0; i < URL_COUNT; i++) {
+         Assert.assertTrue(set.contains(url(i)));
+      }
+      int falsePositives = 0;
+      for (int i = URL_COUNT; i < 2 * URL_COUNT; i++) {
+         if (set.contains(url(i))) {
+            falsePositives++;
+         }
+      }
+      Assert.assertTrue("false positives: " + falsePositives, falsePositives < URL_COUNT * 0.02);
+      Assert.assertTrue(set.size() > URL_COUNT * 0.98);
+      Assert.assertTrue(set.getExpectedFalsePositiveRate() < 0.02);
+      Assert.assertTrue(set.getMemoryUsageBytes() < 2L * URL_COUNT);
+   }
+
+   @Test(expected = UnsupportedOperationException.class)
+   public void testBloomFilterSet_02() {
+      new BloomFilterSet(10, 0.01).remove(url(1));
+   }
+}
@@ -0,0 +1,116 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pkg.SimHash;
+import pkg.SimHashStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link SimHashStore} and {@link SimHash} classes.
+ */
+public class SimHashStoreTest {
+
+   private static final String PAGE = "<html><head><title>Daily news</title><script>var t = 1234;</script>"
+       + "<style>p { color: red; }</style></head><body><p>The council met on Tuesday to discuss the new budget for "
+       + "the city library, which will open longer on weekends and add a reading room for children.</p>"
+       + "<p>Updated at 10:15</p><div class=\"ad\">Buy shoes now</div></body></html>";
+
+   private Path file;
+
+   @Before
+   public void before() throws IOException {
+      file = Files.createTempFile("simhash-store-test", ".simhashes");
+      Files.delete(file);
+   }
+
+   @After
+   public void after() throws IOException {
+      Files.deleteIfExists(file);
+   }
+
+   /**
+    * Tests small changes of the text give a close simhash, while markup, scripts and case do not matter.
+    */
+   @Test
+   public void testSimHash_01() {
+      final long simHash = SimHash.of(PAGE);
+      Assert.assertEquals(simHash, SimHash.of(PAGE.replace("var t = 1234;", "var t = 5678;")
+          .replace("<p>", "<p class=\"x\">").replace("Daily", "DAILY")));
+      Assert.assertTrue(SimHash.distance(simHash, SimHash.of(PAGE.replace("10:15", "10:20"))) <= 8);
+      Assert.assertTrue(SimHash.distance(simHash, SimHash.of("<html><body><p>A completely different page about "
+          + "gardening, with tips for planting tomatoes and roses in the spring.</p></body></html>")) > 8);
+      Assert.assertEquals(0, SimHash.of("<html><script>only script</script></html>"));
+      Assert.assertEquals(0, SimHash.distance(5, 5));
+      Assert.assertEquals(64, SimHash.distance(0, -1));
+   }
+
+   /**
+    * Tests stored links are only returned while the simhash is within the maximum distance, also once loaded by a
+    * new store.
+    */
+   @Test
+   public void testGetLinksIfUnchanged_01() throws IOException {
+      final SimHashStore store = new SimHashStore(file, 3);
+      store.load();
+      Assert.assertEquals(0, store.size());
+      store.put("http://www.test.com/a.html", 0xff00L, 7L, Arrays.asList("http://www.test.com/b.html",
+          "http://www.test.com/c.html"));
+      store.put("http://www.test.com/b.html", 0L, 0L, Collections.singletonList("http://www.test.com/a.html"));
+      store.put("http://www.test.com/b.html", 0x1L, 0L, Collections.emptyList());
+      Assert.assertEquals(2, store.size());
+      Assert.assertNull(store.getLinksIfUnchanged("http://www.test.com/c.html", 0L, 0L));
+      store.close();
+
+      final SimHashStore loadedStore = new SimHashStore(file, 3);
+      loadedStore.load();
+      Assert.assertEquals(2, loadedStore.size());
+      Assert.assertEquals(Arrays.asList("http://www.test.com/b.html", "http://www.test.com/c.html"),
+          loadedStore.getLinksIfUnchanged("http://www.test.com/a.html", 0xff07L, 7L));
+      Assert.assertNull(loadedStore.getLinksIfUnchanged("http://www.test.com/a.html", 0xff0fL, 7L));
+      Assert.assertNull(loadedStore.getLinksIfUnchanged("http://www.test.com/a.html", 0xff00L, 8L));
+      Assert.assertEquals(Collections.emptyList(), loadedStore.getLinksIfUnchanged("http://www.test.com/b.html",
+          0x1L, 0L));
+      Assert.assertNull(loadedStore.getLinksIfUnchanged("http://www.test.com/c.html", 0L, 0L));
+   }
+
+   /**
+    * Tests the link hash depends on the href values of the page but not on their order, anchor texts, quoting or
+    * the case of the attribute name.
+    */
+   @Test
+   public void testLinkHashOf_01() {
+      final String page = "<html><body><a href=\"/news/1\">First</a> <a class=\"x\" href='/news/2'>Second</a>"
+          + "<link rel=\"stylesheet\" href=/style.css></body></html>";
+      final long linkHash = SimHash.linkHashOf(page);
+      Assert.assertEquals(linkHash, SimHash.linkHashOf("<html><body><link rel=\"stylesheet\" href=\"/style.css\">"
+          + "<a HREF = '/news/2'>Zweite</a><a href=\"/news/1\">Erste</a></body></html>"));
+      Assert.assertNotEquals(linkHash, SimHash.linkHashOf(page.replace("/news/2", "/news/3")));
+      Assert.assertEquals(SimHash.of(page), SimHash.of(page.replace("/news/2", "/news/3")));
+      Assert.assertEquals(0, SimHash.linkHashOf("<html><body><p data-href=\"/x\">No links</p></body></html>"));
+   }
+
+   /**
+    * Tests a file written before link hashes were stored is ignored.
+    */
+   @Test
+   public void testLoad_02() throws IOException {
+      Files.write(file, new byte[] {0x43, 0x52, 0x53, 0x48, 1, 0, 0, 0, 0});
+      final SimHashStore store = new SimHashStore(file, 3);
+      store.load();
+      Assert.assertEquals(0, store.size());
+   }
+
+   @Test(expected = IOException.class)
+   public void testLoad_01() throws IOException {
+      Files.write(file, new byte[] {1, 2, 3, 4, 5});
+      new SimHashStore(file, 3).load();
+   }
+}
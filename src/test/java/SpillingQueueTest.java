@@ -0,0 +1,109 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pkg.SpillingQueue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link SpillingQueue} class.
+ */
+public class SpillingQueueTest {
+
+   private Path spillDirectory;
+
+   private SpillingQueue queue;
+
+   private static String url(final int i) {
+      return "http://www.test.com/page/" + i;
+   }
+
+   @Before
+   public void before() throws IOException {
+      spillDirectory = Files.createTempDirectory("spilling-queue-test");
+      queue = new SpillingQueue(spillDirectory, 10);
+   }
+
+   @After
+   public void after() throws IOException {
+      queue.close();
+      Files.delete(spillDirectory);
+   }
+
+   /**
+    * Tests that FIFO order and uniqueness are kept while most URLs are on disk.
+    */
+   @Test
+   public void testSpill_01() throws IOException {
+      for (int i = 0; i < 1000; i++) {
+         Assert.assertTrue(queue.add(url(i)));
+         Assert.assertFalse(queue.add(url(i)));
+      }
+      Assert.assertEquals(1000, queue.size());
+      Assert.assertTrue(queue.getInMemoryCount() <= 10);
+      Assert.assertTrue(queue.getSegmentCount() > 0);
+      Assert.assertTrue(queue.contains(url(500)));
+
+      for (int i = 0; i < 1000; i++) {
+         Assert.assertTrue(queue.getInMemoryCount() <= 10);
+         Assert.assertEquals(url(i), queue.poll());
+      }
+      Assert.assertTrue(queue.isEmpty());
+      Assert.assertNull(queue.poll());
+      try (final Stream<Path> files = Files.list(spillDirectory)) {
+         Assert.assertEquals(0, files.count());
+      }
+   }
+
+   /**
+    * Tests interleaved adds and polls, and iterating over head, segments and tail.
+    */
+   @Test
+   public void testSpill_02() {
+      int next = 0;
+      for (int i = 0; i < 100; i++) {
+         queue.add(url(i));
+         if (i % 3 == 0) {
+            Assert.assertEquals(url(next++), queue.poll());
+         }
+      }
+      final List<String> remaining = new ArrayList<>();
+      for (final String link : queue) {
+         remaining.add(link);
+      }
+      Assert.assertEquals(100 - next, remaining.size());
+      for (final String link : remaining) {
+         Assert.assertEquals(url(next++), link);
+         Assert.assertEquals(link, queue.poll());
+      }
+      Assert.assertTrue(queue.isEmpty());
+   }
+
+   /**
+    * Tests that two queues spilling to the same directory do not overwrite each other's segments, and that the depth
+    * of each URL is kept on disk.
+    */
+   @Test
+   public void testSpill_03() {
+      try (final SpillingQueue otherQueue = new SpillingQueue(spillDirectory, 10)) {
+         for (int i = 0; i < 100; i++) {
+            queue.offer(url(i), i);
+            otherQueue.offer(url(i + 1000), i + 1000);
+         }
+         for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(url(i), queue.poll());
+            Assert.assertEquals(i, queue.getLastPolledDepth());
+            Assert.assertEquals(url(i + 1000), otherQueue.poll());
+            Assert.assertEquals(i + 1000, otherQueue.getLastPolledDepth());
+         }
+      }
+   }
+}
@@ -0,0 +1,81 @@
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.junit.Assert;
+import org.junit.Test;
+import pkg.StreamingLinkExtractor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link StreamingLinkExtractor} class.
+ */
+public class StreamingLinkExtractorTest {
+
+   private static final String PAGE = "<!DOCTYPE html>\n"
+       + "<html><head><title>Links <a href=\"/title\"></title>\n"
+       + "<script>var s = '<a href=\"/script\">'; if (a < b) {}</script>\n"
+       + "<style>a[href] { color: red }</style>\n"
+       + "</head><body>\n"
+       + "<!-- <a href=\"/comment\">commented out</a> -->\n"
+       + "<A HREF=\"/1\">one</A>\n"
+       + "<a class=x href='/2?a=1&amp;b=2'>two</a>\n"
+       + "<a href=/3 title=\"three\">three</a>\n"
+       + "<a name=\"anchor\">no href</a>\n"
+       + "<a\n   href = \" /4 \"\n>four</a>\n"
+       + "<abbr href=\"/abbr\">not a link</abbr>\n"
+       + "<p>1 < 2 and <a href=\"http://www.test.com/5#top\">five</a></p>\n"
+       + "</body></html>";
+
+   private static List<String> extractLinks(final String html) {
+      final List<String> links = new ArrayList<>();
+      StreamingLinkExtractor.extractLinks(html, (href, baseHref) -> links.add(href));
+      return links;
+   }
+
+   @Test
+   public void testExtractLinks_01() {
+      Assert.assertEquals(Arrays.asList("/1", "/2?a=1&b=2", "/3", "/4", "http://www.test.com/5#top"),
+          extractLinks(PAGE));
+   }
+
+   /**
+    * Tests that the same links are found as with Jsoup's a[href] selector.
+    */
+   @Test
+   public void testExtractLinks_02() {
+      final List<String> jsoupLinks = new ArrayList<>();
+      for (final Element element : Jsoup.parse(PAGE).select("a[href]")) {
+         jsoupLinks.add(element.attr("href").trim());
+      }
+      Assert.assertEquals(jsoupLinks, extractLinks(PAGE));
+   }
+
+   /**
+    * Tests that the base href is passed along with the links found after the base tag.
+    */
+   @Test
+   public void testExtractLinks_03() {
+      final String html = "<a href=\"/before\"></a><base href=\"http://base.test.com/dir/\"><a href=\"after\"></a>"
+          + "<base href=\"http://ignored.test.com/\"><a href=\"last\"></a>";
+      final List<String> baseHrefs = new ArrayList<>();
+      final int linkCount = StreamingLinkExtractor.extractLinks(html, (href, baseHref) -> baseHrefs.add(baseHref));
+      Assert.assertEquals(3, linkCount);
+      Assert.assertEquals(Arrays.asList(null, "http://base.test.com/dir/", "http://base.test.com/dir/"), baseHrefs);
+   }
+
+   /**
+    * Tests that truncated pages do not fail.
+    */
+   @Test
+   public void testExtractLinks_04() {
+      Assert.assertEquals(Arrays.asList("/1", "/2"), extractLinks("<a href=\"/1\"><a href=/2"));
+      Assert.assertTrue(extractLinks("<script><a href=\"/1\">").isEmpty());
+      Assert.assertTrue(extractLinks("<!-- <a href=\"/1\">").isEmpty());
+      Assert.assertTrue(extractLinks("<a href=").isEmpty());
+      Assert.assertTrue(extractLinks("<").isEmpty());
+   }
+}
@@ -0,0 +1,85 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pkg.UrlCanonicalizer;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link UrlCanonicalizer} class.
+ */
+public class UrlCanonicalizerTest {
+
+   private static final String BASE_URL = "http://a/b/c/d;p?q";
+
+   private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer();
+
+   /**
+    * Tests the normal examples of RFC 3986 section 5.4.1.
+    */
+   @Test
+   public void testResolve_01() {
+      Assert.assertEquals("http://g/", canonicalizer.resolve(BASE_URL, "http://g"));
+      Assert.assertEquals("http://a/b/c/g", canonicalizer.resolve(BASE_URL, "g"));
+      Assert.assertEquals("http://a/b/c/g", canonicalizer.resolve(BASE_URL, "./g"));
+      Assert.assertEquals("http://a/b/c/g/", canonicalizer.resolve(BASE_URL, "g/"));
+      Assert.assertEquals("http://a/g", canonicalizer.resolve(BASE_URL, "/g"));
+      Assert.assertEquals("http://g/", canonicalizer.resolve(BASE_URL, "//g"));
+      Assert.assertEquals("http://a/b/c/d;p?y", canonicalizer.resolve(BASE_URL, "?y"));
+      Assert.assertEquals("http://a/b/c/g?y", canonicalizer.resolve(BASE_URL, "g?y"));
+      Assert.assertEquals("http://a/b/c/d;p?q", canonicalizer.resolve(BASE_URL, "#s"));
+      Assert.assertEquals("http://a/b/c/g", canonicalizer.resolve(BASE_URL, "g#s"));
+      Assert.assertEquals("http://a/b/c/;x", canonicalizer.resolve(BASE_URL, ";x"));
+      Assert.assertEquals("http://a/b/c/d;p?q", canonicalizer.resolve(BASE_URL, ""));
+      Assert.assertEquals("http://a/b/c/", canonicalizer.resolve(BASE_URL, "."));
+      Assert.assertEquals("http://a/b/", canonicalizer.resolve(BASE_URL, ".."));
+      Assert.assertEquals("http://a/b/g", canonicalizer.resolve(BASE_URL, "../g"));
+      Assert.assertEquals("http://a/", canonicalizer.resolve(BASE_URL, "../.."));
+      Assert.assertEquals("http://a/g", canonicalizer.resolve(BASE_URL, "../../g"));
+   }
+
+   /**
+    * Tests the abnormal examples of RFC 3986 section 5.4.2.
+    */
+   @Test
+   public void testResolve_02() {
+      Assert.assertEquals("http://a/g", canonicalizer.resolve(BASE_URL, "../../../g"));
+      Assert.assertEquals("http://a/g", canonicalizer.resolve(BASE_URL, "/./g"));
+      Assert.assertEquals("http://a/g", canonicalizer.resolve(BASE_URL, "/../g"));
+      Assert.assertEquals("http://a/b/c/g.", canonicalizer.resolve(BASE_URL, "g."));
+      Assert.assertEquals("http://a/b/c/..g", canonicalizer.resolve(BASE_URL, "..g"));
+      Assert.assertEquals("http://a/b/g", canonicalizer.resolve(BASE_URL, "./../g"));
+      Assert.assertEquals("http://a/b/c/g/", canonicalizer.resolve(BASE_URL, "./g/."));
+      Assert.assertEquals("http://a/b/c/g/h", canonicalizer.resolve(BASE_URL, "g/./h"));
+      Assert.assertEquals("http://a/b/c/h", canonicalizer.resolve(BASE_URL, "g/../h"));
+      Assert.assertEquals("http://a/b/c/g?y/./x", canonicalizer.resolve(BASE_URL, "g?y/./x"));
+   }
+
+   /**
+    * Tests that different spellings of the same URL are canonicalized to the same URL.
+    */
+   @Test
+   public void testCanonicalize_01() {
+      Assert.assertEquals("http://host/a", canonicalizer.canonicalize("HTTP://Host/a#x"));
+      Assert.assertEquals("http://host/a", canonicalizer.canonicalize("http://host:80/a"));
+      Assert.assertEquals("https://host/", canonicalizer.canonicalize("https://HOST:443"));
+      Assert.assertEquals("http://host:8080/", canonicalizer.canonicalize("http://host:8080"));
+      Assert.assertEquals("http://host/~a%2Fb%20c", canonicalizer.canonicalize("http://host/%7ea%2fb c"));
+      Assert.assertEquals("http://host/caf%C3%A9", canonicalizer.canonicalize(" http://host/caf\u00e9\n"));
+      Assert.assertEquals("http://host/?b=2&a=1", canonicalizer.canonicalize("http://host?b=2&a=1"));
+      Assert.assertEquals("http://host/?a=1&b=2", new UrlCanonicalizer(true).canonicalize("http://host?b=2&a=1"));
+   }
+
+   /**
+    * Tests that links which are not http or https URLs are rejected.
+    */
+   @Test
+   public void testCanonicalize_02() {
+      Assert.assertNull(canonicalizer.resolve(BASE_URL, "mailto:someone@test.com"));
+      Assert.assertNull(canonicalizer.resolve(BASE_URL, "javascript:void(0)"));
+      Assert.assertNull(canonicalizer.resolve("/bad/url", "/abc/4"));
+      Assert.assertNull(canonicalizer.resolve(BASE_URL, "http://"));
+      Assert.assertNull(canonicalizer.resolve(BASE_URL, "http://host:8o/"));
+      Assert.assertNull(canonicalizer.canonicalize("badlink1"));
+      Assert.assertNull(canonicalizer.resolve(BASE_URL, null));
+   }
+}
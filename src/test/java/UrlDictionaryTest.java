@@ -0,0 +1,51 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pkg.UrlDictionary;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link UrlDictionary} class.
+ */
+public class UrlDictionaryTest {
+
+   /**
+    * Tests that IDs are dense, stable and map back to their URL across several resizes.
+    */
+   @Test
+   public void testGetOrAdd_01() {
+      final UrlDictionary dictionary = new UrlDictionary();
+      for (int i = 0; i < 100000; i++) {
+         Assert.assertEquals(i, dictionary.getOrAdd("http://www.test.com/page/" + i));
+      }
+      Assert.assertEquals(100000, dictionary.size());
+      for (int i = 0; i < 100000; i += 7) {
+         Assert.assertEquals(i, dictionary.getOrAdd("http://www.test.com/page/" + i));
+         Assert.assertEquals(i, dictionary.getId("http://www.test.com/page/" + i));
+         Assert.assertEquals("http://www.test.com/page/" + i, dictionary.getUrl(i));
+      }
+      Assert.assertEquals(100000, dictionary.size());
+      Assert.assertEquals(-1, dictionary.getId("http://www.test.com/page/100000"));
+   }
+
+   /**
+    * Tests URLs which are not ASCII, including one with as many chars as an ASCII URL has bytes.
+    */
+   @Test
+   public void testGetOrAdd_02() {
+      final UrlDictionary dictionary = new UrlDictionary();
+      Assert.assertEquals(0, dictionary.getOrAdd("http://www.test.com/cafe"));
+      Assert.assertEquals(1, dictionary.getOrAdd("http://www.test.com/caf\u00e9"));
+      Assert.assertEquals(2, dictionary.getOrAdd("http://www.test.com/caf"));
+      Assert.assertEquals(1, dictionary.getOrAdd("http://www.test.com/caf\u00e9"));
+      Assert.assertEquals("http://www.test.com/caf\u00e9", dictionary.getUrl(1));
+      Assert.assertEquals("http://www.test.com/caf", dictionary.getUrl(2));
+   }
+
+   @Test(expected = IndexOutOfBoundsException.class)
+   public void testGetUrl_01() {
+      final UrlDictionary dictionary = new UrlDictionary();
+      dictionary.getOrAdd("http://www.test.com/");
+      dictionary.getUrl(1);
+   }
+}
@@ -0,0 +1,80 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pkg.ValidatorCache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link ValidatorCache} class.
+ */
+public class ValidatorCacheTest {
+
+   private Path file;
+
+   @Before
+   public void before() throws IOException {
+      file = Files.createTempFile("validator-cache-test", ".validators");
+      Files.delete(file);
+   }
+
+   @After
+   public void after() throws IOException {
+      Files.deleteIfExists(file);
+   }
+
+   /**
+    * Tests that saved entries are loaded by a new cache and pages without validators are not cached.
+    */
+   @Test
+   public void testLoad_01() throws IOException {
+      final ValidatorCache cache = new ValidatorCache(file);
+      cache.load();
+      Assert.assertEquals(0, cache.size());
+      cache.put("http://www.test.com/a.html", "\"v1\"", null, Arrays.asList("http://www.test.com/b.html",
+          "http://www.test.com/c.html"));
+      cache.put("http://www.test.com/b.html", null, "Wed, 21 Oct 2015 07:28:00 GMT", Collections.emptyList());
+      cache.put("http://www.test.com/c.html", null, null, Collections.singletonList("http://www.test.com/a.html"));
+      cache.close();
+
+      final ValidatorCache loadedCache = new ValidatorCache(file);
+      loadedCache.load();
+      Assert.assertEquals(2, loadedCache.size());
+      final ValidatorCache.Entry entry = loadedCache.get("http://www.test.com/a.html");
+      Assert.assertEquals("\"v1\"", entry.getEtag());
+      Assert.assertNull(entry.getLastModified());
+      Assert.assertEquals(Arrays.asList("http://www.test.com/b.html", "http://www.test.com/c.html"),
+          entry.getLinks());
+      Assert.assertEquals("Wed, 21 Oct 2015 07:28:00 GMT",
+          loadedCache.get("http://www.test.com/b.html").getLastModified());
+      Assert.assertNull(loadedCache.get("http://www.test.com/c.html"));
+   }
+
+   /**
+    * Tests that a file which is not a validator cache is rejected.
+    */
+   @Test(expected = IOException.class)
+   public void testLoad_02() throws IOException {
+      Files.write(file, new byte[] {1, 2, 3, 4, 5, 6});
+      new ValidatorCache(file).load();
+   }
+
+   @Test
+   public void testGetConditionalHeaders_01() {
+      final ValidatorCache.Entry entry = new ValidatorCache.Entry("\"v1\"", "Wed, 21 Oct 2015 07:28:00 GMT",
+          Collections.emptyList());
+      final Map<String, String> headers = new HashMap<>();
+      headers.put("If-None-Match", "\"v1\"");
+      headers.put("If-Modified-Since", "Wed, 21 Oct 2015 07:28:00 GMT");
+      Assert.assertEquals(headers, entry.getConditionalHeaders());
+   }
+}
@@ -0,0 +1,182 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pkg.FetchResult;
+import pkg.WarcReplayFetcher;
+import pkg.WarcWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link WarcReplayFetcher} class.
+ */
+public class WarcReplayFetcherTest {
+
+   private static final String URL_1 = "http://www.test.com/1";
+
+   private static final String URL_2 = "http://www.test.com/2";
+
+   private static final String URL_3 = "http://www.test.com/3";
+
+   private Path directory;
+
+   @Before
+   public void before() throws IOException {
+      directory = Files.createTempDirectory("warc-replay-fetcher-test");
+   }
+
+   @After
+   public void after() throws IOException {
+      try (final Stream<Path> paths = Files.walk(directory)) {
+         paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      }
+   }
+
+   /**
+    * Tests the status code, headers and body of a response are replayed, without the headers describing how the
+    * body was transferred.
+    */
+   @Test
+   public void testFetch_01() throws IOException {
+      final Map<String, String> headers = new HashMap<>();
+      headers.put("Content-Type", "text/html; charset=UTF-8");
+      headers.put("ETag", "\"v1\"");
+      headers.put("Content-Encoding", "gzip");
+      headers.put("Content-Length", "12");
+      final String html = "<html><body>\u00e9t\u00e9\r\n\r\n<a href=\"/2\">2</a></body></html>";
+      try (final WarcWriter warcWriter = new WarcWriter(directory, WarcWriter.DEFAULT_MAX_FILE_BYTES)) {
+         warcWriter.write(URL_1, new FetchResult(URL_1, 200, headers, html.getBytes(StandardCharsets.UTF_8)));
+         warcWriter.write(URL_2, new FetchResult(URL_2, 503, Collections.emptyMap(), new byte[0]));
+      }
+
+      final WarcReplayFetcher replayFetcher = new WarcReplayFetcher(directory);
+      Assert.assertEquals(URL_1, replayFetcher.getFirstUrl());
+      Assert.assertEquals(2, replayFetcher.getRecordCount());
+      final FetchResult fetchResult = replayFetcher.fetch(URL_1, Collections.singletonMap("If-None-Match", "\"v1\""))
+          .join();
+      Assert.assertEquals(URL_1, fetchResult.getUrl());
+      Assert.assertEquals(200, fetchResult.getStatusCode());
+      Assert.assertEquals(html, fetchResult.getBodyAsString());
+      Assert.assertEquals("text/html", fetchResult.getMimeType());
+      Assert.assertEquals("\"v1\"", fetchResult.getHeader("ETag"));
+      Assert.assertNull(fetchResult.getHeader("Content-Encoding"));
+      Assert.assertEquals(Integer.toString(html.getBytes(StandardCharsets.UTF_8).length),
+          fetchResult.getHeader("Content-Length"));
+
+      final FetchResult errorResult = replayFetcher.fetch(URL_2).join();
+      Assert.assertEquals(503, errorResult.getStatusCode());
+      Assert.assertEquals(0, errorResult.getBody().length);
+      Assert.assertEquals(2, replayFetcher.getReplayedCount());
+      Assert.assertEquals(0, replayFetcher.getMissCount());
+   }
+
+   /**
+    * Tests a URL which was not recorded is answered with an empty 404 response.
+    */
+   @Test
+   public void testFetch_02() throws IOException {
+      new WarcWriter(directory, WarcWriter.DEFAULT_MAX_FILE_BYTES).close();
+
+      final WarcReplayFetcher replayFetcher = new WarcReplayFetcher(directory);
+      Assert.assertNull(replayFetcher.getFirstUrl());
+      final FetchResult fetchResult = replayFetcher.fetch(URL_1).join();
+      Assert.assertEquals(404, fetchResult.getStatusCode());
+      Assert.assertEquals(0, fetchResult.getBody().length);
+      Assert.assertEquals(1, replayFetcher.getMissCount());
+   }
+
+   /**
+    * Tests the last record of a URL which was fetched more than once is replayed.
+    */
+   @Test
+   public void testFetch_03() throws IOException {
+      try (final WarcWriter warcWriter = new WarcWriter(directory, WarcWriter.DEFAULT_MAX_FILE_BYTES)) {
+         warcWriter.write(URL_1, new FetchResult(URL_1, 500, Collections.emptyMap(), new byte[0]));
+         warcWriter.write(URL_1, new FetchResult(URL_1, 200, Collections.emptyMap(),
+             "retried".getBytes(StandardCharsets.UTF_8)));
+      }
+
+      final FetchResult fetchResult = new WarcReplayFetcher(directory).fetch(URL_1).join();
+      Assert.assertEquals(200, fetchResult.getStatusCode());
+      Assert.assertEquals("retried", fetchResult.getBodyAsString());
+   }
+
+   /**
+    * Tests a record which is not a valid gzip member fails the fetch of its URL only.
+    */
+   @Test
+   public void testFetch_04() throws IOException {
+      try (final WarcWriter warcWriter = new WarcWriter(directory, WarcWriter.DEFAULT_MAX_FILE_BYTES)) {
+         warcWriter.write(URL_1, new FetchResult(URL_1, 200, Collections.emptyMap(), new byte[0]));
+      }
+      final String line = Files.readAllLines(directory.resolve(WarcWriter.INDEX_FILE)).get(0);
+      final String[] fields = line.split(" ");
+      Files.write(directory.resolve(WarcWriter.INDEX_FILE), (line + "\n" + fields[0] + " 0 "
+          + (Integer.parseInt(fields[1]) - 1) + " " + URL_2 + "\n").getBytes(StandardCharsets.UTF_8));
+
+      final WarcReplayFetcher replayFetcher = new WarcReplayFetcher(directory);
+      Assert.assertEquals(200, replayFetcher.fetch(URL_1).join().getStatusCode());
+      try {
+         replayFetcher.fetch(URL_2).join();
+         Assert.fail("Expected the fetch of a truncated record to fail");
+      }
+      catch (final CompletionException e) {
+         Assert.assertTrue(e.getCause() instanceof IOException);
+      }
+   }
+
+   /**
+    * Tests a truncated response and a response whose body was not read are recorded with a WARC-Truncated header
+    * and replayed as truncated with the number of bytes transferred, and a complete response as not truncated.
+    */
+   @Test
+   public void testFetch_05() throws IOException {
+      try (final WarcWriter warcWriter = new WarcWriter(directory, WarcWriter.DEFAULT_MAX_FILE_BYTES)) {
+         warcWriter.write(URL_1, new FetchResult(URL_1, 200, Collections.emptyMap(),
+             "<html>cut".getBytes(StandardCharsets.UTF_8), 4, true));
+         warcWriter.write(URL_2, new FetchResult(URL_2, 200, Collections.singletonMap("Content-Type", "image/png"),
+             new byte[0], 0, true));
+         warcWriter.write(URL_3, new FetchResult(URL_3, 200, Collections.emptyMap(),
+             "<html></html>".getBytes(StandardCharsets.UTF_8), 7, false));
+      }
+
+      final WarcReplayFetcher replayFetcher = new WarcReplayFetcher(directory);
+      final FetchResult truncatedResult = replayFetcher.fetch(URL_1).join();
+      Assert.assertTrue(truncatedResult.isTruncated());
+      Assert.assertEquals(4, truncatedResult.getTransferredBytes());
+      Assert.assertEquals("<html>cut", truncatedResult.getBodyAsString());
+      final FetchResult headersOnlyResult = replayFetcher.fetch(URL_2).join();
+      Assert.assertTrue(headersOnlyResult.isTruncated());
+      Assert.assertEquals(0, headersOnlyResult.getTransferredBytes());
+      Assert.assertEquals("image/png", headersOnlyResult.getMimeType());
+      final FetchResult completeResult = replayFetcher.fetch(URL_3).join();
+      Assert.assertFalse(completeResult.isTruncated());
+      Assert.assertEquals(7, completeResult.getTransferredBytes());
+   }
+
+   /**
+    * Tests an index pointing outside of a WARC file is rejected.
+    */
+   @Test(expected = IOException.class)
+   public void testWarcReplayFetcher_01() throws IOException {
+      try (final WarcWriter warcWriter = new WarcWriter(directory, WarcWriter.DEFAULT_MAX_FILE_BYTES)) {
+         warcWriter.write(URL_1, new FetchResult(URL_1, 200, Collections.emptyMap(), new byte[0]));
+      }
+      final long fileSize = Files.size(directory.resolve("crawl-00000.warc.gz"));
+      Files.write(directory.resolve(WarcWriter.INDEX_FILE),
+          ("crawl-00000.warc.gz 0 " + (fileSize + 1) + " " + URL_1 + "\n").getBytes(StandardCharsets.UTF_8));
+      new WarcReplayFetcher(directory);
+   }
+}
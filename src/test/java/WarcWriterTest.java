@@ -0,0 +1,146 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pkg.FetchResult;
+import pkg.WarcReplayFetcher;
+import pkg.WarcWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @author Brian Chipman
+ *
+ * This class contains unit tests for {@link WarcWriter} class.
+ */
+public class WarcWriterTest {
+
+   private Path directory;
+
+   @Before
+   public void before() throws IOException {
+      directory = Files.createTempDirectory("warc-writer-test");
+   }
+
+   @After
+   public void after() throws IOException {
+      try (final Stream<Path> paths = Files.walk(directory)) {
+         paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      }
+   }
+
+   private static FetchResult createResult(final String url, final String html) {
+      return new FetchResult(url, 200, Collections.singletonMap("Content-Type", "text/html"),
+          html.getBytes(StandardCharsets.UTF_8));
+   }
+
+   private static String gunzip(final byte[] bytes) throws IOException {
+      try (final InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+         final ByteArrayOutputStream out = new ByteArrayOutputStream();
+         final byte[] buffer = new byte[1024];
+         int read;
+         while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+         }
+         return new String(out.toByteArray(), StandardCharsets.UTF_8);
+      }
+   }
+
+   /**
+    * Tests every record is a gzip member of its own which can be read from the offset in the index, and that a
+    * whole file is a valid gzip stream starting with a warcinfo record.
+    */
+   @Test
+   public void testWrite_01() throws IOException {
+      try (final WarcWriter warcWriter = new WarcWriter(directory, WarcWriter.DEFAULT_MAX_FILE_BYTES)) {
+         warcWriter.write("http://www.test.com/1", createResult("http://www.test.com/1", "<html>1</html>"));
+         warcWriter.write("http://www.test.com/2", createResult("http://www.test.com/2", "<html>2</html>"));
+         Assert.assertEquals(2, warcWriter.getRecordCount());
+      }
+
+      final List<String> index = Files.readAllLines(directory.resolve(WarcWriter.INDEX_FILE));
+      Assert.assertEquals(2, index.size());
+      for (final String line : index) {
+         final String[] fields = line.split(" ");
+         Assert.assertEquals("crawl-00000.warc.gz", fields[0]);
+         final byte[] file = Files.readAllBytes(directory.resolve(fields[0]));
+         final byte[] record = new byte[Integer.parseInt(fields[2])];
+         System.arraycopy(file, Integer.parseInt(fields[1]), record, 0, record.length);
+         final String warc = gunzip(record);
+         Assert.assertTrue(warc.startsWith("WARC/1.0\r\nWARC-Type: response\r\n"));
+         Assert.assertTrue(warc.contains("WARC-Target-URI: " + fields[3] + "\r\n"));
+         Assert.assertTrue(warc.contains("HTTP/1.1 200 \r\n"));
+         Assert.assertTrue(warc.endsWith("</html>\r\n\r\n"));
+      }
+      final String file = gunzip(Files.readAllBytes(directory.resolve("crawl-00000.warc.gz")));
+      Assert.assertTrue(file.startsWith("WARC/1.0\r\nWARC-Type: warcinfo\r\n"));
+      Assert.assertTrue(file.endsWith("<html>2</html>\r\n\r\n"));
+   }
+
+   /**
+    * Tests a new file is started before a record would make a file larger than the maximum, and that the records
+    * of all files are replayed.
+    */
+   @Test
+   public void testWrite_02() throws IOException {
+      try (final WarcWriter warcWriter = new WarcWriter(directory, 1000)) {
+         for (int i = 0; i < 10; i++) {
+            final String url = "http://www.test.com/" + i;
+            warcWriter.write(url, createResult(url, "<html>" + i + "</html>"));
+         }
+      }
+
+      final List<Path> files;
+      try (final Stream<Path> paths = Files.list(directory)) {
+         files = paths.filter(path -> path.getFileName().toString().endsWith(".warc.gz")).collect(Collectors.toList());
+      }
+      Assert.assertTrue(files.size() > 1);
+      for (final Path file : files) {
+         Assert.assertTrue(Files.size(file) <= 1000);
+      }
+      final WarcReplayFetcher replayFetcher = new WarcReplayFetcher(directory);
+      Assert.assertEquals(10, replayFetcher.getRecordCount());
+      for (int i = 0; i < 10; i++) {
+         Assert.assertEquals("<html>" + i + "</html>",
+             replayFetcher.fetch("http://www.test.com/" + i).join().getBodyAsString());
+      }
+   }
+
+   /**
+    * Tests only a truncated response is written with the standard WARC-Truncated header, and that the number of
+    * bytes transferred is written for every response.
+    */
+   @Test
+   public void testWrite_03() throws IOException {
+      try (final WarcWriter warcWriter = new WarcWriter(directory, WarcWriter.DEFAULT_MAX_FILE_BYTES)) {
+         warcWriter.write("http://www.test.com/1", new FetchResult("http://www.test.com/1", 200,
+             Collections.emptyMap(), new byte[0], 0, true));
+         warcWriter.write("http://www.test.com/2", createResult("http://www.test.com/2", "<html>2</html>"));
+      }
+
+      final String file = gunzip(Files.readAllBytes(directory.resolve("crawl-00000.warc.gz")));
+      final int secondRecord = file.indexOf("WARC-Target-URI: http://www.test.com/2");
+      final int truncated = file.indexOf("WARC-Truncated: length\r\n");
+      Assert.assertTrue(truncated >= 0 && truncated < secondRecord);
+      Assert.assertTrue(file.indexOf("X-Transferred-Bytes: 0\r\n") < secondRecord);
+      Assert.assertEquals(-1, file.indexOf("WARC-Truncated", secondRecord));
+      Assert.assertTrue(file.indexOf("X-Transferred-Bytes: 14\r\n", secondRecord) > secondRecord);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testWarcWriter_01() throws IOException {
+      new WarcWriter(directory, 0);
+   }
+}